@@ -0,0 +1,40 @@
+#!/usr/bin/bash
+
+# Converts the uuid columns of a running database made from an old schema.sql to binary(16). Databases made by the
+# schema migrations already use binary(16) and must not be migrated. Run before starting the server, which migrates
+# the rest of the schema
+
+CONTAINER_NAME=tickr-db
+ROOT_PASSWORD=rootpw
+DATABASE_NAME=tickr
+
+LOCK_FILE=.db.lock
+BACKUP_FILE=tickr-backup-$(date +%Y%m%d%H%M%S).sql
+
+if ! [[ -f "$LOCK_FILE" ]]; then
+  echo "Database is not started!"
+  exit 1
+fi
+
+COLUMN_TYPE=$(docker exec $CONTAINER_NAME mysql --user=root --password=$ROOT_PASSWORD -N -s -e \
+    "select data_type from information_schema.columns where table_schema = '$DATABASE_NAME' and table_name = 'users' and column_name = 'id';" 2>/dev/null)
+if [ "$COLUMN_TYPE" != "varchar" ]; then
+  echo "Database does not have varchar uuids, nothing to migrate!"
+  exit 0
+fi
+
+echo "Backing up database to $BACKUP_FILE..."
+if ! docker exec $CONTAINER_NAME mysqldump --user=root --password=$ROOT_PASSWORD $DATABASE_NAME > "$BACKUP_FILE"; then
+  echo "Failed to back up database!"
+  exit 1
+fi
+
+echo "Migrating uuid columns..."
+docker cp uuid-migration.sql $CONTAINER_NAME:/uuid-migration.sql
+if ! docker exec $CONTAINER_NAME mysql --user=root --password=$ROOT_PASSWORD -e \
+    "use $DATABASE_NAME;
+    source uuid-migration.sql;"; then
+  echo "Failed to migrate database, restore it from $BACKUP_FILE!"
+  exit 1
+fi
+echo "Successfully migrated database!"
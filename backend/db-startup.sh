@@ -18,7 +18,6 @@ fi
 
 echo "Initialising database..."
 docker run --name $CONTAINER_NAME --health-cmd="mysqladmin ping --silent" -e MYSQL_ROOT_PASSWORD=$ROOT_PASSWORD -p $DATABASE_PORT:3306 -d mysql:latest
-docker cp schema.sql $CONTAINER_NAME:/schema.sql
 echo "Waiting for mysqld to start up..."
 while STATUS=$(docker inspect --format "{{.State.Health.Status}}" $CONTAINER_NAME); [ "$STATUS" != "healthy" ]; do
   #echo "$STATUS"
@@ -31,14 +30,13 @@ while STATUS=$(docker inspect --format "{{.State.Health.Status}}" $CONTAINER_NAM
   sleep 1
 done
 
-echo "Initialising database schema..."
+echo "Creating database and user..."
 docker exec $CONTAINER_NAME mysql --user=root --password=$ROOT_PASSWORD -e \
     "create database $DATABASE_NAME;
     create USER '$TICKR_USER' identified by '$TICKR_PASSWORD';
-    grant INSERT, UPDATE, DELETE, SELECT, REFERENCES, INDEX on $DATABASE_NAME.* to '$TICKR_USER';
-    flush PRIVILEGES;
-    use $DATABASE_NAME;
-    source schema.sql;"
+    grant INSERT, UPDATE, DELETE, SELECT, REFERENCES, INDEX, CREATE, ALTER on $DATABASE_NAME.* to '$TICKR_USER';
+    flush PRIVILEGES;"
+# The schema is created by the server's migrations when it starts
 #docker exec -t $CONTAINER_NAME mysql --user=root --password=$ROOT_PASSWORD
 echo "Successfully started up database!"
 touch $LOCK_FILE
\ No newline at end of file
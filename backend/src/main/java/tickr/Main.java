@@ -11,9 +11,19 @@ import tickr.application.apis.location.NominatimAPI;
 import tickr.application.apis.purchase.IPurchaseAPI;
 import tickr.application.apis.purchase.NullPurchaseAPI;
 import tickr.application.apis.purchase.StripeAPI;
+import tickr.application.recommendations.CandidateScorer;
+import tickr.application.recommendations.RecommenderEngine;
+import tickr.application.queue.AdmissionQueue;
+import tickr.application.seating.ReservationSweeper;
+import tickr.application.seating.SeatAllocator;
+import tickr.persistence.DataModel;
 import tickr.persistence.HibernateModel;
 import tickr.server.Server;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Locale;
+
 public class Main {
     private static final Logger logger = LogManager.getLogger(Main.class);
 
@@ -25,15 +35,41 @@ public class Main {
         System.out.println("  --help\n\tPrints this help message.\n");
         System.out.println("  -live-email\n\tUses live SendGrid email API\n");
         System.out.println("  -live-stripe-secret=<secret>\n\t Uses live Stripe API. The passed in secret is the endpoint secret obtained from stripe listen");
+        System.out.println("  -rebuild-tf-idfs\n\tRebuilds the recommendation TF-IDF tables from scratch and exits without starting the server\n");
+        System.out.println("  -threads=<threads>\n\tMaximum number of request threads. Defaults to " + Server.DEFAULT_MAX_THREADS + "\n");
+        System.out.println("  -thread-mode=<pooled|elastic|virtual>\n\tHow requests are run: on a fixed pool of threads (default), on an elastic pool of threads which time out when idle, or on a new virtual thread each\n");
+        System.out.println("  -read-replica=<jdbc url>\n\tAdds a read replica of the database, which read only requests are balanced across. May be given more than once\n");
+        System.out.println("  -replica-staleness-ms=<ms>\n\tHow long after a user makes changes that their reads are served by the primary database instead of replicas. Defaults to " + HibernateModel.DEFAULT_REPLICA_STALENESS.toMillis() + "\n");
+        System.out.println("  -scoring-threads=<threads>\n\tNumber of threads used to score recommendations. Defaults to the number of processors\n");
+        System.out.println("  -admission-rate=<users per second>\n\tQueues users before they may reserve or buy tickets, admitting this many per second to each event with its queue turned on. Disabled by default\n");
+    }
+    private static void rebuildTfIdfs (DataModel model) {
+        logger.info("Rebuilding TF-IDFs!");
+        var session = model.makeSession();
+        try {
+            RecommenderEngine.forceRecalculate(session);
+            session.commit();
+            logger.info("Finished rebuilding TF-IDFs!");
+        } catch (RuntimeException e) {
+            logger.error("Failed to rebuild TF-IDFs!", e);
+            session.rollback();
+        } finally {
+            session.close();
+            model.cleanup();
+        }
     }
-    public static void main(String[] args) {
-        var databaseModel = new HibernateModel();
 
+    public static void main(String[] args) {
         int port = 8080;
 
         boolean useLiveEmail = false;
         boolean useLivePurchase = false;
         String stripeSecret = null;
+        boolean rebuildTfIdfs = false;
+        int maxThreads = Server.DEFAULT_MAX_THREADS;
+        var threadMode = Server.ThreadMode.POOLED;
+        var replicaUrls = new ArrayList<String>();
+        var replicaStaleness = HibernateModel.DEFAULT_REPLICA_STALENESS;
 
         int inNum = 0;
 
@@ -58,6 +94,74 @@ public class Main {
                 useLivePurchase = true;
             } else if (arg.trim().equals("-live-email")) {
                 useLiveEmail = true;
+            } else if (arg.trim().equals("-rebuild-tf-idfs")) {
+                rebuildTfIdfs = true;
+            } else if (arg.trim().startsWith("-threads")) {
+                var split = arg.split("=");
+                maxThreads = 0;
+                try {
+                    maxThreads = split.length == 1 ? 0 : Integer.parseInt(split[1].trim());
+                } catch (NumberFormatException ignored) {
+
+                }
+                if (maxThreads < Server.DEFAULT_MIN_THREADS) {
+                    System.err.println("Option -threads requires a number of threads of at least " + Server.DEFAULT_MIN_THREADS + " to be passed in!");
+                    printUsage();
+                    System.exit(1);
+                }
+            } else if (arg.trim().startsWith("-thread-mode")) {
+                var split = arg.split("=");
+                try {
+                    threadMode = Server.ThreadMode.valueOf(split[1].trim().toUpperCase(Locale.ROOT));
+                } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+                    System.err.println("Option -thread-mode requires one of pooled, elastic or virtual to be passed in!");
+                    printUsage();
+                    System.exit(1);
+                }
+            } else if (arg.trim().startsWith("-read-replica=")) {
+                replicaUrls.add(arg.trim().substring("-read-replica=".length()));
+            } else if (arg.trim().startsWith("-replica-staleness-ms")) {
+                var split = arg.split("=");
+                long stalenessMs = -1;
+                try {
+                    stalenessMs = split.length == 1 ? -1 : Long.parseLong(split[1].trim());
+                } catch (NumberFormatException ignored) {
+
+                }
+                if (stalenessMs < 0) {
+                    System.err.println("Option -replica-staleness-ms requires a non-negative number of milliseconds to be passed in!");
+                    printUsage();
+                    System.exit(1);
+                }
+                replicaStaleness = Duration.ofMillis(stalenessMs);
+            } else if (arg.trim().startsWith("-scoring-threads")) {
+                var split = arg.split("=");
+                int threads = 0;
+                try {
+                    threads = split.length == 1 ? 0 : Integer.parseInt(split[1].trim());
+                } catch (NumberFormatException ignored) {
+
+                }
+                if (threads <= 0) {
+                    System.err.println("Option -scoring-threads requires a positive number of threads to be passed in!");
+                    printUsage();
+                    System.exit(1);
+                }
+                CandidateScorer.configure(threads);
+            } else if (arg.trim().startsWith("-admission-rate")) {
+                var split = arg.split("=");
+                double rate = 0;
+                try {
+                    rate = split.length == 1 ? 0 : Double.parseDouble(split[1].trim());
+                } catch (NumberFormatException ignored) {
+
+                }
+                if (rate <= 0 || !Double.isFinite(rate)) {
+                    System.err.println("Option -admission-rate requires a positive number of users per second to be passed in!");
+                    printUsage();
+                    System.exit(1);
+                }
+                AdmissionQueue.configure(rate);
             } else if (arg.trim().equals("--help")) {
                 printUsage();
                 System.exit(0);
@@ -67,6 +171,28 @@ public class Main {
                 System.exit(1);
             }
         }
+        var databaseModel = replicaUrls.isEmpty() ? new HibernateModel() : new HibernateModel(replicaUrls, replicaStaleness);
+
+        try {
+            databaseModel.migrateSchema();
+        } catch (RuntimeException e) {
+            logger.error("Failed to migrate database schema!", e);
+            databaseModel.cleanup();
+            System.exit(1);
+        }
+
+        if (rebuildTfIdfs) {
+            rebuildTfIdfs(databaseModel);
+            return;
+        }
+
+        // Seats are allocated from memory, so load them before taking requests
+        SeatAllocator.get(databaseModel);
+        // Restores the admission queues and starts admitting from them
+        AdmissionQueue.get(databaseModel);
+        // Starts deleting expired reservations in the background
+        ReservationSweeper.get(databaseModel);
+
         if (useLiveEmail) {
             logger.info("Using live SendGrid email API!");
             ApiLocator.addLocator(IEmailAPI.class, SendGridAPI::new);
@@ -87,6 +213,8 @@ public class Main {
         logger.info("Using live Nominatim geocoding API!");
         ApiLocator.addLocator(ILocationAPI.class, () -> new NominatimAPI(databaseModel));
 
+        Server.configureThreads(threadMode, Server.DEFAULT_MIN_THREADS, maxThreads);
+
         logger.info("Starting tickr server on http://localhost:{}!", port);
 
         Server.start(port, null, databaseModel);
@@ -11,12 +11,20 @@ import tickr.application.apis.location.ILocationAPI;
 import tickr.application.apis.location.LocationRequest;
 import tickr.application.apis.purchase.IPurchaseAPI;
 import tickr.application.entities.*;
+import tickr.application.queue.AdmissionQueue;
+import tickr.application.recommendations.CandidateScorer;
+import tickr.application.recommendations.CorpusStatistics;
 import tickr.application.recommendations.InteractionType;
 import tickr.application.recommendations.RecommenderEngine;
+import tickr.application.recommendations.SimilarityNeighbours;
+import tickr.application.search.EventSearchIndex;
+import tickr.application.search.IndexedEvent;
+import tickr.application.seating.SeatAllocator;
 import tickr.application.serialised.combined.comments.ReplyCreate;
 import tickr.application.serialised.combined.comments.ReviewCreate;
 import tickr.application.serialised.combined.event.EventSearch;
 import tickr.application.serialised.combined.tickets.TicketPurchase;
+import tickr.application.serialised.combined.tickets.TicketQueue;
 import tickr.application.serialised.combined.tickets.TicketReserve;
 import tickr.application.serialised.combined.user.NotificationManagement;
 import tickr.application.serialised.requests.comment.ReactRequest;
@@ -36,13 +44,15 @@ import tickr.application.serialised.responses.ticket.TicketBookingsResponse;
 import tickr.application.serialised.responses.ticket.TicketViewEmailResponse;
 import tickr.application.serialised.responses.ticket.TicketViewResponse;
 import tickr.application.serialised.responses.user.*;
+import tickr.persistence.DataModel;
+import tickr.persistence.ModelQuery;
 import tickr.persistence.ModelSession;
 import tickr.server.exceptions.BadRequestException;
 import tickr.server.exceptions.ForbiddenException;
 import tickr.server.exceptions.UnauthorizedException;
 import tickr.util.CryptoHelper;
 import tickr.util.FileHelper;
-import tickr.util.Pair;
+import tickr.util.TopKSelector;
 import tickr.util.Utils;
 
 import java.time.*;
@@ -57,16 +67,16 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
- * Class encapsulating business logic. Is created once per user session, which is distinct to ModelSession instances -
- * TickrController instances may persist for the duration a user interacts with the service, though this should not
- * be relied upon
+ * Class encapsulating business logic. Holds no mutable state, so a single instance is shared by every request, with
+ * all per-request state held by the ModelSession passed in
  */
 public class TickrController {
     // From https://stackoverflow.com/questions/201323/how-can-i-validate-an-email-address-using-a-regular-expression
     private static final Pattern EMAIL_REGEX = Pattern.compile("(?:[a-z0-9!#$%&'*+/=?^_`{|}~-]+(?:\\.[a-z0-9!#$%&'*+/=?^_`{|}~-]+)*|\"(?:[\\x01-\\x08\\x0b\\x0c\\x0e-\\x1f\\x21\\x23-\\x5b\\x5d-\\x7f]|\\\\[\\x01-\\x09\\x0b\\x0c\\x0e-\\x7f])*\")@(?:(?:[a-z0-9](?:[a-z0-9-]*[a-z0-9])?\\.)+[a-z0-9](?:[a-z0-9-]*[a-z0-9])?|\\[(?:(?:(2(5[0-5]|[0-4][0-9])|1[0-9][0-9]|[1-9]?[0-9]))\\.){3}(?:(2(5[0-5]|[0-4][0-9])|1[0-9][0-9]|[1-9]?[0-9])|[a-z0-9-]*[a-z0-9]:(?:[\\x01-\\x08\\x0b\\x0c\\x0e-\\x1f\\x21-\\x5a\\x53-\\x7f]|\\\\[\\x01-\\x09\\x0b\\x0c\\x0e-\\x7f])+)])");
-    private final Pattern PASS_REGEX = Pattern.compile("(?=.*[a-z])(?=.*[A-Z])(?=.*[0-9])(?=.*[^a-zA-Z0-9]).{8,}$");
+    private static final Pattern PASS_REGEX = Pattern.compile("(?=.*[a-z])(?=.*[A-Z])(?=.*[0-9])(?=.*[^a-zA-Z0-9]).{8,}$");
 
     private static final Duration AUTH_TOKEN_EXPIRY = Duration.ofDays(30);
 
@@ -78,13 +88,16 @@ public class TickrController {
     private AuthToken getTokenFromStr (ModelSession session, String authTokenStr) {
         AuthToken token;
         try {
-            // Parse token
-            var parsedToken = CryptoHelper.makeJWTParserBuilder()
-                    .build()
-                    .parseClaimsJws(authTokenStr);
-
-            // Get id from token
-            var tokenId = UUID.fromString(parsedToken.getBody().getId());
+            // Parse token, unless already done for routing the request
+            var tokenId = session.getVerifiedTokenId(authTokenStr);
+            if (tokenId == null) {
+                var parsedToken = CryptoHelper.makeJWTParserBuilder()
+                        .build()
+                        .parseClaimsJws(authTokenStr);
+
+                // Get id from token
+                tokenId = UUID.fromString(parsedToken.getBody().getId());
+            }
 
             // Lookup token
             token = session.getById(AuthToken.class, tokenId).orElseThrow(() -> new UnauthorizedException("Invalid auth token!"));
@@ -105,6 +118,59 @@ public class TickrController {
         return getTokenFromStr(session, authTokenStr).getUser();
     }
 
+    /**
+     * Authenticates a request which makes changes for the user, so that their following reads see them
+     * @param session
+     * @param authTokenStr
+     * @return the authenticated user
+     */
+    private User authenticateWrite (ModelSession session, String authTokenStr) {
+        var user = authenticateToken(session, authTokenStr);
+        session.onUserWrite(user.getId());
+
+        return user;
+    }
+
+    /**
+     * Parses an auth token without checking whether it is still valid, for routing the request. The token is only
+     * parsed once per request, as the session it is given to remembers it for authenticating the request
+     * @param authTokenStr
+     * @return the parsed token, or null if it is missing or cannot be parsed
+     */
+    public ParsedToken parseToken (String authTokenStr) {
+        if (authTokenStr == null) {
+            return null;
+        }
+
+        try {
+            var parsedToken = CryptoHelper.makeJWTParserBuilder()
+                    .build()
+                    .parseClaimsJws(authTokenStr);
+            return new ParsedToken(authTokenStr, UUID.fromString(parsedToken.getBody().getId()),
+                    UUID.fromString(parsedToken.getBody().getSubject()));
+        } catch (JwtException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Gets the id of the user an auth token was issued to without checking whether it is still valid
+     * @param authTokenStr
+     * @return the user id, or null if the token cannot be parsed
+     */
+    public UUID getTokenUserId (String authTokenStr) {
+        var parsedToken = parseToken(authTokenStr);
+        return parsedToken != null ? parsedToken.userId() : null;
+    }
+
+    /**
+     * An auth token whose signature has been verified
+     * @param token the token as sent
+     * @param tokenId
+     * @param userId id of the user it was issued to
+     */
+    public record ParsedToken (String token, UUID tokenId, UUID userId) {}
+
     private UUID parseUUID (String uuidStr) {
         try {
             return UUID.fromString(uuidStr);
@@ -181,7 +247,7 @@ public class TickrController {
             throw new BadRequestException("Missing settings!");
         }
 
-        var user = authenticateToken(session, request.authToken);
+        var user = authenticateWrite(session, request.authToken);
         user.setSettings(request.settings);
         return new NotificationManagement.GetResponse(user.getSettings());
     }
@@ -230,7 +296,7 @@ public class TickrController {
         }
 
         // getting user from token
-        var user = authenticateToken(session, request.authToken);
+        var user = authenticateWrite(session, request.authToken);
 
         // creating event from request
         Event event;
@@ -251,6 +317,7 @@ public class TickrController {
             for (CreateEventRequest.SeatingDetails seats : request.seatingDetails) {
                 SeatingPlan seatingPlan = new SeatingPlan(event, event.getLocation(), seats.section, seats.availability, seats.ticketPrice, seats.hasSeats);
                 session.save(seatingPlan);
+                SeatAllocator.onSectionCreate(session, seatingPlan);
             }
         }
 
@@ -287,7 +354,10 @@ public class TickrController {
             }
         }
 
-        RecommenderEngine.forceRecalculate(session);
+        RecommenderEngine.updateTfIdfs(session, event);
+        EventSearchIndex.onEventUpdate(session, event);
+        CorpusStatistics.onCorpusChange(session);
+        SimilarityNeighbours.onEventChange(session, event);
 
         return new CreateEventResponse(event.getId().toString());
     }
@@ -301,7 +371,7 @@ public class TickrController {
     }
 
     public void userEditProfile (ModelSession session, EditProfileRequest request) {
-        var user = authenticateToken(session, request.authToken);
+        var user = authenticateWrite(session, request.authToken);
 
         if (request.email != null && !EMAIL_REGEX.matcher(request.email.trim().toLowerCase()).matches()) {
             logger.debug("Email did not match regex!");
@@ -317,6 +387,7 @@ public class TickrController {
                     FileHelper.uploadFromDataUrl("profile", UUID.randomUUID().toString(), request.pfpDataUrl)
                             .orElseThrow(() -> new ForbiddenException("Invalid data url!")));
         }
+        session.evictOnCommit(User.class, user.getId());
     }
 
     public AuthTokenResponse loggedChangePassword (ModelSession session, UserChangePasswordRequest request) {
@@ -334,7 +405,7 @@ public class TickrController {
             throw new ForbiddenException("Invalid new password!");
         }
 
-        var user = authenticateToken(session, request.authToken);
+        var user = authenticateWrite(session, request.authToken);
 
         user.authenticatePassword(session, request.password, AUTH_TOKEN_EXPIRY);
         user.changePassword(session, request.newPassword);
@@ -396,7 +467,10 @@ public class TickrController {
             throw new BadRequestException("Invalid email!");
         }
 
-        var user = session.getByUnique(User.class, "email", email.toLowerCase())
+        var user = session.query(User.class)
+                .where("email", email.toLowerCase())
+                .cacheable() // Users are rarely written, so repeated searches are served from the query cache
+                .getFirst()
                 .orElseThrow(() -> new ForbiddenException("There is no user with email " + email + "."));
 
         return new UserIdResponse(user.getId().toString());
@@ -405,7 +479,7 @@ public class TickrController {
     public void editEvent (ModelSession session, EditEventRequest request) {
         Event event = session.getById(Event.class, UUID.fromString(request.getEventId()))
                         .orElseThrow(() -> new ForbiddenException("Invalid event"));
-        User user = authenticateToken(session, request.getAuthToken());
+        User user = authenticateWrite(session, request.getAuthToken());
         if (!user.getId().equals(event.getHost().getId()) && !event.getAdmins().contains(user)) {
             throw new ForbiddenException("User is not a host/admin of the event!");
         }
@@ -423,7 +497,7 @@ public class TickrController {
                     .orElseThrow(() -> new ForbiddenException("Invalid data url!")));
         }
 
-        RecommenderEngine.forceRecalculate(session);
+        RecommenderEngine.updateTfIdfs(session, event);
     }
 
     public EventViewResponse eventView (ModelSession session, Map<String, String> params) {
@@ -442,19 +516,22 @@ public class TickrController {
 
         }
 
-        return event.getViewResponse(user);
+        return event.getViewResponse(session, user);
     }
 
     public void makeHost (ModelSession session, EditHostRequest request) {
         User newHost = session.getByUnique(User.class, "email", request.newHostEmail)
                             .orElseThrow(() -> new ForbiddenException("Invalid user"));
 
-        User oldHost = authenticateToken(session, request.authToken);
+        User oldHost = authenticateWrite(session, request.authToken);
 
         Event event = session.getById(Event.class, UUID.fromString(request.eventId))
                         .orElseThrow(() -> new ForbiddenException("Invalid event"));
 
         event.makeHost(oldHost, newHost);
+        // Host vectors depend on the number of events hosted
+        CorpusStatistics.onCorpusChange(session);
+        SimilarityNeighbours.onEventChange(session, event);
     }
 
     public EventSearch.Response searchEvents (ModelSession session, Map<String, String> params) {
@@ -484,19 +561,19 @@ public class TickrController {
             options = EventSearch.fromParams(params.get("search_options"));
         }
 
-        var eventStream = session.getAllStream(Event.class)
-                .filter(x -> !x.endsBefore(ZonedDateTime.now())) // Ensure event isn't in past
-                .filter(Event::isPublished); // Only return published events
-
+        var now = ZonedDateTime.now();
+        Set<String> words = new HashSet<>();
+        List<String> tags = new ArrayList<>();
+        List<String> categories = new ArrayList<>();
+        ZonedDateTime startTime = null;
+        ZonedDateTime endTime = null;
+        Predicate<Event> locationFilter = null;
         if (options != null) {
-            var options1 = options; // Required because Java is dumb
-            // Add options
-            eventStream = eventStream
-                    .filter(e -> e.startsAfter(options1.getStartTime())) // Ensures after start time
-                    .filter(e -> e.endsBefore(options1.getEndTime())) // Ensures after end time
-                    .filter(e -> e.matchesCategories(options1.categories)) // Ensures matches categories
-                    .filter(e -> e.matchesTags(options1.tags)) // Ensures matches tags
-                    .filter(e -> e.matchesDescription(Utils.toWords(options1.text))); // Ensure matches text
+            words = Utils.toWords(options.text);
+            tags = options.tags;
+            categories = options.categories;
+            startTime = options.getStartTime();
+            endTime = options.getEndTime();
 
             if ((options.location != null && options.maxDistance == null) ||
                     (options.location == null && options.maxDistance != null) || (options.maxDistance != null && options.maxDistance < 0)) {
@@ -507,25 +584,55 @@ public class TickrController {
             if (options.location != null) {
                 // Add location options
                 var queryLocation = ApiLocator.locateApi(ILocationAPI.class).getLocation(LocationRequest.fromSerialised(options.location));
-                eventStream = eventStream.filter(e -> e.getLocation().getDistance(queryLocation) <= options1.maxDistance); // Ensure within distance
+                var maxDistance = options.maxDistance;
+                locationFilter = e -> e.getLocation().getDistance(queryLocation) <= maxDistance; // Ensure within distance
             }
+        }
+
+        var index = EventSearchIndex.get(session);
+        if (words.isEmpty() && tags.isEmpty() && categories.isEmpty() && locationFilter == null) {
+            // Only filtering by time, so page directly from the published events
+            var page = index.findPublished(startTime != null ? startTime.toInstant() : null, null,
+                    now.toInstant().plusNanos(1), endTime != null ? endTime.toInstant() : null, pageStart, maxResults);
+            var eventList = page.getEvents().stream()
+                    .map(IndexedEvent::getId)
+                    .map(UUID::toString)
+                    .collect(Collectors.toList());
 
+            return new EventSearch.Response(eventList, page.getTotal());
         }
 
-        // Total matching count. As .sorted() consumes all items of the stream, .peek() will be called once each,
-        // thereby ensuring that numItems is the total amount even though subsequent calls only consume the required
-        // number. Must be atomic because the stream could theoretically run over multiple threads (even though it doesn't)
-        var numItems = new AtomicInteger();
-        var eventList = eventStream
-                .peek(x -> numItems.incrementAndGet()) // Increment num items
-                .sorted(Comparator.comparing(Event::getEventStart)) // Sort by start time
+        var startTime1 = startTime; // Required because Java is dumb
+        var endTime1 = endTime;
+        var matching = index.search(words, tags, categories, e -> e.isPublished() // Only return published events
+                && !e.endsBefore(now) // Ensure event isn't in past
+                && e.startsAfter(startTime1) // Ensures after start time
+                && e.endsBefore(endTime1)); // Ensures before end time
+
+        var eventIds = matching.stream()
+                .map(IndexedEvent::getId)
+                .collect(Collectors.toList());
+        if (locationFilter != null) {
+            // Location is not indexed, so only check it for the matching events
+            var withinDistance = session.query(Event.class)
+                    .whereIn("id", eventIds)
+                    .fetch("location")
+                    .getResultStream()
+                    .filter(locationFilter)
+                    .map(Event::getId)
+                    .collect(Collectors.toSet());
+            eventIds = eventIds.stream()
+                    .filter(withinDistance::contains)
+                    .collect(Collectors.toList());
+        }
+
+        var eventList = eventIds.stream()
                 .skip(pageStart) // Skip to start of page
                 .limit(maxResults) // Limit to amount being paged
-                .map(Event::getId) // Get the id
                 .map(UUID::toString)
                 .collect(Collectors.toList()); // Convert to list
 
-        return new EventSearch.Response(eventList, numItems.get());
+        return new EventSearch.Response(eventList, eventIds.size());
     }
 
     public void eventDelete(ModelSession session, EventDeleteRequest request) {
@@ -534,15 +641,21 @@ public class TickrController {
         }
         Event event = session.getById(Event.class, UUID.fromString(request.eventId))
                         .orElseThrow(() -> new ForbiddenException("Invalid event ID!"));
-        User user = authenticateToken(session, request.authToken);
+        User user = authenticateWrite(session, request.authToken);
 
         if (!event.getHost().equals(user)) {
             throw new ForbiddenException("User is not the host of this event!"); 
         }
 
         event.onDelete(user);
+        RecommenderEngine.removeTfIdfs(session, event);
         session.remove(event);
-        RecommenderEngine.forceRecalculate(session); // TODO
+        EventSearchIndex.onEventRemove(session, event);
+        CorpusStatistics.onCorpusChange(session);
+        SimilarityNeighbours.onEventChange(session, event);
+        SeatAllocator.onEventRemove(session, event);
+        AdmissionQueue.onEventRemove(session, event);
+        session.evictOnCommit(Event.class, event.getId());
     }
 
     public void userDeleteAccount(ModelSession session, UserDeleteRequest request) {
@@ -550,15 +663,36 @@ public class TickrController {
             throw new BadRequestException("Invalid request!");
         }
 
-        User user = authenticateToken(session, request.authToken);
+        User user = authenticateWrite(session, request.authToken);
         user.authenticatePassword(session, request.password, AUTH_TOKEN_EXPIRY);
 
         user.onDelete(session);
+        for (var i : user.getHostingEvents()) {
+            // Hosted events are removed by cascade
+            RecommenderEngine.removeTfIdfs(session, i);
+            EventSearchIndex.onEventRemove(session, i);
+            SimilarityNeighbours.onEventChange(session, i);
+            SeatAllocator.onEventRemove(session, i);
+            AdmissionQueue.onEventRemove(session, i);
+        }
+        // Tickets and reservations are also removed by cascade, freeing their seats
+        for (var i : user.getTickets()) {
+            SeatAllocator.onTicketRemove(session, i);
+        }
+        for (var i : session.getAllWith(TicketReservation.class, "user", user)) {
+            SeatAllocator.onReservationRemove(session, i);
+        }
+        // As are invitations to the user, letting the reservations offered expire
+        for (var i : session.getAllWith(Invitation.class, "user", user)) {
+            SeatAllocator.onInvitationRemove(session, i);
+        }
+        CorpusStatistics.onCorpusChange(session);
+        RecommenderEngine.removeUserProfile(session, user);
         session.remove(user);
     }
 
     public TicketReserve.Response ticketReserve (ModelSession session, TicketReserve.Request request) {
-        var user = authenticateToken(session, request.authToken);
+        var user = authenticateWrite(session, request.authToken);
         if (request.eventId == null || request.ticketDateTime == null || request.ticketDetails == null || request.ticketDetails.size() == 0) {
             throw new BadRequestException("Invalid request!");
         }
@@ -566,9 +700,14 @@ public class TickrController {
         var eventId = parseUUID(request.eventId);
         Event event = session.getById(Event.class, UUID.fromString(request.eventId))
         .orElseThrow(() -> new ForbiddenException("Invalid event id!"));
-        
-        event.editNotificationMembers(session, user, user.doReminders());
-        user.editEventNotifications(session, event, user.doReminders());
+        AdmissionQueue.get(session).checkAdmitted(event, user.getId());
+
+        if (event.getNotificationMembers().contains(user) != user.doReminders()) {
+            // In its own transaction once the reservation commits, as concurrent first reservations of a user would
+            // otherwise fail inserting the same subscription
+            var userId = user.getId();
+            session.onCommit(() -> updateEventReminders(session.getModel(), eventId, userId));
+        }
 
         return session.getById(Event.class, eventId)
                 .map(e -> request.ticketDetails.stream() // Stream all ticket details
@@ -581,8 +720,28 @@ public class TickrController {
 
     }
 
+    private static void updateEventReminders (DataModel model, UUID eventId, UUID userId) {
+        var session = model.makeSession();
+        try {
+            var event = session.getById(Event.class, eventId);
+            var user = session.getById(User.class, userId);
+            if (event.isPresent() && user.isPresent()
+                    && event.get().getNotificationMembers().contains(user.get()) != user.get().doReminders()) {
+                event.get().editNotificationMembers(session, user.get(), user.get().doReminders());
+                user.get().editEventNotifications(session, event.get(), user.get().doReminders());
+            }
+            session.commit();
+        } catch (RuntimeException e) {
+            // Most likely subscribed by another reservation of the user at once
+            logger.debug("Failed to update reminders of user {} for event {}!", userId, eventId, e);
+            session.rollback();
+        } finally {
+            session.close();
+        }
+    }
+
     public TicketPurchase.Response ticketPurchase (ModelSession session, TicketPurchase.Request request) {
-        var user = authenticateToken(session, request.authToken);
+        var user = authenticateWrite(session, request.authToken);
         if (request.ticketDetails == null || request.ticketDetails.size() == 0 || request.successUrl == null || request.cancelUrl == null
                 || !Utils.isValidUrl(request.successUrl) || !Utils.isValidUrl(request.cancelUrl)) {
             throw new BadRequestException("Invalid request!");
@@ -594,18 +753,51 @@ public class TickrController {
         var builder = purchaseAPI.makePurchaseBuilder(orderId.toString());
 
         // Build order
+        var admissionQueue = AdmissionQueue.get(session);
         for (var i : request.ticketDetails) {
-            builder = session.getById(TicketReservation.class, UUID.fromString(i.requestId))
-                    .orElseThrow(() -> new ForbiddenException("Invalid ticket reservation!")) // Reservation does not exist
-                    .registerPurchaseItem(session, builder, orderId, user, i.firstName, i.lastName, i.email); // Add purchase item to builder
+            var reservation = session.getById(TicketReservation.class, UUID.fromString(i.requestId))
+                    .orElseThrow(() -> new ForbiddenException("Invalid ticket reservation!")); // Reservation does not exist
+            admissionQueue.checkAdmitted(reservation.getSection().getEvent(), user.getId());
+            builder = reservation.registerPurchaseItem(session, builder, orderId, user, i.firstName, i.lastName, i.email); // Add purchase item to builder
         }
 
         // Register order and return the redirect url
         return new TicketPurchase.Response(purchaseAPI.registerOrder(builder.withUrls(request.successUrl, request.cancelUrl)));
     }
 
+    public TicketQueue.Response ticketQueueJoin (ModelSession session, TicketQueue.Request request) {
+        var user = authenticateWrite(session, request.authToken);
+        if (request.eventId == null) {
+            throw new BadRequestException("Invalid request!");
+        }
+
+        var event = session.getById(Event.class, parseUUID(request.eventId))
+                .orElseThrow(() -> new ForbiddenException("Invalid event id!"));
+
+        return makeQueueResponse(AdmissionQueue.get(session).join(session, event, user));
+    }
+
+    /**
+     * Gets the place of a queue token, from memory without a database session as waiting clients poll it often
+     * @param model
+     * @param params
+     * @return
+     */
+    public TicketQueue.Response ticketQueueStatus (DataModel model, Map<String, String> params) {
+        if (params.get("queue_token") == null) {
+            throw new BadRequestException("Missing queue token!");
+        }
+
+        return makeQueueResponse(AdmissionQueue.get(model).getStatus(parseUUID(params.get("queue_token"))));
+    }
+
+    private TicketQueue.Response makeQueueResponse (AdmissionQueue.Status status) {
+        return new TicketQueue.Response(status.getToken() != null ? status.getToken().toString() : null,
+                status.getPlace(), status.isAdmitted(), status.getWaitSeconds());
+    }
+
     public void reservationCancel (ModelSession session, ReserveCancelRequest request) {
-        var user = authenticateToken(session, request.authToken);
+        var user = authenticateWrite(session, request.authToken);
         if (request.reservations.size() == 0) {
             throw new BadRequestException("Empty reservations!");
         }
@@ -617,6 +809,7 @@ public class TickrController {
                 throw new ForbiddenException("Unable to cancel reservation!");
             }
             session.remove(entity);
+            SeatAllocator.onReservationRemove(session, entity);
         }
     }
 
@@ -624,6 +817,11 @@ public class TickrController {
         logger.info("Ticket purchase {} success!", orderId);
         // Get all associated with order id
         var purchaseItems = session.getAllWith(PurchaseItem.class, "purchaseId", UUID.fromString(orderId));
+        if (purchaseItems.isEmpty()) {
+            // Checkouts expire before the purchase grace period ends, so this should only be a repeated webhook
+            logger.warn("Ticket purchase {} was paid for after it lapsed or completed!", orderId);
+            return;
+        }
         RecommenderEngine.recordInteraction(session, purchaseItems.get(0).getUser(), purchaseItems.get(0).getEvent(), InteractionType.TICKET_PURCHASE);
         for (var i : purchaseItems) {
             // Convert reservations to tickets
@@ -706,7 +904,7 @@ public class TickrController {
     }
     
     public ReviewCreate.Response reviewCreate (ModelSession session, ReviewCreate.Request request) {
-        var user = authenticateToken(session, request.authToken);
+        var user = authenticateWrite(session, request.authToken);
         if (request.eventId == null) {
             throw new BadRequestException("Null event id!");
         }
@@ -750,21 +948,24 @@ public class TickrController {
             throw new ForbiddenException("Invalid paging values!");
         }
 
-        var numItems = new AtomicInteger(); // Number of reviews in total
-        var reviews = session.getAllWithStream(Comment.class, "event", event)
-                .filter(Predicate.not(Comment::isReply)) // Filter out replies
-                .peek(c -> numItems.getAndIncrement()) // Get number of reviews
-                .sorted(Comparator.comparing(Comment::getCommentTime).reversed()) // Sort by time so earlier comments are first
-                .skip(pageStart) // Skip to page
+        var query = session.query(Comment.class)
+                .where("event", event)
+                .whereNull("parent"); // Filter out replies
+        var numItems = query.count(); // Number of reviews in total
+        var reviews = query.orderByDescending("commentTime") // Sort by time so later comments are first
+                .orderBy("id")
+                .offset(pageStart) // Skip to page
                 .limit(maxResults) // Limit to num results requested
+                .getResults() // Load the whole page first, so reactions are batch loaded for all of it
+                .stream()
                 .map(Comment::makeSerialisedReview) // Make review
                 .collect(Collectors.toList()); // Convert to list
 
-        return new ReviewsViewResponse(reviews, numItems.get());
+        return new ReviewsViewResponse(reviews, (int) numItems);
     }
 
     public ReplyCreate.Response replyCreate (ModelSession session, ReplyCreate.Request request) {
-        var user = authenticateToken(session, request.authToken);
+        var user = authenticateWrite(session, request.authToken);
         if (request.reviewId == null) {
             throw new BadRequestException("Null review id!");
         }
@@ -808,16 +1009,19 @@ public class TickrController {
         }
 
 
-        var numResults = new AtomicInteger(); // Num of replies in total
-        var replies = review.getReplies()
-                .peek(i -> numResults.incrementAndGet()) // Get reply number
-                .sorted(Comparator.comparing(Comment::getCommentTime).reversed()) // Sort by time
-                .skip(pageStart) // Skip to page
+        var query = session.query(Comment.class)
+                .where("parent", review);
+        var numResults = query.count(); // Num of replies in total
+        var replies = query.orderByDescending("commentTime") // Sort by time
+                .orderBy("id")
+                .offset(pageStart) // Skip to page
                 .limit(maxResults) // Limit to page size
+                .getResults() // Load the whole page first, so reactions are batch loaded for all of it
+                .stream()
                 .map(Comment::makeSerialisedReply) // Make reply
                 .collect(Collectors.toList()); // Collect to list
 
-        return new RepliesViewResponse(replies, numResults.get());
+        return new RepliesViewResponse(replies, (int) numResults);
     }
 
     public UserEventsResponse userEvents (ModelSession session, Map<String, String> params) {
@@ -847,22 +1051,17 @@ public class TickrController {
             beforeDate = null;
         }
 
-        List<Event> events = session.getAll(Event.class);
-
-        var numResults = new AtomicInteger();
+        var page = EventSearchIndex.get(session).findPublished(
+                ZonedDateTime.now(ZoneId.of("UTC")).toInstant().plusNanos(1), null, // Starts in the future
+                null, beforeDate != null ? beforeDate.toInstant() : null, // Ends before date
+                pageStart, maxResults);
 
-        var eventIds = events.stream()
-                .filter(e -> e.endsBefore(beforeDate) && e.getEventStart().isAfter(ZonedDateTime.now(ZoneId.of("UTC")))) // Filter by date
-                .filter(Event::isPublished) // Ensure is published
-                .peek(i -> numResults.incrementAndGet()) // Get number of items
-                .sorted(Comparator.comparing(Event::getEventStart)) // Sort by start date
-                .skip(pageStart)
-                .limit(maxResults)
-                .map(Event::getId)
+        var eventIds = page.getEvents().stream()
+                .map(IndexedEvent::getId)
                 .map(UUID::toString)
                 .collect(Collectors.toList());
         
-        return new UserEventsResponse(eventIds, numResults.get());
+        return new UserEventsResponse(eventIds, page.getTotal());
     }
 
     public UserEventsResponse userEventsPast (ModelSession session, Map<String, String> params) {
@@ -877,8 +1076,6 @@ public class TickrController {
             throw new BadRequestException("Invalid paging values!");
         }
 
-        List<Event> events = session.getAll(Event.class);
-
         ZonedDateTime afterDate;
         if (params.get("after") != null) {
             try {
@@ -890,20 +1087,17 @@ public class TickrController {
             afterDate = null;
         }
 
-        var numResults = new AtomicInteger();
+        var page = EventSearchIndex.get(session).findPublished(
+                afterDate != null ? afterDate.toInstant() : null, // Starts after date
+                ZonedDateTime.now(ZoneId.of("UTC")).toInstant().minusNanos(1), // Started in the past
+                null, null, pageStart, maxResults);
 
-        var eventIds = events.stream()
-                .filter(e -> e.startsAfter(afterDate) && e.getEventStart().isBefore(ZonedDateTime.now(ZoneId.of("UTC"))))
-                .filter(Event::isPublished)
-                .peek(i -> numResults.incrementAndGet())
-                .sorted(Comparator.comparing(Event::getEventStart))
-                .skip(pageStart)
-                .limit(maxResults)
-                .map(Event::getId)
+        var eventIds = page.getEvents().stream()
+                .map(IndexedEvent::getId)
                 .map(UUID::toString)
                 .collect(Collectors.toList());
         
-        return new UserEventsResponse(eventIds, numResults.get());
+        return new UserEventsResponse(eventIds, page.getTotal());
     }
 
     public EventReservedSeatsResponse eventReservedSeats (ModelSession session, Map<String, String> params) {
@@ -918,7 +1112,7 @@ public class TickrController {
         Event event = session.getById(Event.class, UUID.fromString(params.get("event_id")))
                 .orElseThrow(() -> new ForbiddenException("Invalid event ID!"));
 
-        return new EventReservedSeatsResponse(event.getReservedSeats());
+        return new EventReservedSeatsResponse(event.getReservedSeats(session));
     }
 
     public EventHostingsResponse eventHostings (ModelSession session, Map<String, String> params) {
@@ -947,18 +1141,16 @@ public class TickrController {
             beforeDate = null;
         }
 
-        var numResults = new AtomicInteger();
-        var eventIds = user.getStreamHostingEvents()
-                .filter(e -> e.endsBefore(beforeDate) && e.getEventStart().isAfter(ZonedDateTime.now(ZoneId.of("UTC"))))
-                .peek(i -> numResults.incrementAndGet())
-                .sorted(Comparator.comparing(Event::getEventStart))
-                .skip(pageStart)
-                .limit(maxResults)
-                .map(Event::getId)
-                .map(UUID::toString)
-                .collect(Collectors.toList());
+        var query = session.query(Event.class)
+                .where("host", user)
+                .whereGreaterThan("eventStart", ZonedDateTime.now(ZoneId.of("UTC")));
+        if (beforeDate != null) {
+            query.whereLessThanOrEqual("eventEnd", beforeDate);
+        }
+
+        var eventIds = pageEventIds(query, pageStart, maxResults);
 
-        return new EventHostingsResponse(eventIds, numResults.get());
+        return new EventHostingsResponse(eventIds, (int) query.count());
     }
 
     public EventHostingsResponse eventHostingsPast (ModelSession session, Map<String, String> params) {
@@ -987,21 +1179,16 @@ public class TickrController {
             afterDate = null;
         }
 
-        var numResults = new AtomicInteger();
-        var eventIds = user.getStreamHostingEvents()
-                .filter(afterDate != null 
-                    ? e -> e.getEventStart().isAfter(afterDate) && e.getEventStart().isBefore(ZonedDateTime.now(ZoneId.of("UTC"))) 
-                    : e -> e.getEventStart().isBefore(ZonedDateTime.now(ZoneId.of("UTC")))
-                )
-                .peek(i -> numResults.incrementAndGet())
-                .sorted(Comparator.comparing(Event::getEventStart))
-                .skip(pageStart)
-                .limit(maxResults)
-                .map(Event::getId)
-                .map(UUID::toString)
-                .collect(Collectors.toList());
+        var query = session.query(Event.class)
+                .where("host", user)
+                .whereLessThan("eventStart", ZonedDateTime.now(ZoneId.of("UTC")));
+        if (afterDate != null) {
+            query.whereGreaterThan("eventStart", afterDate);
+        }
+
+        var eventIds = pageEventIds(query, pageStart, maxResults);
 
-        return new EventHostingsResponse(eventIds, numResults.get());
+        return new EventHostingsResponse(eventIds, (int) query.count());
     }
 
     public CustomerEventsResponse customerBookings (ModelSession session, Map<String, String> params) {
@@ -1031,24 +1218,16 @@ public class TickrController {
             beforeDate = null;
         }
 
-        var numResults = new AtomicInteger();
-        var eventIds = user.getTickets().stream()
-                .map(Ticket::getEvent)
-                .filter(beforeDate != null 
-                    ? e -> e.getEventStart().isBefore(beforeDate) && e.getEventStart().isAfter(ZonedDateTime.now(ZoneId.of("UTC"))) 
-                    : e -> e.getEventStart().isAfter(ZonedDateTime.now(ZoneId.of("UTC")))
-                )
-                .distinct()
-                .peek(i -> numResults.incrementAndGet())
-                .sorted(Comparator.comparing(Event::getEventStart))
-                .skip(pageStart)
-                .limit(maxResults)
-                .map(Event::getId)
-                .map(UUID::toString)
-                .collect(Collectors.toList());
+        var query = session.query(Event.class)
+                .whereIn("id", getBookedEventIds(user))
+                .whereGreaterThan("eventStart", ZonedDateTime.now(ZoneId.of("UTC")));
+        if (beforeDate != null) {
+            query.whereLessThan("eventStart", beforeDate);
+        }
 
-        
-        return new CustomerEventsResponse(eventIds, numResults.get());
+        var eventIds = pageEventIds(query, pageStart, maxResults);
+
+        return new CustomerEventsResponse(eventIds, (int) query.count());
     }
 
     public CustomerEventsResponse customerBookingsPast (ModelSession session, Map<String, String> params) {
@@ -1078,24 +1257,16 @@ public class TickrController {
             afterDate = null;
         }
 
-        var numResults = new AtomicInteger();
-        var eventIds = user.getTickets().stream()
-                .map(Ticket::getEvent)
-                .filter(afterDate != null 
-                    ? e -> e.getEventStart().isAfter(afterDate) && e.getEventStart().isBefore(ZonedDateTime.now(ZoneId.of("UTC"))) 
-                    : e -> e.getEventStart().isBefore(ZonedDateTime.now(ZoneId.of("UTC")))
-                )
-                .distinct()
-                .peek(i -> numResults.incrementAndGet())
-                .sorted(Comparator.comparing(Event::getEventStart))
-                .skip(pageStart)
-                .limit(maxResults)
-                .map(Event::getId)
-                .map(UUID::toString)
-                .collect(Collectors.toList());
+        var query = session.query(Event.class)
+                .whereIn("id", getBookedEventIds(user))
+                .whereLessThan("eventStart", ZonedDateTime.now(ZoneId.of("UTC")));
+        if (afterDate != null) {
+            query.whereGreaterThan("eventStart", afterDate);
+        }
 
-        
-        return new CustomerEventsResponse(eventIds, numResults.get());
+        var eventIds = pageEventIds(query, pageStart, maxResults);
+
+        return new CustomerEventsResponse(eventIds, (int) query.count());
     }
 
     public EventHostingFutureResponse eventHostingFuture (ModelSession session, Map<String, String> params) {
@@ -1115,17 +1286,12 @@ public class TickrController {
             throw new BadRequestException("Invalid paging values!");
         }
 
-        var numResults = new AtomicInteger();
-        var eventIds = user.getStreamHostingEvents()
-                .filter(e -> e.getEventStart().isAfter(ZonedDateTime.now(ZoneId.of("UTC"))))
-                .peek(i -> numResults.incrementAndGet())
-                .sorted(Comparator.comparing(Event::getEventStart))
-                .skip(pageStart)
-                .limit(maxResults)
-                .map(Event::getId)
-                .map(UUID::toString)
-                .collect(Collectors.toList());
-        return new EventHostingFutureResponse(eventIds, numResults.get());
+        var query = session.query(Event.class)
+                .where("host", user)
+                .whereGreaterThan("eventStart", ZonedDateTime.now(ZoneId.of("UTC")));
+
+        var eventIds = pageEventIds(query, pageStart, maxResults);
+        return new EventHostingFutureResponse(eventIds, (int) query.count());
     }
     
     public EventHostingPastResponse eventHostingPast (ModelSession session, Map<String, String> params) {
@@ -1145,21 +1311,35 @@ public class TickrController {
             throw new BadRequestException("Invalid paging values!");
         }
 
-        var numResults = new AtomicInteger();
-        var eventIds = user.getStreamHostingEvents()
-                .filter(e -> e.getEventStart().isBefore(ZonedDateTime.now(ZoneId.of("UTC"))))
-                .peek(i -> numResults.incrementAndGet())
-                .sorted(Comparator.comparing(Event::getEventStart))
-                .skip(pageStart)
+        var query = session.query(Event.class)
+                .where("host", user)
+                .whereLessThan("eventStart", ZonedDateTime.now(ZoneId.of("UTC")));
+
+        var eventIds = pageEventIds(query, pageStart, maxResults);
+        return new EventHostingPastResponse(eventIds, (int) query.count());
+    }
+    
+    private List<String> pageEventIds (ModelQuery<Event> query, int pageStart, int maxResults) {
+        return query.orderBy("eventStart") // Sort by start date
+                .orderBy("id")
+                .fetch("location") // Locations are eager, so would otherwise be loaded one event at a time
+                .offset(pageStart)
                 .limit(maxResults)
+                .getResultStream()
                 .map(Event::getId)
                 .map(UUID::toString)
                 .collect(Collectors.toList());
-        return new EventHostingPastResponse(eventIds, numResults.get());
     }
-    
+
+    private Set<UUID> getBookedEventIds (User user) {
+        return user.getTickets().stream()
+                .map(Ticket::getEvent)
+                .map(Event::getId)
+                .collect(Collectors.toSet());
+    }
+
     public void commentReact (ModelSession session, ReactRequest request) {
-        var user = authenticateToken(session, request.authToken);
+        var user = authenticateWrite(session, request.authToken);
         if (request.commentId == null || request.reactType == null) {
             throw new BadRequestException("Missing comment id or react type!");
         }
@@ -1197,7 +1377,7 @@ public class TickrController {
         if (request.commentId == null) {
             throw new BadRequestException("Missing comment ID!");
         }
-        User user = authenticateToken(session, request.authToken);
+        User user = authenticateWrite(session, request.authToken);
 
         Comment review = session.getById(Comment.class, UUID.fromString(request.commentId))
                 .orElseThrow(() -> new ForbiddenException("Invalid comment ID!"));
@@ -1216,7 +1396,7 @@ public class TickrController {
         if (request.hostReserveId == null) {
             throw new BadRequestException("Missing host reserve id!");
         }
-        User user = authenticateToken(session, request.authToken);
+        User user = authenticateWrite(session, request.authToken);
 
         var reservations = request.reservedIds.stream()
                 .map(id -> session.getById(TicketReservation.class, parseUUID(id))
@@ -1279,7 +1459,7 @@ public class TickrController {
             throw new BadRequestException("Invalid Email!");
         }
 
-        User user = authenticateToken(session, request.authToken);
+        User user = authenticateWrite(session, request.authToken);
 
         Group group = session.getById(Group.class, UUID.fromString(request.groupId))
                 .orElseThrow(() -> new BadRequestException("Group ID does not exist!"));
@@ -1297,13 +1477,14 @@ public class TickrController {
             throw new BadRequestException("Host cannot send invite to themself!");
         }
 
-        reserve.setExpiry(ZonedDateTime.now(ZoneId.of("UTC")).plus(Duration.ofHours(24)));
+        reserve.setExpiry(session, ZonedDateTime.now(ZoneId.of("UTC")).plus(Duration.ofHours(24)));
 
         Invitation invitation;
         if (reserve.getInvitation() == null) {
             invitation = new Invitation(group, reserve, inviteUser);
             session.save(invitation);
             invitation.handleInvitation(group, reserve, inviteUser);
+            SeatAllocator.onPin(session, reserve);
         } else {
             invitation = session.getByUnique(Invitation.class, "ticketReservation", reserve)
                     .orElseThrow(() -> new BadRequestException("Invitation does not exist for this reserve ID!"));
@@ -1325,12 +1506,13 @@ public class TickrController {
         if (request.inviteId == null) {
             throw new BadRequestException("Invalid invite ID!");
         }
-        User user = authenticateToken(session, request.authToken);
+        User user = authenticateWrite(session, request.authToken);
         Invitation invitation = session.getById(Invitation.class, UUID.fromString(request.inviteId))
                 .orElseThrow(() -> new BadRequestException("Invitation does not exist for this invite ID!"));
 
         invitation.acceptInvitation(user);
         session.remove(invitation);
+        SeatAllocator.onInvitationRemove(session, invitation);
         return new GroupAcceptResponse(invitation.getTicketReservation().getId().toString());
     }
     
@@ -1343,6 +1525,7 @@ public class TickrController {
 
         invitation.denyInvitation();
         session.remove(invitation);
+        SeatAllocator.onInvitationRemove(session, invitation);
     }
 
     public GroupDetailsResponse groupDetails(ModelSession session, Map<String, String> params) {
@@ -1356,7 +1539,7 @@ public class TickrController {
         Group group = session.getById(Group.class, UUID.fromString(params.get("group_id")))
                 .orElseThrow(() -> new ForbiddenException("Group ID doesn't exist!"));
 
-        return group.getGroupDetailsResponse(host);
+        return group.getGroupDetailsResponse(session, host);
     }
 
     public RecommenderResponse recommendEventEvent (ModelSession session, Map<String, String> params) {
@@ -1385,20 +1568,24 @@ public class TickrController {
             throw new BadRequestException("Invalid paging values!");
         }
 
-        var returnNum = new AtomicInteger();
-        var recommendEvents = session.getAllStream(Event.class)
+        var neighbours = SimilarityNeighbours.get(session).find(session, event, pageStart, maxResults);
+        if (neighbours.isPresent()) {
+            // Use precomputed similarities
+            var recommendEvents = neighbours.get().getEvents().stream()
+                    .map(p -> new RecommenderResponse.Event(p.getFirst(), p.getSecond())) // Map to response events
+                    .collect(Collectors.toList());
+            return new RecommenderResponse(recommendEvents, neighbours.get().getTotal());
+        }
+
+        var eventCandidate = RecommenderEngine.makeCandidate(session, event);
+        var candidates = getRecommendCandidates(session)
                 .filter(e -> !e.equals(event)) // Cannot recommend own event
-                .filter(Event::isPublished) // Must recommend published events
-                .filter(e -> !e.getEventEnd().isBefore(ZonedDateTime.now())) // Cannot recommend events in the past
-                .map(e -> new Pair<>(e.getId().toString(), RecommenderEngine.calculateSimilarity(session, event, e))) // Make event, similarity pairs
-                .peek(p -> returnNum.getAndIncrement()) // Get number
-                .sorted(Comparator.comparingDouble((Pair<String, Double> p) -> p.getSecond()).reversed()) // Sort by descending similarity
-                .skip(pageStart) // Skip to page start
-                .limit(maxResults) // Limit results
-                .map(p -> new RecommenderResponse.Event(p.getFirst(), p.getSecond())) // Make recommendation response events
+                .map(e -> RecommenderEngine.makeCandidate(session, e)) // Detach from session for scoring
                 .collect(Collectors.toList());
 
-        return new RecommenderResponse(recommendEvents, returnNum.get());
+        // Select by descending similarity
+        return makeRecommenderResponse(CandidateScorer.select(candidates,
+                c -> RecommenderEngine.calculateSimilarity(eventCandidate, c), pageStart, maxResults), pageStart);
     }
 
     public RecommenderResponse recommendUserEvent (ModelSession session, Map<String, String> params) {
@@ -1425,20 +1612,14 @@ public class TickrController {
         }
 
         var profileVector = RecommenderEngine.buildUserProfile(session, user);
-        var eventNum = new AtomicInteger();
-        var recommendEvents = session.getAllStream(Event.class)
+        var candidates = getRecommendCandidates(session)
                 .filter(e -> !e.getHost().equals(user)) // Cannot recommend hosted events
-                .filter(Event::isPublished) // Must recommend published events
-                .filter(e -> !e.getEventEnd().isBefore(ZonedDateTime.now())) // Cannot recommend events in the past
-                .map(e -> new Pair<>(e.getId().toString(), RecommenderEngine.calculateUserScore(session, e, profileVector))) // Make event, score pairs
-                .peek(p -> eventNum.getAndIncrement()) // Get number
-                .sorted(Comparator.comparingDouble((Pair<String, Double> p) -> p.getSecond()).reversed()) // Sort by decreasing score
-                .skip(pageStart) // Skip to start
-                .limit(maxResults) // Limit to expected result number
-                .map(p -> new RecommenderResponse.Event(p.getFirst(), p.getSecond())) // Map to response event
+                .map(e -> RecommenderEngine.makeCandidate(session, e)) // Detach from session for scoring
                 .collect(Collectors.toList());
 
-        return new RecommenderResponse(recommendEvents, eventNum.get());
+        // Select by decreasing score
+        return makeRecommenderResponse(CandidateScorer.select(candidates,
+                c -> RecommenderEngine.calculateUserScore(c, profileVector), pageStart, maxResults), pageStart);
     }
 
     public RecommenderResponse recommendEventUserEvent (ModelSession session, Map<String, String> params) {
@@ -1470,42 +1651,65 @@ public class TickrController {
         }
 
         var profileVector = RecommenderEngine.buildUserProfile(session, user);
-        var eventNum = new AtomicInteger();
-        var recommendEvents = session.getAllStream(Event.class)
+        var eventCandidate = RecommenderEngine.makeCandidate(session, event);
+        var candidates = getRecommendCandidates(session)
                 .filter(e -> !e.getId().equals(event.getId())) // Cannot recommend own event
                 .filter(e -> !e.getHost().equals(user)) // Cannot recommend hosted events
-                .filter(Event::isPublished) // Must recommend published events
-                .filter(e -> !e.getEventEnd().isBefore(ZonedDateTime.now())) // Cannot recommend events in the past
-                .map(e -> new Pair<>(e.getId().toString(), RecommenderEngine.calculateUserEventScore(session, e, event, profileVector))) // Make event, score pairs
-                .peek(p -> eventNum.getAndIncrement()) // Get total number
-                .sorted(Comparator.comparingDouble((Pair<String, Double> p) -> p.getSecond()).reversed()) // Sort by descending score
-                .skip(pageStart) // Skip to start
-                .limit(maxResults) // Limit to expected result number
+                .map(e -> RecommenderEngine.makeCandidate(session, e)) // Detach from session for scoring
+                .collect(Collectors.toList());
+
+        // Select by descending score
+        return makeRecommenderResponse(CandidateScorer.select(candidates,
+                c -> RecommenderEngine.calculateUserEventScore(c, eventCandidate, profileVector), pageStart, maxResults), pageStart);
+    }
+
+    private RecommenderResponse makeRecommenderResponse (TopKSelector<String> selector, int pageStart) {
+        var recommendEvents = selector.getResults(pageStart).stream()
                 .map(p -> new RecommenderResponse.Event(p.getFirst(), p.getSecond())) // Map to response events
                 .collect(Collectors.toList());
 
-        return new RecommenderResponse(recommendEvents, eventNum.get());
+        return new RecommenderResponse(recommendEvents, selector.getTotal());
+    }
+
+    private Stream<Event> getRecommendCandidates (ModelSession session) {
+        return session.query(Event.class)
+                .where("published", true) // Must recommend published events
+                .whereGreaterThanOrEqual("eventEnd", ZonedDateTime.now(ZoneId.of("UTC"))) // Cannot recommend events in the past
+                .fetch("location")
+                .getResultStream();
     }
 
     public void clearDatabase (ModelSession session, Object request) {
         logger.info("Clearing database!");
-        session.clear(AuthToken.class);
-        session.clear(Category.class);
+        // Bulk deletes do not cascade, so clear tables before the ones they reference
+        session.clear(Reaction.class);
+        session.query(Comment.class)
+                .whereNotNull("parent") // Replies reference their reviews
+                .delete();
         session.clear(Comment.class);
-        session.clear(Event.class);
-        session.clear(Group.class);
-        session.clear(Location.class);
+        session.clear(Invitation.class);
         session.clear(PurchaseItem.class);
-        session.clear(Reaction.class);
-        session.clear(ResetToken.class);
-        session.clear(SeatingPlan.class);
-        session.clear(Tag.class);
         session.clear(Ticket.class);
         session.clear(TicketReservation.class);
-        session.clear(User.class);
-        session.clear(Invitation.class);
-        session.clear(DocumentTerm.class);
+        session.clear(Group.class);
+        session.clear(UserInteraction.class);
         session.clear(TfIdf.class);
+        session.clear(DocumentTerm.class);
+        session.clear(Category.class);
+        session.clear(Tag.class);
+        session.clear(SeatingPlan.class);
+        session.clear(QueueEntry.class);
+        session.clear(Event.class);
+        session.clear(Location.class);
+        session.clear(AuthToken.class);
+        session.clear(ResetToken.class);
+        session.clear(UserProfile.class);
+        session.clear(User.class);
+        EventSearchIndex.onClear(session);
+        CorpusStatistics.onCorpusChange(session);
+        SimilarityNeighbours.onClear(session);
+        SeatAllocator.onClear(session);
+        AdmissionQueue.onClear(session);
     }
 
     public void groupRemoveMember (ModelSession session, GroupRemoveMemberRequest request) {
@@ -1522,7 +1726,7 @@ public class TickrController {
         Group group = session.getById(Group.class, UUID.fromString(request.groupId))
                 .orElseThrow(() -> new ForbiddenException("Group does not exist!"));
 
-        User leader = authenticateToken(session, request.authToken);
+        User leader = authenticateWrite(session, request.authToken);
 
         User removeUser = session.getByUnique(User.class, "email", request.email)
                 .orElseThrow(() -> new ForbiddenException(String.format("User with email %s does not exist!", request.email)));
@@ -1540,11 +1744,15 @@ public class TickrController {
         Group group = session.getById(Group.class, UUID.fromString(request.groupId))
                 .orElseThrow(() -> new ForbiddenException("Group does not exist!"));
 
-        User leader = authenticateToken(session, request.authToken);
+        User leader = authenticateWrite(session, request.authToken);
 
         if (!leader.equals(group.getLeader())) {
             throw new BadRequestException("Only the group leader can cancel the group!");
         }
+        // Reservations are removed by cascade
+        for (var i : session.getAllWith(TicketReservation.class, "group", group)) {
+            SeatAllocator.onReservationRemove(session, i);
+        }
         session.remove(group);
     }
 
@@ -1559,7 +1767,7 @@ public class TickrController {
             throw new BadRequestException("Invalid invite ID!");
         }
 
-        User user = authenticateToken(session, request.authToken);
+        User user = authenticateWrite(session, request.authToken);
 
         Group group = session.getById(Group.class, UUID.fromString(request.groupId))
                 .orElseThrow(() -> new ForbiddenException("Group does not exist!"));
@@ -1590,7 +1798,7 @@ public class TickrController {
 
         Event event = session.getById(Event.class, parseUUID(request.eventId))
                 .orElseThrow(() -> new ForbiddenException("Invalid event id!"));
-        var user = authenticateToken(session, request.authToken);
+        var user = authenticateWrite(session, request.authToken);
 
         event.editNotificationMembers(session, user, request.notifications);
         user.editEventNotifications(session, event, request.notifications);
@@ -1624,13 +1832,14 @@ public class TickrController {
     }
 
     public void ticketRefund (ModelSession session, TicketRefundRequest request) {
-        var user = authenticateToken(session, request.authToken);
+        var user = authenticateWrite(session, request.authToken);
 
         var ticket = session.getById(Ticket.class, parseUUID(request.ticketId))
                 .orElseThrow(() -> new ForbiddenException("Invalid ticket id!"));
 
         ticket.refund(user);
         session.remove(ticket);
+        SeatAllocator.onTicketRemove(session, ticket);
     }
 
     public CategoriesResponse categoriesList (ModelSession session) {
@@ -1662,18 +1871,14 @@ public class TickrController {
             throw new BadRequestException("Invalid paging values!");
         }
 
-        var eventCount = new AtomicInteger();
-        var events = session.getAllWithStream(Category.class, "category", category) // Get all Category records with correct category
-                .map(Category::getEvent) // Map to event
-                .filter(Event::isPublished) // Only return published events
-                .filter(e -> e.getEventEnd().isAfter(ZonedDateTime.now(ZoneId.of("UTC")))) // Only return events in the future
-                .peek(c -> eventCount.getAndIncrement()) // Get total
-                .sorted(Comparator.comparing(Event::getEventStart)) // Sort by event start date
-                .skip(pageStart) // Skip to page start
-                .limit(maxResults) // Limit to expected results
-                .map(Event::getId) // Convert to ids
+        var page = EventSearchIndex.get(session).findPublished(category, null, null,
+                ZonedDateTime.now(ZoneId.of("UTC")).toInstant().plusNanos(1), null, // Only return events in the future
+                pageStart, maxResults);
+
+        var events = page.getEvents().stream()
+                .map(IndexedEvent::getId) // Convert to ids
                 .map(UUID::toString)
                 .collect(Collectors.toList());
-        return new CategoryEventsResponse(events, eventCount.get());
+        return new CategoryEventsResponse(events, page.getTotal());
     }
 }
@@ -107,6 +107,11 @@ public class StripeAPI implements IPurchaseAPI {
             event.getDataObjectDeserializer()
                     .getObject()
                     .ifPresent(s -> completePayment(controller, session, (Session) s));
+        } else if ("checkout.session.expired".equals(event.getType())) {
+            // Checkout left unpaid, so give back the seats rather than keeping them until the purchase lapses
+            event.getDataObjectDeserializer()
+                    .getObject()
+                    .ifPresent(s -> controller.ticketPurchaseFailure(session, getOrderId((Session) s)));
         }
     }
 
@@ -117,18 +122,22 @@ public class StripeAPI implements IPurchaseAPI {
     }
 
     private void completePayment (TickrController controller, ModelSession session, Session stripeSession) {
+        var orderId = getOrderId(stripeSession);
+
+        // Get payment intent from stripe session for refunding later
+        var paymentIntent = stripeSession.getPaymentIntent();
+
+        controller.ticketPurchaseSuccess(session, orderId, paymentIntent);
+    }
+
+    private static String getOrderId (Session stripeSession) {
         // Get order id from metadata
         var metadata = stripeSession.getMetadata();
         if (!metadata.containsKey("reserve_id")) {
             throw new RuntimeException("Invalid metadata!");
         }
 
-        var orderId = metadata.get("reserve_id");
-
-        // Get payment intent from stripe session for refunding later
-        var paymentIntent = stripeSession.getPaymentIntent();
-
-        controller.ticketPurchaseSuccess(session, orderId, paymentIntent);
+        return metadata.get("reserve_id");
     }
 
     @Override
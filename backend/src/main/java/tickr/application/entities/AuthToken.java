@@ -19,8 +19,9 @@ import java.util.UUID;
 @Table(name = "auth_token")
 public class AuthToken {
     @Id
+    // Auth token ids are JWT ids, so must not be guessable
     @UuidGenerator
-    @JdbcTypeCode(SqlTypes.CHAR)
+    @JdbcTypeCode(SqlTypes.UUID)
     private UUID id;
 
     @ManyToOne(fetch = FetchType.LAZY)
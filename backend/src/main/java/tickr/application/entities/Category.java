@@ -1,15 +1,19 @@
 package tickr.application.entities;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.JdbcTypeCode;
-import org.hibernate.annotations.UuidGenerator;
 import org.hibernate.type.SqlTypes;
+import tickr.persistence.TimeOrderedId;
 
 import java.util.List;
 import java.util.UUID;
 
 @Entity
 @Table(name = "categories")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "tickr.category")
 public class Category {
     private static final List<String> VALID_CATEGORIES = List.of(
             "Food",
@@ -24,8 +28,8 @@ public class Category {
             "Education"
     );
     @Id
-    @UuidGenerator
-    @JdbcTypeCode(SqlTypes.CHAR)
+    @TimeOrderedId
+    @JdbcTypeCode(SqlTypes.UUID)
     private UUID id;
 
     //@Column(name = "event_id")
@@ -1,15 +1,16 @@
 package tickr.application.entities;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.BatchSize;
 import org.hibernate.annotations.JdbcTypeCode;
 import org.hibernate.annotations.TimeZoneStorage;
 import org.hibernate.annotations.TimeZoneStorageType;
-import org.hibernate.annotations.UuidGenerator;
 import org.hibernate.type.SqlTypes;
 import tickr.application.serialised.SerialisedReaction;
 import tickr.application.serialised.SerialisedReply;
 import tickr.application.serialised.SerialisedReview;
 import tickr.persistence.ModelSession;
+import tickr.persistence.TimeOrderedId;
 import tickr.server.exceptions.BadRequestException;
 import tickr.server.exceptions.ForbiddenException;
 
@@ -30,8 +31,8 @@ import java.util.stream.Stream;
 public class Comment {
     // Contains both reviews and replies, differentiated by whether parent is null or not
     @Id
-    @UuidGenerator
-    @JdbcTypeCode(SqlTypes.CHAR)
+    @TimeOrderedId
+    @JdbcTypeCode(SqlTypes.UUID)
     private UUID id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -42,9 +43,12 @@ public class Comment {
     @JoinColumn(name = "parent_id")
     private Comment parent;
 
+    // Loaded for a whole page of comments at once
+    @BatchSize(size = 32)
     @OneToMany(fetch = FetchType.LAZY, mappedBy = "parent", cascade = CascadeType.REMOVE)
     private Set<Comment> children = new HashSet<>();
 
+    @BatchSize(size = 32)
     @OneToMany(fetch = FetchType.LAZY, mappedBy = "comment", cascade = CascadeType.REMOVE)
     private Set<Reaction> reactions = new HashSet<>();
 
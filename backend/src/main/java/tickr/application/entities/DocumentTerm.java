@@ -25,11 +25,12 @@ public class DocumentTerm {
         return term;
     }
 
+    /**
+     * Gets the number of events with the term. Changed by RecommenderEngine in the database rather than through the
+     * entity, so concurrent changes are not lost
+     * @return
+     */
     public int getTermCount () {
         return termCount;
     }
-
-    public void incrementCount () {
-        termCount++;
-    }
 }
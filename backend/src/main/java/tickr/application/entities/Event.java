@@ -3,14 +3,20 @@ package tickr.application.entities;
 import jakarta.persistence.*;
 import org.hibernate.annotations.TimeZoneStorage;
 import org.hibernate.annotations.TimeZoneStorageType;
+import tickr.application.queue.AdmissionQueue;
+import tickr.application.recommendations.CompactVector;
+import tickr.application.recommendations.CorpusStatistics;
 import tickr.application.recommendations.EventVector;
-import tickr.application.recommendations.SparseVector;
+import tickr.application.recommendations.SimilarityNeighbours;
+import tickr.application.search.EventSearchIndex;
+import tickr.application.seating.SeatAllocator;
 import tickr.application.serialised.SerializedLocation;
 import tickr.application.serialised.requests.event.EditEventRequest;
 import tickr.application.serialised.responses.event.EventReservedSeatsResponse;
 import tickr.application.serialised.responses.event.EventViewResponse;
 import tickr.application.serialised.responses.event.EventAttendeesResponse.Attendee;
 import tickr.persistence.ModelSession;
+import tickr.persistence.TimeOrderedId;
 import tickr.server.exceptions.BadRequestException;
 import tickr.server.exceptions.ForbiddenException;
 import tickr.util.EmailHelper;
@@ -18,8 +24,9 @@ import tickr.util.FileHelper;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.JdbcTypeCode;
-import org.hibernate.annotations.UuidGenerator;
 import org.hibernate.type.SqlTypes;
 import tickr.util.Pair;
 import tickr.util.Utils;
@@ -35,12 +42,14 @@ import java.util.stream.Stream;
 
 @Entity
 @Table(name = "events")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "tickr.event")
 public class Event {
     static final Logger logger = LogManager.getLogger();
 
     @Id
-    @UuidGenerator
-    @JdbcTypeCode(SqlTypes.CHAR)
+    @TimeOrderedId
+    @JdbcTypeCode(SqlTypes.UUID)
     private UUID id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -50,6 +59,7 @@ public class Event {
     @JoinColumn(name = "location_id")
     private Location location;
 
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "tickr.event.admins")
     @ManyToMany(fetch = FetchType.LAZY)
     @JoinTable(name = "admins",
             joinColumns = {@JoinColumn(name = "event_id")},
@@ -59,9 +69,11 @@ public class Event {
     @OneToMany(fetch = FetchType.LAZY, mappedBy = "event", cascade = CascadeType.REMOVE)
     private Set<Ticket> tickets = new HashSet<>();
 
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "tickr.event.categories")
     @OneToMany(fetch = FetchType.LAZY, mappedBy = "event", cascade = CascadeType.REMOVE)
     private Set<Category> categories = new HashSet<>();
 
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "tickr.event.tags")
     @OneToMany(fetch = FetchType.LAZY, mappedBy = "event", cascade = CascadeType.REMOVE)
     private Set<Tag> tags = new HashSet<>();
 
@@ -71,6 +83,7 @@ public class Event {
     @OneToMany(fetch = FetchType.LAZY, mappedBy = "termId.event", cascade = CascadeType.REMOVE)
     private Set<TfIdf> tfIdfs = new HashSet<>();
 
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "tickr.event.seatingPlans")
     @OneToMany(fetch = FetchType.LAZY, mappedBy = "event", cascade = CascadeType.REMOVE)
     private List<SeatingPlan> seatingPlans;
 
@@ -108,6 +121,10 @@ public class Event {
 
     private boolean published;
 
+    // Whether users queue before reserving tickets, see AdmissionQueue
+    @Column(name = "admission_queue")
+    private boolean admissionQueue = false;
+
     @Column(name = "spotify_playlist")
     private String spotifyPlaylist;
 
@@ -175,6 +192,10 @@ public class Event {
         return tickets;
     }
 
+    public List<SeatingPlan> getSeatingPlans () {
+        return seatingPlans;
+    }
+
     public Set<Category> getCategories () {
         return categories;
     }
@@ -226,6 +247,10 @@ public class Event {
     public boolean isPublished() {
         return published;
     }
+
+    public boolean hasAdmissionQueue () {
+        return admissionQueue;
+    }
     public Set<User> getNotificationMembers() {
         return notificationMembers;
     }
@@ -365,12 +390,14 @@ public class Event {
         if (request.seatingDetails != null) {
             for (SeatingPlan seat : seatingPlans) {
                 session.remove(seat);
+                SeatAllocator.onSectionRemove(session, seat);
             }
 
             seatingPlans.clear();
             for (EditEventRequest.SeatingDetails seats : request.seatingDetails) {
                 SeatingPlan seatingPlan = new SeatingPlan(this, this.location, seats.section, seats.availability, seats.ticketPrice, seats.hasSeats);
                 session.save(seatingPlan);
+                SeatAllocator.onSectionCreate(session, seatingPlan);
                 seatingPlans.add(seatingPlan);
             }
             this.seatAvailability = request.getSeatCapacity();
@@ -389,21 +416,35 @@ public class Event {
 
         this.published = request.published;
 
+        if (request.admissionQueue != null) {
+            if (admissionQueue && !request.admissionQueue) {
+                // Places of users still waiting are dropped, as for a removed event
+                AdmissionQueue.onEventRemove(session, this);
+            }
+            this.admissionQueue = request.admissionQueue;
+        }
+
         if (!notification.equals("")) {
             makeEventChangeNotification(user, notification);
         }
 
         onUpdate();
+        EventSearchIndex.onEventUpdate(session, this);
+        SimilarityNeighbours.onEventChange(session, this);
+        if (request.tags != null || request.categories != null) {
+            CorpusStatistics.onCorpusChange(session);
+        }
+        // Drop cached copies held for read replicas, which do not see this session's writes
+        session.evictOnCommit(Event.class, id);
     }
 
-    public EventViewResponse getViewResponse (User user) {
+    public EventViewResponse getViewResponse (ModelSession session, User user) {
         if (!canView(user)) {
             throw new ForbiddenException("Unable to view event!");
         }
-
         List<EventViewResponse.SeatingDetails> seatingResponse = new ArrayList<EventViewResponse.SeatingDetails>();
         for (SeatingPlan seats : seatingPlans) {
-            EventViewResponse.SeatingDetails newSeats = new EventViewResponse.SeatingDetails(seats.getSection(), seats.getAvailableSeats(), seats.ticketPrice, seats.getTotalSeats(), seats.hasSeats);
+            EventViewResponse.SeatingDetails newSeats = new EventViewResponse.SeatingDetails(seats.getSection(), seats.getAvailableSeats(session), seats.ticketPrice, seats.getTotalSeats(), seats.hasSeats);
             seatingResponse.add(newSeats);
         }
         Set<String> tags = new HashSet<>();
@@ -420,9 +461,12 @@ public class Event {
         }
         SerializedLocation location = getLocation().getSerialisedLocation();
 
-        return new EventViewResponse(getHost().getId().toString(), eventName, eventPicture, location, eventStart.format(DateTimeFormatter.ISO_INSTANT), eventEnd.format(DateTimeFormatter.ISO_INSTANT),
+        var response = new EventViewResponse(getHost().getId().toString(), eventName, eventPicture, location, eventStart.format(DateTimeFormatter.ISO_INSTANT), eventEnd.format(DateTimeFormatter.ISO_INSTANT),
                 eventDescription, seatingResponse,
                 admins, categories, tags, published, seatAvailability, seatCapacity, spotifyPlaylist);
+        response.admissionQueue = admissionQueue;
+
+        return response;
     }
 
     public List<TicketReservation> makeReservations (ModelSession session, User user, ZonedDateTime requestedTime, String section,
@@ -604,12 +648,18 @@ public class Event {
                 .collect(Collectors.groupingBy(Map.Entry::getKey, Collectors.summingLong(Map.Entry::getValue)));
     }
 
-    public SparseVector<String> getTfIdfVector (int numDocuments) {
-        // Convert tf idfs to sparse vector
-        var keys = tfIdfs.stream().map(TfIdf::getTermString).collect(Collectors.toList());
-        var values = tfIdfs.stream().map(t -> t.getTfIdf(numDocuments)).collect(Collectors.toList());
+    public CompactVector getTfIdfVector (int numDocuments) {
+        // Convert tf idfs to compact vector
+        var builder = new CompactVector.Builder();
+        for (var i : tfIdfs) {
+            builder.add(i.getTermString(), i.getTfIdf(numDocuments));
+        }
+
+        return builder.build().normalised();
+    }
 
-        return new SparseVector<>(keys, values).normalised();
+    public Set<TfIdf> getTfIdfs () {
+        return tfIdfs;
     }
 
     public void setTfIdfs (List<TfIdf> tfIdfs) {
@@ -617,16 +667,24 @@ public class Event {
         this.tfIdfs.addAll(tfIdfs);
     }
 
-    public SparseVector<String> getTagVector () {
-        // Makes normalised sparse vector of tags, each with a frequency of 1
-        return new SparseVector<>(tags.stream().map(Tag::getTags).collect(Collectors.toList()), Collections.nCopies(tags.size(), 1.0))
-                .normalised();
+    public CompactVector getTagVector () {
+        // Makes normalised vector of tags, each with a frequency of 1
+        var builder = new CompactVector.Builder();
+        for (var i : tags) {
+            builder.add(i.getTags(), 1.0);
+        }
+
+        return builder.build().normalised();
     }
 
-    public SparseVector<String> getCategoryVector () {
-        // Makes normalised sparse vector of categories, each with a frequency of 1
-        return new SparseVector<>(categories.stream().map(Category::getCategory).collect(Collectors.toList()), Collections.nCopies(categories.size(), 1.0))
-                .normalised();
+    public CompactVector getCategoryVector () {
+        // Makes normalised vector of categories, each with a frequency of 1
+        var builder = new CompactVector.Builder();
+        for (var i : categories) {
+            builder.add(i.getCategory(), 1.0);
+        }
+
+        return builder.build().normalised();
     }
 
     public double getDistance (Event other) {
@@ -637,7 +695,7 @@ public class Event {
     public EventVector getEventVector (int numDocuments) {
         // Make event vector from component sparse vectors
         return new EventVector(getTfIdfVector(numDocuments), getTagVector(), getCategoryVector(),
-                new SparseVector<>(List.of(host.getId().toString()), List.of(Utils.getIdf(host.getHostingEvents().size(), numDocuments))));
+                CompactVector.of(host.getId().toString(), Utils.getIdf(host.getHostingEvents().size(), numDocuments)));
     }
 
     public void makeHost (User oldHost, User newHost) {
@@ -654,11 +712,10 @@ public class Event {
         host = newHost;
     }
 
-    public List<EventReservedSeatsResponse.Reserved> getReservedSeats () {
+    public List<EventReservedSeatsResponse.Reserved> getReservedSeats (ModelSession session) {
         return seatingPlans.stream()
-                .map(SeatingPlan::getReservations) // Get reservations from seat plans
-                .flatMap(Collection::stream) // Flat map to single stream
-                .map(TicketReservation::getReservedResponse) // Convert to responses
+                .flatMap(s -> s.getReservedSeats(session).stream() // Get held seats from the allocator
+                        .map(i -> new EventReservedSeatsResponse.Reserved(i, s.getSection()))) // Convert to responses
                 .collect(Collectors.toList());
     }
 }
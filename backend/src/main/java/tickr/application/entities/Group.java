@@ -4,10 +4,11 @@ import jakarta.persistence.*;
 import tickr.application.serialised.responses.group.GroupDetailsResponse;
 import tickr.application.serialised.responses.group.GroupDetailsResponse.GroupMember;
 import tickr.application.serialised.responses.group.GroupDetailsResponse.PendingInvite;
+import tickr.persistence.ModelSession;
+import tickr.persistence.TimeOrderedId;
 import tickr.server.exceptions.BadRequestException;
 
 import org.hibernate.annotations.JdbcTypeCode;
-import org.hibernate.annotations.UuidGenerator;
 import org.hibernate.type.SqlTypes;
 
 import java.util.ArrayList;
@@ -22,8 +23,8 @@ import java.util.stream.Collectors;
 @Table(name = "user_groups")
 public class Group {
     @Id
-    @UuidGenerator
-    @JdbcTypeCode(SqlTypes.CHAR)
+    @TimeOrderedId
+    @JdbcTypeCode(SqlTypes.UUID)
     private UUID id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -59,6 +60,7 @@ public class Group {
         this.size = size;
         this.ticketsAvailable = ticketReservations.size();
         this.ticketReservations = ticketReservations;
+        this.invitations = new HashSet<>();
         this.users = new HashSet<>();
         users.add(leader);
         for (TicketReservation t : ticketReservations) {
@@ -127,6 +129,27 @@ public class Group {
         ticket.setGroup(this);
     }
 
+    private void preloadMembers (ModelSession session) {
+        // Load members with the associations their details use in one query each, instead of one query per member.
+        // The collections are still read as before, but find their elements already loaded
+        session.query(TicketReservation.class)
+                .where("group", this)
+                .fetch("user")
+                .fetch("section")
+                .fetch("invitation")
+                .fetch("purchaseItem")
+                .getResults();
+        session.query(Ticket.class)
+                .where("group", this)
+                .fetch("user")
+                .fetch("section")
+                .getResults();
+        session.query(Invitation.class)
+                .where("group", this)
+                .fetch("user")
+                .getResults();
+    }
+
     private List<GroupMember> getGroupMemberDetails() {
         List<GroupMember> list = new ArrayList<>();
         for (Ticket t : tickets) {
@@ -188,7 +211,8 @@ public class Group {
         }
     }
     
-    public GroupDetailsResponse getGroupDetailsResponse(User host) {
+    public GroupDetailsResponse getGroupDetailsResponse(ModelSession session, User host) {
+        preloadMembers(session);
         return new GroupDetailsResponse(leader.getId().toString(), getGroupMemberDetails(), getPendingInviteDetails(), getAvailableReserves(host), getEventId());
     }
 }
@@ -11,8 +11,9 @@ import java.util.UUID;
 @Table(name = "invitation")
 public class Invitation {
     @Id
+    // Invitation ids are emailed in invitation links, so must not be guessable
     @UuidGenerator
-    @JdbcTypeCode(SqlTypes.CHAR)
+    @JdbcTypeCode(SqlTypes.UUID)
     private UUID id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -3,25 +3,31 @@ package tickr.application.entities;
 import jakarta.persistence.*;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.JdbcTypeCode;
-import org.hibernate.annotations.UuidGenerator;
 import org.hibernate.type.SqlTypes;
 import tickr.application.apis.ApiLocator;
 import tickr.application.apis.location.ILocationAPI;
 import tickr.application.apis.location.LocationPoint;
 import tickr.application.apis.location.LocationRequest;
+import tickr.application.recommendations.SimilarityNeighbours;
 import tickr.application.serialised.SerializedLocation;
+import tickr.persistence.ModelSession;
+import tickr.persistence.TimeOrderedId;
 
 import java.text.DecimalFormat;
 import java.util.UUID;
 
 @Entity
 @Table(name = "locations")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "tickr.location")
 public class Location {
     static Logger logger = LogManager.getLogger();
     @Id
-    @UuidGenerator
-    @JdbcTypeCode(SqlTypes.CHAR)
+    @TimeOrderedId
+    @JdbcTypeCode(SqlTypes.UUID)
     private UUID id;
 
     @Column(name = "street_no")
@@ -128,7 +134,15 @@ public class Location {
 
         // Add async location request. Get by id, and only sends if location exists as it may be deleted in the meantime
         locationAPI.getLocationAsync(request,
-                ((session, locationPoint) -> session.getById(Location.class, uuid).ifPresent(l -> l.setLongitudeLatitude(locationPoint))), 300);
+                ((session, locationPoint) -> session.getById(Location.class, uuid).ifPresent(l -> l.onLookup(session, locationPoint))), 300);
+    }
+
+    private void onLookup (ModelSession session, LocationPoint point) {
+        setLongitudeLatitude(point);
+        if (event != null) {
+            // Distances to other events have changed
+            SimilarityNeighbours.onEventChange(session, event);
+        }
     }
 
     public void setLongitudeLatitude (LocationPoint point) {
@@ -153,6 +167,17 @@ public class Location {
         }
     }
 
+    /**
+     * Gets the point of this location, or null if it has not been looked up
+     * @return
+     */
+    public LocationPoint getLocationPoint () {
+        if (latitude == null || longitude == null) {
+            return null;
+        }
+        return new LocationPoint(latitude, longitude);
+    }
+
     public double getDistance (Location other) {
         if (latitude == null || longitude == null || other.getLongitude() == null || other.getLatitude() == null) {
             // One point does not exist, return infinite distance
@@ -5,9 +5,10 @@ import jakarta.persistence.*;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.hibernate.annotations.JdbcTypeCode;
-import org.hibernate.annotations.UuidGenerator;
 import org.hibernate.type.SqlTypes;
+import tickr.application.seating.SeatAllocator;
 import tickr.persistence.ModelSession;
+import tickr.persistence.TimeOrderedId;
 import tickr.server.exceptions.BadRequestException;
 import tickr.util.Utils;
 
@@ -21,11 +22,11 @@ import java.util.UUID;
 public class PurchaseItem {
     private static final Duration EXPIRY_DURATION = Duration.ofHours(24);
     @Id
-    @UuidGenerator
-    @JdbcTypeCode(SqlTypes.CHAR)
+    @TimeOrderedId
+    @JdbcTypeCode(SqlTypes.UUID)
     private UUID id;
 
-    @JdbcTypeCode(SqlTypes.CHAR)
+    @JdbcTypeCode(SqlTypes.UUID)
     @Column(name = "purchase_id")
     private UUID purchaseId;
 
@@ -49,7 +50,7 @@ public class PurchaseItem {
 
     }
 
-    public PurchaseItem (UUID purchaseId, TicketReservation reservation, String firstName, String lastName, String email) {
+    public PurchaseItem (ModelSession session, UUID purchaseId, TicketReservation reservation, String firstName, String lastName, String email) {
         if ((firstName == null) != (lastName == null)) {
             throw new BadRequestException("Both or neither of first name and last name must be present!");
         } else if (email != null && !Utils.isValidEmail(email)) {
@@ -58,7 +59,9 @@ public class PurchaseItem {
 
         this.purchaseId = purchaseId;
         this.ticketReservation = reservation;
-        reservation.setExpiry(ZonedDateTime.now(ZoneId.of("UTC")).plus(EXPIRY_DURATION));
+        reservation.setExpiry(session, ZonedDateTime.now(ZoneId.of("UTC")).plus(EXPIRY_DURATION));
+        // Kept for a while past its expiry, as the payment may still be completing
+        SeatAllocator.onPurchase(session, reservation);
         this.firstName = firstName;
         this.lastName = lastName;
         this.email = email != null ? email.toLowerCase().trim() : null;
@@ -67,20 +70,26 @@ public class PurchaseItem {
     public Ticket convert (ModelSession session, String paymentId) {
         // Convert reservation to ticket
         var ticket = ticketReservation.convert(firstName, lastName, email, paymentId);
-        // Delete reservation
+        // Delete reservation, its seat staying taken by the ticket
         session.remove(ticketReservation);
+        SeatAllocator.onConvert(session, ticketReservation);
 
         return ticket;
     }
 
     public void cancel (ModelSession session) {
         session.remove(ticketReservation);
+        SeatAllocator.onReservationRemove(session, ticketReservation);
     }
 
     public void setPaymentDetails (String paymentId) {
         this.paymentId = paymentId;
     }
 
+    public TicketReservation getTicketReservation () {
+        return ticketReservation;
+    }
+
     public Event getEvent () {
         return ticketReservation.getSection().getEvent();
     }
@@ -0,0 +1,87 @@
+package tickr.application.entities;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.annotations.TimeZoneStorage;
+import org.hibernate.annotations.TimeZoneStorageType;
+import org.hibernate.type.SqlTypes;
+
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.UUID;
+
+/**
+ * A user's place in the admission queue of an event, see AdmissionQueue. Events and users are referenced by id rather
+ * than by association, so entries never block deleting either
+ */
+@Entity
+@Table(name = "admission_queue", uniqueConstraints = {
+        @UniqueConstraint(name = "uq_admission_queue_event_user", columnNames = {"event_id", "user_id"}),
+        @UniqueConstraint(name = "uq_admission_queue_event_position", columnNames = {"event_id", "queue_position"})
+})
+public class QueueEntry {
+    @Id
+    // Queue entry ids are handed out as queue tokens, so must not be guessable. Assigned on construction, so that a
+    // place can be queued in memory before it is saved
+    @JdbcTypeCode(SqlTypes.UUID)
+    private UUID id;
+
+    @JdbcTypeCode(SqlTypes.UUID)
+    @Column(name = "event_id")
+    private UUID eventId;
+
+    @JdbcTypeCode(SqlTypes.UUID)
+    @Column(name = "user_id")
+    private UUID userId;
+
+    @Column(name = "queue_position")
+    private long position;
+
+    @TimeZoneStorage(TimeZoneStorageType.NORMALIZE_UTC)
+    @Column(name = "join_time")
+    private ZonedDateTime joinTime;
+
+    @TimeZoneStorage(TimeZoneStorageType.NORMALIZE_UTC)
+    @Column(name = "admit_time")
+    private ZonedDateTime admitTime = null;
+
+    public QueueEntry () {
+
+    }
+
+    public QueueEntry (UUID eventId, UUID userId, long position, ZonedDateTime joinTime) {
+        this.id = UUID.randomUUID();
+        this.eventId = eventId;
+        this.userId = userId;
+        this.position = position;
+        this.joinTime = joinTime.truncatedTo(ChronoUnit.SECONDS);
+    }
+
+    public UUID getId () {
+        return id;
+    }
+
+    public UUID getEventId () {
+        return eventId;
+    }
+
+    public UUID getUserId () {
+        return userId;
+    }
+
+    public long getPosition () {
+        return position;
+    }
+
+    public ZonedDateTime getJoinTime () {
+        return joinTime;
+    }
+
+    public ZonedDateTime getAdmitTime () {
+        return admitTime;
+    }
+
+    public void setAdmitTime (ZonedDateTime admitTime) {
+        this.admitTime = admitTime.truncatedTo(ChronoUnit.SECONDS);
+    }
+}
@@ -4,8 +4,8 @@ import jakarta.persistence.*;
 import org.hibernate.annotations.JdbcTypeCode;
 import org.hibernate.annotations.TimeZoneStorage;
 import org.hibernate.annotations.TimeZoneStorageType;
-import org.hibernate.annotations.UuidGenerator;
 import org.hibernate.type.SqlTypes;
+import tickr.persistence.TimeOrderedId;
 import tickr.server.exceptions.ForbiddenException;
 
 import java.time.ZonedDateTime;
@@ -19,8 +19,8 @@ public class Reaction {
     private static final Set<String> VALID_REACT_TYPES = Set.of("heart", "laugh", "cry", "angry", "thumbs_up", "thumbs_down");
 
     @Id
-    @UuidGenerator
-    @JdbcTypeCode(SqlTypes.CHAR)
+    @TimeOrderedId
+    @JdbcTypeCode(SqlTypes.UUID)
     private UUID id;
 
     @ManyToOne(fetch = FetchType.LAZY)
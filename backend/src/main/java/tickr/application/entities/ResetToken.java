@@ -17,8 +17,9 @@ import jakarta.persistence.*;
 @Table (name = "reset_tokens")
 public class ResetToken {
     @Id
+    // Reset token ids are emailed as the secret part of the reset link, so must not be guessable
     @UuidGenerator
-    @JdbcTypeCode(SqlTypes.CHAR)
+    @JdbcTypeCode(SqlTypes.UUID)
     private UUID id;
 
     @TimeZoneStorage(TimeZoneStorageType.NORMALIZE_UTC)
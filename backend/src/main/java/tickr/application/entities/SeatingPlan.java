@@ -1,29 +1,38 @@
 package tickr.application.entities;
 
 import jakarta.persistence.*;
+import org.hibernate.Hibernate;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.JdbcTypeCode;
-import org.hibernate.annotations.UuidGenerator;
 import org.hibernate.type.SqlTypes;
+import tickr.application.seating.SeatAllocator;
 import tickr.persistence.ModelSession;
+import tickr.persistence.TimeOrderedId;
 import tickr.server.exceptions.ForbiddenException;
 
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
 import java.util.*;
-import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 @Entity
 @Table(name = "seating_plan")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "tickr.seatingPlan")
+@BatchSize(size = 32)
 public class SeatingPlan {
     @Id
-    @UuidGenerator
-    @JdbcTypeCode(SqlTypes.CHAR)
+    @TimeOrderedId
+    @JdbcTypeCode(SqlTypes.UUID)
     private UUID id;
 
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "event_id")
     private Event event;
 
-    @OneToOne(fetch = FetchType.LAZY)
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "location_id")
     private Location location;
 
@@ -41,10 +50,13 @@ public class SeatingPlan {
     @Column(name = "has_seats")
     public boolean hasSeats;
 
+    // Loaded for every section of an event when viewing it
+    @BatchSize(size = 32)
     @OneToMany(fetch = FetchType.LAZY, mappedBy = "section", cascade = CascadeType.REMOVE)
     private Set<TicketReservation> reservations = new HashSet<>();
 
 
+    @BatchSize(size = 32)
     @OneToMany(fetch = FetchType.LAZY, mappedBy = "section", cascade = CascadeType.REMOVE)
     private Set<Ticket> tickets = new HashSet<>();
 
@@ -73,8 +85,12 @@ public class SeatingPlan {
     }
 
 
-    public int getAvailableSeats () {
-        return totalSeats - getAllocatedNumbers().size();
+    public UUID getId () {
+        return id;
+    }
+
+    public int getAvailableSeats (ModelSession session) {
+        return SeatAllocator.get(session).getAvailable(session, this);
     }
 
     public int getTotalSeats () {
@@ -87,92 +103,75 @@ public class SeatingPlan {
 
     
 
-    public Set<TicketReservation> getReservations() {
-        return reservations.stream()
-                .filter(Predicate.not(TicketReservation::hasExpired))
-                .collect(Collectors.toSet());
-    }
-
-    private Set<Integer> getAllocatedNumbers () {
-        // Get ticket seat numbers
-        var ticketSet = tickets.stream()
-                .map(Ticket::getSeatNumber)
-                .collect(Collectors.toSet());
-
-        // Get reservation seat numbers
-        var reservedSet = reservations.stream()
-                .filter(Predicate.not(TicketReservation::hasExpired)) // Only include in date reservations
-                .map(TicketReservation::getSeatNum)
-                .collect(Collectors.toSet());
-
-        ticketSet.addAll(reservedSet);
-
-        return ticketSet;
+    public List<Integer> getReservedSeats (ModelSession session) {
+        return SeatAllocator.get(session).getHeldSeats(session, this);
     }
 
     private List<TicketReservation> makeReservations (ModelSession session, User user, List<Integer> seatNums) {
-        // Makes reservations, assuming seatNums are all valid
+        // Makes reservations for seats already claimed from the allocator
+        removeExpired(session, seatNums);
         var newReservations = new ArrayList<TicketReservation>();
         for (var i : seatNums) {
             var reserve = new TicketReservation(user, this, i, ticketPrice);
             session.save(reserve);
+            SeatAllocator.onReserve(session, reserve);
             newReservations.add(reserve);
-            reservations.add(reserve);
         }
-
-        availableSeats -= seatNums.size();
+        // Only kept up to date if already loaded, as adding would load every reservation of the section, each with its
+        // purchase item and invitation
+        if (Hibernate.isInitialized(reservations)) {
+            reservations.addAll(newReservations);
+        }
+        // availableSeats is not updated, as every reservation of the section would then update the same row
 
         return newReservations;
     }
 
-    public List<TicketReservation> reserveSeats (ModelSession session, User user, int quantity) {
-        if (getAvailableSeats() < quantity) {
-            throw new ForbiddenException("Not enough tickets remaining!");
+    /**
+     * Deletes expired reservations of seats, which would otherwise stop the seats being reserved again, along with their
+     * lapsed purchases. Reservations still being bought or offered to an invited user are kept, as the seat allocator
+     * does not give their seats out again
+     * @param session
+     * @param seatNums
+     */
+    private void removeExpired (ModelSession session, List<Integer> seatNums) {
+        var expired = session.query(TicketReservation.class)
+                .where("section", this)
+                .whereIn("seatNum", seatNums)
+                .whereLessThan("expiryTime", ZonedDateTime.now(ZoneId.of("UTC")))
+                .getResults();
+        if (expired.isEmpty()) {
+            return;
         }
-
-        var nums = getAllocatedNumbers().stream()
-                .sorted()
-                .collect(Collectors.toList());
-
-        var reservedNums = new ArrayList<Integer>();
-
-
-        // Get seat numbers starting from lowest up, filling gaps where possible
-        int last = 0;
-        int next = last;
-        for (var i : nums) {
-            if (reservedNums.size() == quantity) {
-                // Required numbers achieved
-                break;
-            }
-            next = i; // next seat number along
-
-            // Add seats between last seat number read and next seat number
-            for (int j = last + 1; j < next; j++) {
-                reservedNums.add(j);
-                if (reservedNums.size() == quantity) {
-                    // Enough seat numbers
-                    break;
-                }
-            }
-
-            // Set last to current seat number
-            last = next;
+        if (!TicketReservation.getPendingIds(session, expired).isEmpty()) {
+            // Only if the seat was given out as its purchase or invitation was being made
+            throw new ForbiddenException("One or more ticket is being bought by another user!");
         }
 
-
-        while (reservedNums.size() < quantity) {
-            // More seat numbers required, allocate from end as next will be the last seat number read
-            reservedNums.add(++next);
+        // Deleted in bulk, as removed entities are only deleted after new ones are inserted. Bulk deletes do not
+        // cascade, so delete the purchase items referencing the reservations first
+        session.query(PurchaseItem.class)
+                .whereIn("ticketReservation", expired)
+                .delete();
+        session.query(TicketReservation.class)
+                .whereIn("id", expired.stream().map(TicketReservation::getId).collect(Collectors.toList()))
+                .delete();
+        if (Hibernate.isInitialized(reservations)) {
+            reservations.removeAll(expired);
         }
+    }
 
+    public List<TicketReservation> reserveSeats (ModelSession session, User user, int quantity) {
+        var seatNums = SeatAllocator.get(session).claimLowest(session, this, quantity);
+        if (seatNums.isEmpty()) {
+            throw new ForbiddenException("Not enough tickets remaining!");
+        }
 
-        return makeReservations(session, user, reservedNums);
+        return makeReservations(session, user, seatNums);
     }
 
     public List<TicketReservation> reserveSeats (ModelSession session, User user, List<Integer> seatNums) {
-        var takenNums = getAllocatedNumbers();
-        if (seatNums.stream().anyMatch(i -> i <= 0 || i > totalSeats || takenNums.contains(i))) {
+        if (!SeatAllocator.get(session).claim(session, this, seatNums)) {
             throw new ForbiddenException("One or more ticket number is already taken!");
         }
 
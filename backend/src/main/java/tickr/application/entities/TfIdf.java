@@ -24,7 +24,15 @@ public class TfIdf {
     public TfIdf (DocumentTerm term, Event event, int termCount) {
         this.termId = new TermId(term, event);
         this.termFreq = 1 + Math.log10(termCount);
-        this.documentCount = term.getTermCount();
+        // documentCount is set from the term when calculated, as the term may not be loaded
+    }
+
+    public void setTermCount (int termCount) {
+        this.termFreq = 1 + Math.log10(termCount);
+    }
+
+    public double getTermFreq () {
+        return termFreq;
     }
 
     public double getTfIdf (int documentNum) {
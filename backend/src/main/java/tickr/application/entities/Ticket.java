@@ -5,9 +5,9 @@ import tickr.application.apis.ApiLocator;
 import tickr.application.apis.purchase.IPurchaseAPI;
 import tickr.application.serialised.responses.ticket.TicketViewResponse;
 import tickr.application.serialised.responses.group.GroupDetailsResponse.GroupMember;
+import tickr.persistence.TimeOrderedId;
 
 import org.hibernate.annotations.JdbcTypeCode;
-import org.hibernate.annotations.UuidGenerator;
 import org.hibernate.type.SqlTypes;
 import tickr.server.exceptions.ForbiddenException;
 
@@ -18,8 +18,8 @@ import java.util.UUID;
 @Table(name = "tickets")
 public class Ticket {
     @Id
-    @UuidGenerator
-    @JdbcTypeCode(SqlTypes.CHAR)
+    @TimeOrderedId
+    @JdbcTypeCode(SqlTypes.UUID)
     private UUID id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -4,30 +4,38 @@ import jakarta.persistence.*;
 import org.hibernate.annotations.JdbcTypeCode;
 import org.hibernate.annotations.TimeZoneStorage;
 import org.hibernate.annotations.TimeZoneStorageType;
-import org.hibernate.annotations.UuidGenerator;
 import org.hibernate.type.SqlTypes;
 import tickr.application.apis.purchase.IOrderBuilder;
 import tickr.application.apis.purchase.LineItem;
+import tickr.application.seating.SeatAllocator;
 import tickr.application.serialised.combined.tickets.TicketReserve;
-import tickr.application.serialised.responses.event.EventReservedSeatsResponse;
 import tickr.application.serialised.responses.ticket.ReserveDetailsResponse;
 import tickr.application.serialised.responses.group.GroupDetailsResponse.GroupMember;
 import tickr.persistence.ModelSession;
+import tickr.persistence.TimeOrderedId;
 import tickr.server.exceptions.ForbiddenException;
 
 import java.time.Duration;
 import java.time.ZonedDateTime;
 import java.time.ZoneId;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 @Entity
-@Table(name = "ticket_reservation")
+// Backstop against seats being reserved twice, which the seat allocator should prevent
+@Table(name = "ticket_reservation", uniqueConstraints = @UniqueConstraint(name = "uq_ticket_reservation_seat",
+        columnNames = {"seating_id", "seat_num"}))
 public class TicketReservation {
 
     private static final Duration EXPIRY_DURATION = Duration.ofMinutes(5);
+    // How long after expiring a reservation being bought keeps its seat, as payments may still complete for a while
+    // after the checkout expires
+    public static final Duration PURCHASE_GRACE = Duration.ofHours(1);
     @Id
-    @UuidGenerator
-    @JdbcTypeCode(SqlTypes.CHAR)
+    @TimeOrderedId
+    @JdbcTypeCode(SqlTypes.UUID)
     private UUID id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -81,8 +89,13 @@ public class TicketReservation {
         return price;
     }
 
-    public void setExpiry (ZonedDateTime expiryTime) {
+    public ZonedDateTime getExpiry () {
+        return expiryTime;
+    }
+
+    public void setExpiry (ModelSession session, ZonedDateTime expiryTime) {
         this.expiryTime = expiryTime;
+        SeatAllocator.onExpiryChange(session, this);
     }
 
     public boolean hasExpired () {
@@ -90,6 +103,25 @@ public class TicketReservation {
                 .isAfter(expiryTime);
     }
 
+    /**
+     * Gets when the reservation gives up its seat, which for reservations being bought is the purchase grace period
+     * after they expire
+     * @return
+     */
+    public ZonedDateTime getHoldExpiry () {
+        return purchaseItem != null ? expiryTime.plus(PURCHASE_GRACE) : expiryTime;
+    }
+
+    /**
+     * Whether the reservation was being bought but was not paid for within the purchase grace period, in which case
+     * its purchase can no longer complete
+     * @return
+     */
+    public boolean hasPurchaseLapsed () {
+        return ZonedDateTime.now(ZoneId.of("UTC"))
+                .isAfter(expiryTime.plus(PURCHASE_GRACE));
+    }
+
 
     public UUID getId() {
         return id;
@@ -114,7 +146,7 @@ public class TicketReservation {
         }
 
         // Make purchase item
-        var purchaseItem = new PurchaseItem(purchaseId, this, firstName, lastName, email);
+        var purchaseItem = new PurchaseItem(session, purchaseId, this, firstName, lastName, email);
         session.save(purchaseItem);
 
         // Add line item with correct formatting
@@ -141,6 +173,45 @@ public class TicketReservation {
         this.section = section;
     }
 
+    public boolean isOffered () {
+        return invitation != null;
+    }
+
+    /**
+     * Whether the reservation is offered to an invited user, or being bought and not yet lapsed, in which case it keeps
+     * its seat after expiring, as otherwise the purchase could not be completed once paid for
+     * @return
+     */
+    public boolean isPending () {
+        return invitation != null || (purchaseItem != null && !hasPurchaseLapsed());
+    }
+
+    /**
+     * Finds which of some reservations are offered to an invited user, or being bought and not yet lapsed, in two
+     * queries rather than loading each reservation's purchase item and invitation
+     * @param session
+     * @param reservations
+     * @return the ids of the pending reservations
+     */
+    public static Set<UUID> getPendingIds (ModelSession session, List<TicketReservation> reservations) {
+        var pending = new HashSet<UUID>();
+        if (reservations.isEmpty()) {
+            return pending;
+        }
+        session.query(PurchaseItem.class)
+                .whereIn("ticketReservation", reservations)
+                .getResultStream()
+                .map(PurchaseItem::getTicketReservation)
+                .filter(r -> !r.hasPurchaseLapsed())
+                .forEach(r -> pending.add(r.getId()));
+        session.query(Invitation.class)
+                .whereIn("ticketReservation", reservations)
+                .getResultStream()
+                .forEach(i -> pending.add(i.getTicketReservation().getId()));
+
+        return pending;
+    }
+
     public boolean canCancel (User user) {
         return this.user.getId().equals(user.getId()) && purchaseItem == null;
     }
@@ -205,10 +276,6 @@ public class TicketReservation {
         return new ReserveDetailsResponse(section.getSection(), seatNum, price, section.getEvent().getId().toString());
     }
 
-    public EventReservedSeatsResponse.Reserved getReservedResponse () {
-        return new EventReservedSeatsResponse.Reserved(seatNum, section.getSection());
-    }
-
     public boolean ownedBy (User user) {
         return this.user.equals(user);
     }
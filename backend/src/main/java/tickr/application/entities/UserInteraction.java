@@ -2,10 +2,9 @@ package tickr.application.entities;
 
 import jakarta.persistence.*;
 import org.hibernate.annotations.JdbcTypeCode;
-import org.hibernate.annotations.UuidGenerator;
 import org.hibernate.type.SqlTypes;
-import tickr.application.recommendations.EventVector;
 import tickr.application.recommendations.InteractionType;
+import tickr.persistence.TimeOrderedId;
 
 import java.time.Duration;
 import java.time.ZoneId;
@@ -21,8 +20,8 @@ public class UserInteraction {
     private static final double MAX_RATING = 5.0;
 
     @Id
-    @UuidGenerator
-    @JdbcTypeCode(SqlTypes.CHAR)
+    @TimeOrderedId
+    @JdbcTypeCode(SqlTypes.UUID)
     private UUID id;
 
     @Column(name = "interact_time")
@@ -36,6 +35,8 @@ public class UserInteraction {
     @JoinColumn(name = "event_id")
     private Event event;
 
+    // Stored as int, as in schemas made before Hibernate 6 mapped ordinals to tinyint
+    @JdbcTypeCode(SqlTypes.INTEGER)
     @Column(name = "interact_type")
     private InteractionType interactType;
 
@@ -52,18 +53,45 @@ public class UserInteraction {
         this.rating = rating;
     }
 
-    public EventVector getVector (int numEvents) {
-        return event.getEventVector(numEvents).multiply(getWeight() * getRelevancy());
+    public UUID getId () {
+        return id;
+    }
+
+    public Event getEvent () {
+        return event;
+    }
+
+    /**
+     * Gets the amount the event vector of this interaction is scaled by when building user profiles
+     * @return
+     */
+    public double getScale () {
+        return getWeight() * getRelevancy();
+    }
+
+    public ZonedDateTime getInteractTime () {
+        return interactTime;
     }
 
     private double getRelevancy () {
-        long msSinceInteraction = Duration.between(interactTime, ZonedDateTime.now(ZoneId.of("UTC"))).toMillis();
+        return getDecay(interactTime, ZonedDateTime.now(ZoneId.of("UTC")));
+    }
+
+    /**
+     * Gets the factor relevancy is scaled by between two times. Decay is multiplicative, so decaying from a to b and
+     * then b to c is the same as decaying from a to c
+     * @param from
+     * @param to
+     * @return
+     */
+    public static double getDecay (ZonedDateTime from, ZonedDateTime to) {
+        long msBetween = Duration.between(from, to).toMillis();
 
         // Exponentially scale relevancy down as time increases
-        return Math.exp(-RELEVANCE_DECAY_FACTOR * msSinceInteraction);
+        return Math.exp(-RELEVANCE_DECAY_FACTOR * msBetween);
     }
 
-    private double getWeight () {
+    public double getWeight () {
         if (interactType == InteractionType.REVIEW && rating != null) {
             // Weight according to rating
             return interactType.getWeight() * (rating - MAX_RATING / 2);
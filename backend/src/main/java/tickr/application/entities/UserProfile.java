@@ -0,0 +1,128 @@
+package tickr.application.entities;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import jakarta.persistence.*;
+import org.hibernate.Length;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.annotations.TimeZoneStorage;
+import org.hibernate.annotations.TimeZoneStorageType;
+import org.hibernate.type.SqlTypes;
+import tickr.application.recommendations.CompactVector;
+import tickr.application.recommendations.EventVector;
+
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Running sum of the interaction vectors of a user, each scaled by its weight and decayed to the reference time. As
+ * decay is multiplicative, the whole sum is decayed in one step whenever an interaction is added, and as the profile
+ * components are normalised the decay does not need to be applied when it is read. Versioned, as concurrent
+ * interactions of a user would otherwise overwrite each other's changes
+ */
+@Entity
+@Table(name = "user_profiles")
+public class UserProfile {
+    private static final Gson gson = new Gson();
+
+    @Id
+    @JdbcTypeCode(SqlTypes.UUID)
+    @Column(name = "user_id")
+    private UUID userId;
+
+    @TimeZoneStorage(TimeZoneStorageType.NORMALIZE_UTC)
+    @Column(name = "reference_time")
+    private ZonedDateTime referenceTime;
+
+    // A longtext column, which drivers report as a long varchar rather than a lob
+    @JdbcTypeCode(SqlTypes.LONGVARCHAR)
+    @Column(name = "profile_vector", length = Length.LONG32)
+    private String profileVector;
+
+    @Version
+    private int version;
+
+    @Transient
+    private EventVector vector = null;
+
+    public UserProfile () {
+
+    }
+
+    public UserProfile (User user, ZonedDateTime referenceTime) {
+        this.userId = user.getId();
+        this.referenceTime = referenceTime;
+        setVector(EventVector.identity());
+    }
+
+    public ZonedDateTime getReferenceTime () {
+        return referenceTime;
+    }
+
+    /**
+     * Adds the vector of an interaction to the profile
+     * @param eventVector vector of the event interacted with
+     * @param weight weight of the interaction
+     * @param interactTime time of the interaction
+     */
+    public void addInteraction (EventVector eventVector, double weight, ZonedDateTime interactTime) {
+        if (interactTime.isBefore(referenceTime)) {
+            // Decay the interaction instead, so that the reference time never moves backwards
+            setVector(getVector().add(eventVector.multiply(weight * UserInteraction.getDecay(interactTime, referenceTime))));
+        } else {
+            // Decay the existing sum to the time of the interaction
+            setVector(getVector().multiply(UserInteraction.getDecay(referenceTime, interactTime)).add(eventVector.multiply(weight)));
+            referenceTime = interactTime;
+        }
+    }
+
+    /**
+     * Replaces the profile with a sum of interactions decayed to the reference time
+     * @param vector
+     * @param referenceTime
+     */
+    public void reset (EventVector vector, ZonedDateTime referenceTime) {
+        setVector(vector);
+        this.referenceTime = referenceTime;
+    }
+
+    /**
+     * Gets the normalised profile vector
+     * @return
+     */
+    public EventVector getProfile () {
+        return getVector().normalise();
+    }
+
+    private EventVector getVector () {
+        if (vector == null) {
+            Map<String, Map<String, Double>> components = gson.fromJson(profileVector,
+                    new TypeToken<Map<String, Map<String, Double>>>(){}.getType());
+            vector = new EventVector(getComponent(components, "terms"), getComponent(components, "tags"),
+                    getComponent(components, "categories"), getComponent(components, "hosts"));
+        }
+
+        return vector;
+    }
+
+    private void setVector (EventVector vector) {
+        this.vector = vector;
+
+        var components = new HashMap<String, Map<String, Double>>();
+        components.put("terms", vector.getTermVector().toMap());
+        components.put("tags", vector.getTagVector().toMap());
+        components.put("categories", vector.getCategoryVector().toMap());
+        components.put("hosts", vector.getHostVector().toMap());
+        profileVector = gson.toJson(components);
+    }
+
+    private static CompactVector getComponent (Map<String, Map<String, Double>> components, String name) {
+        if (components == null || !components.containsKey(name)) {
+            return CompactVector.empty();
+        }
+
+        return CompactVector.fromMap(components.get(name));
+    }
+}
@@ -0,0 +1,560 @@
+package tickr.application.queue;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import tickr.application.entities.Event;
+import tickr.application.entities.QueueEntry;
+import tickr.application.entities.User;
+import tickr.persistence.DataModel;
+import tickr.persistence.ModelSession;
+import tickr.server.exceptions.ForbiddenException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Virtual waiting room for reserving and buying tickets. Users join the queue of an event and are admitted in the order
+ * they joined, at a configured rate per event, by a background job. Hosts turn the queue on for each event. Only admitted users may reserve or buy tickets of
+ * the event until their admission runs out. Places are persisted so queues survive a restart, but positions and
+ * admissions are checked from memory, so polling does not touch the database. Queues with no one waiting or admitted
+ * are evicted from memory, and database statements are never run while holding the lock of a queue. Disabled for all
+ * events unless configured with a rate
+ */
+public class AdmissionQueue implements AutoCloseable {
+    static final Logger logger = LogManager.getLogger();
+
+    // How long an admitted user may reserve and buy tickets for
+    public static final Duration ADMISSION_DURATION = Duration.ofMinutes(15);
+    // Waiting users who have not polled for this long are dropped when they reach the front of the queue
+    private static final long ABANDON_MS = Duration.ofMinutes(1).toMillis();
+    private static final long TICK_MS = 100;
+
+    private static volatile double admissionRate = 0;
+
+    private final DataModel model;
+    private final ScheduledExecutorService executor;
+
+    private final Map<UUID, EventQueue> queues = new ConcurrentHashMap<>();
+    // Places by queue token
+    private final Map<UUID, Place> places = new ConcurrentHashMap<>();
+
+    private AdmissionQueue (DataModel model) {
+        this.model = model;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            var thread = new Thread(r, "admission-queue");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::tick, TICK_MS, TICK_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sets how many users are admitted from the queue of each event per second, or disables the queues if zero
+     * @param admissionsPerSecond
+     */
+    public static void configure (double admissionsPerSecond) {
+        if (admissionsPerSecond < 0 || !Double.isFinite(admissionsPerSecond)) {
+            throw new IllegalArgumentException("Admission rate must not be negative!");
+        }
+
+        admissionRate = admissionsPerSecond;
+        if (admissionsPerSecond > 0) {
+            logger.info("Admitting {} users per second from each event queue!", admissionsPerSecond);
+        }
+    }
+
+    public static boolean isEnabled () {
+        return admissionRate > 0;
+    }
+
+    /**
+     * Checks whether users must queue for an event before reserving or buying its tickets
+     * @param event
+     * @return
+     */
+    public static boolean isEnabled (Event event) {
+        return isEnabled() && event.hasAdmissionQueue();
+    }
+
+    private static double getBurst (double rate) {
+        // A second's worth of admissions, so a quiet event admits new users on the next tick
+        return Math.max(1, rate);
+    }
+
+    public static AdmissionQueue get (ModelSession session) {
+        return get(session.getModel());
+    }
+
+    public static AdmissionQueue get (DataModel model) {
+        return model.getComponent(AdmissionQueue.class, AdmissionQueue::load);
+    }
+
+    /**
+     * Loads the queues from the database, as on startup. Use get instead, which shares one instance per model
+     * @param model
+     * @return
+     */
+    public static AdmissionQueue load (DataModel model) {
+        logger.info("Loading admission queues!");
+        var queue = new AdmissionQueue(model);
+        var now = System.currentTimeMillis();
+        var session = model.makeSession();
+        try {
+            var lapsed = new ArrayList<UUID>();
+            session.query(QueueEntry.class)
+                    .orderBy("position")
+                    .getResultStream()
+                    .forEach(e -> {
+                        if (!queue.loadEntry(e, now)) {
+                            lapsed.add(e.getId());
+                        }
+                    });
+            if (!lapsed.isEmpty()) {
+                session.query(QueueEntry.class)
+                        .whereIn("id", lapsed)
+                        .delete();
+            }
+            session.commit();
+        } catch (RuntimeException e) {
+            session.rollback();
+            queue.close();
+            throw e;
+        } finally {
+            session.close();
+        }
+        logger.info("Loaded {} places in {} admission queues!", queue.places.size(), queue.queues.size());
+
+        return queue;
+    }
+
+    private boolean loadEntry (QueueEntry entry, long now) {
+        var place = new Place(entry.getId(), entry.getEventId(), entry.getUserId(), entry.getPosition(), now);
+        if (entry.getAdmitTime() != null) {
+            place.admittedUntil = entry.getAdmitTime().toInstant().plus(ADMISSION_DURATION).toEpochMilli();
+            if (place.admittedUntil <= now) {
+                return false;
+            }
+        }
+        place.committed = true;
+
+        queues.computeIfAbsent(entry.getEventId(), k -> EventQueue.restored()).load(place);
+        places.put(place.token, place);
+
+        return true;
+    }
+
+    /**
+     * Joins the queue of an event, or gets the user's current place if they have already joined. The place is kept
+     * once the session commits
+     * @param session
+     * @param event
+     * @param user
+     * @return the user's place, or an admitted status without a token if the event has no queue
+     */
+    public Status join (ModelSession session, Event event, User user) {
+        if (!isEnabled(event)) {
+            return new Status(null, 0, true, 0);
+        }
+
+        Status status;
+        do {
+            var queue = queues.computeIfAbsent(event.getId(), k -> new EventQueue(getBurst(admissionRate)));
+            status = join(session, queue, event, user);
+        } while (status == null);
+
+        return status;
+    }
+
+    /**
+     * @return the user's place, or null if the queue has been evicted since it was got
+     */
+    private Status join (ModelSession session, EventQueue queue, Event event, User user) {
+        if (!isSeeded(queue)) {
+            // Places of an evicted queue of the event may not have been deleted yet, so carry on after them
+            var nextPosition = session.query(QueueEntry.class)
+                    .where("eventId", event.getId())
+                    .orderByDescending("position")
+                    .limit(1)
+                    .getFirst()
+                    .map(e -> e.getPosition() + 1)
+                    .orElse(0L);
+            synchronized (queue) {
+                if (!queue.seeded) {
+                    queue.nextPosition = Math.max(queue.nextPosition, nextPosition);
+                    queue.seeded = true;
+                }
+            }
+        }
+
+        var now = System.currentTimeMillis();
+        QueueEntry entry;
+        Place place;
+        Status status;
+        synchronized (queue) {
+            if (queue.evicted) {
+                return null;
+            }
+
+            var existing = queue.byUser.get(user.getId());
+            if (existing != null && !existing.hasLapsed(now)) {
+                existing.lastSeen = now;
+                return queue.getStatus(existing, now);
+            } else if (existing != null) {
+                // Admission ran out but has not yet been dropped, so drop it now to join again
+                queue.forget(existing);
+                places.remove(existing.token, existing);
+            }
+
+            // Queued in memory now, but not admitted until saved
+            entry = new QueueEntry(event.getId(), user.getId(), queue.nextPosition++,
+                    ZonedDateTime.now(ZoneId.of("UTC")));
+            place = new Place(entry.getId(), event.getId(), user.getId(), entry.getPosition(), now);
+            queue.add(place);
+            status = queue.getStatus(place, now);
+        }
+        places.put(place.token, place);
+
+        // Admission waits for the place to be committed, so that no one behind it is admitted before it
+        session.onCommit(() -> {
+            synchronized (queue) {
+                place.committed = true;
+            }
+        });
+        session.onRollback(() -> {
+            synchronized (queue) {
+                queue.forget(place);
+            }
+            places.remove(place.token, place);
+        });
+
+        // A place dropped from memory stays until the admission job deletes it, so any earlier place of the user is
+        // deleted in the same transaction as joining again
+        session.query(QueueEntry.class)
+                .where("eventId", event.getId())
+                .where("userId", user.getId())
+                .delete();
+        session.save(entry);
+
+        return status;
+    }
+
+    private static boolean isSeeded (EventQueue queue) {
+        synchronized (queue) {
+            return queue.seeded;
+        }
+    }
+
+    /**
+     * Gets the current place of a queue token, counting as the user still waiting
+     * @param token
+     * @return
+     */
+    public Status getStatus (UUID token) {
+        var place = places.get(token);
+        if (place == null) {
+            throw new ForbiddenException("Invalid queue token!");
+        }
+
+        var now = System.currentTimeMillis();
+        var queue = queues.get(place.eventId);
+        if (queue == null) {
+            throw new ForbiddenException("Invalid queue token!");
+        }
+        synchronized (queue) {
+            if (place.hasLapsed(now)) {
+                throw new ForbiddenException("Queue token has expired!");
+            }
+            place.lastSeen = now;
+            return queue.getStatus(place, now);
+        }
+    }
+
+    /**
+     * Checks that a user has been admitted from the queue of an event, if the event has one
+     * @param event
+     * @param userId
+     */
+    public void checkAdmitted (Event event, UUID userId) {
+        if (!isEnabled(event)) {
+            return;
+        }
+
+        var queue = queues.get(event.getId());
+        if (queue == null) {
+            throw new ForbiddenException("Not admitted from the queue!");
+        }
+        synchronized (queue) {
+            var place = queue.byUser.get(userId);
+            if (place == null || place.admittedUntil == 0 || place.hasLapsed(System.currentTimeMillis())) {
+                throw new ForbiddenException("Not admitted from the queue!");
+            }
+        }
+    }
+
+    /**
+     * Removes the queue of an event, now and from memory once the session commits
+     * @param session
+     * @param event
+     */
+    public static void onEventRemove (ModelSession session, Event event) {
+        var eventId = event.getId();
+        session.query(QueueEntry.class)
+                .where("eventId", eventId)
+                .delete();
+        session.onCommit(() -> get(session).removeQueue(eventId));
+    }
+
+    /**
+     * Forgets all queues once the session commits
+     * @param session
+     */
+    public static void onClear (ModelSession session) {
+        session.onCommit(() -> {
+            var queue = get(session);
+            for (var i : queue.queues.keySet()) {
+                queue.removeQueue(i);
+            }
+            queue.places.clear();
+        });
+    }
+
+    private void removeQueue (UUID eventId) {
+        var queue = queues.remove(eventId);
+        if (queue != null) {
+            synchronized (queue) {
+                queue.evicted = true;
+            }
+            places.values().removeIf(p -> p.eventId.equals(eventId));
+        }
+    }
+
+    private void tick () {
+        var rate = admissionRate;
+        if (rate <= 0) {
+            return;
+        }
+
+        var now = System.currentTimeMillis();
+        var admitted = new ArrayList<Place>();
+        var dropped = new ArrayList<Place>();
+        for (var i : queues.entrySet()) {
+            var queue = i.getValue();
+            synchronized (queue) {
+                queue.admit(now, rate, admitted, dropped);
+                if (queue.isEmpty()) {
+                    // Nothing left to admit or check, so the next user to join makes a new queue
+                    queue.evicted = true;
+                    queues.remove(i.getKey(), queue);
+                }
+            }
+        }
+        for (var i : dropped) {
+            places.remove(i.token, i);
+        }
+
+        if (!admitted.isEmpty() || !dropped.isEmpty()) {
+            persist(admitted, dropped);
+        }
+    }
+
+    private void persist (List<Place> admitted, List<Place> dropped) {
+        var session = model.makeSession();
+        try {
+            for (var i : admitted) {
+                var admitTime = ZonedDateTime.ofInstant(Instant.ofEpochMilli(i.admittedUntil).minus(ADMISSION_DURATION),
+                        ZoneId.of("UTC"));
+                // May have been removed along with its event since
+                session.getById(QueueEntry.class, i.token)
+                        .ifPresent(e -> e.setAdmitTime(admitTime));
+            }
+            if (!dropped.isEmpty()) {
+                session.query(QueueEntry.class)
+                        .whereIn("id", dropped.stream().map(p -> p.token).collect(Collectors.toList()))
+                        .delete();
+            }
+            session.commit();
+        } catch (RuntimeException e) {
+            // Admissions are still kept in memory, but waiting again after a restart
+            logger.error("Failed to save admissions!", e);
+            session.rollback();
+        } finally {
+            session.close();
+        }
+    }
+
+    @Override
+    public void close () {
+        executor.shutdown();
+        try {
+            // Let admissions being saved finish
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static class Status {
+        private final UUID token;
+        private final long place;
+        private final boolean admitted;
+        private final long waitSeconds;
+
+        private Status (UUID token, long place, boolean admitted, long waitSeconds) {
+            this.token = token;
+            this.place = place;
+            this.admitted = admitted;
+            this.waitSeconds = waitSeconds;
+        }
+
+        public UUID getToken () {
+            return token;
+        }
+
+        /**
+         * @return the place in the queue counting from 1, or 0 once admitted
+         */
+        public long getPlace () {
+            return place;
+        }
+
+        public boolean isAdmitted () {
+            return admitted;
+        }
+
+        public long getWaitSeconds () {
+            return waitSeconds;
+        }
+    }
+
+    private static class Place {
+        private final UUID token;
+        private final UUID eventId;
+        private final UUID userId;
+        private final long position;
+
+        // Guarded by the event queue
+        private boolean committed = false;
+        private long admittedUntil = 0; // Epoch millis, 0 while waiting
+        private long lastSeen;
+
+        private Place (UUID token, UUID eventId, UUID userId, long position, long lastSeen) {
+            this.token = token;
+            this.eventId = eventId;
+            this.userId = userId;
+            this.position = position;
+            this.lastSeen = lastSeen;
+        }
+
+        private boolean hasLapsed (long now) {
+            return admittedUntil != 0 && admittedUntil <= now;
+        }
+    }
+
+    /**
+     * The queue of one event. Admits at the configured rate with a token bucket
+     */
+    private static class EventQueue {
+        private final TreeMap<Long, Place> waiting = new TreeMap<>();
+        // In order of admission, so also of when admission runs out
+        private final ArrayDeque<Place> admitted = new ArrayDeque<>();
+        private final Map<UUID, Place> byUser = new HashMap<>();
+        private long nextPosition = 0;
+        // Whether positions are known to carry on after any left in the database
+        private boolean seeded;
+        private boolean evicted = false;
+
+        private double tokens;
+        private long lastRefill = System.currentTimeMillis();
+
+        private EventQueue (double tokens, boolean seeded) {
+            this.tokens = tokens;
+            this.seeded = seeded;
+        }
+
+        private EventQueue (double tokens) {
+            this(tokens, false);
+        }
+
+        private static EventQueue restored () {
+            // Starts empty so a restart does not let a burst through, with positions following those loaded
+            return new EventQueue(0, true);
+        }
+
+        private void load (Place place) {
+            if (place.admittedUntil != 0) {
+                admitted.add(place);
+            } else {
+                waiting.put(place.position, place);
+            }
+            byUser.put(place.userId, place);
+            nextPosition = Math.max(nextPosition, place.position + 1);
+        }
+
+        private void add (Place place) {
+            waiting.put(place.position, place);
+            byUser.put(place.userId, place);
+        }
+
+        private boolean isEmpty () {
+            return waiting.isEmpty() && admitted.isEmpty();
+        }
+
+        private void forget (Place place) {
+            waiting.remove(place.position, place);
+            admitted.remove(place);
+            byUser.remove(place.userId, place);
+        }
+
+        private void admit (long now, double rate, List<Place> newlyAdmitted, List<Place> dropped) {
+            tokens = Math.min(getBurst(rate), tokens + (now - lastRefill) * rate / 1000);
+            lastRefill = now;
+
+            while (!waiting.isEmpty() && tokens >= 1) {
+                var head = waiting.firstEntry().getValue();
+                if (!head.committed) {
+                    // Still joining
+                    break;
+                }
+                waiting.pollFirstEntry();
+
+                if (now - head.lastSeen > ABANDON_MS) {
+                    byUser.remove(head.userId, head);
+                    dropped.add(head);
+                    continue;
+                }
+
+                head.admittedUntil = now + ADMISSION_DURATION.toMillis();
+                admitted.add(head);
+                newlyAdmitted.add(head);
+                tokens--;
+            }
+
+            while (!admitted.isEmpty() && admitted.peek().hasLapsed(now)) {
+                var place = admitted.poll();
+                byUser.remove(place.userId, place);
+                dropped.add(place);
+            }
+        }
+
+        private Status getStatus (Place place, long now) {
+            if (place.admittedUntil != 0) {
+                return new Status(place.token, 0, true, 0);
+            }
+
+            // Counts from the front of the queue, so places given up ahead are still counted until they are reached
+            long ahead = waiting.isEmpty() ? 0 : place.position - waiting.firstKey();
+            var rate = admissionRate;
+            long waitSeconds = rate > 0 ? (long)Math.ceil((ahead + 1) / rate) : 0;
+
+            return new Status(place.token, ahead + 1, false, waitSeconds);
+        }
+    }
+}
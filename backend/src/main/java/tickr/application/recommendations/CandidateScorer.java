@@ -0,0 +1,136 @@
+package tickr.application.recommendations;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import tickr.util.TopKSelector;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Scores recommendation candidates in parallel on a dedicated fork-join pool, kept separate from the server's request
+ * threads so that a large catalogue cannot starve other requests. Scores are written by candidate index and then
+ * offered to the selector in candidate order, so results are identical to scoring sequentially
+ */
+public class CandidateScorer {
+    static final Logger logger = LogManager.getLogger();
+
+    // Below this many candidates splitting costs more than it saves
+    static final int SEQUENTIAL_THRESHOLD = 1024;
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+    private static volatile ForkJoinPool pool = null;
+
+    /**
+     * Sets the number of threads used for scoring, replacing the current pool. Defaults to the number of processors
+     * @param parallelism
+     */
+    public static synchronized void configure (int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Scoring parallelism must be positive!");
+        }
+
+        var oldPool = pool;
+        pool = makePool(parallelism);
+        if (oldPool != null) {
+            oldPool.shutdown();
+        }
+        logger.info("Scoring recommendations with {} threads!", parallelism);
+    }
+
+    private static ForkJoinPool getPool () {
+        var curr = pool;
+        if (curr == null) {
+            synchronized (CandidateScorer.class) {
+                if (pool == null) {
+                    pool = makePool(Runtime.getRuntime().availableProcessors());
+                }
+                curr = pool;
+            }
+        }
+
+        return curr;
+    }
+
+    private static ForkJoinPool makePool (int parallelism) {
+        return new ForkJoinPool(parallelism, p -> {
+            var thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            thread.setName("candidate-scoring-" + threadCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * Scores every candidate
+     * @param candidates
+     * @param scorer must not access a session, as it is run on other threads
+     * @return scores in candidate order
+     */
+    public static double[] score (List<RecommendCandidate> candidates, ToDoubleFunction<RecommendCandidate> scorer) {
+        var scores = new double[candidates.size()];
+        var task = new ScoreTask(candidates, scorer, scores, 0, candidates.size());
+        if (candidates.size() <= SEQUENTIAL_THRESHOLD) {
+            task.compute();
+        } else {
+            getPool().invoke(task);
+        }
+
+        return scores;
+    }
+
+    /**
+     * Scores every candidate and selects a page of the highest scoring candidate ids
+     * @param candidates
+     * @param scorer must not access a session, as it is run on other threads
+     * @param pageStart
+     * @param maxResults
+     * @return
+     */
+    public static TopKSelector<String> select (List<RecommendCandidate> candidates, ToDoubleFunction<RecommendCandidate> scorer,
+                                               int pageStart, int maxResults) {
+        var scores = score(candidates, scorer);
+
+        // Merge sequentially so ties are ranked in candidate order regardless of how the work was split
+        var selector = TopKSelector.<String>forPage(pageStart, maxResults);
+        for (int i = 0; i < scores.length; i++) {
+            selector.offer(candidates.get(i).getId(), scores[i]);
+        }
+
+        return selector;
+    }
+
+    private static class ScoreTask extends RecursiveAction {
+        private final List<RecommendCandidate> candidates;
+        private final ToDoubleFunction<RecommendCandidate> scorer;
+        private final double[] scores;
+        private final int start;
+        private final int end;
+
+        ScoreTask (List<RecommendCandidate> candidates, ToDoubleFunction<RecommendCandidate> scorer, double[] scores,
+                   int start, int end) {
+            this.candidates = candidates;
+            this.scorer = scorer;
+            this.scores = scores;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute () {
+            if (end - start <= SEQUENTIAL_THRESHOLD) {
+                for (int i = start; i < end; i++) {
+                    scores[i] = scorer.applyAsDouble(candidates.get(i));
+                }
+                return;
+            }
+
+            int mid = (start + end) >>> 1;
+            invokeAll(new ScoreTask(candidates, scorer, scores, start, mid),
+                    new ScoreTask(candidates, scorer, scores, mid, end));
+        }
+    }
+}
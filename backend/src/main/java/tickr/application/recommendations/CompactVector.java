@@ -0,0 +1,223 @@
+package tickr.application.recommendations;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable sparse vector stored as parallel arrays of interned key ids (see TermDictionary) in ascending order and
+ * their values. Operations merge the two key arrays in a single pass, and dot() does not allocate
+ */
+public class CompactVector {
+    private static final CompactVector EMPTY = new CompactVector(new int[0], new double[0]);
+
+    private final int[] keys;
+    private final double[] values;
+
+    private CompactVector (int[] keys, double[] values) {
+        this.keys = keys;
+        this.values = values;
+    }
+
+    public static CompactVector empty () {
+        return EMPTY;
+    }
+
+    public static CompactVector of (String key, double value) {
+        return new CompactVector(new int[]{TermDictionary.intern(key)}, new double[]{value});
+    }
+
+    /**
+     * Converts to a map of the original keys to values, e.g. for persisting
+     * @return
+     */
+    public Map<String, Double> toMap () {
+        var map = new HashMap<String, Double>();
+        for (int i = 0; i < keys.length; i++) {
+            map.put(TermDictionary.getKey(keys[i]), values[i]);
+        }
+
+        return map;
+    }
+
+    public static CompactVector fromMap (Map<String, Double> map) {
+        var builder = new Builder();
+        for (var i : map.entrySet()) {
+            builder.add(i.getKey(), i.getValue());
+        }
+
+        return builder.build();
+    }
+
+    public int size () {
+        return keys.length;
+    }
+
+    public double length () {
+        return Math.sqrt(sqLength());
+    }
+
+    public double sqLength () {
+        double result = 0;
+        for (var i : values) {
+            result += i * i;
+        }
+
+        return result;
+    }
+
+    public CompactVector normalised () {
+        var len = length();
+
+        if (len == 0) {
+            return this;
+        }
+
+        // Scale by inverse length to normalise vector
+        return multiply(1 / len);
+    }
+
+    public CompactVector multiply (double val) {
+        var newValues = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            newValues[i] = values[i] * val;
+        }
+
+        return new CompactVector(keys, newValues);
+    }
+
+    public double dot (CompactVector other) {
+        // As both key arrays are ordered we can iterate through both simultaneously, only multiplying matching keys
+        int it1 = 0;
+        int it2 = 0;
+
+        double result = 0;
+        while (it1 < keys.length && it2 < other.keys.length) {
+            int key1 = keys[it1];
+            int key2 = other.keys[it2];
+
+            if (key1 < key2) {
+                it1++;
+            } else if (key1 > key2) {
+                it2++;
+            } else {
+                result += values[it1++] * other.values[it2++];
+            }
+        }
+
+        return result;
+    }
+
+    public CompactVector cartesianProduct (CompactVector other) {
+        // Make the cartesian (elementwise product), which only contains the keys present in both vectors
+        int size = Math.min(keys.length, other.keys.length);
+        var newKeys = new int[size];
+        var newValues = new double[size];
+
+        int it1 = 0;
+        int it2 = 0;
+        int n = 0;
+        while (it1 < keys.length && it2 < other.keys.length) {
+            int key1 = keys[it1];
+            int key2 = other.keys[it2];
+
+            if (key1 < key2) {
+                it1++;
+            } else if (key1 > key2) {
+                it2++;
+            } else {
+                newKeys[n] = key1;
+                newValues[n++] = values[it1++] * other.values[it2++];
+            }
+        }
+
+        return trimmed(newKeys, newValues, n);
+    }
+
+    public CompactVector add (CompactVector other) {
+        if (other.keys.length == 0) {
+            return this;
+        } else if (keys.length == 0) {
+            return other;
+        }
+
+        // Add two vectors, ensuring that the resulting keys are still ordered
+        int size = keys.length + other.keys.length;
+        var newKeys = new int[size];
+        var newValues = new double[size];
+
+        int it1 = 0;
+        int it2 = 0;
+        int n = 0;
+        while (it1 < keys.length || it2 < other.keys.length) {
+            if (it2 == other.keys.length || (it1 < keys.length && keys[it1] < other.keys[it2])) {
+                newKeys[n] = keys[it1];
+                newValues[n++] = values[it1++];
+            } else if (it1 == keys.length || other.keys[it2] < keys[it1]) {
+                newKeys[n] = other.keys[it2];
+                newValues[n++] = other.values[it2++];
+            } else {
+                // Keys are the same, so add both columns as one
+                newKeys[n] = keys[it1];
+                newValues[n++] = values[it1++] + other.values[it2++];
+            }
+        }
+
+        return trimmed(newKeys, newValues, n);
+    }
+
+    private static CompactVector trimmed (int[] keys, double[] values, int size) {
+        if (size == keys.length) {
+            return new CompactVector(keys, values);
+        }
+
+        return new CompactVector(Arrays.copyOf(keys, size), Arrays.copyOf(values, size));
+    }
+
+    /**
+     * Collects keys and values in any order. Values of repeated keys are added together
+     */
+    public static class Builder {
+        private int[] keys = new int[8];
+        private double[] values = new double[8];
+        private int size = 0;
+
+        public Builder add (String key, double value) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            keys[size] = TermDictionary.intern(key);
+            values[size++] = value;
+
+            return this;
+        }
+
+        public CompactVector build () {
+            if (size == 0) {
+                return EMPTY;
+            }
+
+            // Sort indices by key, then write out in key order, combining repeated keys
+            var order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Integer.compare(keys[a], keys[b]));
+
+            var newKeys = new int[size];
+            var newValues = new double[size];
+            int n = 0;
+            for (var i : order) {
+                if (n > 0 && newKeys[n - 1] == keys[i]) {
+                    newValues[n - 1] += values[i];
+                } else {
+                    newKeys[n] = keys[i];
+                    newValues[n++] = values[i];
+                }
+            }
+
+            return trimmed(newKeys, newValues, n);
+        }
+    }
+}
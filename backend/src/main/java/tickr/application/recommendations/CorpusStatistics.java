@@ -0,0 +1,150 @@
+package tickr.application.recommendations;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import tickr.application.entities.Category;
+import tickr.application.entities.Event;
+import tickr.application.entities.Tag;
+import tickr.persistence.DataModel;
+import tickr.persistence.ModelSession;
+import tickr.util.Utils;
+
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Statistics of the whole event corpus used when scoring recommendations. These are shared across requests as an
+ * immutable snapshot, which is recomputed in the session of the next lookup after a committed change to the events,
+ * tags or categories
+ */
+public class CorpusStatistics {
+    static final Logger logger = LogManager.getLogger();
+
+    private final AtomicInteger version = new AtomicInteger();
+    private volatile Snapshot snapshot = null;
+    // Sessions with uncommitted changes to the corpus
+    private final Set<ModelSession> changing = ConcurrentHashMap.newKeySet();
+
+    private CorpusStatistics (DataModel model) {
+
+    }
+
+    private static CorpusStatistics getInstance (ModelSession session) {
+        return session.getModel().getComponent(CorpusStatistics.class, CorpusStatistics::new);
+    }
+
+    /**
+     * Gets the current corpus statistics, computing them in the given session if they are out of date. Only includes
+     * changes from committed sessions, apart from those of the given session if it commits
+     * @param session
+     * @return
+     */
+    public static Snapshot get (ModelSession session) {
+        return getInstance(session).getSnapshot(session);
+    }
+
+    /**
+     * Invalidates the statistics once the session commits. Must be called whenever events are created or deleted,
+     * or their tags or categories change
+     * @param session
+     */
+    public static void onCorpusChange (ModelSession session) {
+        var stats = getInstance(session);
+        if (stats.changing.add(session)) {
+            session.onCommit(() -> {
+                stats.changing.remove(session);
+                stats.invalidate();
+            });
+            session.onRollback(() -> stats.changing.remove(session));
+        }
+    }
+
+    public Snapshot getSnapshot (ModelSession session) {
+        var curr = snapshot;
+        if (curr != null && curr.getVersion() == version.get()) {
+            return curr;
+        }
+
+        synchronized (this) {
+            // Recheck in case another thread has already recomputed it
+            curr = snapshot;
+            int currVersion = version.get();
+            if (curr == null || curr.getVersion() != currVersion) {
+                curr = compute(session, currVersion);
+                snapshot = curr;
+            }
+            return curr;
+        }
+    }
+
+    public void invalidate () {
+        version.incrementAndGet();
+    }
+
+    private Snapshot compute (ModelSession session, int snapshotVersion) {
+        logger.debug("Computing corpus statistics version {}!", snapshotVersion);
+        int numEvents = (int) session.query(Event.class).count();
+        var tagIdf = buildIdf(session.getAllStream(Tag.class).map(Tag::getTags), numEvents);
+        var categoryIdf = buildIdf(session.getAllStream(Category.class).map(Category::getCategory), numEvents);
+        var computed = new Snapshot(snapshotVersion, numEvents, tagIdf, categoryIdf);
+
+        if (changing.contains(session)) {
+            // Includes uncommitted changes of the session, which are gone if it rolls back
+            session.onRollback(() -> {
+                if (snapshot == computed) {
+                    invalidate();
+                }
+            });
+        }
+
+        return computed;
+    }
+
+    private static CompactVector buildIdf (Stream<String> keys, int numEvents) {
+        // Convert to type, num map
+        var countMap = keys.map(s -> s.toLowerCase(Locale.ROOT))
+                .collect(Collectors.groupingBy(s -> s, Collectors.counting()));
+
+        // Convert type, num map to idfs
+        var builder = new CompactVector.Builder();
+        for (var i : countMap.entrySet()) {
+            builder.add(i.getKey(), Utils.getIdf(i.getValue().intValue(), numEvents));
+        }
+
+        return builder.build().normalised();
+    }
+
+    public static class Snapshot {
+        private final int version;
+        private final int numEvents;
+        private final CompactVector tagIdf;
+        private final CompactVector categoryIdf;
+
+        public Snapshot (int version, int numEvents, CompactVector tagIdf, CompactVector categoryIdf) {
+            this.version = version;
+            this.numEvents = numEvents;
+            this.tagIdf = tagIdf;
+            this.categoryIdf = categoryIdf;
+        }
+
+        public int getVersion () {
+            return version;
+        }
+
+        public int getNumEvents () {
+            return numEvents;
+        }
+
+        public CompactVector getTagIdf () {
+            return tagIdf;
+        }
+
+        public CompactVector getCategoryIdf () {
+            return categoryIdf;
+        }
+    }
+}
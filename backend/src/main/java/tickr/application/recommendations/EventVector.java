@@ -1,28 +1,42 @@
 package tickr.application.recommendations;
 
-import tickr.application.entities.Event;
-
-import java.util.List;
-
 public class EventVector {
-    private SparseVector<String> termVector;
-    private SparseVector<String> tagVector;
-    private SparseVector<String> categoryVector;
+    private static final EventVector IDENTITY = new EventVector(CompactVector.empty(), CompactVector.empty(),
+            CompactVector.empty(), CompactVector.empty());
+
+    private final CompactVector termVector;
+    private final CompactVector tagVector;
+    private final CompactVector categoryVector;
 
-    private SparseVector<String> hostVector;
+    private final CompactVector hostVector;
 
-    public EventVector (SparseVector<String> termVector, SparseVector<String> tagVector, SparseVector<String> categoryVector,
-                        SparseVector<String> hostVector) {
+    public EventVector (CompactVector termVector, CompactVector tagVector, CompactVector categoryVector,
+                        CompactVector hostVector) {
         this.termVector = termVector;
         this.tagVector = tagVector;
         this.categoryVector = categoryVector;
         this.hostVector = hostVector;
     }
 
+    public CompactVector getTermVector () {
+        return termVector;
+    }
+
+    public CompactVector getTagVector () {
+        return tagVector;
+    }
+
+    public CompactVector getCategoryVector () {
+        return categoryVector;
+    }
+
+    public CompactVector getHostVector () {
+        return hostVector;
+    }
+
     public static EventVector identity () {
         // Get identity (0) event vector
-        return new EventVector(new SparseVector<String>(List.of(), List.of()), new SparseVector<String>(List.of(), List.of()),
-                new SparseVector<String>(List.of(), List.of()), new SparseVector<String>(List.of(), List.of()));
+        return IDENTITY;
     }
 
     public EventVector add (EventVector other) {
@@ -37,11 +51,11 @@ public class EventVector {
 
     public Vector combine (EventVector other, double location) {
         // Combine two EventVectors with a dot product to make a Vector with a given location column
-        return new Vector(List.of(termVector.dot(other.termVector), tagVector.dot(other.tagVector), categoryVector.dot(other.categoryVector),
-                hostVector.dot(other.hostVector), location));
+        return new Vector(termVector.dot(other.termVector), tagVector.dot(other.tagVector), categoryVector.dot(other.categoryVector),
+                hostVector.dot(other.hostVector), location);
     }
 
-    public EventVector applyIdfs (SparseVector<String> tagIdf, SparseVector<String> categoryIdf) {
+    public EventVector applyIdfs (CompactVector tagIdf, CompactVector categoryIdf) {
         // Apply tag and category idfs to convert to Tf-Idfs
         return new EventVector(termVector, tagVector.cartesianProduct(tagIdf).normalised(), categoryVector.cartesianProduct(categoryIdf).normalised(), hostVector);
     }
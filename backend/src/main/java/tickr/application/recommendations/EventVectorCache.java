@@ -0,0 +1,96 @@
+package tickr.application.recommendations;
+
+import tickr.application.entities.Event;
+import tickr.persistence.DataModel;
+import tickr.persistence.ModelSession;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches the vectors of each event, keyed by event id and the version of the corpus statistics they were computed
+ * from. Anything that changes an event vector also changes the corpus version, so an entry is only served to lookups
+ * with the same snapshot, and entries of older versions are dropped once a newer version is seen
+ */
+public class EventVectorCache {
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+    private volatile int latestVersion = -1;
+
+    private EventVectorCache (DataModel model) {
+
+    }
+
+    public static EventVectorCache get (ModelSession session) {
+        return session.getModel().getComponent(EventVectorCache.class, EventVectorCache::new);
+    }
+
+    /**
+     * Gets the vectors of an event, building them if they are not cached for the version of the statistics
+     * @param stats current corpus statistics
+     * @param event
+     * @return
+     */
+    public Entry getVectors (CorpusStatistics.Snapshot stats, Event event) {
+        var version = stats.getVersion();
+        var key = new Key(event.getId(), version);
+        var entry = entries.get(key);
+        if (entry != null) {
+            return entry;
+        }
+
+        var raw = event.getEventVector(stats.getNumEvents());
+        entry = new Entry(version, raw, raw.applyIdfs(stats.getTagIdf(), stats.getCategoryIdf()));
+        if (version > latestVersion) {
+            dropBefore(version);
+        }
+        if (version == latestVersion) {
+            // Lookups still using an older snapshot are not cached, as nothing would drop them again
+            entries.putIfAbsent(key, entry);
+        }
+
+        return entry;
+    }
+
+    private synchronized void dropBefore (int version) {
+        if (version > latestVersion) {
+            latestVersion = version;
+            entries.keySet().removeIf(k -> k.version < version);
+        }
+    }
+
+    private record Key (UUID eventId, int version) {}
+
+    public static class Entry {
+        private final int version;
+        private final EventVector raw;
+        private final EventVector weighted;
+
+        public Entry (int version, EventVector raw, EventVector weighted) {
+            this.version = version;
+            this.raw = raw;
+            this.weighted = weighted;
+        }
+
+        /**
+         * Gets the version of the corpus statistics the vectors were computed from
+         */
+        public int getVersion () {
+            return version;
+        }
+
+        /**
+         * Gets the event vector before tag and category idfs are applied, as used to build user profiles
+         */
+        public EventVector getRaw () {
+            return raw;
+        }
+
+        /**
+         * Gets the event vector with tag and category idfs applied
+         */
+        public EventVector getWeighted () {
+            return weighted;
+        }
+    }
+}
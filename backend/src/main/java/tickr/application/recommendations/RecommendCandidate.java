@@ -0,0 +1,39 @@
+package tickr.application.recommendations;
+
+import tickr.application.apis.location.LocationPoint;
+
+/**
+ * Event detached from the session with everything needed to score it, so that candidates can be scored on other
+ * threads
+ */
+public class RecommendCandidate {
+    private final String id;
+    private final EventVector vector;
+    private final LocationPoint point;
+
+    public RecommendCandidate (String id, EventVector vector, LocationPoint point) {
+        this.id = id;
+        this.vector = vector;
+        this.point = point;
+    }
+
+    public String getId () {
+        return id;
+    }
+
+    /**
+     * Gets the event vector with tag and category idfs applied
+     * @return
+     */
+    public EventVector getVector () {
+        return vector;
+    }
+
+    public double getDistance (RecommendCandidate other) {
+        if (point == null || other.point == null) {
+            // One point does not exist, return infinite distance
+            return Double.POSITIVE_INFINITY;
+        }
+        return point.getDistance(other.point);
+    }
+}
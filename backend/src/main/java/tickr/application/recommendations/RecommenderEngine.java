@@ -1,22 +1,36 @@
 package tickr.application.recommendations;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import tickr.application.entities.*;
+import tickr.persistence.DataModel;
 import tickr.persistence.ModelSession;
-import tickr.util.Utils;
 
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
 
 public class RecommenderEngine {
+    static final Logger logger = LogManager.getLogger();
+
     private static final double TERM_WEIGHT = 1;
     private static final double TAG_WEIGHT = 0.4;
     private static final double CATEGORY_WEIGHT = 0.6;
     private static final double HOST_WEIGHT = 0.7;
     private static final double DISTANCE_WEIGHT = 1.5;
 
-    private static final Vector WEIGHT_VECTOR = new Vector(List.of(TERM_WEIGHT, TAG_WEIGHT, CATEGORY_WEIGHT, HOST_WEIGHT, DISTANCE_WEIGHT))
+    private static final int TERM_CHANGE_ATTEMPTS = 3;
+    private static final int PROFILE_UPDATE_ATTEMPTS = 3;
+
+    private static final Vector WEIGHT_VECTOR = new Vector(TERM_WEIGHT, TAG_WEIGHT, CATEGORY_WEIGHT, HOST_WEIGHT, DISTANCE_WEIGHT)
             .normalised();
 
+    /**
+     * Rebuilds the tf idfs of every event from scratch. Only required for repairing the tables, as they are otherwise
+     * kept up to date by updateTfIdfs() and removeTfIdfs()
+     * @param session
+     */
     public static void forceRecalculate (ModelSession session) {
         session.clear(TfIdf.class);
         session.clear(DocumentTerm.class);
@@ -25,29 +39,32 @@ public class RecommenderEngine {
     }
 
     private static void calculateTfIdfs (ModelSession session) {
-        // Calculate tf idfs for all events
-        var docTerms = new HashMap<String, DocumentTerm>();
-        for (var i : session.getAll(Event.class)) {
+        var events = session.getAll(Event.class);
+        var eventWordCounts = new HashMap<Event, Map<String, Long>>();
+        var documentCounts = new HashMap<String, Integer>();
+        for (var i : events) {
             // Get word counts of event
-            var wordCounts = i .getWordCounts();
-
-            var tfidfs = new ArrayList<TfIdf>();
-            for (var j : wordCounts.entrySet()) {
-                // Get or create document term associated with word
-                DocumentTerm term;
-                if (docTerms.containsKey(j.getKey())) {
-                    term = docTerms.get(j.getKey());
-                } else {
-                    term = new DocumentTerm(j.getKey(), 0);
-                    session.save(term);
-                    docTerms.put(j.getKey(), term);
-                }
+            var wordCounts = i.getWordCounts();
+            eventWordCounts.put(i, wordCounts);
+            for (var j : wordCounts.keySet()) {
+                documentCounts.merge(j, 1, Integer::sum);
+            }
+        }
 
-                // Increment term count
-                term.incrementCount();
+        // Create document terms with their final counts
+        var docTerms = new HashMap<String, DocumentTerm>();
+        for (var i : documentCounts.entrySet()) {
+            var term = new DocumentTerm(i.getKey(), i.getValue());
+            session.save(term);
+            docTerms.put(i.getKey(), term);
+        }
 
+        // Calculate tf idfs for all events
+        for (var i : events) {
+            var tfidfs = new ArrayList<TfIdf>();
+            for (var j : eventWordCounts.get(i).entrySet()) {
                 // Create tf idf instance for this event
-                var tfIdf = new TfIdf(term, i, j.getValue().intValue());
+                var tfIdf = new TfIdf(docTerms.get(j.getKey()), i, j.getValue().intValue());
                 session.save(tfIdf);
                 tfidfs.add(tfIdf);
             }
@@ -57,69 +74,251 @@ public class RecommenderEngine {
         }
     }
 
+    /**
+     * Updates the tf idfs of an event after it has been created or its words have changed. Tf idfs of new words and the
+     * document counts of added and removed terms are changed once the session commits, see changeTerms()
+     * @param session
+     * @param event
+     */
+    public static void updateTfIdfs (ModelSession session, Event event) {
+        var wordCounts = event.getWordCounts();
+
+        var tfIdfs = new ArrayList<TfIdf>();
+        var removedTerms = new ArrayList<String>();
+        boolean changed = false;
+        for (var i : event.getTfIdfs()) {
+            var term = i.getTermString();
+            if (wordCounts.containsKey(term)) {
+                // Term still in event, only its frequency may have changed
+                var oldFreq = i.getTermFreq();
+                i.setTermCount(wordCounts.get(term).intValue());
+                changed |= i.getTermFreq() != oldFreq;
+                tfIdfs.add(i);
+            } else {
+                // Term removed from event. Terms with a count of 0 are kept so that they can be reused
+                removedTerms.add(term);
+                session.remove(i);
+                changed = true;
+            }
+        }
+        event.setTfIdfs(tfIdfs);
+
+        var existingTerms = tfIdfs.stream()
+                .map(TfIdf::getTermString)
+                .collect(Collectors.toSet());
+        var newWords = new HashMap<String, Integer>();
+        for (var i : wordCounts.entrySet()) {
+            if (!existingTerms.contains(i.getKey())) {
+                newWords.put(i.getKey(), i.getValue().intValue());
+            }
+        }
+
+        if (!newWords.isEmpty() || !removedTerms.isEmpty()) {
+            var model = session.getModel();
+            var eventId = event.getId();
+            session.onCommit(() -> changeTerms(model, eventId, newWords, removedTerms));
+            changed = true;
+        }
+        if (changed) {
+            // Document counts are shared by all events, so cached event vectors must be rebuilt
+            CorpusStatistics.onCorpusChange(session);
+        }
+    }
+
+    /**
+     * Removes the tf idfs of an event that is about to be deleted. The document counts of its terms are decremented
+     * once the session commits
+     * @param session
+     * @param event
+     */
+    public static void removeTfIdfs (ModelSession session, Event event) {
+        var terms = new ArrayList<String>();
+        for (var i : event.getTfIdfs()) {
+            terms.add(i.getTermString());
+            session.remove(i);
+        }
+        event.setTfIdfs(List.of());
+
+        if (!terms.isEmpty()) {
+            var model = session.getModel();
+            var eventId = event.getId();
+            session.onCommit(() -> changeTerms(model, eventId, Map.of(), terms));
+        }
+    }
+
+    /**
+     * Adds the tf idfs of new words of an event and changes the document counts of its added and removed terms, after
+     * the change to the event has been committed. Runs in a short transaction of its own, so the rows of common terms
+     * shared by every event are only locked briefly rather than for the whole request, and are locked in term order so
+     * concurrent changes do not deadlock. Retried if another change makes one of the same new terms first
+     * @param model
+     * @param eventId
+     * @param newWords counts of the words new to the event
+     * @param removedTerms terms whose tf idfs have been removed from the event
+     */
+    private static void changeTerms (DataModel model, UUID eventId, Map<String, Integer> newWords,
+                                     Collection<String> removedTerms) {
+        for (int attempt = 1; ; attempt++) {
+            var session = model.makeSession();
+            try {
+                applyTermChanges(session, eventId, newWords, removedTerms);
+                session.commit();
+                return;
+            } catch (RuntimeException e) {
+                session.rollback();
+                if (attempt == TERM_CHANGE_ATTEMPTS) {
+                    throw e;
+                }
+                logger.debug("Retrying term changes of event {}!", eventId, e);
+            } finally {
+                session.close();
+            }
+        }
+    }
+
+    private static void applyTermChanges (ModelSession session, UUID eventId, Map<String, Integer> newWords,
+                                          Collection<String> removedTerms) {
+        var deltas = new TreeMap<String, Integer>();
+        for (var i : removedTerms) {
+            deltas.merge(i, -1, Integer::sum);
+        }
+
+        var event = session.getById(Event.class, eventId).orElse(null);
+        var added = new HashMap<String, Integer>();
+        if (event != null) {
+            // Words may have been added by another change of the event since, or the event removed
+            var eventTerms = event.getTfIdfs().stream()
+                    .map(TfIdf::getTermString)
+                    .collect(Collectors.toSet());
+            for (var i : newWords.entrySet()) {
+                if (!eventTerms.contains(i.getKey())) {
+                    added.put(i.getKey(), i.getValue());
+                    deltas.merge(i.getKey(), 1, Integer::sum);
+                }
+            }
+        }
+
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        // Terms not yet made are inserted with their count rather than updated, which another change making the same
+        // term at once fails and retries
+        var existing = session.query(DocumentTerm.class)
+                .whereIn("term", deltas.keySet())
+                .getResultStream()
+                .map(DocumentTerm::getTerm)
+                .collect(Collectors.toSet());
+        for (var i : deltas.entrySet()) {
+            if (i.getValue() == 0) {
+                continue;
+            }
+            if (existing.contains(i.getKey())) {
+                session.query(DocumentTerm.class)
+                        .where("term", i.getKey())
+                        .increment("termCount", i.getValue());
+            } else if (i.getValue() > 0) {
+                session.save(new DocumentTerm(i.getKey(), i.getValue()));
+            }
+        }
+
+        for (var i : added.entrySet()) {
+            var tfIdf = new TfIdf(session.getReference(DocumentTerm.class, i.getKey()), event, i.getValue());
+            session.save(tfIdf);
+            event.getTfIdfs().add(tfIdf);
+        }
+        if (!added.isEmpty()) {
+            session.evictOnCommit(Event.class, eventId);
+        }
+    }
+
     public static double calculateSimilarity (ModelSession session, Event e1, Event e2) {
         if (e1.equals(e2)) {
             return 1;
         }
-        var similarityVector = buildSimilarityVector(session, e1, e2);
 
-        return similarityVector.dotProduct(WEIGHT_VECTOR);
+        return calculateSimilarity(makeCandidate(session, e1), makeCandidate(session, e2));
     }
 
     public static double calculateUserScore (ModelSession session, Event event, EventVector userProfile) {
-        return calculateUserScoreVector(session, event, userProfile).dotProduct(WEIGHT_VECTOR);
+        return calculateUserScore(makeCandidate(session, event), userProfile);
     }
 
     public static double calculateUserEventScore (ModelSession session, Event testEvent, Event currEvent, EventVector userProfile) {
-        var eventEventVec = buildSimilarityVector(session, testEvent, currEvent);
-        var userEventVec = calculateUserScoreVector(session, testEvent, userProfile);
-
-        return eventEventVec.add(userEventVec).multiply(0.5).dotProduct(WEIGHT_VECTOR);
+        return calculateUserEventScore(makeCandidate(session, testEvent), makeCandidate(session, currEvent), userProfile);
     }
 
-    private static Vector calculateUserScoreVector (ModelSession session, Event event, EventVector userProfile) {
-        int numEvents = session.getAll(Event.class).size();
-        var tagIdf = getTagIdf(session, numEvents);
-        var categoryIdf = getCategoryIdf(session, numEvents);
+    /**
+     * Detaches an event from the session for scoring
+     * @param session
+     * @param event
+     * @return
+     */
+    public static RecommendCandidate makeCandidate (ModelSession session, Event event) {
+        return new RecommendCandidate(event.getId().toString(), getEventVectors(session, event).getWeighted(),
+                event.getLocation().getLocationPoint());
+    }
 
-        var userVector = userProfile.applyIdfs(tagIdf, categoryIdf);
-        var eventVector = event.getEventVector(numEvents).applyIdfs(tagIdf, categoryIdf);
+    // Scoring of detached candidates, which does not touch the session so is safe to run on any thread
 
-        // Combine (dot components) user with event vector to produce final score vector
-        // Distance is taken to be 0 to ignore it
-        return userVector.combine(eventVector, 0.0);
+    public static double calculateSimilarity (RecommendCandidate c1, RecommendCandidate c2) {
+        return buildSimilarityVector(c1, c2).dotProduct(WEIGHT_VECTOR);
     }
 
+    public static double calculateUserScore (RecommendCandidate candidate, EventVector userProfile) {
+        return calculateUserScoreVector(candidate, userProfile).dotProduct(WEIGHT_VECTOR);
+    }
 
-    private static Vector buildSimilarityVector (ModelSession session, Event e1, Event e2) {
-        int numEvents = session.getAll(Event.class).size();
-        var e1Vec = e1.getEventVector(numEvents);
-        var e2Vec = e2.getEventVector(numEvents);
+    public static double calculateUserEventScore (RecommendCandidate testCandidate, RecommendCandidate currCandidate, EventVector userProfile) {
+        var eventEventVec = buildSimilarityVector(testCandidate, currCandidate);
+        var userEventVec = calculateUserScoreVector(testCandidate, userProfile);
 
-        var tagIdf = getTagIdf(session, numEvents);
-        var categoryIdf = getCategoryIdf(session, numEvents);
+        return eventEventVec.add(userEventVec).multiply(0.5).dotProduct(WEIGHT_VECTOR);
+    }
 
-        // Apply idfs to vectors
-        e1Vec = e1Vec.applyIdfs(tagIdf, categoryIdf);
-        e2Vec = e2Vec.applyIdfs(tagIdf, categoryIdf);
+    private static Vector calculateUserScoreVector (RecommendCandidate candidate, EventVector userProfile) {
+        // Combine (dot components) user with event vector to produce final score vector
+        // Distance is taken to be 0 to ignore it
+        return userProfile.combine(candidate.getVector(), 0.0);
+    }
 
+    private static Vector buildSimilarityVector (RecommendCandidate c1, RecommendCandidate c2) {
         // Inverse distance adds 1 to ensure that invDistance <= 1
-        var invDistance = 1.0 / (e1.getDistance(e2) + 1);
+        var invDistance = 1.0 / (c1.getDistance(c2) + 1);
 
         // Combine the two event vectors with the distance component
-        return e1Vec.combine(e2Vec, invDistance);
+        return c1.getVector().combine(c2.getVector(), invDistance);
     }
 
+    /**
+     * Gets the profile of a user from their interactions, with tag and category idfs already applied so that it
+     * can be compared directly against event vectors
+     * @param session
+     * @param user
+     * @return
+     */
     public static EventVector buildUserProfile (ModelSession session, User user) {
-        int numEvents = session.getAll(Event.class).size();
+        var stats = CorpusStatistics.get(session);
+        var profile = session.getByUnique(UserProfile.class, "userId", user.getId())
+                .map(UserProfile::getProfile)
+                .orElseGet(() -> sumInteractions(session, stats, user.getInteractions()).normalise());
+
+        return profile.applyIdfs(stats.getTagIdf(), stats.getCategoryIdf());
+    }
+
+    private static EventVector sumInteractions (ModelSession session, CorpusStatistics.Snapshot stats, Collection<UserInteraction> interactions) {
+        var cache = EventVectorCache.get(session);
         var profile = EventVector.identity();
-        for (var i : user.getInteractions()) {
+        for (var i : interactions) {
             // Add together vectors associated with each interaction
-            profile = profile.add(i.getVector(numEvents));
+            profile = profile.add(cache.getVectors(stats, i.getEvent()).getRaw().multiply(i.getScale()));
         }
 
-        // Normalise to get overall profile
-        return profile.normalise();
+        return profile;
+    }
+
+    private static EventVectorCache.Entry getEventVectors (ModelSession session, Event event) {
+        return EventVectorCache.get(session).getVectors(CorpusStatistics.get(session), event);
     }
 
     public static void recordInteraction (ModelSession session, User user, Event event, InteractionType type) {
@@ -127,46 +326,78 @@ public class RecommenderEngine {
         assert type != InteractionType.REVIEW;
         var interaction = new UserInteraction(user, event, type, null);
         session.save(interaction);
+        onInteraction(session, user, interaction);
     }
 
     public static void recordRating (ModelSession session, User user, Event event, double rating) {
         var interaction = new UserInteraction(user, event, InteractionType.REVIEW, rating);
         session.save(interaction);
+        onInteraction(session, user, interaction);
+    }
+
+    private static void onInteraction (ModelSession session, User user, UserInteraction interaction) {
+        // Added to the profile in its own transaction once the interaction commits, retrying if another interaction of
+        // the user changed the profile at once
+        var model = session.getModel();
+        var userId = user.getId();
+        var interactionId = interaction.getId();
+        session.onCommit(() -> updateUserProfile(model, userId, interactionId));
+    }
+
+    private static void updateUserProfile (DataModel model, UUID userId, UUID interactionId) {
+        for (int attempt = 1; ; attempt++) {
+            var session = model.makeSession();
+            try {
+                applyInteraction(session, userId, interactionId, attempt > 1);
+                session.commit();
+                return;
+            } catch (RuntimeException e) {
+                session.rollback();
+                if (attempt == PROFILE_UPDATE_ATTEMPTS) {
+                    throw e;
+                }
+                logger.debug("Retrying profile update of user {}!", userId, e);
+            } finally {
+                session.close();
+            }
+        }
+    }
+
+    private static void applyInteraction (ModelSession session, UUID userId, UUID interactionId, boolean rebuild) {
+        var user = session.getById(User.class, userId).orElse(null);
+        var interaction = session.getById(UserInteraction.class, interactionId).orElse(null);
+        if (user == null || interaction == null) {
+            // Removed since
+            return;
+        }
+
+        var stats = CorpusStatistics.get(session);
+        var profile = session.getByUnique(UserProfile.class, "userId", userId).orElse(null);
+        if (profile == null || rebuild) {
+            // Either the first profile for this user, or another update conflicted with this one, which may or may not
+            // have included this interaction. Either way start again from all of their interactions
+            var interactions = session.getAllWith(UserInteraction.class, "user", user);
+            var now = ZonedDateTime.now(ZoneId.of("UTC"));
+            var sum = sumInteractions(session, stats, interactions);
+            if (profile == null) {
+                profile = new UserProfile(user, now);
+                profile.addInteraction(sum, 1, now);
+                session.save(profile);
+            } else {
+                profile.reset(sum, now);
+            }
+        } else {
+            var eventVector = EventVectorCache.get(session).getVectors(stats, interaction.getEvent()).getRaw();
+            profile.addInteraction(eventVector, interaction.getWeight(), interaction.getInteractTime());
+        }
     }
 
-    private static SparseVector<String> getTagIdf (ModelSession session, int numEvents) {
-        // Get all tags and convert to type, num map
-        var tagMap = session.getAllStream(Tag.class)
-                .map(Tag::getTags)
-                .map(s -> s.toLowerCase(Locale.ROOT))
-                .collect(Collectors.groupingBy(s -> s, Collectors.counting()));
-
-        var entries = new ArrayList<>(tagMap.entrySet());
-
-        // Convert type, num map to idfs
-        return new SparseVector<>(entries.stream().map(Map.Entry::getKey).collect(Collectors.toList()),
-                entries.stream()
-                        .map(Map.Entry::getValue)
-                        .map(x -> Utils.getIdf(x.intValue(), numEvents))
-                        .collect(Collectors.toList()))
-                .normalised();
-    }
-
-    private static SparseVector<String> getCategoryIdf (ModelSession session, int numEvents) {
-        // Get all categories and convert to type, num map
-        var categoryMap = session.getAllStream(Category.class)
-                .map(Category::getCategory)
-                .map(s -> s.toLowerCase(Locale.ROOT))
-                .collect(Collectors.groupingBy(s -> s, Collectors.counting()));
-
-        var entries = new ArrayList<>(categoryMap.entrySet());
-
-        // Convert type, num map to idfs
-        return new SparseVector<>(entries.stream().map(Map.Entry::getKey).collect(Collectors.toList()),
-                entries.stream()
-                        .map(Map.Entry::getValue)
-                        .map(x -> Utils.getIdf(x.intValue(), numEvents))
-                        .collect(Collectors.toList()))
-                .normalised();
+    /**
+     * Deletes the stored profile of a user
+     * @param session
+     * @param user
+     */
+    public static void removeUserProfile (ModelSession session, User user) {
+        session.getByUnique(UserProfile.class, "userId", user.getId()).ifPresent(session::remove);
     }
 }
@@ -0,0 +1,405 @@
+package tickr.application.recommendations;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import tickr.application.entities.Event;
+import tickr.application.search.EventSearchIndex;
+import tickr.persistence.DataModel;
+import tickr.persistence.ModelSession;
+import tickr.util.Pair;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Precomputed event-event similarities. For each published event that has not yet ended, stores its most similar
+ * candidate events, so event-event recommendations can be served without scoring every candidate. The table is built
+ * by a background job and refreshed incrementally as events change. Changes to the corpus shift the idfs shared by all
+ * events, but only changed events are rescored, letting the similarities of the others drift slightly until the drift
+ * passes a threshold or the scheduled rebuild. Lists are only served once every changed event has been applied,
+ * otherwise callers fall back to scoring candidates directly
+ */
+public class SimilarityNeighbours implements AutoCloseable {
+    static final Logger logger = LogManager.getLogger();
+
+    private static final int NEIGHBOUR_COUNT = 256;
+    private static final long REFRESH_DELAY_MS = 200;
+    // Corpus changes since the last rebuild after which the table is rebuilt rather than updated
+    private static final int MAX_DRIFT = 64;
+    private static final long REBUILD_INTERVAL_MS = 10 * 60 * 1000;
+
+    private static final Comparator<Neighbour> SCORE_ORDER = Comparator.comparingDouble((Neighbour n) -> n.score)
+            .reversed()
+            .thenComparing(n -> n.id);
+
+    private final DataModel model;
+    private final ScheduledExecutorService executor;
+    private final AtomicBoolean refreshScheduled = new AtomicBoolean(false);
+
+    // Events changed since they were last applied to the table, mapped to the sequence number of the latest change
+    private final Map<UUID, Long> dirty = new ConcurrentHashMap<>();
+    private final AtomicLong changeSequence = new AtomicLong();
+
+    // Only accessed by the refresh job, except for the volatile reference which is swapped on rebuild
+    private volatile Table table = null;
+    private final AtomicLong numRebuilds = new AtomicLong();
+
+    private SimilarityNeighbours (DataModel model) {
+        this.model = model;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            var thread = new Thread(r, "similarity-neighbours");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduleRefresh();
+        executor.scheduleWithFixedDelay(this::rebuildIfDrifted, REBUILD_INTERVAL_MS, REBUILD_INTERVAL_MS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    public static SimilarityNeighbours get (ModelSession session) {
+        return get(session.getModel());
+    }
+
+    public static SimilarityNeighbours get (DataModel model) {
+        return model.getComponent(SimilarityNeighbours.class, SimilarityNeighbours::new);
+    }
+
+    /**
+     * Marks an event as changed once the session commits, so that its similarities are recomputed. Must be called
+     * whenever an event is created, edited or deleted
+     * @param session
+     * @param event
+     */
+    public static void onEventChange (ModelSession session, Event event) {
+        var id = event.getId();
+        session.onCommit(() -> get(session).markDirty(id));
+    }
+
+    /**
+     * Rebuilds the whole table once the session commits
+     * @param session
+     */
+    public static void onClear (ModelSession session) {
+        session.onCommit(() -> get(session).markRebuild());
+    }
+
+    /**
+     * Gets a page of the most similar events to an event, if the precomputed similarities are up to date and cover the
+     * page
+     * @param session
+     * @param event
+     * @param pageStart
+     * @param maxResults
+     * @return the page of event id, similarity pairs and the total number of candidate events, or empty if the caller
+     * must compute the similarities itself
+     */
+    public Optional<Page> find (ModelSession session, Event event, int pageStart, int maxResults) {
+        var curr = table;
+        if (curr == null || !dirty.isEmpty() || curr.version != CorpusStatistics.get(session).getVersion()) {
+            return Optional.empty();
+        }
+
+        var neighbours = curr.neighbours.get(event.getId());
+        if (neighbours == null) {
+            return Optional.empty();
+        }
+
+        // Drop events which have ended since the list was built
+        var now = Instant.now();
+        var valid = neighbours.list.stream()
+                .filter(n -> !n.end.isBefore(now))
+                .collect(Collectors.toList());
+        if (!neighbours.complete && (long) pageStart + maxResults > valid.size()) {
+            return Optional.empty();
+        }
+
+        var events = valid.stream()
+                .skip(pageStart)
+                .limit(maxResults)
+                .map(n -> new Pair<>(n.id.toString(), n.score))
+                .collect(Collectors.toList());
+
+        var nowTime = ZonedDateTime.now(ZoneId.of("UTC"));
+        int total = EventSearchIndex.get(session).findPublished(null, null, nowTime.toInstant(), null, 0, 0).getTotal();
+        if (isCandidate(event, nowTime)) {
+            // Cannot recommend own event
+            total--;
+        }
+
+        return Optional.of(new Page(events, total));
+    }
+
+    private void markDirty (UUID eventId) {
+        dirty.put(eventId, changeSequence.incrementAndGet());
+        scheduleRefresh();
+    }
+
+    private void markRebuild () {
+        table = null;
+        scheduleRefresh();
+    }
+
+    private void scheduleRefresh () {
+        if (refreshScheduled.compareAndSet(false, true)) {
+            try {
+                executor.schedule(this::refresh, REFRESH_DELAY_MS, TimeUnit.MILLISECONDS);
+            } catch (RuntimeException e) {
+                // Executor has been shut down
+                refreshScheduled.set(false);
+            }
+        }
+    }
+
+    private void refresh () {
+        refreshScheduled.set(false);
+        var changes = new HashMap<>(dirty);
+
+        var session = model.makeSession();
+        try {
+            int version = CorpusStatistics.get(session).getVersion();
+            var curr = table;
+            if (curr == null || version - curr.builtVersion > MAX_DRIFT) {
+                table = rebuild(session, version);
+            } else {
+                for (var i : changes.keySet()) {
+                    update(session, curr, i);
+                }
+                // Scores of unchanged events are left to drift until the next rebuild
+                curr.version = version;
+            }
+            session.commit();
+
+            // Changes made while refreshing are left for the next refresh
+            changes.forEach(dirty::remove);
+        } catch (RuntimeException e) {
+            logger.warn("Failed to refresh event similarities!", e);
+            session.rollback();
+        } finally {
+            session.close();
+        }
+
+        if (!dirty.isEmpty() || table == null || table.version != getCorpusVersion()) {
+            scheduleRefresh();
+        }
+    }
+
+    private void rebuildIfDrifted () {
+        var curr = table;
+        if (curr == null || curr.version == curr.builtVersion) {
+            return;
+        }
+
+        var session = model.makeSession();
+        try {
+            table = rebuild(session, CorpusStatistics.get(session).getVersion());
+            session.commit();
+        } catch (RuntimeException e) {
+            logger.warn("Failed to rebuild event similarities!", e);
+            session.rollback();
+        } finally {
+            session.close();
+        }
+        // Changes made while rebuilding are applied by the next refresh
+        if (!dirty.isEmpty()) {
+            scheduleRefresh();
+        }
+    }
+
+    /**
+     * Gets the number of times the whole table has been built, for monitoring
+     * @return
+     */
+    public long getNumRebuilds () {
+        return numRebuilds.get();
+    }
+
+    private int getCorpusVersion () {
+        var session = model.makeSession();
+        try {
+            return CorpusStatistics.get(session).getVersion();
+        } finally {
+            session.close();
+        }
+    }
+
+    private Table rebuild (ModelSession session, int version) {
+        logger.debug("Rebuilding event similarities for corpus version {}!", version);
+        numRebuilds.incrementAndGet();
+        var candidates = getCandidates(session);
+        var detached = candidates.stream()
+                .map(e -> RecommenderEngine.makeCandidate(session, e))
+                .collect(Collectors.toList());
+
+        var neighbours = new ConcurrentHashMap<UUID, Neighbours>();
+        for (int i = 0; i < candidates.size(); i++) {
+            var curr = detached.get(i);
+            var scores = CandidateScorer.score(detached, c -> RecommenderEngine.calculateSimilarity(curr, c));
+
+            var selector = new ArrayList<Neighbour>();
+            for (int j = 0; j < candidates.size(); j++) {
+                if (i != j) {
+                    var other = candidates.get(j);
+                    selector.add(new Neighbour(other.getId(), scores[j], other.getEventEnd().toInstant()));
+                }
+            }
+            selector.sort(SCORE_ORDER);
+            var complete = selector.size() <= NEIGHBOUR_COUNT;
+            neighbours.put(candidates.get(i).getId(), new Neighbours(selector.subList(0, Math.min(selector.size(), NEIGHBOUR_COUNT)), complete));
+        }
+
+        return new Table(version, neighbours);
+    }
+
+    /**
+     * Applies a change to a single event, which only affects its own list and its position in other lists
+     */
+    private void update (ModelSession session, Table curr, UUID eventId) {
+        curr.neighbours.remove(eventId);
+        for (var i : curr.neighbours.entrySet()) {
+            i.setValue(i.getValue().without(eventId));
+        }
+
+        var event = session.getById(Event.class, eventId).orElse(null);
+        var now = ZonedDateTime.now(ZoneId.of("UTC"));
+        if (event == null || !isCandidate(event, now)) {
+            return;
+        }
+
+        var list = new ArrayList<Neighbour>();
+        for (var i : getCandidates(session)) {
+            if (i.equals(event)) {
+                continue;
+            }
+            list.add(makeNeighbour(session, event, i));
+
+            var others = curr.neighbours.get(i.getId());
+            if (others != null) {
+                curr.neighbours.put(i.getId(), others.with(makeNeighbour(session, i, event)));
+            }
+        }
+        list.sort(SCORE_ORDER);
+        curr.neighbours.put(eventId, new Neighbours(list.subList(0, Math.min(list.size(), NEIGHBOUR_COUNT)),
+                list.size() <= NEIGHBOUR_COUNT));
+    }
+
+    private Neighbour makeNeighbour (ModelSession session, Event event, Event other) {
+        return new Neighbour(other.getId(), RecommenderEngine.calculateSimilarity(session, event, other),
+                other.getEventEnd().toInstant());
+    }
+
+    private static List<Event> getCandidates (ModelSession session) {
+        return session.query(Event.class)
+                .where("published", true)
+                .whereGreaterThanOrEqual("eventEnd", ZonedDateTime.now(ZoneId.of("UTC")))
+                .fetch("location")
+                .getResults();
+    }
+
+    private static boolean isCandidate (Event event, ZonedDateTime now) {
+        return event.isPublished() && !event.getEventEnd().isBefore(now);
+    }
+
+    @Override
+    public void close () {
+        executor.shutdownNow();
+        try {
+            // Let a run in progress close its session before the model closes
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static class Page {
+        private final List<Pair<String, Double>> events;
+        private final int total;
+
+        public Page (List<Pair<String, Double>> events, int total) {
+            this.events = events;
+            this.total = total;
+        }
+
+        public List<Pair<String, Double>> getEvents () {
+            return events;
+        }
+
+        public int getTotal () {
+            return total;
+        }
+    }
+
+    private static class Table {
+        final int builtVersion; // Corpus version all similarities were computed from
+        volatile int version; // Corpus version changed events have been rescored with
+        final Map<UUID, Neighbours> neighbours;
+
+        Table (int version, Map<UUID, Neighbours> neighbours) {
+            this.builtVersion = version;
+            this.version = version;
+            this.neighbours = neighbours;
+        }
+    }
+
+    /**
+     * Immutable list of the most similar events to an event, in descending order of similarity. Complete lists
+     * contain every candidate event, otherwise only the top ones are known
+     */
+    private static class Neighbours {
+        final List<Neighbour> list;
+        final boolean complete;
+
+        Neighbours (List<Neighbour> list, boolean complete) {
+            this.list = List.copyOf(list);
+            this.complete = complete;
+        }
+
+        Neighbours without (UUID eventId) {
+            if (list.stream().noneMatch(n -> n.id.equals(eventId))) {
+                return this;
+            }
+            return new Neighbours(list.stream()
+                    .filter(n -> !n.id.equals(eventId))
+                    .collect(Collectors.toList()), complete);
+        }
+
+        Neighbours with (Neighbour neighbour) {
+            var pos = Collections.binarySearch(list, neighbour, SCORE_ORDER);
+            pos = pos >= 0 ? pos : -pos - 1;
+            if (!complete && pos >= list.size()) {
+                // Below the known top events, so its rank is unknown
+                return this;
+            }
+
+            var newList = new ArrayList<>(list);
+            newList.add(pos, neighbour);
+            var newComplete = complete;
+            if (newList.size() > NEIGHBOUR_COUNT) {
+                newList.remove(newList.size() - 1);
+                newComplete = false;
+            }
+
+            return new Neighbours(newList, newComplete);
+        }
+    }
+
+    private static class Neighbour {
+        final UUID id;
+        final double score;
+        final Instant end;
+
+        Neighbour (UUID id, double score, Instant end) {
+            this.id = id;
+            this.score = score;
+            this.end = end;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package tickr.application.recommendations;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Interns the keys of recommendation vectors (terms, tags, categories and host ids) to ints, so vectors can be
+ * compared by int instead of by string. Ids are only meaningful within this process and must never be persisted
+ */
+public class TermDictionary {
+    private static final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Integer, String> keys = new ConcurrentHashMap<>();
+    private static final AtomicInteger nextId = new AtomicInteger();
+
+    /**
+     * Gets the id of a key, assigning a new id if it has not been seen before
+     * @param key
+     * @return
+     */
+    public static int intern (String key) {
+        var id = ids.get(key);
+        if (id != null) {
+            return id;
+        }
+
+        return ids.computeIfAbsent(key, k -> {
+            int newId = nextId.getAndIncrement();
+            keys.put(newId, k);
+            return newId;
+        });
+    }
+
+    /**
+     * Gets the key an id was assigned to
+     * @param id
+     * @return
+     */
+    public static String getKey (int id) {
+        return keys.get(id);
+    }
+
+    public static int size () {
+        return ids.size();
+    }
+}
@@ -1,35 +1,32 @@
 package tickr.application.recommendations;
 
-import com.google.common.collect.Streams;
-
-import java.util.List;
-import java.util.stream.Collectors;
-
 public class Vector {
-    private List<Double> elements;
+    private final double[] elements;
 
-    public Vector (List<Double> elements) {
+    public Vector (double... elements) {
         this.elements = elements;
     }
 
     public int getDimensions () {
-        return elements.size();
+        return elements.length;
     }
 
-    @SuppressWarnings("UnstableApiUsage")
     public double dotProduct (Vector other) {
         if (getDimensions() != other.getDimensions()) {
             throw new RuntimeException("Vector lengths do not match!");
         }
 
-        // Pair up columns and then multiply and add them together
-        return Streams.zip(elements.stream(), other.elements.stream(), (x, y) -> x * y)
-                .mapToDouble(x -> x)
-                .sum();
+        // Multiply columns and then add them together
+        double result = 0;
+        for (int i = 0; i < elements.length; i++) {
+            result += elements[i] * other.elements[i];
+        }
+
+        return result;
     }
 
     public double length () {
-        return Math.sqrt(elements.stream().mapToDouble(x -> x * x).sum());
+        return Math.sqrt(dotProduct(this));
     }
 
     public Vector normalised () {
@@ -37,18 +34,26 @@ public class Vector {
         return multiply(normFactor);
     }
 
-    @SuppressWarnings("UnstableApiUsage")
     public Vector add (Vector other) {
         if (getDimensions() != other.getDimensions()) {
             throw new RuntimeException("Vector lengths do not match!");
         }
 
+        // Add columns to each other
+        var newElements = new double[elements.length];
+        for (int i = 0; i < elements.length; i++) {
+            newElements[i] = elements[i] + other.elements[i];
+        }
 
-        // Pair up columns and add them to each other
-        return new Vector(Streams.zip(elements.stream(), other.elements.stream(), Double::sum).collect(Collectors.toList()));
+        return new Vector(newElements);
     }
 
     public Vector multiply (double val) {
-        return new Vector(elements.stream().map(d -> d * val).collect(Collectors.toList()));
+        var newElements = new double[elements.length];
+        for (int i = 0; i < elements.length; i++) {
+            newElements[i] = elements[i] * val;
+        }
+
+        return new Vector(newElements);
     }
 }
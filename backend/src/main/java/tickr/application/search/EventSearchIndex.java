@@ -0,0 +1,421 @@
+package tickr.application.search;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import tickr.application.entities.Event;
+import tickr.persistence.DataModel;
+import tickr.persistence.ModelSession;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory inverted index over events. Each term, tag and category maps to a postings list of internal document ids
+ * sorted in ascending order, so queries are answered by merging postings lists instead of scanning every event.
+ * Published events are also kept in start time order, overall and per category, so time based feeds can be paged
+ * directly. The index is shared across requests and kept up to date by registering changes with the session, which
+ * applies them once the transaction commits
+ */
+public class EventSearchIndex {
+    static final Logger logger = LogManager.getLogger();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<UUID, Integer> docIds = new HashMap<>();
+    private final List<IndexedEvent> docs = new ArrayList<>(); // Indexed by doc id, null for removed events
+    private final Map<String, Postings> termPostings = new HashMap<>();
+    private final Map<String, Postings> tagPostings = new HashMap<>();
+    private final Map<String, Postings> categoryPostings = new HashMap<>();
+    private final EventTimeline publishedTimeline = new EventTimeline();
+    private final Map<String, EventTimeline> categoryTimelines = new HashMap<>();
+
+    public static EventSearchIndex get (ModelSession session) {
+        return get(session.getModel());
+    }
+
+    public static EventSearchIndex get (DataModel model) {
+        return model.getComponent(EventSearchIndex.class, EventSearchIndex::build);
+    }
+
+    private static EventSearchIndex build (DataModel model) {
+        logger.info("Building event search index!");
+        var index = new EventSearchIndex();
+        var session = model.makeSession();
+        try {
+            session.getAllStream(Event.class)
+                    .map(IndexedEvent::of)
+                    .forEach(index::put);
+            session.commit();
+        } catch (RuntimeException e) {
+            session.rollback();
+            throw e;
+        } finally {
+            session.close();
+        }
+        logger.info("Indexed {} events!", index.size());
+
+        return index;
+    }
+
+    /**
+     * Reindexes an event once the session commits. Must be called after all changes to the event have been made
+     * @param session
+     * @param event
+     */
+    public static void onEventUpdate (ModelSession session, Event event) {
+        var indexed = IndexedEvent.of(event);
+        session.onCommit(() -> get(session).put(indexed));
+    }
+
+    /**
+     * Removes an event from the index once the session commits
+     * @param session
+     * @param event
+     */
+    public static void onEventRemove (ModelSession session, Event event) {
+        var id = event.getId();
+        session.onCommit(() -> get(session).remove(id));
+    }
+
+    /**
+     * Clears the index once the session commits
+     * @param session
+     */
+    public static void onClear (ModelSession session) {
+        session.onCommit(() -> get(session).clear());
+    }
+
+    /**
+     * Adds an event to the index, replacing any existing entry for it
+     * @param event
+     */
+    public void put (IndexedEvent event) {
+        lock.writeLock().lock();
+        try {
+            int docId;
+            if (docIds.containsKey(event.getId())) {
+                docId = docIds.get(event.getId());
+                removePostings(docId, docs.get(docId));
+                removeTimelines(docs.get(docId));
+                docs.set(docId, event);
+            } else {
+                docId = docs.size();
+                docIds.put(event.getId(), docId);
+                docs.add(event);
+            }
+
+            addPostings(termPostings, event.getWords(), docId);
+            addPostings(tagPostings, event.getTags(), docId);
+            addPostings(categoryPostings, event.getCategories(), docId);
+            addTimelines(event);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove (UUID eventId) {
+        lock.writeLock().lock();
+        try {
+            var docId = docIds.remove(eventId);
+            if (docId != null) {
+                removePostings(docId, docs.get(docId));
+                removeTimelines(docs.get(docId));
+                docs.set(docId, null);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear () {
+        lock.writeLock().lock();
+        try {
+            docIds.clear();
+            docs.clear();
+            termPostings.clear();
+            tagPostings.clear();
+            categoryPostings.clear();
+            publishedTimeline.clear();
+            categoryTimelines.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size () {
+        lock.readLock().lock();
+        try {
+            return docIds.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds all events matching at least one of each of the given words, tags and categories, with empty sets
+     * matching all events
+     * @param words words which must appear in the name or description
+     * @param tags
+     * @param categories
+     * @param filter additional filter applied to each matching event
+     * @return matching events ordered by start time
+     */
+    public List<IndexedEvent> search (Collection<String> words, Collection<String> tags, Collection<String> categories,
+                                      Predicate<IndexedEvent> filter) {
+        List<IndexedEvent> results;
+        lock.readLock().lock();
+        try {
+            var postings = new ArrayList<int[]>();
+            for (var i : List.of(new Facet(termPostings, words), new Facet(tagPostings, tags), new Facet(categoryPostings, categories))) {
+                if (i.keys.isEmpty()) {
+                    continue;
+                }
+                var matching = union(i.postings, i.keys);
+                if (matching.length == 0) {
+                    // Nothing can match
+                    return new ArrayList<>();
+                }
+                postings.add(matching);
+            }
+
+            if (postings.isEmpty()) {
+                results = docs.stream()
+                        .filter(Objects::nonNull)
+                        .filter(filter)
+                        .collect(Collectors.toList());
+            } else {
+                // Intersect from smallest to largest to keep the intermediate results small
+                postings.sort(Comparator.comparingInt(a -> a.length));
+                var matching = postings.get(0);
+                for (int i = 1; i < postings.size() && matching.length > 0; i++) {
+                    matching = intersect(matching, postings.get(i));
+                }
+
+                results = new ArrayList<>();
+                for (var i : matching) {
+                    var doc = docs.get(i);
+                    if (filter.test(doc)) {
+                        results.add(doc);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        results.sort(IndexedEvent.START_ORDER);
+        return results;
+    }
+
+    /**
+     * Finds published events within a time window, ordered by start time. All bounds are inclusive, and null bounds
+     * are unbounded
+     * @param startFrom earliest start time
+     * @param startTo latest start time
+     * @param endFrom earliest end time
+     * @param endTo latest end time
+     * @param pageStart
+     * @param maxResults
+     * @return
+     */
+    public EventTimeline.Page findPublished (Instant startFrom, Instant startTo, Instant endFrom, Instant endTo,
+                                             int pageStart, int maxResults) {
+        lock.readLock().lock();
+        try {
+            return publishedTimeline.find(startFrom, startTo, endFrom, endTo, pageStart, maxResults);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds published events of a category within a time window, ordered by start time. All bounds are inclusive,
+     * and null bounds are unbounded
+     * @param category
+     * @param startFrom earliest start time
+     * @param startTo latest start time
+     * @param endFrom earliest end time
+     * @param endTo latest end time
+     * @param pageStart
+     * @param maxResults
+     * @return
+     */
+    public EventTimeline.Page findPublished (String category, Instant startFrom, Instant startTo, Instant endFrom,
+                                             Instant endTo, int pageStart, int maxResults) {
+        lock.readLock().lock();
+        try {
+            var timeline = categoryTimelines.get(category);
+            if (timeline == null) {
+                return new EventTimeline.Page(new ArrayList<>(), 0);
+            }
+            return timeline.find(startFrom, startTo, endFrom, endTo, pageStart, maxResults);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void addTimelines (IndexedEvent event) {
+        if (!event.isPublished()) {
+            return;
+        }
+        publishedTimeline.add(event);
+        for (var i : event.getCategories()) {
+            categoryTimelines.computeIfAbsent(i, k -> new EventTimeline()).add(event);
+        }
+    }
+
+    private void removeTimelines (IndexedEvent event) {
+        if (!event.isPublished()) {
+            return;
+        }
+        publishedTimeline.remove(event);
+        for (var i : event.getCategories()) {
+            var timeline = categoryTimelines.get(i);
+            if (timeline != null) {
+                timeline.remove(event);
+                if (timeline.isEmpty()) {
+                    categoryTimelines.remove(i);
+                }
+            }
+        }
+    }
+
+    private void addPostings (Map<String, Postings> postingsMap, Set<String> keys, int docId) {
+        for (var i : keys) {
+            postingsMap.computeIfAbsent(i, k -> new Postings()).add(docId);
+        }
+    }
+
+    private void removePostings (int docId, IndexedEvent event) {
+        removePostings(termPostings, event.getWords(), docId);
+        removePostings(tagPostings, event.getTags(), docId);
+        removePostings(categoryPostings, event.getCategories(), docId);
+    }
+
+    private void removePostings (Map<String, Postings> postingsMap, Set<String> keys, int docId) {
+        for (var i : keys) {
+            var postings = postingsMap.get(i);
+            if (postings != null) {
+                postings.remove(docId);
+                if (postings.size == 0) {
+                    postingsMap.remove(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Merges the postings of all the given keys into one sorted list without duplicates
+     */
+    private static int[] union (Map<String, Postings> postingsMap, Collection<String> keys) {
+        var lists = new ArrayList<Postings>();
+        int total = 0;
+        for (var i : new HashSet<>(keys)) {
+            var postings = postingsMap.get(i);
+            if (postings != null) {
+                lists.add(postings);
+                total += postings.size;
+            }
+        }
+
+        var result = new int[total];
+        int size = 0;
+        if (lists.size() == 1) {
+            System.arraycopy(lists.get(0).ids, 0, result, 0, total);
+            return result;
+        }
+
+        // k-way merge using the cursor positions of each list
+        var cursors = new int[lists.size()];
+        while (true) {
+            int min = Integer.MAX_VALUE;
+            for (int i = 0; i < lists.size(); i++) {
+                if (cursors[i] < lists.get(i).size) {
+                    min = Math.min(min, lists.get(i).ids[cursors[i]]);
+                }
+            }
+            if (min == Integer.MAX_VALUE) {
+                break;
+            }
+            result[size++] = min;
+            for (int i = 0; i < lists.size(); i++) {
+                if (cursors[i] < lists.get(i).size && lists.get(i).ids[cursors[i]] == min) {
+                    cursors[i]++;
+                }
+            }
+        }
+
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Intersects two sorted lists, binary searching through the larger one so the cost is bounded by the smaller
+     */
+    private static int[] intersect (int[] smaller, int[] larger) {
+        var result = new int[smaller.length];
+        int size = 0;
+        int from = 0;
+        for (var i : smaller) {
+            var pos = Arrays.binarySearch(larger, from, larger.length, i);
+            if (pos >= 0) {
+                result[size++] = i;
+                from = pos + 1;
+            } else {
+                from = -pos - 1;
+            }
+            if (from >= larger.length) {
+                break;
+            }
+        }
+
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Set of keys to match against one of the postings maps, of which at least one must match
+     */
+    private static class Facet {
+        final Map<String, Postings> postings;
+        final Collection<String> keys;
+
+        Facet (Map<String, Postings> postings, Collection<String> keys) {
+            this.postings = postings;
+            this.keys = keys;
+        }
+    }
+
+    /**
+     * Sorted list of document ids. New documents have the largest id, so adding is usually an append
+     */
+    private static class Postings {
+        int[] ids = new int[4];
+        int size = 0;
+
+        void add (int docId) {
+            var pos = Arrays.binarySearch(ids, 0, size, docId);
+            if (pos >= 0) {
+                return;
+            }
+            pos = -pos - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, pos, ids, pos + 1, size - pos);
+            ids[pos] = docId;
+            size++;
+        }
+
+        void remove (int docId) {
+            var pos = Arrays.binarySearch(ids, 0, size, docId);
+            if (pos < 0) {
+                return;
+            }
+            System.arraycopy(ids, pos + 1, ids, pos, size - pos - 1);
+            size--;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package tickr.application.search;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Events ordered by start time, then id. Kept as a sorted array so that both the position of a time and the number of
+ * events between two times are found by binary search, which lets queries count matches and seek to a page without
+ * visiting the events before it. Not thread safe, access is guarded by the owning index
+ */
+public class EventTimeline {
+    private IndexedEvent[] events = new IndexedEvent[16];
+    private int size = 0;
+    // Longest duration of any event added, used to bound the start times of events ending in a window
+    private Duration maxDuration = Duration.ZERO;
+
+    public void add (IndexedEvent event) {
+        var pos = Arrays.binarySearch(events, 0, size, event, IndexedEvent.START_ORDER);
+        if (pos >= 0) {
+            events[pos] = event;
+        } else {
+            pos = -pos - 1;
+            if (size == events.length) {
+                events = Arrays.copyOf(events, size * 2);
+            }
+            System.arraycopy(events, pos, events, pos + 1, size - pos);
+            events[pos] = event;
+            size++;
+        }
+
+        var duration = Duration.between(event.getStart(), event.getEnd());
+        if (duration.compareTo(maxDuration) > 0) {
+            maxDuration = duration;
+        }
+    }
+
+    public void remove (IndexedEvent event) {
+        var pos = Arrays.binarySearch(events, 0, size, event, IndexedEvent.START_ORDER);
+        if (pos < 0) {
+            return;
+        }
+        System.arraycopy(events, pos + 1, events, pos, size - pos - 1);
+        events[--size] = null;
+    }
+
+    public void clear () {
+        events = new IndexedEvent[16];
+        size = 0;
+        maxDuration = Duration.ZERO;
+    }
+
+    public int size () {
+        return size;
+    }
+
+    public boolean isEmpty () {
+        return size == 0;
+    }
+
+    /**
+     * Finds events within a time window. All bounds are inclusive, and null bounds are unbounded
+     * @param startFrom earliest start time
+     * @param startTo latest start time
+     * @param endFrom earliest end time
+     * @param endTo latest end time
+     * @param pageStart number of matching events to skip
+     * @param maxResults maximum number of events to return
+     * @return the page of matching events in start order, along with the total number of matches
+     */
+    public Page find (Instant startFrom, Instant startTo, Instant endFrom, Instant endTo, int pageStart, int maxResults) {
+        // As every event lasts at most maxDuration, the end bounds also bound the start times
+        var lowStart = max(startFrom, endFrom != null ? endFrom.minus(maxDuration) : null);
+        var highStart = min(startTo, endTo);
+
+        int first = lowStart != null ? lowerBound(lowStart) : 0;
+        int last = highStart != null ? upperBound(highStart) : size;
+        if (first >= last) {
+            return new Page(new ArrayList<>(), 0);
+        }
+
+        // Events starting in [endFrom, endTo - maxDuration] must end within the window, so only events outside this
+        // core range have to be checked individually
+        int coreFirst = endFrom != null ? Math.min(last, Math.max(first, lowerBound(endFrom))) : first;
+        int coreLast = endTo != null ? Math.min(last, upperBound(endTo.minus(maxDuration))) : last;
+        coreLast = Math.max(coreFirst, coreLast);
+
+        var before = matchEnds(first, coreFirst, endFrom, endTo);
+        var after = matchEnds(coreLast, last, endFrom, endTo);
+        int coreSize = coreLast - coreFirst;
+        int total = before.size() + coreSize + after.size();
+
+        var pageEvents = new ArrayList<IndexedEvent>();
+        for (int i = pageStart; i < total && pageEvents.size() < maxResults; i++) {
+            if (i < before.size()) {
+                pageEvents.add(before.get(i));
+            } else if (i < before.size() + coreSize) {
+                pageEvents.add(events[coreFirst + i - before.size()]);
+            } else {
+                pageEvents.add(after.get(i - before.size() - coreSize));
+            }
+        }
+
+        return new Page(pageEvents, total);
+    }
+
+    private List<IndexedEvent> matchEnds (int from, int to, Instant endFrom, Instant endTo) {
+        var matches = new ArrayList<IndexedEvent>();
+        for (int i = from; i < to; i++) {
+            var end = events[i].getEnd();
+            if ((endFrom == null || !end.isBefore(endFrom)) && (endTo == null || !end.isAfter(endTo))) {
+                matches.add(events[i]);
+            }
+        }
+
+        return matches;
+    }
+
+    /**
+     * Gets the index of the first event starting at or after the given time
+     */
+    private int lowerBound (Instant time) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (events[mid].getStart().isBefore(time)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Gets the index of the first event starting after the given time
+     */
+    private int upperBound (Instant time) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (events[mid].getStart().isAfter(time)) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+
+        return low;
+    }
+
+    private static Instant max (Instant a, Instant b) {
+        if (a == null || b == null) {
+            return a == null ? b : a;
+        }
+        return a.isAfter(b) ? a : b;
+    }
+
+    private static Instant min (Instant a, Instant b) {
+        if (a == null || b == null) {
+            return a == null ? b : a;
+        }
+        return a.isBefore(b) ? a : b;
+    }
+
+    public static class Page {
+        private final List<IndexedEvent> events;
+        private final int total;
+
+        public Page (List<IndexedEvent> events, int total) {
+            this.events = Collections.unmodifiableList(events);
+            this.total = total;
+        }
+
+        public List<IndexedEvent> getEvents () {
+            return events;
+        }
+
+        public int getTotal () {
+            return total;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package tickr.application.search;
+
+import tickr.application.entities.Category;
+import tickr.application.entities.Event;
+import tickr.application.entities.Tag;
+import tickr.util.Utils;
+
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Immutable snapshot of the searchable fields of an event. Snapshots are taken while the entity is still managed, so
+ * they can be applied to indexes after the session has been committed
+ */
+public class IndexedEvent {
+    /**
+     * Orders events by start time, using id to break ties
+     */
+    public static final Comparator<IndexedEvent> START_ORDER = Comparator.comparing(IndexedEvent::getStart)
+            .thenComparing(IndexedEvent::getId);
+
+    private final UUID id;
+    private final Instant start;
+    private final Instant end;
+    private final boolean published;
+    private final Set<String> words;
+    private final Set<String> tags;
+    private final Set<String> categories;
+
+    public IndexedEvent (UUID id, Instant start, Instant end, boolean published, Set<String> words, Set<String> tags, Set<String> categories) {
+        this.id = id;
+        this.start = start;
+        this.end = end;
+        this.published = published;
+        this.words = Collections.unmodifiableSet(new HashSet<>(words));
+        this.tags = Collections.unmodifiableSet(new HashSet<>(tags));
+        this.categories = Collections.unmodifiableSet(new HashSet<>(categories));
+    }
+
+    public static IndexedEvent of (Event event) {
+        var words = new HashSet<String>();
+        words.addAll(Utils.toWords(event.getEventName()));
+        words.addAll(Utils.toWords(event.getEventDescription()));
+
+        var tags = event.getTags().stream()
+                .map(Tag::getTags)
+                .collect(Collectors.toSet());
+        var categories = event.getCategories().stream()
+                .map(Category::getCategory)
+                .collect(Collectors.toSet());
+
+        return new IndexedEvent(event.getId(), event.getEventStart().toInstant(), event.getEventEnd().toInstant(),
+                event.isPublished(), words, tags, categories);
+    }
+
+    public UUID getId () {
+        return id;
+    }
+
+    public Instant getStart () {
+        return start;
+    }
+
+    public Instant getEnd () {
+        return end;
+    }
+
+    public boolean isPublished () {
+        return published;
+    }
+
+    public Set<String> getWords () {
+        return words;
+    }
+
+    public Set<String> getTags () {
+        return tags;
+    }
+
+    public Set<String> getCategories () {
+        return categories;
+    }
+
+    public boolean startsAfter (ZonedDateTime startTime) {
+        return startTime == null || !start.isBefore(startTime.toInstant());
+    }
+
+    public boolean endsBefore (ZonedDateTime endTime) {
+        return endTime == null || !end.isAfter(endTime.toInstant());
+    }
+}
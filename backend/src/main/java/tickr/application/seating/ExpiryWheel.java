@@ -0,0 +1,132 @@
+package tickr.application.seating;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hashed timing wheel of expiry timers. Time is split into ticks, and each timer is kept in the bucket of the tick it
+ * expires in, modulo the number of buckets. Scheduling and cancelling are O(1), and advancing only visits the buckets of
+ * the ticks passed, rather than checking every timer. Timers fire once the tick they expire in has passed, so up to a
+ * tick late but never early. Each timer fires at most once, and never once cancelled. Callbacks are run by the thread
+ * advancing the wheel, without holding its lock
+ */
+public class ExpiryWheel {
+    private static final int PENDING = 0;
+    private static final int CANCELLED = 1;
+    private static final int FIRED = 2;
+
+    private final long tickMs;
+    private final List<List<Timer>> buckets;
+    private long processedTick; // Last tick whose timers have been fired
+
+    public ExpiryWheel (int numBuckets, long tickMs) {
+        this(numBuckets, tickMs, System.currentTimeMillis());
+    }
+
+    public ExpiryWheel (int numBuckets, long tickMs, long startMs) {
+        this.tickMs = tickMs;
+        this.buckets = new ArrayList<>(numBuckets);
+        for (int i = 0; i < numBuckets; i++) {
+            buckets.add(new ArrayList<>());
+        }
+        this.processedTick = Math.floorDiv(startMs, tickMs) - 1;
+    }
+
+    /**
+     * Schedules a callback to be run once a time has passed
+     * @param expiryMs epoch millis
+     * @param callback
+     * @return the timer, which may be cancelled
+     */
+    public synchronized Timer schedule (long expiryMs, Runnable callback) {
+        var timer = new Timer(Math.floorDiv(expiryMs, tickMs), callback);
+        // Timers already due are fired with the next tick
+        var tick = Math.max(timer.tick, processedTick + 1);
+        buckets.get((int)Math.floorMod(tick, (long)buckets.size())).add(timer);
+
+        return timer;
+    }
+
+    /**
+     * Fires the timers of all ticks which have passed
+     * @param nowMs epoch millis
+     * @return the number of timers fired
+     */
+    public int advance (long nowMs) {
+        var due = new ArrayList<Timer>();
+        synchronized (this) {
+            long lastTick = Math.floorDiv(nowMs, tickMs) - 1; // The current tick has not yet passed
+            if (lastTick <= processedTick) {
+                return 0;
+            }
+
+            // Each bucket is visited at most once, however long since the last advance
+            long ticks = Math.min(lastTick - processedTick, buckets.size());
+            for (long i = lastTick - ticks + 1; i <= lastTick; i++) {
+                var it = buckets.get((int)Math.floorMod(i, (long)buckets.size())).iterator();
+                collectDue(it, lastTick, due);
+            }
+            processedTick = lastTick;
+        }
+
+        int fired = 0;
+        for (var i : due) {
+            if (i.fire()) {
+                fired++;
+            }
+        }
+
+        return fired;
+    }
+
+    private static void collectDue (Iterator<Timer> it, long lastTick, List<Timer> due) {
+        while (it.hasNext()) {
+            var timer = it.next();
+            if (timer.isCancelled()) {
+                it.remove();
+            } else if (timer.tick <= lastTick) {
+                // Others in the bucket are for later turns of the wheel
+                it.remove();
+                due.add(timer);
+            }
+        }
+    }
+
+    public static class Timer {
+        private final long tick;
+        private final Runnable callback;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+
+        private Timer (long tick, Runnable callback) {
+            this.tick = tick;
+            this.callback = callback;
+        }
+
+        /**
+         * Stops the timer from firing
+         * @return whether the timer had not yet fired
+         */
+        public boolean cancel () {
+            return state.compareAndSet(PENDING, CANCELLED) || state.get() == CANCELLED;
+        }
+
+        public boolean isCancelled () {
+            return state.get() == CANCELLED;
+        }
+
+        public boolean hasFired () {
+            return state.get() == FIRED;
+        }
+
+        private boolean fire () {
+            if (!state.compareAndSet(PENDING, FIRED)) {
+                return false;
+            }
+            callback.run();
+
+            return true;
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package tickr.application.seating;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import tickr.application.entities.PurchaseItem;
+import tickr.application.entities.TicketReservation;
+import tickr.persistence.DataModel;
+import tickr.persistence.ModelSession;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Background job deleting expired reservations, which would otherwise stay in the database forever. Deletes in batches,
+ * each in its own transaction, so that no sweep holds locks on many rows at once. Reservations offered to an invited
+ * user are left alone, as their seats are kept until the invitation ends, as are reservations being bought until their
+ * purchase lapses, which is then deleted with them
+ */
+public class ReservationSweeper implements ReservationSweeperMXBean, AutoCloseable {
+    static final Logger logger = LogManager.getLogger();
+
+    private static final String MBEAN_NAME = "tickr:type=ReservationSweeper";
+
+    private static final long SWEEP_INTERVAL_MS = 60 * 1000;
+    private static final int BATCH_SIZE = 500;
+    // Caps the work of one sweep, the rest being left for the next
+    private static final int MAX_BATCHES = 20;
+
+    private final DataModel model;
+    private final ScheduledExecutorService executor;
+
+    // Only written by one sweep at a time
+    private long numSweeps = 0;
+    private long numDeleted = 0;
+    private long numFailures = 0;
+    private int lastDeleted = 0;
+    private long lastDurationMs = 0;
+    private long maxDurationMs = 0;
+
+    private ReservationSweeper (DataModel model) {
+        this.model = model;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            var thread = new Thread(r, "reservation-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::runSweep, SWEEP_INTERVAL_MS, SWEEP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        registerMBean();
+    }
+
+    private void registerMBean () {
+        try {
+            var server = ManagementFactory.getPlatformMBeanServer();
+            var name = new ObjectName(MBEAN_NAME);
+            if (server.isRegistered(name)) {
+                // Left by the sweeper of a model which was not cleaned up, as in tests
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            logger.warn("Failed to publish reservation sweeper metrics!", e);
+        }
+    }
+
+    public static ReservationSweeper get (ModelSession session) {
+        return get(session.getModel());
+    }
+
+    public static ReservationSweeper get (DataModel model) {
+        return model.getComponent(ReservationSweeper.class, ReservationSweeper::new);
+    }
+
+    private void runSweep () {
+        try {
+            sweep();
+        } catch (RuntimeException e) {
+            logger.error("Failed to sweep expired reservations!", e);
+        }
+    }
+
+    /**
+     * Deletes reservations which have expired, up to a bounded number of batches, and frees their seats
+     * @return the number of reservations deleted
+     */
+    public synchronized int sweep () {
+        long start = System.nanoTime();
+        var now = ZonedDateTime.now(ZoneId.of("UTC"));
+        int deleted = 0;
+        boolean failed = false;
+
+        // Reservations are visited in expiry order. Deleted ones are gone from the next batch, and skipped ones are
+        // passed by moving the cursor up to them
+        ZonedDateTime cursor = null;
+        for (int i = 0; i < MAX_BATCHES; i++) {
+            var session = model.makeSession();
+            Batch batch;
+            try {
+                batch = sweepBatch(session, now, cursor);
+                session.commit();
+            } catch (RuntimeException e) {
+                // Most likely a reservation was bought or changed as it was deleted, so is left for the next sweep
+                logger.warn("Failed to delete batch of expired reservations!", e);
+                session.rollback();
+                failed = true;
+                break;
+            } finally {
+                session.close();
+            }
+
+            deleted += batch.deleted;
+            if (!batch.full || (batch.deleted == 0 && batch.skippedUntil.equals(cursor))) {
+                // No more, or only pending reservations are left at the cursor
+                break;
+            }
+            cursor = batch.skippedUntil != null ? batch.skippedUntil : cursor;
+        }
+
+        long durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        numSweeps++;
+        numDeleted += deleted;
+        numFailures += failed ? 1 : 0;
+        lastDeleted = deleted;
+        lastDurationMs = durationMs;
+        maxDurationMs = Math.max(maxDurationMs, durationMs);
+        if (deleted > 0 || failed) {
+            logger.info("Swept {} expired reservations in {} ms ({})!", deleted, durationMs, getStats());
+        } else {
+            logger.debug("Swept no expired reservations in {} ms ({})!", durationMs, getStats());
+        }
+
+        return deleted;
+    }
+
+    private Batch sweepBatch (ModelSession session, ZonedDateTime now, ZonedDateTime cursor) {
+        var query = session.query(TicketReservation.class)
+                .whereLessThan("expiryTime", now);
+        if (cursor != null) {
+            // Others may share the expiry of the last skipped reservation
+            query = query.whereGreaterThanOrEqual("expiryTime", cursor);
+        }
+        var candidates = query.orderBy("expiryTime")
+                .limit(BATCH_SIZE)
+                .getResults();
+        if (candidates.isEmpty()) {
+            return new Batch(0, false, null);
+        }
+        // A full batch may have more after it
+        boolean full = candidates.size() == BATCH_SIZE;
+
+        var pending = TicketReservation.getPendingIds(session, candidates);
+        var expired = candidates.stream()
+                .filter(r -> !pending.contains(r.getId()))
+                .collect(Collectors.toList());
+        var skippedUntil = candidates.stream()
+                .filter(r -> pending.contains(r.getId()))
+                .map(TicketReservation::getExpiry)
+                .reduce((e1, e2) -> e2) // Latest, as in expiry order
+                .orElse(null);
+        if (expired.isEmpty()) {
+            return new Batch(0, full, skippedUntil);
+        }
+
+        var ids = expired.stream().map(TicketReservation::getId).collect(Collectors.toList());
+        // Bulk deletes do not cascade, and lapsed purchases can no longer complete
+        session.query(PurchaseItem.class)
+                .whereIn("ticketReservation", expired)
+                .delete();
+        // Checked again in case the expiry was moved since being read
+        int deleted = session.query(TicketReservation.class)
+                .whereIn("id", ids)
+                .whereLessThan("expiryTime", now)
+                .delete();
+        if (deleted != expired.size()) {
+            var remaining = session.query(TicketReservation.class)
+                    .whereIn("id", ids)
+                    .getResultStream()
+                    .map(TicketReservation::getId)
+                    .collect(Collectors.toSet());
+            expired = expired.stream()
+                    .filter(r -> !remaining.contains(r.getId()))
+                    .collect(Collectors.toList());
+        }
+
+        // Usually already released by the allocator when their holds expired, in which case this does nothing
+        for (var i : expired) {
+            SeatAllocator.onReservationRemove(session, i);
+        }
+
+        return new Batch(expired.size(), full, skippedUntil);
+    }
+
+    public synchronized Stats getStats () {
+        return new Stats(numSweeps, numDeleted, numFailures, lastDeleted, lastDurationMs, maxDurationMs);
+    }
+
+    @Override
+    public synchronized long getNumSweeps () {
+        return numSweeps;
+    }
+
+    @Override
+    public synchronized long getNumDeleted () {
+        return numDeleted;
+    }
+
+    @Override
+    public synchronized long getNumFailures () {
+        return numFailures;
+    }
+
+    @Override
+    public synchronized int getLastDeleted () {
+        return lastDeleted;
+    }
+
+    @Override
+    public synchronized long getLastDurationMs () {
+        return lastDurationMs;
+    }
+
+    @Override
+    public synchronized long getMaxDurationMs () {
+        return maxDurationMs;
+    }
+
+    @Override
+    public void close () {
+        executor.shutdownNow();
+        try {
+            // Let a run in progress close its session before the model closes
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            var server = ManagementFactory.getPlatformMBeanServer();
+            var name = new ObjectName(MBEAN_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            logger.warn("Failed to remove reservation sweeper metrics!", e);
+        }
+    }
+
+    private static class Batch {
+        private final int deleted;
+        private final boolean full;
+        private final ZonedDateTime skippedUntil; // Expiry of the last reservation skipped, or null if none were
+
+        private Batch (int deleted, boolean full, ZonedDateTime skippedUntil) {
+            this.deleted = deleted;
+            this.full = full;
+            this.skippedUntil = skippedUntil;
+        }
+    }
+
+    /**
+     * Snapshot of the work done by the sweeper, for monitoring
+     */
+    public static class Stats {
+        private final long numSweeps;
+        private final long numDeleted;
+        private final long numFailures;
+        private final int lastDeleted;
+        private final long lastDurationMs;
+        private final long maxDurationMs;
+
+        public Stats (long numSweeps, long numDeleted, long numFailures, int lastDeleted, long lastDurationMs,
+                      long maxDurationMs) {
+            this.numSweeps = numSweeps;
+            this.numDeleted = numDeleted;
+            this.numFailures = numFailures;
+            this.lastDeleted = lastDeleted;
+            this.lastDurationMs = lastDurationMs;
+            this.maxDurationMs = maxDurationMs;
+        }
+
+        public long getNumSweeps () {
+            return numSweeps;
+        }
+
+        public long getNumDeleted () {
+            return numDeleted;
+        }
+
+        /**
+         * Gets the number of sweeps which stopped early as a batch failed to delete
+         * @return
+         */
+        public long getNumFailures () {
+            return numFailures;
+        }
+
+        public int getLastDeleted () {
+            return lastDeleted;
+        }
+
+        public long getLastDurationMs () {
+            return lastDurationMs;
+        }
+
+        public long getMaxDurationMs () {
+            return maxDurationMs;
+        }
+
+        @Override
+        public String toString () {
+            return String.format("%d sweeps, %d deleted, %d failed, last deleted %d in %d ms, slowest %d ms", numSweeps,
+                    numDeleted, numFailures, lastDeleted, lastDurationMs, maxDurationMs);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package tickr.application.seating;
+
+/**
+ * Work done by the reservation sweeper, published over JMX alongside the connection pool metrics
+ */
+public interface ReservationSweeperMXBean {
+    long getNumSweeps ();
+
+    long getNumDeleted ();
+
+    /**
+     * Gets the number of sweeps which stopped early as a batch failed to delete
+     * @return
+     */
+    long getNumFailures ();
+
+    int getLastDeleted ();
+
+    long getLastDurationMs ();
+
+    long getMaxDurationMs ();
+}
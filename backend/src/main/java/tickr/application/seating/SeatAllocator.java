@@ -0,0 +1,664 @@
+package tickr.application.seating;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import tickr.application.entities.Event;
+import tickr.application.entities.Invitation;
+import tickr.application.entities.SeatingPlan;
+import tickr.application.entities.Ticket;
+import tickr.application.entities.TicketReservation;
+import tickr.persistence.DataModel;
+import tickr.persistence.ModelSession;
+
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Authoritative in-memory record of the taken seats of every section, kept as a bitmap per section. Seats are taken by
+ * tickets, by unexpired reservations, and by reservations being made in transactions which have not yet committed.
+ * Seats are claimed here before their reservations are saved, so concurrent requests never choose the same seats, and
+ * are given back if the transaction rolls back. Other changes are registered with the session and applied once it
+ * commits. Reservations are released once they expire, by timers on a wheel shared by all sections, so counts of free
+ * seats are kept up to date rather than found by checking the expiry of every reservation. Reservations offered to an
+ * invited user are pinned, keeping their seats past their expiry until the invitation ends, and reservations being
+ * bought keep theirs for a grace period after expiring, as the purchase could otherwise no longer be completed once paid
+ * for. Built from the database on startup, with sections made afterwards added empty once they commit, so requests do
+ * not read seats from the database
+ */
+public class SeatAllocator {
+    static final Logger logger = LogManager.getLogger();
+
+    // Reservations expire after minutes, so a turn of the wheel covers most in one bucket visit
+    private static final int WHEEL_BUCKETS = 4096;
+    private static final long WHEEL_TICK_MS = 100;
+
+    private final Map<UUID, SectionSeats> sections = new ConcurrentHashMap<>();
+    // Sections being loaded, by id. Guarded by itself, as is adding to sections once loaded
+    private final Map<UUID, LoadingSection> loading = new HashMap<>();
+    private final ExpiryWheel expiries = new ExpiryWheel(WHEEL_BUCKETS, WHEEL_TICK_MS);
+
+    /**
+     * Gets the allocator, building it in the given session if it was not built on startup
+     * @param session
+     * @return
+     */
+    public static SeatAllocator get (ModelSession session) {
+        // Read only sessions may read from a replica which has not caught up
+        return session.getModel().getComponent(SeatAllocator.class,
+                m -> session.isReadOnly() ? build(m) : build(session));
+    }
+
+    /**
+     * Gets the allocator, building it in a session of its own if it has not been built yet, as on startup
+     * @param model
+     * @return
+     */
+    public static SeatAllocator get (DataModel model) {
+        return model.getComponent(SeatAllocator.class, SeatAllocator::build);
+    }
+
+    private static SeatAllocator build (DataModel model) {
+        var session = model.makeSession();
+        try {
+            var allocator = build(session);
+            session.commit();
+
+            return allocator;
+        } catch (RuntimeException e) {
+            session.rollback();
+            throw e;
+        } finally {
+            session.close();
+        }
+    }
+
+    private static SeatAllocator build (ModelSession session) {
+        logger.info("Building seat allocator!");
+        var allocator = new SeatAllocator();
+        for (var i : session.getAll(SeatingPlan.class)) {
+            allocator.sections.put(i.getId(), new SectionSeats(allocator.expiries, i.getTotalSeats()));
+        }
+        session.getAllStream(Ticket.class)
+                .forEach(t -> allocator.sections.get(t.getSection().getId()).loadTicket(t));
+        session.query(TicketReservation.class)
+                .fetch("purchaseItem")
+                .fetch("invitation")
+                .getResultStream()
+                .filter(SeatAllocator::holdsSeat)
+                .forEach(r -> allocator.sections.get(r.getSection().getId()).loadReservation(r));
+        logger.info("Loaded seats of {} sections!", allocator.sections.size());
+
+        return allocator;
+    }
+
+    private SectionSeats getSection (ModelSession session, SeatingPlan section) {
+        // Releases expired holds first, which must not be done while holding the lock of a section
+        expiries.advance(System.currentTimeMillis());
+
+        var seats = sections.get(section.getId());
+        if (seats != null) {
+            return seats;
+        }
+
+        if (session.isReadOnly()) {
+            // May be reading from a replica which has not caught up, so count without keeping the result
+            return load(session, section);
+        }
+
+        return loadSection(session, section);
+    }
+
+    /**
+     * Loads a section not yet in memory, or waits for another request loading it. Only needed for sections dropped
+     * from memory, as new sections are added when they commit. Changes committed as the section is loaded are kept and
+     * applied once it is, as they may not have been read
+     * @param session
+     * @param section
+     * @return
+     */
+    private SectionSeats loadSection (ModelSession session, SeatingPlan section) {
+        var sectionId = section.getId();
+        var pending = new LoadingSection();
+        LoadingSection other;
+        synchronized (loading) {
+            var seats = sections.get(sectionId);
+            if (seats != null) {
+                return seats;
+            }
+
+            other = loading.putIfAbsent(sectionId, pending);
+        }
+        if (other != null) {
+            try {
+                return other.result.join();
+            } catch (CompletionException e) {
+                // Failed to load, so try again
+                return loadSection(session, section);
+            }
+        }
+
+        SectionSeats seats;
+        // Read in the request's transaction, which may not see changes committed since it started whose callbacks have
+        // already run. Any seat double booked that way is still refused by the unique index on reserved seats, and any
+        // seat freed that way is released once its reservation expires
+        try {
+            seats = load(session, section);
+        } catch (RuntimeException e) {
+            synchronized (loading) {
+                loading.remove(sectionId);
+            }
+            pending.result.completeExceptionally(e);
+            throw e;
+        }
+
+        synchronized (loading) {
+            // Changes already read are applied again, which has no effect
+            for (var i : pending.changes) {
+                i.accept(seats);
+            }
+            loading.remove(sectionId);
+            if (!pending.removed) {
+                sections.put(sectionId, seats);
+            }
+        }
+        pending.result.complete(seats);
+
+        return seats;
+    }
+
+    private SectionSeats load (ModelSession session, SeatingPlan section) {
+        var seats = new SectionSeats(expiries, section.getTotalSeats());
+        session.query(Ticket.class)
+                .where("section", section)
+                .getResultStream()
+                .forEach(seats::loadTicket);
+        session.query(TicketReservation.class)
+                .where("section", section)
+                .fetch("purchaseItem")
+                .fetch("invitation")
+                .getResultStream()
+                .filter(SeatAllocator::holdsSeat)
+                .forEach(seats::loadReservation);
+
+        return seats;
+    }
+
+    private static boolean holdsSeat (TicketReservation reservation) {
+        // Expired reservations no longer hold seats, unless offered or being bought
+        return !reservation.hasExpired() || reservation.isPending();
+    }
+
+    /**
+     * Gets the number of seats of a section which are not taken
+     * @param session
+     * @param section
+     * @return
+     */
+    public int getAvailable (ModelSession session, SeatingPlan section) {
+        return getSection(session, section).getNumFree();
+    }
+
+    /**
+     * Gets the seats of a section held by reservations which have not expired or are pinned
+     * @param session
+     * @param section
+     * @return the seat numbers in ascending order
+     */
+    public List<Integer> getHeldSeats (ModelSession session, SeatingPlan section) {
+        return getSection(session, section).getHeldSeats();
+    }
+
+    /**
+     * Claims seats for reservations being made by this session, preferring the lowest numbered block of consecutive
+     * seats and otherwise taking the lowest numbered seats. The seats are given back if the session rolls back
+     * @param session
+     * @param section
+     * @param quantity
+     * @return the claimed seat numbers, or an empty list if there are not enough free seats
+     */
+    public List<Integer> claimLowest (ModelSession session, SeatingPlan section, int quantity) {
+        var seats = getSection(session, section);
+        var claimed = seats.claimLowest(quantity);
+        if (!claimed.isEmpty()) {
+            session.onRollback(() -> seats.unclaim(claimed));
+        }
+
+        return claimed;
+    }
+
+    /**
+     * Claims specific seats for reservations being made by this session, or none if any are taken. The seats are
+     * given back if the session rolls back
+     * @param session
+     * @param section
+     * @param seatNums
+     * @return whether the seats were claimed
+     */
+    public boolean claim (ModelSession session, SeatingPlan section, List<Integer> seatNums) {
+        var seats = getSection(session, section);
+        var claimed = List.copyOf(seatNums);
+        if (!seats.claim(claimed)) {
+            return false;
+        }
+        session.onRollback(() -> seats.unclaim(claimed));
+
+        return true;
+    }
+
+    /**
+     * Holds a claimed seat for a new reservation until it expires, once the session commits
+     * @param session
+     * @param reservation
+     */
+    public static void onReserve (ModelSession session, TicketReservation reservation) {
+        var sectionId = reservation.getSection().getId();
+        var hold = Hold.of(reservation);
+        onCommit(session, sectionId, s -> s.hold(hold));
+    }
+
+    /**
+     * Moves the expiry of a reservation's hold once the session commits
+     * @param session
+     * @param reservation
+     */
+    public static void onExpiryChange (ModelSession session, TicketReservation reservation) {
+        var sectionId = reservation.getSection().getId();
+        var hold = Hold.of(reservation);
+        onCommit(session, sectionId, s -> s.extend(hold));
+    }
+
+    /**
+     * Pins a reservation's hold once the session commits, so its seat is kept past its expiry while it is offered to an
+     * invited user
+     * @param session
+     * @param reservation
+     */
+    public static void onPin (ModelSession session, TicketReservation reservation) {
+        var sectionId = reservation.getSection().getId();
+        var hold = Hold.of(reservation).pinned();
+        onCommit(session, sectionId, s -> s.keep(hold));
+    }
+
+    /**
+     * Keeps a reservation's seat once the session commits, as it is being bought, until the purchase grace period after
+     * it expires
+     * @param session
+     * @param reservation
+     */
+    public static void onPurchase (ModelSession session, TicketReservation reservation) {
+        var sectionId = reservation.getSection().getId();
+        var hold = Hold.of(reservation, reservation.getExpiry().plus(TicketReservation.PURCHASE_GRACE));
+        onCommit(session, sectionId, s -> s.keep(hold));
+    }
+
+    /**
+     * Unpins a reservation's hold once the session commits, as its invitation was accepted or removed, so it expires
+     * again
+     * @param session
+     * @param invitation
+     */
+    public static void onInvitationRemove (ModelSession session, Invitation invitation) {
+        var reservation = invitation.getTicketReservation();
+        var sectionId = reservation.getSection().getId();
+        var hold = Hold.of(reservation);
+        onCommit(session, sectionId, s -> s.unpin(hold));
+    }
+
+    /**
+     * Keeps a reservation's seat taken without expiring once the session commits, as it has been bought
+     * @param session
+     * @param reservation
+     */
+    public static void onConvert (ModelSession session, TicketReservation reservation) {
+        var sectionId = reservation.getSection().getId();
+        var hold = Hold.of(reservation);
+        onCommit(session, sectionId, s -> s.convert(hold));
+    }
+
+    /**
+     * Frees a reservation's seat once the session commits
+     * @param session
+     * @param reservation
+     */
+    public static void onReservationRemove (ModelSession session, TicketReservation reservation) {
+        var sectionId = reservation.getSection().getId();
+        var hold = Hold.of(reservation);
+        onCommit(session, sectionId, s -> s.releaseHold(hold));
+    }
+
+    /**
+     * Frees a ticket's seat once the session commits
+     * @param session
+     * @param ticket
+     */
+    public static void onTicketRemove (ModelSession session, Ticket ticket) {
+        var sectionId = ticket.getSection().getId();
+        var seatNum = ticket.getSeatNumber();
+        onCommit(session, sectionId, s -> s.releaseTicket(seatNum));
+    }
+
+    /**
+     * Adds a new section with all of its seats free once the session commits
+     * @param session
+     * @param section
+     */
+    public static void onSectionCreate (ModelSession session, SeatingPlan section) {
+        var sectionId = section.getId();
+        var numSeats = section.getTotalSeats();
+        onCommit(session, a -> a.addSection(sectionId, numSeats));
+    }
+
+    /**
+     * Forgets a section once the session commits
+     * @param session
+     * @param section
+     */
+    public static void onSectionRemove (ModelSession session, SeatingPlan section) {
+        var sectionId = section.getId();
+        onCommit(session, a -> a.removeSection(sectionId));
+    }
+
+    /**
+     * Forgets the sections of an event once the session commits
+     * @param session
+     * @param event
+     */
+    public static void onEventRemove (ModelSession session, Event event) {
+        for (var i : event.getSeatingPlans()) {
+            onSectionRemove(session, i);
+        }
+    }
+
+    /**
+     * Forgets all sections once the session commits
+     * @param session
+     */
+    public static void onClear (ModelSession session) {
+        onCommit(session, SeatAllocator::clearSections);
+    }
+
+    private static void onCommit (ModelSession session, UUID sectionId, Consumer<SectionSeats> action) {
+        onCommit(session, a -> a.withSection(sectionId, action));
+    }
+
+    /**
+     * Applies a change once the session commits. Does nothing if the allocator has not been built, as building it
+     * reads the change from the database
+     */
+    private static void onCommit (ModelSession session, Consumer<SeatAllocator> action) {
+        var model = session.getModel();
+        session.onCommit(() -> model.findComponent(SeatAllocator.class).ifPresent(action));
+    }
+
+    private void addSection (UUID sectionId, int numSeats) {
+        synchronized (loading) {
+            if (!sections.containsKey(sectionId) && !loading.containsKey(sectionId)) {
+                sections.put(sectionId, new SectionSeats(expiries, numSeats));
+            }
+        }
+    }
+
+    private void removeSection (UUID sectionId) {
+        synchronized (loading) {
+            sections.remove(sectionId);
+            var pending = loading.get(sectionId);
+            if (pending != null) {
+                pending.removed = true;
+            }
+        }
+    }
+
+    private void clearSections () {
+        synchronized (loading) {
+            sections.clear();
+            for (var i : loading.values()) {
+                i.removed = true;
+            }
+        }
+    }
+
+    private void withSection (UUID sectionId, Consumer<SectionSeats> action) {
+        expiries.advance(System.currentTimeMillis());
+        var seats = sections.get(sectionId);
+        if (seats == null) {
+            synchronized (loading) {
+                seats = sections.get(sectionId);
+                var pending = loading.get(sectionId);
+                if (seats == null && pending != null) {
+                    pending.changes.add(action);
+                    return;
+                }
+            }
+        }
+
+        // Sections not yet loaded are read from the database when first used
+        if (seats != null) {
+            action.accept(seats);
+        }
+    }
+
+    /**
+     * A section being loaded, with the changes committed since it started loading
+     */
+    private static class LoadingSection {
+        private final List<Consumer<SectionSeats>> changes = new ArrayList<>();
+        private final CompletableFuture<SectionSeats> result = new CompletableFuture<>();
+        private boolean removed = false;
+    }
+
+    /**
+     * A committed reservation's claim on a seat
+     */
+    private static class Hold {
+        private final UUID reservationId;
+        private final int seatNum;
+        private final long expiry; // Epoch millis
+        private final boolean pinned; // Kept past its expiry, while offered to an invited user
+        private ExpiryWheel.Timer timer = null; // Guarded by the section, and null if pinned
+
+        private Hold (UUID reservationId, int seatNum, long expiry, boolean pinned) {
+            this.reservationId = reservationId;
+            this.seatNum = seatNum;
+            this.expiry = expiry;
+            this.pinned = pinned;
+        }
+
+        private static Hold of (TicketReservation reservation) {
+            return of(reservation, reservation.getHoldExpiry());
+        }
+
+        private static Hold of (TicketReservation reservation, ZonedDateTime expiry) {
+            return new Hold(reservation.getId(), reservation.getSeatNum(), expiry.toInstant().toEpochMilli(), false);
+        }
+
+        private static Hold load (TicketReservation reservation) {
+            return reservation.isOffered() ? of(reservation).pinned() : of(reservation);
+        }
+
+        private Hold pinned () {
+            return new Hold(reservationId, seatNum, expiry, true);
+        }
+
+        private boolean isFor (Hold other) {
+            return other != null && reservationId.equals(other.reservationId);
+        }
+    }
+
+    /**
+     * The taken seats of a section. A seat is taken by a ticket if it has neither a hold nor a claim
+     */
+    private static class SectionSeats {
+        private final ExpiryWheel expiries;
+        private final SeatBitmap taken;
+        private final BitSet claimed; // Seats of reservations which have not been committed, by seat number - 1
+        private final Map<Integer, Hold> holds = new HashMap<>();
+
+        private SectionSeats (ExpiryWheel expiries, int numSeats) {
+            this.expiries = expiries;
+            this.taken = new SeatBitmap(numSeats);
+            this.claimed = new BitSet(numSeats);
+        }
+
+        private synchronized void loadTicket (Ticket ticket) {
+            taken.take(ticket.getSeatNumber());
+        }
+
+        private synchronized void loadReservation (TicketReservation reservation) {
+            var hold = Hold.load(reservation);
+            if (taken.take(hold.seatNum)) {
+                putHold(hold);
+            }
+        }
+
+        private synchronized int getNumFree () {
+            return taken.getNumFree();
+        }
+
+        private synchronized List<Integer> getHeldSeats () {
+            return holds.keySet().stream()
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+
+        private synchronized List<Integer> claimLowest (int quantity) {
+            List<Integer> seats;
+            int start = taken.findContiguous(quantity);
+            if (start != -1) {
+                seats = new ArrayList<>(quantity);
+                for (int i = start; i < start + quantity; i++) {
+                    seats.add(i);
+                }
+            } else {
+                seats = taken.findLowest(quantity);
+            }
+
+            for (var i : seats) {
+                taken.take(i);
+                claimed.set(i - 1);
+            }
+
+            return seats;
+        }
+
+        private synchronized boolean claim (List<Integer> seatNums) {
+            if (seatNums.stream().anyMatch(i -> !taken.isValid(i) || taken.isTaken(i))
+                    || seatNums.stream().distinct().count() != seatNums.size()) {
+                return false;
+            }
+
+            for (var i : seatNums) {
+                taken.take(i);
+                claimed.set(i - 1);
+            }
+
+            return true;
+        }
+
+        private synchronized void unclaim (List<Integer> seatNums) {
+            for (var i : seatNums) {
+                if (claimed.get(i - 1)) {
+                    claimed.clear(i - 1);
+                    taken.release(i);
+                }
+            }
+        }
+
+        private synchronized void hold (Hold hold) {
+            if (hold.isFor(holds.get(hold.seatNum))) {
+                // Already loaded from the database
+                return;
+            } else if (!claimed.get(hold.seatNum - 1) && taken.take(hold.seatNum)) {
+                // Claimed before the section was dropped and loaded again, and committed too late to be read
+                putHold(hold);
+                return;
+            } else if (!claimed.get(hold.seatNum - 1)) {
+                logger.warn("Reservation {} committed without claiming seat {}!", hold.reservationId, hold.seatNum);
+                return;
+            }
+            claimed.clear(hold.seatNum - 1);
+            putHold(hold);
+        }
+
+        private synchronized void extend (Hold hold) {
+            var current = holds.get(hold.seatNum);
+            if (hold.isFor(current)) {
+                // Stays pinned, with the new expiry used once unpinned
+                putHold(current.pinned ? hold.pinned() : hold);
+            }
+        }
+
+        private synchronized void keep (Hold hold) {
+            if (hold.isFor(holds.get(hold.seatNum))) {
+                putHold(hold);
+            } else if (taken.take(hold.seatNum)) {
+                // Expired as the purchase or invitation was being made, but not yet taken again
+                putHold(hold);
+            } else {
+                logger.warn("Reservation {} was kept after its seat {} was released!", hold.reservationId, hold.seatNum);
+            }
+        }
+
+        private synchronized void unpin (Hold hold) {
+            var current = holds.get(hold.seatNum);
+            if (hold.isFor(current) && current.pinned) {
+                putHold(hold);
+            }
+        }
+
+        private synchronized void convert (Hold hold) {
+            if (hold.isFor(holds.get(hold.seatNum))) {
+                removeHold(hold.seatNum);
+            } else {
+                logger.warn("Reservation {} was bought after its seat {} was released!", hold.reservationId, hold.seatNum);
+            }
+        }
+
+        private synchronized void releaseHold (Hold hold) {
+            // The hold may have expired and the seat been taken again since
+            if (hold.isFor(holds.get(hold.seatNum))) {
+                removeHold(hold.seatNum);
+                taken.release(hold.seatNum);
+            }
+        }
+
+        private synchronized void releaseTicket (int seatNum) {
+            if (!holds.containsKey(seatNum) && taken.isValid(seatNum) && !claimed.get(seatNum - 1)) {
+                taken.release(seatNum);
+            }
+        }
+
+        private void putHold (Hold hold) {
+            removeHold(hold.seatNum);
+            if (hold.pinned) {
+                holds.put(hold.seatNum, hold);
+                return;
+            } else if (hold.expiry < System.currentTimeMillis()) {
+                // Already expired, as when the expiry is moved into the past
+                taken.release(hold.seatNum);
+                return;
+            }
+            holds.put(hold.seatNum, hold);
+            hold.timer = expiries.schedule(hold.expiry, () -> expire(hold));
+        }
+
+        private void removeHold (int seatNum) {
+            var hold = holds.remove(seatNum);
+            if (hold != null && hold.timer != null) {
+                hold.timer.cancel();
+            }
+        }
+
+        private synchronized void expire (Hold hold) {
+            // May have been replaced as the timer fired
+            if (holds.get(hold.seatNum) == hold) {
+                holds.remove(hold.seatNum);
+                taken.release(hold.seatNum);
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package tickr.application.seating;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Which seats of a section are taken, one bit per seat. Seats are numbered from 1, so seat n is bit n - 1. Free seats
+ * are found by scanning for clear bits a word at a time, rather than collecting and sorting the taken seat numbers.
+ * Unsynchronised
+ */
+public class SeatBitmap {
+    private final int numSeats;
+    private final BitSet taken;
+    private int numTaken = 0;
+
+    public SeatBitmap (int numSeats) {
+        this.numSeats = numSeats;
+        this.taken = new BitSet(numSeats);
+    }
+
+    public int getNumSeats () {
+        return numSeats;
+    }
+
+    public int getNumTaken () {
+        return numTaken;
+    }
+
+    public int getNumFree () {
+        return numSeats - numTaken;
+    }
+
+    public boolean isValid (int seatNum) {
+        return seatNum > 0 && seatNum <= numSeats;
+    }
+
+    public boolean isTaken (int seatNum) {
+        return isValid(seatNum) && taken.get(seatNum - 1);
+    }
+
+    /**
+     * Marks a seat as taken
+     * @param seatNum
+     * @return whether the seat was free
+     */
+    public boolean take (int seatNum) {
+        if (!isValid(seatNum) || taken.get(seatNum - 1)) {
+            return false;
+        }
+        taken.set(seatNum - 1);
+        numTaken++;
+
+        return true;
+    }
+
+    /**
+     * Marks a seat as free
+     * @param seatNum
+     * @return whether the seat was taken
+     */
+    public boolean release (int seatNum) {
+        if (!isTaken(seatNum)) {
+            return false;
+        }
+        taken.clear(seatNum - 1);
+        numTaken--;
+
+        return true;
+    }
+
+    /**
+     * Finds the lowest numbered free seats, filling gaps between taken seats first
+     * @param quantity
+     * @return the seat numbers in ascending order, or an empty list if there are not enough free seats
+     */
+    public List<Integer> findLowest (int quantity) {
+        if (quantity <= 0 || quantity > getNumFree()) {
+            return List.of();
+        }
+
+        var seats = new ArrayList<Integer>(quantity);
+        for (int i = taken.nextClearBit(0); seats.size() < quantity; i = taken.nextClearBit(i + 1)) {
+            seats.add(i + 1);
+        }
+
+        return seats;
+    }
+
+    /**
+     * Finds the lowest numbered block of consecutive free seats
+     * @param quantity
+     * @return the first seat number of the block, or -1 if there is no large enough block
+     */
+    public int findContiguous (int quantity) {
+        if (quantity <= 0 || quantity > getNumFree()) {
+            return -1;
+        }
+
+        int start = taken.nextClearBit(0);
+        while (start + quantity <= numSeats) {
+            // Free seats run until the next taken seat
+            int end = taken.nextSetBit(start);
+            if (end == -1 || end >= start + quantity) {
+                return start + 1;
+            }
+            start = taken.nextClearBit(end);
+        }
+
+        return -1;
+    }
+}
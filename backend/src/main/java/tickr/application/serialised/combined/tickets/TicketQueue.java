@@ -0,0 +1,46 @@
+package tickr.application.serialised.combined.tickets;
+
+import com.google.gson.annotations.SerializedName;
+
+public class TicketQueue {
+    public static class Request {
+        @SerializedName("auth_token")
+        public String authToken;
+
+        @SerializedName("event_id")
+        public String eventId;
+
+        public Request () {
+
+        }
+
+        public Request (String authToken, String eventId) {
+            this.authToken = authToken;
+            this.eventId = eventId;
+        }
+    }
+
+    public static class Response {
+        @SerializedName("queue_token")
+        public String queueToken;
+
+        // Counting from 1, or 0 once admitted
+        public long position;
+
+        public boolean admitted;
+
+        @SerializedName("wait_seconds")
+        public long waitSeconds;
+
+        public Response () {
+
+        }
+
+        public Response (String queueToken, long position, boolean admitted, long waitSeconds) {
+            this.queueToken = queueToken;
+            this.position = position;
+            this.admitted = admitted;
+            this.waitSeconds = waitSeconds;
+        }
+    }
+}
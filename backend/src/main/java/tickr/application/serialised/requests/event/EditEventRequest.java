@@ -43,6 +43,10 @@ public class EditEventRequest {
     @SerializedName("spotify_playlist")
     public String spotifyPlaylist;
 
+    // Left unchanged if null
+    @SerializedName("admission_queue")
+    public Boolean admissionQueue;
+
     public static class SeatingDetails {
         public String section;
 
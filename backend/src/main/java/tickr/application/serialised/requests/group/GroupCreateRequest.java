@@ -38,7 +38,7 @@ public class GroupCreateRequest {
                     .orElseThrow(() -> new ForbiddenException("Reserve ID does not exist!"));
             if (reserveId.equals(reserve)) {
                 reserveId.setGroupAccepted(true);
-                reserveId.setExpiry(ZonedDateTime.now(ZoneId.of("UTC")).plus(Duration.ofHours(24)));
+                reserveId.setExpiry(session, ZonedDateTime.now(ZoneId.of("UTC")).plus(Duration.ofHours(24)));
             }
             set.add(reserveId);
         }
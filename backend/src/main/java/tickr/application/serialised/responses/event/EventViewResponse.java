@@ -45,6 +45,9 @@ public class EventViewResponse {
     @SerializedName("spotify_playlist")
     public String spotifyPlaylist;
 
+    @SerializedName("admission_queue")
+    public boolean admissionQueue = false;
+
     public static class SeatingDetails {
         public String section;
 
@@ -0,0 +1,53 @@
+package tickr.persistence;
+
+/**
+ * Snapshot of the hit and miss counts of a second level cache region since the model started
+ */
+public class CacheRegionStats {
+    private final String regionName;
+    private final long hitCount;
+    private final long missCount;
+    private final long putCount;
+
+    public CacheRegionStats (String regionName, long hitCount, long missCount, long putCount) {
+        this.regionName = regionName;
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.putCount = putCount;
+    }
+
+    public String getRegionName () {
+        return regionName;
+    }
+
+    public long getHitCount () {
+        return hitCount;
+    }
+
+    /**
+     * Gets the number of lookups which were not cached, so went to the database
+     * @return
+     */
+    public long getMissCount () {
+        return missCount;
+    }
+
+    public long getPutCount () {
+        return putCount;
+    }
+
+    /**
+     * Gets the fraction of lookups served from the cache, or 0 if there have been none
+     * @return
+     */
+    public double getHitRatio () {
+        var lookups = hitCount + missCount;
+        return lookups == 0 ? 0 : (double) hitCount / lookups;
+    }
+
+    @Override
+    public String toString () {
+        return String.format("%s: %d hits, %d misses, %d puts (%.1f%% hit ratio)", regionName, hitCount, missCount,
+                putCount, getHitRatio() * 100);
+    }
+}
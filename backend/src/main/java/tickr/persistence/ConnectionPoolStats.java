@@ -0,0 +1,61 @@
+package tickr.persistence;
+
+/**
+ * Snapshot of the state of a database connection pool
+ */
+public class ConnectionPoolStats {
+    private final String poolName;
+    private final int activeConnections;
+    private final int idleConnections;
+    private final int totalConnections;
+    private final int threadsAwaiting;
+    private final int maxConnections;
+
+    public ConnectionPoolStats (String poolName, int activeConnections, int idleConnections, int totalConnections,
+                                int threadsAwaiting, int maxConnections) {
+        this.poolName = poolName;
+        this.activeConnections = activeConnections;
+        this.idleConnections = idleConnections;
+        this.totalConnections = totalConnections;
+        this.threadsAwaiting = threadsAwaiting;
+        this.maxConnections = maxConnections;
+    }
+
+    public String getPoolName () {
+        return poolName;
+    }
+
+    /**
+     * Gets the number of connections currently in use by sessions
+     * @return
+     */
+    public int getActiveConnections () {
+        return activeConnections;
+    }
+
+    public int getIdleConnections () {
+        return idleConnections;
+    }
+
+    public int getTotalConnections () {
+        return totalConnections;
+    }
+
+    /**
+     * Gets the number of threads waiting for a connection. If this is often above 0 the pool is too small
+     * @return
+     */
+    public int getThreadsAwaiting () {
+        return threadsAwaiting;
+    }
+
+    public int getMaxConnections () {
+        return maxConnections;
+    }
+
+    @Override
+    public String toString () {
+        return String.format("%s: %d active, %d idle, %d/%d total, %d waiting", poolName, activeConnections,
+                idleConnections, totalConnections, maxConnections, threadsAwaiting);
+    }
+}
@@ -1,12 +1,104 @@
 package tickr.persistence;
 
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Function;
+
 /**
  * Interface for a data source. Is accessed across threads, so all functions must be
  * thread safe.
  */
 public interface DataModel {
     ModelSession makeSession ();
+
+    /**
+     * Makes a session which only reads from the data source. Changes made to entities are not
+     * tracked and are discarded on commit, so only use for requests which never write
+     * @return
+     */
+    ModelSession makeReadOnlySession ();
+
+    /**
+     * Makes a read only session for a user. If the user has recently written, the session is
+     * guaranteed to see their writes, otherwise it may be served by a read replica and be stale
+     * @param readerId id of the user reading, or null if unknown
+     * @return
+     */
+    default ModelSession makeReadOnlySession (UUID readerId) {
+        return makeReadOnlySession();
+    }
+
+    /**
+     * Records that a user has just committed changes, so that their reads see them
+     * @param userId
+     */
+    default void markUserWrite (UUID userId) {
+
+    }
+
+    /**
+     * Evicts an entity and its cached collections from any caches of the data source
+     * @param entityClass
+     * @param id
+     */
+    default void evictCached (Class<?> entityClass, Object id) {
+
+    }
+
+    /**
+     * Brings the schema of the data source up to date, see SchemaMigrator. Should be called once on
+     * startup, before any sessions are made
+     */
+    default void migrateSchema () {
+
+    }
+
     boolean isClosed ();
 
+    /**
+     * Gets a component which shares the lifetime of this model, creating it using the factory
+     * on first use. Components are shared across threads, so must be thread safe. Components
+     * implementing AutoCloseable are closed on cleanup.
+     * @param componentClass
+     * @param factory
+     * @return
+     * @param <T>
+     */
+    <T> T getComponent (Class<T> componentClass, Function<DataModel, T> factory);
+
+    /**
+     * Gets a component if it has already been created, see getComponent
+     * @param componentClass
+     * @return
+     * @param <T>
+     */
+    <T> Optional<T> findComponent (Class<T> componentClass);
+
+    /**
+     * Gets the current state of the connection pools used by this model, for monitoring
+     * @return
+     */
+    default List<ConnectionPoolStats> getPoolStats () {
+        return List.of();
+    }
+
+    /**
+     * Gets the hit and miss counts of each cache region used by this model, for monitoring
+     * @return
+     */
+    default List<CacheRegionStats> getCacheStats () {
+        return List.of();
+    }
+
+    /**
+     * Gets the number of statements sent to the primary data source since the model started, for
+     * tracking how many queries requests make
+     * @return
+     */
+    default long getStatementCount () {
+        return 0;
+    }
+
     void cleanup ();
 }
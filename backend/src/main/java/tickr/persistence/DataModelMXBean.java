@@ -0,0 +1,14 @@
+package tickr.persistence;
+
+import java.util.List;
+
+/**
+ * Connection pool and cache statistics of a model, published over JMX alongside the reservation sweeper metrics
+ */
+public interface DataModelMXBean {
+    List<ConnectionPoolStats> getPoolStats ();
+
+    List<CacheRegionStats> getCacheStats ();
+
+    long getStatementCount ();
+}
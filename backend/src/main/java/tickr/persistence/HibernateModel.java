@@ -2,31 +2,134 @@ package tickr.persistence;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.persistence.ManyToMany;
+import jakarta.persistence.OneToMany;
+import org.hibernate.annotations.Cache;
+import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.boot.MetadataSources;
 import org.hibernate.boot.registry.StandardServiceRegistry;
 import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
 
-public class HibernateModel implements DataModel {
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+public class HibernateModel implements DataModel, DataModelMXBean {
     static final Logger logger = LogManager.getLogger();
 
+    private static final String MBEAN_NAME = "tickr:type=DataModel";
+
+    public static final Duration DEFAULT_REPLICA_STALENESS = Duration.ofSeconds(5);
+    private static final int MAX_RECENT_WRITERS = 10000;
+
     private final SessionFactory sessionFactory;
     private final StandardServiceRegistry registry;
 
-    private boolean isClosed = false;
+    // Read replicas, which read only sessions are balanced across
+    private final List<SessionFactory> replicaFactories = new ArrayList<>();
+    private final List<StandardServiceRegistry> replicaRegistries = new ArrayList<>();
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    // Users who have recently written, mapped to when their reads may go to replicas again, in nanoTime
+    private final Map<UUID, Long> recentWriters = new ConcurrentHashMap<>();
+    private final long stalenessNanos;
+
+    // Sessions not yet closed, which are rolled back on cleanup so that they do not keep their locks and connections
+    private final Set<Session> openSessions = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean isClosed = false;
+
+    private final Map<Class<?>, Object> components = new ConcurrentHashMap<>();
 
 
     private HibernateModel (StandardServiceRegistry registry) {
+        this(registry, List.of(), DEFAULT_REPLICA_STALENESS);
+    }
+
+    private HibernateModel (StandardServiceRegistry registry, List<StandardServiceRegistry> replicas, Duration staleness) {
         this.registry = registry;
+        this.stalenessNanos = staleness.toNanos();
 
         try {
             sessionFactory = new MetadataSources(registry).buildMetadata().buildSessionFactory();
         } catch (Exception e) {
             logger.error("Failed to initialise Hibernate session factory!");
             registry.close();
+            replicas.forEach(StandardServiceRegistry::close);
             throw new RuntimeException("Failed to initialise Hibernate model", e);
         }
-        logger.info("Successfully initialised Hibernate database!");
+
+        for (var i : replicas) {
+            try {
+                replicaFactories.add(new MetadataSources(i).buildMetadata().buildSessionFactory());
+                replicaRegistries.add(i);
+            } catch (Exception e) {
+                logger.error("Failed to initialise Hibernate session factory for read replica!");
+                cleanup();
+                replicas.stream()
+                        .filter(r -> !replicaRegistries.contains(r))
+                        .forEach(StandardServiceRegistry::close);
+                throw new RuntimeException("Failed to initialise Hibernate model", e);
+            }
+        }
+        warmUp();
+        registerMBean();
+        logger.info("Successfully initialised Hibernate database with {} read replicas!", replicaFactories.size());
+    }
+
+    // The first criteria query loads most of Hibernate's query classes, which takes long enough to time out the first
+    // request that queries if left until then
+    private void warmUp () {
+        var entity = sessionFactory.getMetamodel().getEntities().stream().findFirst();
+        if (entity.isEmpty()) {
+            return;
+        }
+        try (var session = sessionFactory.openSession()) {
+            selectAny(session, entity.get().getJavaType());
+        } catch (RuntimeException e) {
+            logger.warn("Failed to warm up Hibernate queries!", e);
+        }
+    }
+
+    private void registerMBean () {
+        try {
+            var server = ManagementFactory.getPlatformMBeanServer();
+            var name = new ObjectName(MBEAN_NAME);
+            if (server.isRegistered(name)) {
+                // Left by a model which was not cleaned up, as in tests
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            logger.warn("Failed to publish model metrics!", e);
+        }
+    }
+
+    private void unregisterMBean () {
+        try {
+            var server = ManagementFactory.getPlatformMBeanServer();
+            var name = new ObjectName(MBEAN_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            logger.warn("Failed to remove model metrics!", e);
+        }
+    }
+
+    private static <T> void selectAny (Session session, Class<T> entityClass) {
+        var query = session.getCriteriaBuilder().createQuery(entityClass);
+        query.select(query.from(entityClass));
+        session.createQuery(query).setMaxResults(1).getResultList();
     }
     public HibernateModel () {
         this(new StandardServiceRegistryBuilder().configure().build());
@@ -38,26 +141,308 @@ public class HibernateModel implements DataModel {
                 .build());
     }
 
+    /**
+     * Makes a model from a config file with some of its settings replaced
+     * @param configFile
+     * @param settings Hibernate settings, which take precedence over those of the config file
+     */
+    public HibernateModel (String configFile, Map<String, Object> settings) {
+        this(new StandardServiceRegistryBuilder()
+                .configure(configFile)
+                .applySettings(settings)
+                .build());
+    }
+
+    /**
+     * Makes a model with read replicas. Replicas use the same configuration as the primary except for their url
+     * @param replicaUrls JDBC urls of the read replicas
+     * @param staleness how long after a user writes that their reads go to the primary, which should be longer than
+     *                  the replication lag
+     */
+    public HibernateModel (List<String> replicaUrls, Duration staleness) {
+        this(new StandardServiceRegistryBuilder().configure().build(),
+                makeReplicaRegistries(null, replicaUrls),
+                staleness);
+    }
+
+    /**
+     * Makes a model with read replicas. Replicas use the same configuration as the primary except for their url
+     * @param configFile
+     * @param replicaUrls JDBC urls of the read replicas
+     * @param staleness how long after a user writes that their reads go to the primary, which should be longer than
+     *                  the replication lag
+     */
+    public HibernateModel (String configFile, List<String> replicaUrls, Duration staleness) {
+        this(new StandardServiceRegistryBuilder().configure(configFile).build(),
+                makeReplicaRegistries(configFile, replicaUrls),
+                staleness);
+    }
+
+    private static List<StandardServiceRegistry> makeReplicaRegistries (String configFile, List<String> replicaUrls) {
+        var registries = new ArrayList<StandardServiceRegistry>();
+        for (int i = 0; i < replicaUrls.size(); i++) {
+            var builder = new StandardServiceRegistryBuilder();
+            if (configFile == null) {
+                builder.configure();
+            } else {
+                builder.configure(configFile);
+            }
+            registries.add(builder
+                    .applySetting("hibernate.connection.url", replicaUrls.get(i))
+                    .applySetting("hibernate.hikari.poolName", "tickr-replica-" + i) // Pool names must be unique
+                    // Replicas must not share cache regions with the primary, or stale reads would be cached for it
+                    .applySetting("hibernate.cache.region_prefix", "tickr-replica-" + i)
+                    // Writes to the primary do not invalidate replica query results, so only cache entities, which
+                    // are evicted explicitly
+                    .applySetting("hibernate.cache.use_query_cache", "false")
+                    .build());
+        }
+
+        return registries;
+    }
+
     @Override
-    public synchronized ModelSession makeSession() {
+    public ModelSession makeSession() {
         //logger.debug("Making a Hibernate model session!");
         if (isClosed) {
             throw new RuntimeException("Attempted to make session of already closed model!");
         }
 
-        return new HibernateSession(sessionFactory.openSession());
+        return new HibernateSession(this, openSession(sessionFactory), false);
+    }
+
+    @Override
+    public ModelSession makeReadOnlySession () {
+        return makeReadOnlySession(null);
+    }
+
+    @Override
+    public ModelSession makeReadOnlySession (UUID readerId) {
+        if (isClosed) {
+            throw new RuntimeException("Attempted to make session of already closed model!");
+        }
+
+        return new HibernateSession(this, openSession(getReadFactory(readerId)), true);
+    }
+
+    private Session openSession (SessionFactory factory) {
+        var session = factory.openSession();
+        openSessions.add(session);
+        return session;
+    }
+
+    void onSessionClose (Session session) {
+        openSessions.remove(session);
+    }
+
+    private SessionFactory getReadFactory (UUID readerId) {
+        if (replicaFactories.isEmpty()) {
+            return sessionFactory;
+        }
+
+        if (readerId != null) {
+            var expiry = recentWriters.get(readerId);
+            if (expiry != null) {
+                if (System.nanoTime() - expiry < 0) {
+                    // Replicas may not have this user's writes yet
+                    return sessionFactory;
+                }
+                recentWriters.remove(readerId, expiry);
+            }
+        }
+
+        // Round robin across replicas
+        return replicaFactories.get(Math.floorMod(nextReplica.getAndIncrement(), replicaFactories.size()));
     }
 
     @Override
-    public synchronized boolean isClosed () {
+    public void markUserWrite (UUID userId) {
+        if (replicaFactories.isEmpty()) {
+            return;
+        }
+
+        var now = System.nanoTime();
+        recentWriters.put(userId, now + stalenessNanos);
+        if (recentWriters.size() > MAX_RECENT_WRITERS) {
+            // Drop users whose writes have already replicated
+            recentWriters.values().removeIf(e -> now - e >= 0);
+        }
+    }
+
+    /**
+     * Gets the current state of the connection pools of the primary and any replicas
+     * @return
+     */
+    @Override
+    public List<ConnectionPoolStats> getPoolStats () {
+        var stats = new ArrayList<ConnectionPoolStats>();
+        getPoolStats(sessionFactory).ifPresent(stats::add);
+        for (var i : replicaFactories) {
+            getPoolStats(i).ifPresent(stats::add);
+        }
+
+        return stats;
+    }
+
+    private static Optional<ConnectionPoolStats> getPoolStats (SessionFactory factory) {
+        var provider = factory.getSessionFactoryOptions().getServiceRegistry().getService(ConnectionProvider.class);
+        if (provider == null || !provider.isUnwrappableAs(HikariDataSource.class)) {
+            // Not pooled by HikariCP
+            return Optional.empty();
+        }
+
+        var dataSource = provider.unwrap(HikariDataSource.class);
+        var pool = dataSource.getHikariPoolMXBean();
+        if (pool == null) {
+            return Optional.empty();
+        }
+
+        return Optional.of(new ConnectionPoolStats(dataSource.getPoolName(), pool.getActiveConnections(),
+                pool.getIdleConnections(), pool.getTotalConnections(), pool.getThreadsAwaitingConnection(),
+                dataSource.getMaximumPoolSize()));
+    }
+
+    /**
+     * Evicts an entity and its cached collections from the caches of the primary and any replicas. The primary's cache
+     * is kept up to date by its sessions, but replicas' caches are only updated by eviction or expiry
+     * @param entityClass
+     * @param id
+     */
+    @Override
+    public void evictCached (Class<?> entityClass, Object id) {
+        var roles = getCachedCollectionRoles(entityClass);
+        evictCached(sessionFactory, entityClass, id, roles);
+        for (var i : replicaFactories) {
+            evictCached(i, entityClass, id, roles);
+        }
+    }
+
+    private static void evictCached (SessionFactory factory, Class<?> entityClass, Object id, List<String> roles) {
+        var cache = factory.getCache();
+        cache.evictEntityData(entityClass, id);
+        for (var i : roles) {
+            cache.evictCollectionData(i, id);
+        }
+    }
+
+    private static List<String> getCachedCollectionRoles (Class<?> entityClass) {
+        // Collection roles are named by the owning entity and field
+        return Arrays.stream(entityClass.getDeclaredFields())
+                .filter(f -> f.isAnnotationPresent(Cache.class))
+                .filter(f -> f.isAnnotationPresent(OneToMany.class) || f.isAnnotationPresent(ManyToMany.class))
+                .map(f -> entityClass.getName() + "." + f.getName())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Gets the hit and miss counts of the cache regions of the primary and any replicas
+     * @return
+     */
+    @Override
+    public List<CacheRegionStats> getCacheStats () {
+        var stats = new ArrayList<CacheRegionStats>();
+        getCacheStats(sessionFactory, stats);
+        for (var i : replicaFactories) {
+            getCacheStats(i, stats);
+        }
+
+        return stats;
+    }
+
+    private static void getCacheStats (SessionFactory factory, List<CacheRegionStats> stats) {
+        var statistics = factory.getStatistics();
+        if (!statistics.isStatisticsEnabled()) {
+            return;
+        }
+
+        for (var i : statistics.getSecondLevelCacheRegionNames()) {
+            var regionStats = statistics.getCacheRegionStatistics(i);
+            if (regionStats != null) {
+                stats.add(new CacheRegionStats(i, regionStats.getHitCount(), regionStats.getMissCount(),
+                        regionStats.getPutCount()));
+            }
+        }
+    }
+
+    @Override
+    public long getStatementCount () {
+        return sessionFactory.getStatistics().getPrepareStatementCount();
+    }
+
+    @Override
+    public void migrateSchema () {
+        // Replicas receive the schema changes through replication
+        try (var session = sessionFactory.openSession()) {
+            session.doWork(connection -> new SchemaMigrator().migrate(connection));
+        }
+    }
+
+    @Override
+    public boolean isClosed () {
         return isClosed;
     }
 
+    @Override
+    public <T> T getComponent (Class<T> componentClass, Function<DataModel, T> factory) {
+        // Components are looked up on every request, so only lock to build them
+        var existing = components.get(componentClass);
+        if (existing != null) {
+            return componentClass.cast(existing);
+        }
+
+        // Separate lock to makeSession() as factories may need to make sessions of their own
+        synchronized (components) {
+            var component = components.get(componentClass);
+            if (component == null) {
+                component = factory.apply(this);
+                components.put(componentClass, component);
+            }
+            return componentClass.cast(component);
+        }
+    }
+
+    @Override
+    public <T> Optional<T> findComponent (Class<T> componentClass) {
+        return Optional.ofNullable(components.get(componentClass)).map(componentClass::cast);
+    }
+
     @Override
     public synchronized void cleanup () {
         logger.info("Cleaning up Hibernate model!");
+        // Closed first so background work does not start sessions while the schema is being dropped
+        isClosed = true;
+        synchronized (components) {
+            for (var i : components.values()) {
+                if (i instanceof AutoCloseable) {
+                    try {
+                        ((AutoCloseable) i).close();
+                    } catch (Exception e) {
+                        logger.error("Failed to close model component {}!", i, e);
+                    }
+                }
+            }
+            components.clear();
+        }
+        if (!openSessions.isEmpty()) {
+            logger.warn("Rolling back {} sessions left open!", openSessions.size());
+            for (var i : openSessions) {
+                try {
+                    if (i.getTransaction().isActive()) {
+                        i.getTransaction().rollback();
+                    }
+                    i.close();
+                } catch (RuntimeException e) {
+                    logger.warn("Failed to close session left open!", e);
+                }
+            }
+            openSessions.clear();
+        }
+        unregisterMBean();
         sessionFactory.close();
         registry.close();
-        isClosed = true;
+        for (int i = 0; i < replicaFactories.size(); i++) {
+            replicaFactories.get(i).close();
+            replicaRegistries.get(i).close();
+        }
     }
 }
@@ -0,0 +1,258 @@
+package tickr.persistence;
+
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaDelete;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.CriteriaUpdate;
+import jakarta.persistence.criteria.Fetch;
+import jakarta.persistence.criteria.JoinType;
+import jakarta.persistence.criteria.Order;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hibernate.Session;
+import org.hibernate.query.Query;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * ModelQuery implementation using the JPA criteria API, so the filtering, ordering and paging are done by the
+ * database. Predicates and orderings are stored as functions of the query root, so that the same conditions can be
+ * applied to both the select and count queries
+ * @param <T>
+ */
+public class HibernateQuery<T> implements ModelQuery<T> {
+    static final Logger logger = LogManager.getLogger();
+
+    private final Session session;
+    private final Class<T> entityClass;
+
+    private final List<BiFunction<CriteriaBuilder, Root<T>, Predicate>> predicates = new ArrayList<>();
+    private final List<BiFunction<CriteriaBuilder, Root<T>, Order>> orders = new ArrayList<>();
+    private final List<String> fetches = new ArrayList<>();
+    private int offset = 0;
+    private int limit = -1;
+    private boolean cacheable = false;
+
+    public HibernateQuery (Session session, Class<T> entityClass) {
+        this.session = session;
+        this.entityClass = entityClass;
+    }
+
+    static <Y> Path<Y> getPath (Root<?> root, String col) {
+        var cols = col.split("\\.");
+        Path<Y> path = root.get(cols[0]);
+        for (int i = 1; i < cols.length; i++) {
+            path = path.get(cols[i]);
+        }
+        return path;
+    }
+
+    @Override
+    public ModelQuery<T> where (String col, Object value) {
+        predicates.add((cb, root) -> cb.equal(getPath(root, col), value));
+        return this;
+    }
+
+    @Override
+    public ModelQuery<T> whereNot (String col, Object value) {
+        predicates.add((cb, root) -> cb.notEqual(getPath(root, col), value));
+        return this;
+    }
+
+    @Override
+    public ModelQuery<T> whereNull (String col) {
+        predicates.add((cb, root) -> cb.isNull(getPath(root, col)));
+        return this;
+    }
+
+    @Override
+    public ModelQuery<T> whereNotNull (String col) {
+        predicates.add((cb, root) -> cb.isNotNull(getPath(root, col)));
+        return this;
+    }
+
+    @Override
+    public ModelQuery<T> whereIn (String col, Collection<?> values) {
+        var valuesCopy = new ArrayList<>(values);
+        // IN () is invalid SQL, so use an always false predicate instead
+        predicates.add((cb, root) -> valuesCopy.isEmpty() ? cb.disjunction() : getPath(root, col).in(valuesCopy));
+        return this;
+    }
+
+    @Override
+    public <Y extends Comparable<? super Y>> ModelQuery<T> whereGreaterThan (String col, Y value) {
+        predicates.add((cb, root) -> cb.greaterThan(HibernateQuery.<Y>getPath(root, col), value));
+        return this;
+    }
+
+    @Override
+    public <Y extends Comparable<? super Y>> ModelQuery<T> whereGreaterThanOrEqual (String col, Y value) {
+        predicates.add((cb, root) -> cb.greaterThanOrEqualTo(HibernateQuery.<Y>getPath(root, col), value));
+        return this;
+    }
+
+    @Override
+    public <Y extends Comparable<? super Y>> ModelQuery<T> whereLessThan (String col, Y value) {
+        predicates.add((cb, root) -> cb.lessThan(HibernateQuery.<Y>getPath(root, col), value));
+        return this;
+    }
+
+    @Override
+    public <Y extends Comparable<? super Y>> ModelQuery<T> whereLessThanOrEqual (String col, Y value) {
+        predicates.add((cb, root) -> cb.lessThanOrEqualTo(HibernateQuery.<Y>getPath(root, col), value));
+        return this;
+    }
+
+    @Override
+    public ModelQuery<T> orderBy (String col) {
+        orders.add((cb, root) -> cb.asc(getPath(root, col)));
+        return this;
+    }
+
+    @Override
+    public ModelQuery<T> orderByDescending (String col) {
+        orders.add((cb, root) -> cb.desc(getPath(root, col)));
+        return this;
+    }
+
+    @Override
+    public ModelQuery<T> offset (int offset) {
+        this.offset = offset;
+        return this;
+    }
+
+    @Override
+    public ModelQuery<T> limit (int limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    @Override
+    public ModelQuery<T> fetch (String col) {
+        fetches.add(col);
+        return this;
+    }
+
+    @Override
+    public ModelQuery<T> cacheable () {
+        this.cacheable = true;
+        return this;
+    }
+
+    @Override
+    public List<T> getResults () {
+        return buildQuery().getResultList();
+    }
+
+    @Override
+    public Stream<T> getResultStream () {
+        return buildQuery().getResultStream();
+    }
+
+    @Override
+    public Optional<T> getFirst () {
+        var prevLimit = limit;
+        limit = 1;
+        try {
+            return getResults().stream().findFirst();
+        } finally {
+            limit = prevLimit;
+        }
+    }
+
+    @Override
+    public long count () {
+        CriteriaBuilder criteriaBuilder = session.getCriteriaBuilder();
+        CriteriaQuery<Long> criteriaQuery = criteriaBuilder.createQuery(Long.class);
+        Root<T> criteriaRoot = criteriaQuery.from(entityClass);
+
+        criteriaQuery.select(criteriaBuilder.count(criteriaRoot))
+                .where(buildPredicates(criteriaBuilder, criteriaRoot));
+
+        return session.createQuery(criteriaQuery)
+                .setCacheable(cacheable)
+                .getSingleResult();
+    }
+
+    @Override
+    public int delete () {
+        if (session.isDefaultReadOnly()) {
+            logger.error("Attempted to delete {} entities in readonly session!", entityClass.getSimpleName());
+            return 0;
+        }
+
+        CriteriaBuilder criteriaBuilder = session.getCriteriaBuilder();
+        CriteriaDelete<T> criteriaDelete = criteriaBuilder.createCriteriaDelete(entityClass);
+        Root<T> criteriaRoot = criteriaDelete.from(entityClass);
+
+        criteriaDelete.where(buildPredicates(criteriaBuilder, criteriaRoot));
+
+        return session.createMutationQuery(criteriaDelete).executeUpdate();
+    }
+
+    @Override
+    public int increment (String col, int delta) {
+        if (session.isDefaultReadOnly()) {
+            logger.error("Attempted to update {} entities in readonly session!", entityClass.getSimpleName());
+            return 0;
+        }
+
+        CriteriaBuilder criteriaBuilder = session.getCriteriaBuilder();
+        CriteriaUpdate<T> criteriaUpdate = criteriaBuilder.createCriteriaUpdate(entityClass);
+        Root<T> criteriaRoot = criteriaUpdate.from(entityClass);
+
+        Path<Integer> path = getPath(criteriaRoot, col);
+        criteriaUpdate.set(path, criteriaBuilder.sum(path, delta))
+                .where(buildPredicates(criteriaBuilder, criteriaRoot));
+
+        return session.createMutationQuery(criteriaUpdate).executeUpdate();
+    }
+
+    private Query<T> buildQuery () {
+        CriteriaBuilder criteriaBuilder = session.getCriteriaBuilder();
+        CriteriaQuery<T> criteriaQuery = criteriaBuilder.createQuery(entityClass);
+        Root<T> criteriaRoot = criteriaQuery.from(entityClass);
+        for (var i : fetches) {
+            // Left join so that results without the association are kept
+            var cols = i.split("\\.");
+            Fetch<?, ?> fetch = criteriaRoot.fetch(cols[0], JoinType.LEFT);
+            for (int j = 1; j < cols.length; j++) {
+                fetch = fetch.fetch(cols[j], JoinType.LEFT);
+            }
+        }
+
+        criteriaQuery.select(criteriaRoot)
+                .where(buildPredicates(criteriaBuilder, criteriaRoot))
+                .orderBy(orders.stream()
+                        .map(o -> o.apply(criteriaBuilder, criteriaRoot))
+                        .collect(Collectors.toList()));
+
+        Query<T> query = session.createQuery(criteriaQuery);
+        if (offset > 0) {
+            query.setFirstResult(offset);
+        }
+        if (limit >= 0) {
+            query.setMaxResults(limit);
+        }
+        if (cacheable) {
+            query.setCacheable(true);
+        }
+
+        return query;
+    }
+
+    private Predicate[] buildPredicates (CriteriaBuilder criteriaBuilder, Root<T> criteriaRoot) {
+        return predicates.stream()
+                .map(p -> p.apply(criteriaBuilder, criteriaRoot))
+                .toArray(Predicate[]::new);
+    }
+}
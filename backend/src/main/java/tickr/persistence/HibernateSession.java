@@ -3,26 +3,49 @@ package tickr.persistence;
 import jakarta.persistence.RollbackException;
 import jakarta.persistence.criteria.CriteriaBuilder;
 import jakarta.persistence.criteria.CriteriaQuery;
-import jakarta.persistence.criteria.Path;
 import jakarta.persistence.criteria.Root;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.hibernate.FlushMode;
 import org.hibernate.Session;
 import org.hibernate.query.Query;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class HibernateSession implements ModelSession {
     static final Logger logger = LogManager.getLogger();
 
+    private final DataModel model;
     private Session session;
+    private final boolean readOnly;
     boolean inTransaction;
+    private final List<Runnable> commitCallbacks = new ArrayList<>();
+    private final List<Runnable> rollbackCallbacks = new ArrayList<>();
+    private String verifiedToken;
+    private UUID verifiedTokenId;
 
-    public HibernateSession (Session session) {
+    public HibernateSession (DataModel model, Session session, boolean readOnly) {
+        this.model = model;
         this.session = session;
+        this.readOnly = readOnly;
+        if (readOnly) {
+            // Loaded entities are not dirty checked and are never flushed
+            session.setDefaultReadOnly(true);
+            session.setHibernateFlushMode(FlushMode.MANUAL);
+        }
+        beginTransaction();
+    }
+
+    private void beginTransaction () {
+        if (readOnly) {
+            // Must be set before the transaction starts for the database to treat it as read only
+            session.doWork(c -> c.setReadOnly(true));
+        }
         session.beginTransaction();
         inTransaction = true;
     }
@@ -54,23 +77,9 @@ public class HibernateSession implements ModelSession {
 
     @Override
     public <T, I> Stream<T> getAllWithStream (Class<T> entityClass, String col, I data) {
-        // Create query for entity class
-        CriteriaBuilder criteriaBuilder = session.getCriteriaBuilder();
-        CriteriaQuery<T> criteriaQuery = criteriaBuilder.createQuery(entityClass);
-        Root<T> criteriaRoot = criteriaQuery.from(entityClass);
-
-        var cols = col.split("\\.");
-        var path = criteriaRoot.get(cols[0]);
-        for (int i = 1; i < cols.length; i++) {
-           path = path.get(cols[i]);
-        }
-
-        criteriaQuery.select(criteriaRoot) // Set root to be of the entity's table
-                .where(criteriaBuilder.equal(path, data)); // Select only those which are equal to data
-
-        // Build query
-        Query<T> query = session.createQuery(criteriaQuery);
-        return query.getResultStream();
+        return query(entityClass)
+                .where(col, data) // Select only those which are equal to data
+                .getResultStream();
     }
 
     @Override
@@ -90,53 +99,136 @@ public class HibernateSession implements ModelSession {
 
     @Override
     public <T, I> Optional<T> getById (Class<T> entityClass,  I id) {
-        return getByUnique(entityClass, "id", id);
+        // Looked up by primary key rather than a query, so that cached entities are not loaded from the database
+        return Optional.ofNullable(session.get(entityClass, id));
+    }
+
+    @Override
+    public <T, I> T getReference (Class<T> entityClass, I id) {
+        return session.getReference(entityClass, id);
+    }
+
+    @Override
+    public <T> ModelQuery<T> query (Class<T> entityClass) {
+        return new HibernateQuery<>(session, entityClass);
     }
 
     @Override
     public <T> void save (T entity) {
+        if (readOnly) {
+            logger.error("Attempted to save entity in readonly session: {}!", entity);
+            return;
+        }
         session.persist(entity);
     }
 
     @Override
     public <T> void remove (T entity) {
-        if (session.isReadOnly(entity)) {
+        if (readOnly || session.isReadOnly(entity)) {
             logger.error("Attempted to remove readonly entity: {}!", entity);
             return;
         }
         session.remove(entity);
     }
 
+    @Override
+    public DataModel getModel () {
+        return model;
+    }
+
+    @Override
+    public boolean isReadOnly () {
+        return readOnly;
+    }
+
+    @Override
+    public void setVerifiedToken (String token, UUID tokenId) {
+        this.verifiedToken = token;
+        this.verifiedTokenId = tokenId;
+    }
+
+    @Override
+    public UUID getVerifiedTokenId (String token) {
+        return token != null && token.equals(verifiedToken) ? verifiedTokenId : null;
+    }
+
+    @Override
+    public void onCommit (Runnable callback) {
+        commitCallbacks.add(callback);
+    }
+
+    @Override
+    public void onRollback (Runnable callback) {
+        rollbackCallbacks.add(callback);
+    }
+
     @Override
     public void newTransaction () {
         if (inTransaction) {
             logger.error("Attempted to create a new transaction in a HibernateSession when already in a transaction!");
             return;
         }
-        session.beginTransaction();
-        inTransaction = true;
+        beginTransaction();
     }
 
 
     @Override
     public void commit () throws RollbackException {
         //logger.debug("Committing session!");
-        session.flush();
-        session.clear();
-        session.getTransaction().commit();
+        try {
+            if (!readOnly) {
+                session.flush();
+            }
+            session.clear();
+            session.getTransaction().commit();
+        } catch (RuntimeException e) {
+            // Nothing was committed, so undo as if rolled back
+            runRollbackCallbacks();
+            throw e;
+        }
         inTransaction = false;
+        rollbackCallbacks.clear();
+
+        var callbacks = new ArrayList<>(commitCallbacks);
+        commitCallbacks.clear();
+        for (var i : callbacks) {
+            try {
+                i.run();
+            } catch (Exception e) {
+                // Changes are already committed, so don't fail the request
+                logger.error("Commit callback failed!", e);
+            }
+        }
     }
 
     @Override
     public void rollback () {
+        commitCallbacks.clear();
+        runRollbackCallbacks();
         session.getTransaction().rollback();
         inTransaction = false;
     }
 
+    private void runRollbackCallbacks () {
+        var callbacks = new ArrayList<>(rollbackCallbacks);
+        rollbackCallbacks.clear();
+        for (var i : callbacks) {
+            try {
+                i.run();
+            } catch (Exception e) {
+                logger.error("Rollback callback failed!", e);
+            }
+        }
+    }
+
     @Override
     public void close () {
         //logger.debug("Closing session!");
+        // Readonly connections need no reset, as the pool resets connections to read-write when they are returned
         session.close();
+        if (model instanceof HibernateModel) {
+            ((HibernateModel) model).onSessionClose(session);
+        }
     }
 
 
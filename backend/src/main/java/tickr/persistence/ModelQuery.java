@@ -0,0 +1,101 @@
+package tickr.persistence;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Query over entities of a single type, built up by chaining predicates, orderings and paging before being run.
+ * Columns are specified by entity field names, with "." separating fields of associated entities e.g.
+ * "event.host". All predicates must hold for an entity to match.
+ * @param <T> the entity type
+ */
+public interface ModelQuery<T> {
+    /**
+     * Matches entities with a column equal to a value
+     */
+    ModelQuery<T> where (String col, Object value);
+
+    /**
+     * Matches entities with a column not equal to a value
+     */
+    ModelQuery<T> whereNot (String col, Object value);
+
+    ModelQuery<T> whereNull (String col);
+    ModelQuery<T> whereNotNull (String col);
+
+    /**
+     * Matches entities with a column equal to one of the given values. An empty collection matches nothing
+     */
+    ModelQuery<T> whereIn (String col, Collection<?> values);
+
+    <Y extends Comparable<? super Y>> ModelQuery<T> whereGreaterThan (String col, Y value);
+    <Y extends Comparable<? super Y>> ModelQuery<T> whereGreaterThanOrEqual (String col, Y value);
+    <Y extends Comparable<? super Y>> ModelQuery<T> whereLessThan (String col, Y value);
+    <Y extends Comparable<? super Y>> ModelQuery<T> whereLessThanOrEqual (String col, Y value);
+
+    /**
+     * Orders results by a column in ascending order. Subsequent orderings break ties of earlier ones
+     */
+    ModelQuery<T> orderBy (String col);
+
+    /**
+     * Orders results by a column in descending order. Subsequent orderings break ties of earlier ones
+     */
+    ModelQuery<T> orderByDescending (String col);
+
+    /**
+     * Skips the first results
+     * @param offset number of results to skip
+     */
+    ModelQuery<T> offset (int offset);
+
+    /**
+     * Limits the number of results
+     * @param limit maximum number of results
+     */
+    ModelQuery<T> limit (int limit);
+
+    /**
+     * Loads an association of the results in the same query, instead of one query per result when it is first
+     * accessed. Fetching a collection repeats each result once per element, so do not combine with paging
+     * @param col the association to fetch, with "." separating nested associations e.g. "tickets.user"
+     */
+    ModelQuery<T> fetch (String col);
+
+    /**
+     * Caches the results of this query, which are reused until any of the queried tables are written to. Only
+     * worthwhile for queries which are repeated with the same parameters
+     */
+    ModelQuery<T> cacheable ();
+
+    List<T> getResults ();
+    Stream<T> getResultStream ();
+    Optional<T> getFirst ();
+
+    /**
+     * Counts all entities matching the predicates, ignoring ordering and paging. This is run as a separate
+     * query, so no entities are loaded
+     * @return
+     */
+    long count ();
+
+    /**
+     * Deletes all entities matching the predicates in a single statement, ignoring ordering and paging. Cascades are
+     * not applied, so entities referencing the deleted ones must be deleted first, and entities the session has
+     * already loaded are not updated
+     * @return the number of entities deleted
+     */
+    int delete ();
+
+    /**
+     * Adds to a numeric column of all entities matching the predicates in a single statement, ignoring ordering and
+     * paging. Concurrent changes are not lost, as they would be by reading, changing and saving the entities, but
+     * entities the session has already loaded are not updated
+     * @param col
+     * @param delta
+     * @return the number of entities updated
+     */
+    int increment (String col, int delta);
+}
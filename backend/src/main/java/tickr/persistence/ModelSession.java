@@ -2,6 +2,7 @@ package tickr.persistence;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
 import java.util.stream.Stream;
 
 /**
@@ -35,6 +36,14 @@ public interface ModelSession {
 
     <T, I> Optional<T> getByUnique (Class<T> entityClass, String col, I data);
 
+    /**
+     * Starts a query over all entities of a given type, which can be filtered, ordered and paged before being run
+     * @param entityClass
+     * @return
+     * @param <T>
+     */
+    <T> ModelQuery<T> query (Class<T> entityClass);
+
     /**
      * Gets a managed entity with a given id, if it exists
      * @param entityClass
@@ -45,6 +54,17 @@ public interface ModelSession {
      */
     <T, I> Optional<T> getById (Class<T> entityClass, I id);
 
+    /**
+     * Gets an entity with a given id to reference from other entities, without loading it. The entity must exist,
+     * but need not be visible to this session's transaction, as when committed by another since it started
+     * @param entityClass
+     * @param id
+     * @return
+     * @param <T>
+     * @param <I>
+     */
+    <T, I> T getReference (Class<T> entityClass, I id);
+
     /**
      * Saves an entity, adding a new row to the respective table
      * @param entity
@@ -59,12 +79,82 @@ public interface ModelSession {
      */
     <T> void remove (T entity);
 
+    /**
+     * Deletes all entities of a given type in a single statement. Cascades are not applied, so entities
+     * referencing them must be cleared first
+     * @param tClass
+     * @param <T>
+     */
     default <T> void clear (Class<T> tClass) {
-        for (var i : getAll(tClass)) {
-            remove(i);
+        query(tClass).delete();
+    }
+
+
+    /**
+     * Gets the data model this session was made from
+     * @return
+     */
+    DataModel getModel ();
+
+    /**
+     * Whether this session only reads, in which case saves, removals and changes to entities are discarded
+     * @return
+     */
+    boolean isReadOnly ();
+
+    /**
+     * Registers a callback to be run once the current transaction has been successfully committed,
+     * in registration order. Callbacks are discarded if the transaction is rolled back
+     * @param callback
+     */
+    void onCommit (Runnable callback);
+
+    /**
+     * Registers a callback to be run if the current transaction is rolled back, including when
+     * committing it fails, in registration order. Callbacks are discarded once the transaction commits
+     * @param callback
+     */
+    void onRollback (Runnable callback);
+
+    /**
+     * Remembers an auth token whose signature has already been verified for the request the session is for, so that
+     * authenticating the request does not verify it again
+     * @param token
+     * @param tokenId
+     */
+    void setVerifiedToken (String token, UUID tokenId);
+
+    /**
+     * Gets the id of an auth token, if it is the one verified for the session's request
+     * @param token
+     * @return the token id, or null if the token has not been verified
+     */
+    UUID getVerifiedTokenId (String token);
+
+    /**
+     * Records that a user has made changes once the session commits, so that their following reads
+     * see them even if reads are otherwise served by a replica
+     * @param userId
+     */
+    default void onUserWrite (UUID userId) {
+        if (!isReadOnly()) {
+            var model = getModel();
+            onCommit(() -> model.markUserWrite(userId));
         }
     }
 
+    /**
+     * Evicts an entity and its cached collections from the second level cache once the session
+     * commits, so that no cache, including those of read replicas, serves the old version
+     * @param entityClass
+     * @param id
+     */
+    default void evictOnCommit (Class<?> entityClass, Object id) {
+        if (!isReadOnly()) {
+            var model = getModel();
+            onCommit(() -> model.evictCached(entityClass, id));
+        }
+    }
 
     /**
      * Creates a new transaction with the same session
@@ -0,0 +1,301 @@
+package tickr.persistence;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Applies versioned SQL migrations from db/migration to a database, recording each applied version with a checksum in
+ * the schema_history table. Applied migrations must never be edited, instead add a new one to MIGRATIONS. Databases
+ * which already have the baseline schema but no history are marked as being at version 1 rather than migrated. Only
+ * one process should migrate a database at a time
+ */
+public class SchemaMigrator {
+    static final Logger logger = LogManager.getLogger();
+
+    // Applied in version order
+    public static final List<String> MIGRATIONS = List.of(
+            "V1__baseline.sql",
+            "V2__ticket_price_bigint.sql",
+            "V3__query_indexes.sql",
+            "V4__unique_reserved_seats.sql",
+            "V5__admission_queue.sql",
+            "V6__reservation_expiry_index.sql",
+            "V7__user_profile_version.sql",
+            "V8__event_admission_queue.sql",
+            "V9__column_types.sql"
+    );
+
+    private static final String MIGRATION_PATH = "db/migration/";
+    private static final String HISTORY_TABLE = "schema_history";
+    private static final int BASELINE_VERSION = 1;
+    // Table made by the baseline migration, whose presence means the database predates migrations
+    private static final String BASELINE_TABLE = "users";
+
+    private static final Pattern NAME_PATTERN = Pattern.compile("V(\\d+)__(\\w+)\\.sql");
+
+    private final List<Migration> migrations;
+
+    public SchemaMigrator () {
+        this(MIGRATIONS.stream().map(Migration::load).toList());
+    }
+
+    public SchemaMigrator (List<Migration> migrations) {
+        this.migrations = migrations.stream()
+                .sorted((m1, m2) -> Integer.compare(m1.getVersion(), m2.getVersion()))
+                .toList();
+        for (int i = 1; i < this.migrations.size(); i++) {
+            if (this.migrations.get(i).getVersion() == this.migrations.get(i - 1).getVersion()) {
+                throw new IllegalArgumentException("Duplicate migration version " + this.migrations.get(i).getVersion() + "!");
+            }
+        }
+    }
+
+    /**
+     * Applies all migrations which have not yet been applied to the database
+     * @param connection
+     * @return the number of migrations applied
+     * @throws SQLException if a migration failed, in which case the database is left at the last successful version
+     * @throws IllegalStateException if the applied migrations do not match the known ones
+     */
+    public int migrate (Connection connection) throws SQLException {
+        var autoCommit = connection.getAutoCommit();
+        // MySQL commits after every DDL statement anyway
+        connection.setAutoCommit(true);
+        try {
+            createHistoryTable(connection);
+
+            var applied = getApplied(connection);
+            if (applied.isEmpty() && findTable(connection.getMetaData(), BASELINE_TABLE).isPresent()) {
+                baseline(connection);
+                applied = getApplied(connection);
+            }
+            validate(applied);
+
+            int count = 0;
+            for (var i : migrations) {
+                if (applied.containsKey(i.getVersion())) {
+                    continue;
+                }
+                logger.info("Migrating database schema to version {} ({})!", i.getVersion(), i.getDescription());
+                apply(connection, i);
+                count++;
+            }
+            logger.info("Database schema is at version {}!", getVersion(connection));
+
+            return count;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * Gets the latest version applied to the database
+     * @param connection
+     * @return the version, or 0 if no migrations have been applied
+     * @throws SQLException
+     */
+    public int getVersion (Connection connection) throws SQLException {
+        return getApplied(connection).keySet().stream()
+                .mapToInt(i -> i)
+                .max()
+                .orElse(0);
+    }
+
+    private void createHistoryTable (Connection connection) throws SQLException {
+        try (var statement = connection.createStatement()) {
+            statement.execute("create table if not exists " + HISTORY_TABLE + " ("
+                    + "version int not null, "
+                    + "description varchar(255) not null, "
+                    + "checksum bigint not null, "
+                    + "installed_on timestamp not null, "
+                    + "primary key (version))");
+        }
+    }
+
+    private Map<Integer, Long> getApplied (Connection connection) throws SQLException {
+        var applied = new HashMap<Integer, Long>();
+        try (var statement = connection.createStatement();
+             var results = statement.executeQuery("select version, checksum from " + HISTORY_TABLE)) {
+            while (results.next()) {
+                applied.put(results.getInt(1), results.getLong(2));
+            }
+        }
+
+        return applied;
+    }
+
+    private void baseline (Connection connection) throws SQLException {
+        var baseline = migrations.stream()
+                .filter(m -> m.getVersion() == BASELINE_VERSION)
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("Missing baseline migration!"));
+
+        // Databases made before ids were stored as binary must first be converted by db-migrate-uuids.sh
+        var metaData = connection.getMetaData();
+        var table = findTable(metaData, BASELINE_TABLE).orElseThrow();
+        try (var columns = metaData.getColumns(connection.getCatalog(), connection.getSchema(), table, "%")) {
+            while (columns.next()) {
+                var type = columns.getInt("DATA_TYPE");
+                if (columns.getString("COLUMN_NAME").equalsIgnoreCase("id") && (type == Types.VARCHAR || type == Types.CHAR)) {
+                    throw new IllegalStateException("Database stores ids as text, run db-migrate-uuids.sh before migrating!");
+                }
+            }
+        }
+
+        logger.info("Baselining existing database schema at version {}!", BASELINE_VERSION);
+        recordApplied(connection, baseline);
+    }
+
+    private void validate (Map<Integer, Long> applied) {
+        var known = new HashMap<Integer, Migration>();
+        for (var i : migrations) {
+            known.put(i.getVersion(), i);
+        }
+
+        for (var i : applied.entrySet()) {
+            var migration = known.get(i.getKey());
+            if (migration == null) {
+                throw new IllegalStateException(String.format("Database has unknown schema version %d, it may have been "
+                        + "migrated by a newer server!", i.getKey()));
+            }
+            if (migration.getChecksum() != i.getValue()) {
+                throw new IllegalStateException(String.format("Migration %s has changed since it was applied!",
+                        migration.getFileName()));
+            }
+        }
+    }
+
+    private void apply (Connection connection, Migration migration) throws SQLException {
+        try (var statement = connection.createStatement()) {
+            for (var i : migration.getStatements()) {
+                statement.execute(i);
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to apply migration {}!", migration.getFileName());
+            throw e;
+        }
+        recordApplied(connection, migration);
+    }
+
+    private void recordApplied (Connection connection, Migration migration) throws SQLException {
+        try (var statement = connection.prepareStatement("insert into " + HISTORY_TABLE
+                + " (version, description, checksum, installed_on) values (?, ?, ?, ?)")) {
+            statement.setInt(1, migration.getVersion());
+            statement.setString(2, migration.getDescription());
+            statement.setLong(3, migration.getChecksum());
+            statement.setTimestamp(4, Timestamp.from(Instant.now()));
+            statement.executeUpdate();
+        }
+    }
+
+    private static Optional<String> findTable (DatabaseMetaData metaData, String name) throws SQLException {
+        // Only looks in the current schema, as H2 also has an INFORMATION_SCHEMA.USERS table. Databases differ in the
+        // case they store unquoted names in
+        var connection = metaData.getConnection();
+        try (var tables = metaData.getTables(connection.getCatalog(), connection.getSchema(), "%", new String[]{"TABLE"})) {
+            while (tables.next()) {
+                var table = tables.getString("TABLE_NAME");
+                if (table.equalsIgnoreCase(name)) {
+                    return Optional.of(table);
+                }
+            }
+        }
+
+        return Optional.empty();
+    }
+
+    /**
+     * A versioned migration, named V&lt;version&gt;__&lt;description&gt;.sql
+     */
+    public static class Migration {
+        private final String fileName;
+        private final int version;
+        private final String description;
+        private final String sql;
+        private final long checksum;
+
+        public Migration (String fileName, String sql) {
+            var matcher = NAME_PATTERN.matcher(fileName);
+            if (!matcher.matches()) {
+                throw new IllegalArgumentException("Invalid migration name " + fileName + "!");
+            }
+
+            this.fileName = fileName;
+            this.version = Integer.parseInt(matcher.group(1));
+            this.description = matcher.group(2).replace('_', ' ');
+            this.sql = sql;
+
+            var crc = new CRC32();
+            crc.update(sql.getBytes(StandardCharsets.UTF_8));
+            this.checksum = crc.getValue();
+        }
+
+        /**
+         * Loads a migration from the db/migration resources
+         * @param fileName
+         * @return
+         */
+        public static Migration load (String fileName) {
+            try (var stream = SchemaMigrator.class.getClassLoader().getResourceAsStream(MIGRATION_PATH + fileName)) {
+                if (stream == null) {
+                    throw new IllegalArgumentException("Missing migration " + fileName + "!");
+                }
+                return new Migration(fileName, new String(stream.readAllBytes(), StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read migration " + fileName, e);
+            }
+        }
+
+        public String getFileName () {
+            return fileName;
+        }
+
+        public int getVersion () {
+            return version;
+        }
+
+        public String getDescription () {
+            return description;
+        }
+
+        public long getChecksum () {
+            return checksum;
+        }
+
+        /**
+         * Splits the migration into statements, dropping comments. Statements end with a semicolon, so semicolons
+         * must not be used in string literals
+         * @return
+         */
+        public List<String> getStatements () {
+            var withoutComments = sql.replaceAll("(?s)/\\*.*?\\*/", "")
+                    .replaceAll("(?m)^\\s*(--|#).*$", "");
+
+            var statements = new ArrayList<String>();
+            for (var i : withoutComments.split(";")) {
+                if (!i.isBlank()) {
+                    statements.add(i.trim());
+                }
+            }
+
+            return statements;
+        }
+    }
+}
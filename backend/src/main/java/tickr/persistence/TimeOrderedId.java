@@ -0,0 +1,18 @@
+package tickr.persistence;
+
+import org.hibernate.annotations.IdGeneratorType;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generates a UUID id which sorts by creation time, see TimeOrderedIdGenerator. Ids which are handed out as secrets,
+ * e.g. tokens, should use random UUIDs instead, as most of a time ordered id can be guessed
+ */
+@IdGeneratorType(TimeOrderedIdGenerator.class)
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.METHOD})
+public @interface TimeOrderedId {
+}
@@ -0,0 +1,101 @@
+package tickr.server;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Jetty thread pool backed by an executor, so that requests blocked on the database or external APIs do not hold one
+ * of a small number of pooled threads. Either starts a virtual thread per task, or uses a large elastic pool of
+ * platform threads which are only kept alive while busy
+ */
+public class RequestThreadPool extends AbstractLifeCycle implements ThreadPool {
+    static final Logger logger = LogManager.getLogger();
+
+    private static final long ELASTIC_KEEP_ALIVE_MS = 60000;
+
+    private final ExecutorService executor;
+    private final int maxThreads;
+    private final AtomicInteger activeThreads = new AtomicInteger();
+
+    private RequestThreadPool (ExecutorService executor, int maxThreads) {
+        this.executor = executor;
+        this.maxThreads = maxThreads;
+    }
+
+    /**
+     * Makes a pool which runs every task on a new virtual thread
+     * @return
+     */
+    public static RequestThreadPool virtual () {
+        var factory = Thread.ofVirtual()
+                .name("request-", 0)
+                .factory();
+        return new RequestThreadPool(Executors.newThreadPerTaskExecutor(factory), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Makes a pool of up to maxThreads platform threads, which time out when idle
+     * @param maxThreads
+     * @return
+     */
+    public static RequestThreadPool elastic (int maxThreads) {
+        var threadCount = new AtomicInteger();
+        var executor = new ThreadPoolExecutor(maxThreads, maxThreads, ELASTIC_KEEP_ALIVE_MS, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), r -> new Thread(r, "request-" + threadCount.getAndIncrement()));
+        executor.allowCoreThreadTimeOut(true);
+
+        return new RequestThreadPool(executor, maxThreads);
+    }
+
+    @Override
+    public void execute (Runnable command) {
+        executor.execute(() -> {
+            activeThreads.incrementAndGet();
+            try {
+                command.run();
+            } finally {
+                activeThreads.decrementAndGet();
+            }
+        });
+    }
+
+    @Override
+    public void join () throws InterruptedException {
+        while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+            logger.debug("Waiting for request threads to finish!");
+        }
+    }
+
+    @Override
+    public int getThreads () {
+        return activeThreads.get();
+    }
+
+    @Override
+    public int getIdleThreads () {
+        return 0;
+    }
+
+    @Override
+    public boolean isLowOnThreads () {
+        return activeThreads.get() >= maxThreads;
+    }
+
+    @Override
+    protected void doStop () throws Exception {
+        executor.shutdown();
+        if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+            logger.warn("Request threads did not finish in time, interrupting!");
+            executor.shutdownNow();
+        }
+    }
+}
@@ -13,39 +13,49 @@ import tickr.persistence.ModelSession;
 import java.util.function.Function;
 
 /**
- * Class which encapsulates route handling logic, ensuring route handlers can be run
- * thread safely.
+ * Class which encapsulates route handling logic, giving each request its own model session. Requests are
+ * authenticated by token rather than by servlet session, so concurrent requests from the same client are handled
+ * concurrently.
  * @param <T> Response object type
  */
 public class RouteWrapper<T> implements Route {
     static final Logger logger = LogManager.getLogger();
-    private Function<Context, T> route;
-    private DataModel model;
+    private final Function<Context, T> route;
+    private final DataModel model;
+    private final TickrController controller;
+    private final boolean readOnly;
 
-    public RouteWrapper (DataModel model, Function<Context, T> route) {
+    public RouteWrapper (DataModel model, TickrController controller, Function<Context, T> route) {
+        this(model, controller, route, false);
+    }
+
+    /**
+     * @param model
+     * @param controller
+     * @param route
+     * @param readOnly whether the route only reads, in which case it is given a read only session
+     */
+    public RouteWrapper (DataModel model, TickrController controller, Function<Context, T> route, boolean readOnly) {
         this.route = route;
         this.model = model;
+        this.controller = controller;
+        this.readOnly = readOnly;
     }
 
-    @SuppressWarnings("SynchronizationOnLocalVariableOrMethodParameter")
     @Override
     public Object handle (Request request, Response response) throws Exception {
-        var userSession = request.session(false);
-        if (userSession == null) {
-            // Create new user session
-            userSession = request.session(true);
-            // Initialise new tickr controller object
-            userSession.attribute("controller", new TickrController());
+        // Parsed once here, for both routing and authenticating the request
+        var token = controller.parseToken(request.queryParams("auth_token"));
+        // Reads from users who have just written must see their own writes
+        var modelSession = readOnly ? model.makeReadOnlySession(token != null ? token.userId() : null)
+                : model.makeSession();
+        if (token != null) {
+            modelSession.setVerifiedToken(token.token(), token.tokenId());
         }
-        var controller = (TickrController)userSession.attribute("controller");
-        var modelSession = model.makeSession();
 
         T result;
         try {
-            synchronized (controller) {
-                // For if multiple threads access the same user session
-                result = route.apply(new Context(request, controller, modelSession));
-            }
+            result = route.apply(new Context(request, controller, modelSession));
             // Commit result and close session
             modelSession.commit();
             modelSession.close();
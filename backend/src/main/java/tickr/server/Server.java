@@ -6,12 +6,15 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import spark.Request;
 import spark.Spark;
+import spark.embeddedserver.EmbeddedServers;
+import spark.embeddedserver.jetty.EmbeddedJettyFactory;
 import tickr.application.TickrController;
 import tickr.application.apis.ApiLocator;
 import tickr.application.apis.purchase.IPurchaseAPI;
 import tickr.application.serialised.combined.comments.ReplyCreate;
 import tickr.application.serialised.combined.comments.ReviewCreate;
 import tickr.application.serialised.combined.tickets.TicketPurchase;
+import tickr.application.serialised.combined.tickets.TicketQueue;
 import tickr.application.serialised.combined.tickets.TicketReserve;
 import tickr.application.serialised.combined.user.NotificationManagement;
 import tickr.application.serialised.requests.comment.ReactRequest;
@@ -38,13 +41,18 @@ import java.util.stream.Collectors;
  * control the server settings.
  */
 public class Server {
-    private static final int MIN_THREADS = 2;
-    private static final int MAX_THREADS = 8;
+    public static final int DEFAULT_MIN_THREADS = 2;
+    public static final int DEFAULT_MAX_THREADS = 8;
     private static final int TIMEOUT_MS = 3000;
 
     static final Logger logger = LogManager.getLogger();
 
     private static DataModel dataModel;
+    private static TickrController controller;
+
+    private static ThreadMode threadMode = ThreadMode.POOLED;
+    private static int minThreads = DEFAULT_MIN_THREADS;
+    private static int maxThreads = DEFAULT_MAX_THREADS;
 
     private static Gson gson;
 
@@ -75,7 +83,8 @@ public class Server {
         post("/api/event/create", TickrController::createEvent, CreateEventRequest.class);
         put("/api/event/edit", TickrController::editEvent, EditEventRequest.class);
         put("/api/event/make_host", TickrController::makeHost, EditHostRequest.class);
-        get("/api/event/view", TickrController::eventView);
+        // Records a view interaction
+        getWriting("/api/event/view", TickrController::eventView);
         get("/api/event/search", TickrController::searchEvents);
         delete("/api/event/cancel", TickrController::eventDelete, EventDeleteRequest.class);
 
@@ -99,6 +108,15 @@ public class Server {
 
         post("/api/ticket/reserve", TickrController::ticketReserve, TicketReserve.Request.class);
         post("/api/ticket/purchase", TickrController::ticketPurchase, TicketPurchase.Request.class);
+        post("/api/ticket/queue/join", TickrController::ticketQueueJoin, TicketQueue.Request.class);
+        Spark.get("/api/ticket/queue/status", (req, response) -> {
+            // Answered from memory without taking a database connection, as waiting clients poll it often
+            var paramMap = req.queryParams()
+                    .stream()
+                    .collect(Collectors.toMap(Function.identity(), req::queryParams));
+
+            return controller.ticketQueueStatus(dataModel, paramMap);
+        }, gson::toJson);
         post("/api/ticket/refund", TickrController::ticketRefund, TicketRefundRequest.class);
         get("/api/ticket/view", TickrController::ticketView);
         get("/api/event/bookings", TickrController::ticketBookings);
@@ -131,7 +149,7 @@ public class Server {
 
         Spark.get("/api/payment/cancel", (req, response) -> {
             // Route for payment cancellation
-            var wrapper = new RouteWrapper<>(dataModel, ctx -> {
+            var wrapper = new RouteWrapper<>(dataModel, controller, ctx -> {
                 var paramMap = ctx.request.queryParams()
                         .stream()
                         .collect(Collectors.toMap(Function.identity(), ctx.request::queryParams));
@@ -150,7 +168,7 @@ public class Server {
             return "";
         });
 
-        Spark.post("/api/payment/webhook", new RouteWrapper<>(dataModel, ctx -> {
+        Spark.post("/api/payment/webhook", new RouteWrapper<>(dataModel, controller, ctx -> {
             // Route for payment webhook
             var paymentAPI = ApiLocator.locateApi(IPurchaseAPI.class);
             var sigHeader = ctx.request.headers(paymentAPI.getSignatureHeader());
@@ -172,12 +190,13 @@ public class Server {
      */
     public static void start (int port, String frontendUrl, DataModel model) {
         dataModel = model;
+        controller = new TickrController();
         gson = new Gson();
 
         Spark.externalStaticFileLocation(FileHelper.getStaticPath());
 
         Spark.port(port);
-        Spark.threadPool(MAX_THREADS, MIN_THREADS, TIMEOUT_MS);
+        setupThreadPool();
 
         Spark.before(((request, response) -> {
             // Log request
@@ -222,29 +241,92 @@ public class Server {
 
 
     /**
-     * Add a GET route to the server
+     * Sets how requests are run. Must be called before start()
+     * @param mode
+     * @param minThreads minimum number of pooled threads, only used by POOLED
+     * @param maxThreads maximum number of threads, unused by VIRTUAL
+     */
+    public static void configureThreads (ThreadMode mode, int minThreads, int maxThreads) {
+        if (minThreads <= 0 || maxThreads < minThreads) {
+            throw new IllegalArgumentException("Invalid thread counts!");
+        }
+
+        Server.threadMode = mode;
+        Server.minThreads = minThreads;
+        Server.maxThreads = maxThreads;
+    }
+
+    private static void setupThreadPool () {
+        switch (threadMode) {
+            case POOLED:
+                logger.info("Using pool of {}-{} request threads!", minThreads, maxThreads);
+                // Reset factory in case another mode was used before
+                EmbeddedServers.add(EmbeddedServers.Identifiers.JETTY, new EmbeddedJettyFactory());
+                Spark.threadPool(maxThreads, minThreads, TIMEOUT_MS);
+                break;
+            case ELASTIC:
+                logger.info("Using elastic pool of up to {} request threads!", maxThreads);
+                EmbeddedServers.add(EmbeddedServers.Identifiers.JETTY,
+                        new EmbeddedJettyFactory().withThreadPool(RequestThreadPool.elastic(maxThreads)));
+                break;
+            case VIRTUAL:
+                logger.info("Using virtual request threads!");
+                EmbeddedServers.add(EmbeddedServers.Identifiers.JETTY,
+                        new EmbeddedJettyFactory().withThreadPool(RequestThreadPool.virtual()));
+                break;
+        }
+    }
+
+    /**
+     * How requests are run by the server
+     */
+    public enum ThreadMode {
+        // Fixed size Jetty thread pool
+        POOLED,
+        // Large pool of platform threads which time out when idle
+        ELASTIC,
+        // New virtual thread per request
+        VIRTUAL
+    }
+
+    /**
+     * Add a read only GET route to the server. The route is given a read only session, so must not make any changes
      * @param path
      * @param route function to run upon receiving a request
      * @param <R> Response object type
      */
     private static <R> void get (String path, BiFunction<TickrController, ModelSession, R> route) {
-        Spark.get(path, new RouteWrapper<>(dataModel, ctx -> route.apply(ctx.controller, ctx.session)), gson::toJson);
+        Spark.get(path, new RouteWrapper<>(dataModel, controller, ctx -> route.apply(ctx.controller, ctx.session), true), gson::toJson);
     }
 
     /**
-     * Add a GET route to the server
+     * Add a read only GET route to the server. The route is given a read only session, so must not make any changes
      * @param path
      * @param route function to run upon receiving a request
      * @param <R> Response object type
      */
     private static <R> void get (String path, TriFunction<TickrController, ModelSession, Map<String, String>, R> route) {
-        Spark.get(path, new RouteWrapper<>(dataModel, ctx -> {
+        get(path, route, true);
+    }
+
+    /**
+     * Add a GET route which makes changes to the server
+     * @param path
+     * @param route function to run upon receiving a request
+     * @param <R> Response object type
+     */
+    private static <R> void getWriting (String path, TriFunction<TickrController, ModelSession, Map<String, String>, R> route) {
+        get(path, route, false);
+    }
+
+    private static <R> void get (String path, TriFunction<TickrController, ModelSession, Map<String, String>, R> route, boolean readOnly) {
+        Spark.get(path, new RouteWrapper<>(dataModel, controller, ctx -> {
             var paramMap = ctx.request.queryParams()
                     .stream()
                     .collect(Collectors.toMap(Function.identity(), ctx.request::queryParams));
 
             return route.apply(ctx.controller, ctx.session, paramMap);
-        }), gson::toJson);
+        }, readOnly), gson::toJson);
     }
 
     /**
@@ -256,7 +338,7 @@ public class Server {
      * @param <R> Response object type
      */
     private static <T, R> void post (String path, TriFunction<TickrController, ModelSession, T, R> route, Class<T> reqClass) {
-        Spark.post(path, new RouteWrapper<>(dataModel, ctx -> route.apply(ctx.controller, ctx.session, safeDeserialise(ctx.request, reqClass))),
+        Spark.post(path, new RouteWrapper<>(dataModel, controller, ctx -> route.apply(ctx.controller, ctx.session, safeDeserialise(ctx.request, reqClass))),
                 gson::toJson);
     }
 
@@ -283,7 +365,7 @@ public class Server {
      * @param <R> Response object type
      */
     private static <T, R> void put (String path, TriFunction<TickrController, ModelSession, T, R> route, Class<T> reqClass) {
-        Spark.put(path, new RouteWrapper<>(dataModel, ctx -> route.apply(ctx.controller, ctx.session, safeDeserialise(ctx.request, reqClass))),
+        Spark.put(path, new RouteWrapper<>(dataModel, controller, ctx -> route.apply(ctx.controller, ctx.session, safeDeserialise(ctx.request, reqClass))),
                 gson::toJson);
     }
 
@@ -310,7 +392,7 @@ public class Server {
      * @param <R> Response object type
      */
     private static <T, R> void delete (String path, TriFunction<TickrController, ModelSession, T, R> route, Class<T> reqClass) {
-        Spark.delete(path, new RouteWrapper<>(dataModel, ctx -> route.apply(ctx.controller, ctx.session, safeDeserialise(ctx.request, reqClass))),
+        Spark.delete(path, new RouteWrapper<>(dataModel, controller, ctx -> route.apply(ctx.controller, ctx.session, safeDeserialise(ctx.request, reqClass))),
                 gson::toJson);
     }
 
@@ -0,0 +1,151 @@
+package tickr.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Selects the k highest scoring items from a stream of scored items without sorting all of them, using a bounded
+ * min-heap of primitive scores. Items with equal scores are ranked in the order they were offered. Also counts every
+ * item offered, so a page of results and the total number of results can be served in a single pass
+ * @param <T> item type
+ */
+public class TopKSelector<T> {
+    private final int k;
+
+    // Min-heap ordered by score, then by reverse offer order, so the root is always the item to be evicted first
+    private double[] scores;
+    private long[] orders;
+    private Object[] items;
+    private int size = 0;
+    private long total = 0;
+
+    public TopKSelector (int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k must not be negative!");
+        }
+        this.k = k;
+
+        // Grow as needed, as k may be much larger than the number of items offered
+        int initial = Math.min(k, 16);
+        scores = new double[initial];
+        orders = new long[initial];
+        items = new Object[initial];
+    }
+
+    /**
+     * Makes a selector for the results up to the end of a page
+     * @param pageStart
+     * @param maxResults
+     * @return
+     */
+    public static <T> TopKSelector<T> forPage (int pageStart, int maxResults) {
+        return new TopKSelector<>((int) Math.min((long) pageStart + maxResults, Integer.MAX_VALUE - 8));
+    }
+
+    public void offer (T item, double score) {
+        long order = total++;
+        if (k == 0) {
+            return;
+        }
+
+        if (size < k) {
+            if (size == scores.length) {
+                int newLength = (int) Math.min((long) size * 2, k);
+                scores = Arrays.copyOf(scores, newLength);
+                orders = Arrays.copyOf(orders, newLength);
+                items = Arrays.copyOf(items, newLength);
+            }
+            set(size, score, order, item);
+            siftUp(size++);
+        } else if (Double.compare(score, scores[0]) > 0) {
+            // Better than the worst selected item, so replace it. Equal scores keep the earlier item
+            set(0, score, order, item);
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Gets the total number of items offered
+     * @return
+     */
+    public int getTotal () {
+        return (int) Math.min(total, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Gets the selected items ranked by descending score, skipping the first pageStart items
+     * @param pageStart number of items to skip
+     * @return item, score pairs
+     */
+    @SuppressWarnings("unchecked")
+    public List<Pair<T, Double>> getResults (int pageStart) {
+        var indices = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            indices[i] = i;
+        }
+        Arrays.sort(indices, (a, b) -> isBelow(a, b) ? 1 : (isBelow(b, a) ? -1 : 0));
+
+        var results = new ArrayList<Pair<T, Double>>();
+        for (int i = pageStart; i < size; i++) {
+            results.add(new Pair<>((T) items[indices[i]], scores[indices[i]]));
+        }
+
+        return results;
+    }
+
+    /**
+     * Checks whether the item at position a ranks below the item at position b
+     */
+    private boolean isBelow (int a, int b) {
+        int cmp = Double.compare(scores[a], scores[b]);
+        if (cmp != 0) {
+            return cmp < 0;
+        }
+        return orders[a] > orders[b];
+    }
+
+    private void set (int pos, double score, long order, Object item) {
+        scores[pos] = score;
+        orders[pos] = order;
+        items[pos] = item;
+    }
+
+    private void swap (int a, int b) {
+        var score = scores[a];
+        var order = orders[a];
+        var item = items[a];
+        set(a, scores[b], orders[b], items[b]);
+        set(b, score, order, item);
+    }
+
+    private void siftUp (int pos) {
+        while (pos > 0) {
+            int parent = (pos - 1) / 2;
+            if (!isBelow(pos, parent)) {
+                break;
+            }
+            swap(pos, parent);
+            pos = parent;
+        }
+    }
+
+    private void siftDown (int pos) {
+        while (true) {
+            int lowest = pos;
+            int left = 2 * pos + 1;
+            int right = left + 1;
+            if (left < size && isBelow(left, lowest)) {
+                lowest = left;
+            }
+            if (right < size && isBelow(right, lowest)) {
+                lowest = right;
+            }
+            if (lowest == pos) {
+                break;
+            }
+            swap(pos, lowest);
+            pos = lowest;
+        }
+    }
+}
@@ -1,5 +1,8 @@
+-- Schema of the database before versioned migrations were added. Databases which already have this schema are
+-- baselined at this version instead of running it, see SchemaMigrator
+
 create table users (
-    id          varchar(36) not null,
+    id          binary(16) not null,
     email       varchar(255) not null unique,
     first_name  varchar(255) not null,
     last_name   varchar(255) not null,
@@ -13,8 +16,8 @@ create table users (
 );
 
 create table auth_token (
-    id          varchar(36) not null,
-    user_id     varchar(36) not null,
+    id          binary(16) not null,
+    user_id     binary(16) not null,
     issue_time  datetime not null,
     expiry_time datetime not null,
 
@@ -23,7 +26,7 @@ create table auth_token (
 );
 
 create table locations (
-    id          varchar(36) not null,
+    id          binary(16) not null,
     street_no    int,
     unit_no      varchar(255),
     street_name  varchar(255),
@@ -37,9 +40,9 @@ create table locations (
 );
 
 create table `events` (
-    id          varchar(36) not null,
-    host_id      varchar(36) not null,
-    location_id  varchar(36),
+    id          binary(16) not null,
+    host_id      binary(16) not null,
+    location_id  binary(16),
     event_name   varchar(255) not null,
     event_start       datetime not null,
     event_end         datetime not null,
@@ -49,23 +52,22 @@ create table `events` (
     event_pic varchar(255) not null,
     published boolean not null,
     spotify_playlist  varchar(255),
-/*    has_seats    boolean not null,*/
     primary key (id),
     foreign key (host_id) references users(id),
     foreign key (location_id) references locations(id)
 );
 
 create table admins (
-    event_id     varchar(36) not null,
-    user_id      varchar(36) not null,
+    event_id     binary(16) not null,
+    user_id      binary(16) not null,
     primary key (event_id, user_id),
     foreign key (event_id) references `events` (id),
     foreign key (user_id) references users(id)
 );
 
 create table `user_groups` (
-    id          varchar(36) not null,
-    leader_id    varchar(36) not null,
+    id          binary(16) not null,
+    leader_id    binary(16) not null,
     size        int not null,
     time_created datetime,
     ticket_available int,
@@ -74,17 +76,17 @@ create table `user_groups` (
 );
 
 create table notification_members (
-    event_id     varchar(36) not null,
-    user_id      varchar(36) not null,
+    event_id     binary(16) not null,
+    user_id      binary(16) not null,
     primary key (event_id, user_id),
     foreign key (event_id) references `events` (id),
     foreign key (user_id) references users(id)     
 );
 
 create table seating_plan (
-    id          varchar(36) not null,
-    event_id     varchar(36) not null,
-    location_id  varchar(36) not null,
+    id          binary(16) not null,
+    event_id     binary(16) not null,
+    location_id  binary(16) not null,
     section     varchar(255) not null,
     seat_availability int not null,
     total_seats int not null,
@@ -95,29 +97,24 @@ create table seating_plan (
 );
 
 create table ticket_reservation (
-    id varchar(36) not null,
-    user_id varchar(36) not null,
-    #first_name varchar(255),
-    #last_name varchar(255),
-    #email varchar(255),
-    seating_id varchar(36) not null,
+    id binary(16) not null,
+    user_id binary(16) not null,
+    seating_id binary(16) not null,
     seat_num int not null,
-    #reservation_id varchar(36) not null,
     price float not null,
     expiry_time datetime not null,
-    group_id varchar(36),
+    group_id binary(16),
     group_accepted boolean,
     primary key (id),
     foreign key (user_id) references users(id),
     foreign key (group_id) references `user_groups` (id),
     foreign key (seating_id) references `seating_plan`(id)
-    #foreign key (reservation_id) references event_reservation(id)
 );
 
 create table purchase_item (
-    id varchar(36) not null,
-    purchase_id varchar(36) not null,
-    ticket_id varchar(36) not null,
+    id binary(16) not null,
+    purchase_id binary(16) not null,
+    ticket_id binary(16) not null,
     first_name varchar(255),
     last_name varchar(255),
     email varchar(255),
@@ -130,18 +127,18 @@ create table purchase_item (
 
 
 create table tickets (
-    id          varchar(36) not null,
-    user_id      varchar(36) not null,
-    event_id     varchar(36) not null,
-    section_id    varchar(36) not null,
-    group_id     varchar(36),
+    id          binary(16) not null,
+    user_id      binary(16) not null,
+    event_id     binary(16) not null,
+    section_id    binary(16) not null,
+    group_id     binary(16),
     seat_no      int,
     first_name varchar(255),
     last_name varchar(255),
     email varchar(255),
 
     payment_id varchar(255),
-    price long not null,
+    price bigint not null,
 
     primary key (id),
     foreign key (user_id) references users(id),
@@ -151,45 +148,26 @@ create table tickets (
 );
 
 create table categories (
-    id          varchar(36) not null,
-    event_id     varchar(36) not null,
+    id          binary(16) not null,
+    event_id     binary(16) not null,
     category    varchar(255) not null,
     primary key (id),
     foreign key (event_id) references `events`(id)
 );
 
 create table tags (
-    id          varchar(36) not null,
-    event_id     varchar(36) not null,
+    id          binary(16) not null,
+    event_id     binary(16) not null,
     tags        varchar(255) not null,
     primary key (id),
     foreign key (event_id) references `events`(id)
 );
 
-/*create table reviews (
-     id          int not null,
-     event_id    int not null,
-     author_id   int not null,
-     description text not null,
-     primary key (id),
-     foreign key (event_id) references events(id)
-);
-
-create table replies (
-    id int not null,
-    review_id int not null,
-    author_id  int not null,
-    comment_text text not null,
-    primary key (id),
-    foreign key (review_id) references reviews(id),
-    foreign key  (author_id) references users(id)
-);*/
-
 create table event_comments (
-    id varchar(36) not null,
-    event_id varchar(36) not null,
-    parent_id varchar(36),
-    author_id varchar(36) not null,
+    id binary(16) not null,
+    event_id binary(16) not null,
+    parent_id binary(16),
+    author_id binary(16) not null,
     comment_title varchar(255),
     comment_text text not null,
     comment_time datetime not null,
@@ -202,9 +180,9 @@ create table event_comments (
 );
 
 create table reactions (
-    id varchar(36) not null,
-    comment_id varchar(36) not null,
-    author_id varchar(36) not null,
+    id binary(16) not null,
+    comment_id binary(16) not null,
+    author_id binary(16) not null,
     react_time datetime not null,
     react_type char(255) not null,
 
@@ -214,8 +192,8 @@ create table reactions (
 );
 
 create table group_users (
-    group_id varchar(36) not null,
-    user_id varchar(36) not null,
+    group_id binary(16) not null,
+    user_id binary(16) not null,
 
     primary key (group_id, user_id),
     foreign key (group_id) references `user_groups`(id),
@@ -223,8 +201,8 @@ create table group_users (
 );
 
 create table reset_tokens (
-    id varchar(36) not null,
-    user_id varchar(36) not null,
+    id binary(16) not null,
+    user_id binary(16) not null,
     expiry_time datetime not null,
 
     primary key (id),
@@ -232,10 +210,10 @@ create table reset_tokens (
 );
 
 create table invitation (
-    id  varchar(36) not null,
-    group_id  varchar(36) not null,
-    reserve_id  varchar(36) not null,
-    user_id  varchar(36) not null,
+    id  binary(16) not null,
+    group_id  binary(16) not null,
+    reserve_id  binary(16) not null,
+    user_id  binary(16) not null,
     
     primary key (id),
     foreign key (group_id) references `user_groups`(id),
@@ -252,7 +230,7 @@ create table document_term_count (
 
 create table tf_idf (
     term varchar(255) not null,
-    event_id varchar(36) not null,
+    event_id binary(16) not null,
 
     term_freq double not null,
     document_count int not null,
@@ -263,10 +241,10 @@ create table tf_idf (
 );
 
 create table user_interaction (
-    id varchar(36) not null,
+    id binary(16) not null,
     interact_time datetime not null,
-    user_id varchar(36) not null,
-    event_id varchar(36) not null,
+    user_id binary(16) not null,
+    event_id binary(16) not null,
     interact_type int not null,
     rating double,
 
@@ -275,13 +253,11 @@ create table user_interaction (
     foreign key (event_id) references `events`(id)
 );
 
-create table TestTable
-(
-    id    varchar(36),
-    name  varchar(1024) null,
-    email varchar(1024) null,
-    constraint TestTable_pk
-        primary key (id)
-);
-
+create table user_profiles (
+    user_id binary(16) not null,
+    reference_time datetime not null,
+    profile_vector longtext not null,
 
+    primary key (user_id),
+    foreign key (user_id) references `users`(id)
+);
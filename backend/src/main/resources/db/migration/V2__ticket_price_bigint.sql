@@ -0,0 +1,2 @@
+-- Ticket prices were declared as long, which MySQL takes to mean mediumtext rather than bigint
+alter table tickets modify price bigint not null;
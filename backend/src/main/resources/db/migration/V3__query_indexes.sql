@@ -0,0 +1,21 @@
+-- Indexes matching the filters and orderings of the queries in TickrController. Foreign key columns are already
+-- indexed by MySQL, so are only indexed here as the first column of a composite index. users.email is already
+-- indexed by its unique constraint
+
+-- Reviews of an event: where event_id = ? and parent_id is null order by comment_time desc, id
+create index idx_event_comments_event_parent_time on event_comments (event_id, parent_id, comment_time);
+-- Replies to a review: where parent_id = ? order by comment_time desc, id
+create index idx_event_comments_parent_time on event_comments (parent_id, comment_time);
+
+-- Hosted events: where host_id = ? and event_start > ?
+create index idx_events_host_start on events (host_id, event_start);
+-- Published events by start time, for search and category feeds
+create index idx_events_published_start on events (published, event_start);
+-- Recommendation candidates: where published = true and event_end >= ?
+create index idx_events_published_end on events (published, event_end);
+
+-- Events of a category: where category = ?
+create index idx_categories_category_event on categories (category, event_id);
+
+-- Items of an order: where purchase_id = ?
+create index idx_purchase_item_purchase on purchase_item (purchase_id);
@@ -0,0 +1,40 @@
+-- Each seat of a section can only have one reservation, as a backstop to the in-memory seat allocator. Seats reserved
+-- again after expiring, or reserved twice, keep the reservation being bought or offered to an invited user if there is
+-- one, as that is kept by the reservation sweeper, and otherwise the latest
+
+-- MySQL cannot delete from a table it is selecting from, unless the selection is first made into a derived table
+delete from ticket_reservation where id in (
+    select id from (
+        select r.id from ticket_reservation r
+        where not exists (select 1 from purchase_item p where p.ticket_id = r.id)
+            and not exists (select 1 from invitation i where i.reserve_id = r.id)
+            and exists (
+                select 1 from ticket_reservation n
+                where n.seating_id = r.seating_id and n.seat_num = r.seat_num and n.id <> r.id
+                    and (exists (select 1 from purchase_item p where p.ticket_id = n.id)
+                        or exists (select 1 from invitation i where i.reserve_id = n.id)
+                        or n.expiry_time > r.expiry_time or (n.expiry_time = r.expiry_time and n.id > r.id)))) superseded);
+
+-- Any seats still reserved twice were being bought or offered twice, which only one can become a ticket for, so the
+-- latest is kept along with its purchase item and invitation
+
+delete from purchase_item where ticket_id in (
+    select r.id from ticket_reservation r where exists (
+        select 1 from ticket_reservation n
+        where n.seating_id = r.seating_id and n.seat_num = r.seat_num
+            and (n.expiry_time > r.expiry_time or (n.expiry_time = r.expiry_time and n.id > r.id))));
+
+delete from invitation where reserve_id in (
+    select r.id from ticket_reservation r where exists (
+        select 1 from ticket_reservation n
+        where n.seating_id = r.seating_id and n.seat_num = r.seat_num
+            and (n.expiry_time > r.expiry_time or (n.expiry_time = r.expiry_time and n.id > r.id))));
+
+delete from ticket_reservation where id in (
+    select id from (
+        select distinct r.id from ticket_reservation r where exists (
+            select 1 from ticket_reservation n
+            where n.seating_id = r.seating_id and n.seat_num = r.seat_num
+                and (n.expiry_time > r.expiry_time or (n.expiry_time = r.expiry_time and n.id > r.id)))) superseded);
+
+create unique index uq_ticket_reservation_seat on ticket_reservation (seating_id, seat_num);
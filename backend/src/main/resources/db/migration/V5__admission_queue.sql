@@ -0,0 +1,15 @@
+-- Places in the admission queues of events, so queues survive a restart, see AdmissionQueue. Events and users are not
+-- foreign keys, so that entries never block deleting them
+
+create table admission_queue (
+    id              binary(16) not null,
+    event_id        binary(16) not null,
+    user_id         binary(16) not null,
+    queue_position  bigint not null,
+    join_time       datetime not null,
+    admit_time      datetime,
+    primary key (id)
+);
+
+create unique index uq_admission_queue_event_user on admission_queue (event_id, user_id);
+create unique index uq_admission_queue_event_position on admission_queue (event_id, queue_position);
@@ -0,0 +1,2 @@
+-- Expired reservations for the reservation sweeper: where expiry_time < ? and group_id is null order by expiry_time
+create index idx_ticket_reservation_expiry on ticket_reservation (expiry_time);
@@ -0,0 +1,3 @@
+-- Optimistic lock of user profiles, which concurrent interactions of the same user update, see UserProfile
+
+alter table user_profiles add column version int not null default 0;
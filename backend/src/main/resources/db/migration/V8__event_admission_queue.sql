@@ -0,0 +1,3 @@
+-- Admission queues are turned on per event by its host, see AdmissionQueue
+
+alter table events add column admission_queue boolean not null default false;
@@ -0,0 +1,9 @@
+-- Columns whose types differ from those their entities map, so that Hibernate can validate the schema
+
+-- Declared as char, which pads values to 255 characters
+alter table locations modify state varchar(255) not null;
+alter table locations modify country varchar(255) not null;
+alter table reactions modify react_type varchar(255) not null;
+
+-- Dates of birth have no time
+alter table users modify dob date not null;
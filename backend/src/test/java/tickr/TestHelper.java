@@ -19,6 +19,7 @@ import java.time.Instant;
 import java.util.Arrays;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 public class TestHelper {
     static final Logger logger = LogManager.getLogger();
@@ -35,6 +36,25 @@ public class TestHelper {
         return model.makeSession();
     }
 
+    /**
+     * Counts the statements sent to the database by a request, which is run in its own read only session like a GET
+     * request
+     * @param model
+     * @param request
+     * @return
+     */
+    public static long countStatements (DataModel model, Consumer<ModelSession> request) {
+        var session = model.makeReadOnlySession();
+        try {
+            var before = model.getStatementCount();
+            request.accept(session);
+            return model.getStatementCount() - before;
+        } finally {
+            session.commit();
+            session.close();
+        }
+    }
+
     public static void sleep (long millis) {
         try {
             Thread.sleep(millis);
@@ -0,0 +1,96 @@
+package tickr.benchmark;
+
+import tickr.application.apis.location.LocationPoint;
+import tickr.application.recommendations.CandidateScorer;
+import tickr.application.recommendations.CompactVector;
+import tickr.application.recommendations.EventVector;
+import tickr.application.recommendations.RecommendCandidate;
+import tickr.application.recommendations.RecommenderEngine;
+import tickr.util.TopKSelector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares sequential and parallel scoring of user-event recommendations over a synthetic catalogue. Run with
+ * ./gradlew benchmark [-Pargs="<events> <threads>"]
+ */
+public class RecommendationBenchmark {
+    private static final int WARMUP_RUNS = 5;
+    private static final int RUNS = 20;
+
+    public static void main (String[] args) {
+        int numEvents = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        var random = new Random(0);
+        var candidates = makeCandidates(random, numEvents);
+        var curr = candidates.get(0);
+        var profile = makeVector(random, 200);
+
+        CandidateScorer.configure(threads);
+        System.out.printf("Scoring %d events with %d threads%n", numEvents, threads);
+
+        var sequential = time(() -> {
+            var selector = TopKSelector.<String>forPage(0, 20);
+            for (var i : candidates) {
+                selector.offer(i.getId(), RecommenderEngine.calculateUserEventScore(i, curr, profile));
+            }
+            return selector.getResults(0).get(0).getFirst();
+        });
+        var parallel = time(() -> CandidateScorer.select(candidates,
+                c -> RecommenderEngine.calculateUserEventScore(c, curr, profile), 0, 20).getResults(0).get(0).getFirst());
+
+        System.out.printf("Sequential: %.2f ms%n", sequential);
+        System.out.printf("Parallel:   %.2f ms%n", parallel);
+        System.out.printf("Speed-up:   %.2fx%n", sequential / parallel);
+    }
+
+    private static double time (Benchmarked benchmarked) {
+        String result = null;
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            result = benchmarked.run();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            // Keep the result live so the work is not optimised away
+            if (!benchmarked.run().equals(result)) {
+                throw new IllegalStateException("Results differ between runs!");
+            }
+        }
+
+        return (System.nanoTime() - start) / 1e6 / RUNS;
+    }
+
+    private static List<RecommendCandidate> makeCandidates (Random random, int numEvents) {
+        var candidates = new ArrayList<RecommendCandidate>();
+        for (int i = 0; i < numEvents; i++) {
+            var point = new LocationPoint(Math.toRadians(random.nextDouble() * 180 - 90),
+                    Math.toRadians(random.nextDouble() * 360 - 180));
+            candidates.add(new RecommendCandidate(Integer.toString(i), makeVector(random, 30), point));
+        }
+
+        return candidates;
+    }
+
+    private static EventVector makeVector (Random random, int numTerms) {
+        // Roughly the shape of a real event description: a few dozen of a few thousand words, with some tags and categories
+        var terms = new CompactVector.Builder();
+        for (int i = 0; i < numTerms; i++) {
+            terms.add("term" + random.nextInt(5000), random.nextDouble());
+        }
+        var tags = new CompactVector.Builder();
+        for (int i = 0; i < 4; i++) {
+            tags.add("tag" + random.nextInt(200), 1);
+        }
+
+        return new EventVector(terms.build().normalised(), tags.build().normalised(),
+                CompactVector.of("category" + random.nextInt(20), 1), CompactVector.of("host" + random.nextInt(1000), 1));
+    }
+
+    private interface Benchmarked {
+        String run ();
+    }
+}
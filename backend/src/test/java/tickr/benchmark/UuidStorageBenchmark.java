@@ -0,0 +1,268 @@
+package tickr.benchmark;
+
+import tickr.persistence.TimeOrderedIdGenerator;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Compares uuids stored as char(36) against binary(16), with random and time ordered ids, on cut down tickets and
+ * tf_idf tables. Reports the size of each table with its indexes, and the time taken by the joins the ticket and
+ * recommendation endpoints make. Runs against a temporary H2 database by default. Run with
+ * ./gradlew uuidBenchmark [-Pargs="<events> [<jdbc url> <user> <password>]"]
+ */
+public class UuidStorageBenchmark {
+    private static final int TICKETS_PER_EVENT = 50;
+    private static final int TERMS_PER_EVENT = 30;
+    private static final int NUM_TERMS = 5000;
+    private static final int BATCH_SIZE = 1000;
+    private static final int JOIN_RUNS = 5;
+
+    private static final Random random = new Random(0);
+
+    public static void main (String[] args) throws Exception {
+        int numEvents = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+
+        Path tempDir = null;
+        String url;
+        String user;
+        String password;
+        if (args.length > 3) {
+            url = args[1];
+            user = args[2];
+            password = args[3];
+        } else {
+            tempDir = Files.createTempDirectory("uuid-benchmark");
+            url = "jdbc:h2:file:" + tempDir.resolve("benchmark").toAbsolutePath();
+            user = "sa";
+            password = "";
+        }
+
+        System.out.printf("%d events, %d tickets, %d tf idfs%n", numEvents, numEvents * TICKETS_PER_EVENT,
+                numEvents * TERMS_PER_EVENT);
+        System.out.printf("%-20s %12s %12s %12s %14s %14s%n", "Layout", "Insert ms", "tickets KiB", "tf_idf KiB",
+                "Ticket join ms", "Tf idf join ms");
+
+        try (var connection = DriverManager.getConnection(url, user, password)) {
+            var mysql = url.startsWith("jdbc:mysql");
+            run(connection, mysql, new Layout("char(36) random", false, UUID::randomUUID), numEvents);
+            run(connection, mysql, new Layout("binary(16) random", true, UUID::randomUUID), numEvents);
+            run(connection, mysql, new Layout("binary(16) ordered", true, TimeOrderedIdGenerator::next), numEvents);
+        } finally {
+            if (tempDir != null) {
+                try (var files = Files.walk(tempDir)) {
+                    files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+                }
+            }
+        }
+    }
+
+    private static void run (Connection connection, boolean mysql, Layout layout, int numEvents) throws SQLException {
+        dropTables(connection);
+        createTables(connection, layout.getColumnType());
+
+        long start = System.nanoTime();
+        var eventIds = insertRows(connection, layout, numEvents);
+        var insertMs = (System.nanoTime() - start) / 1e6;
+
+        if (mysql) {
+            try (var statement = connection.createStatement()) {
+                // Sizes are only estimated until tables are analysed
+                statement.execute("analyze table bench_events, bench_tickets, bench_tf_idf");
+            }
+        }
+        var ticketsSize = getTableSize(connection, mysql, "bench_tickets");
+        var tfIdfSize = getTableSize(connection, mysql, "bench_tf_idf");
+
+        // Tickets of one event at a time, as in the attendees and reserved seats endpoints
+        var ticketJoinMs = timeJoins(connection, layout, eventIds, "select count(*) from bench_tickets t "
+                + "join bench_events e on t.event_id = e.id where e.id = ?");
+        // Tf idfs of one event at a time, as when building event vectors
+        var tfIdfJoinMs = timeJoins(connection, layout, eventIds, "select sum(d.term_count) from bench_tf_idf f "
+                + "join bench_events e on f.event_id = e.id join bench_terms d on f.term = d.term where e.id = ?");
+
+        System.out.printf("%-20s %12.1f %12d %12d %14.1f %14.1f%n", layout.getName(), insertMs, ticketsSize / 1024,
+                tfIdfSize / 1024, ticketJoinMs, tfIdfJoinMs);
+        dropTables(connection);
+    }
+
+    private static void dropTables (Connection connection) throws SQLException {
+        try (var statement = connection.createStatement()) {
+            statement.execute("drop table if exists bench_tf_idf");
+            statement.execute("drop table if exists bench_tickets");
+            statement.execute("drop table if exists bench_terms");
+            statement.execute("drop table if exists bench_events");
+        }
+    }
+
+    private static void createTables (Connection connection, String idType) throws SQLException {
+        // Same keys and indexes as the baseline migration
+        try (var statement = connection.createStatement()) {
+            statement.execute("create table bench_events (id " + idType + " not null, event_name varchar(255) not null, "
+                    + "primary key (id))");
+            statement.execute("create table bench_terms (term varchar(255) not null, term_count int not null, "
+                    + "primary key (term))");
+            statement.execute("create table bench_tickets (id " + idType + " not null, user_id " + idType + " not null, "
+                    + "event_id " + idType + " not null, seat_no int not null, primary key (id), "
+                    + "foreign key (event_id) references bench_events(id))");
+            statement.execute("create table bench_tf_idf (term varchar(255) not null, event_id " + idType + " not null, "
+                    + "term_count int not null, primary key (term, event_id), "
+                    + "foreign key (term) references bench_terms(term), foreign key (event_id) references bench_events(id))");
+        }
+    }
+
+    private static List<UUID> insertRows (Connection connection, Layout layout, int numEvents) throws SQLException {
+        var eventIds = new ArrayList<UUID>();
+        var autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (var events = connection.prepareStatement("insert into bench_events values (?, ?)");
+             var terms = connection.prepareStatement("insert into bench_terms values (?, ?)");
+             var tickets = connection.prepareStatement("insert into bench_tickets values (?, ?, ?, ?)");
+             var tfIdfs = connection.prepareStatement("insert into bench_tf_idf values (?, ?, ?)")) {
+            for (int i = 0; i < NUM_TERMS; i++) {
+                terms.setString(1, "term" + i);
+                terms.setInt(2, 0);
+                addBatch(terms, i);
+            }
+            terms.executeBatch();
+
+            // Rows are made in the order the application would make them, so time ordered ids increase
+            int ticketsMade = 0;
+            for (int i = 0; i < numEvents; i++) {
+                var eventId = layout.nextId();
+                eventIds.add(eventId);
+                layout.setId(events, 1, eventId);
+                events.setString(2, "event" + i);
+                events.executeUpdate();
+
+                for (int j = 0; j < TICKETS_PER_EVENT; j++) {
+                    layout.setId(tickets, 1, layout.nextId());
+                    layout.setId(tickets, 2, layout.nextId());
+                    layout.setId(tickets, 3, eventId);
+                    tickets.setInt(4, j);
+                    addBatch(tickets, ticketsMade++);
+                }
+
+                int firstTerm = random.nextInt(NUM_TERMS - TERMS_PER_EVENT);
+                for (int j = 0; j < TERMS_PER_EVENT; j++) {
+                    tfIdfs.setString(1, "term" + (firstTerm + j));
+                    layout.setId(tfIdfs, 2, eventId);
+                    tfIdfs.setInt(3, random.nextInt(5) + 1);
+                    tfIdfs.addBatch();
+                }
+                tfIdfs.executeBatch();
+            }
+            tickets.executeBatch();
+            connection.commit();
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+
+        return eventIds;
+    }
+
+    private static void addBatch (PreparedStatement statement, int count) throws SQLException {
+        statement.addBatch();
+        if (count % BATCH_SIZE == BATCH_SIZE - 1) {
+            statement.executeBatch();
+        }
+    }
+
+    private static long getTableSize (Connection connection, boolean mysql, String table) throws SQLException {
+        var query = mysql
+                ? "select data_length + index_length from information_schema.tables where table_schema = database() and table_name = ?"
+                : "select disk_space_used(?)";
+        try (var statement = connection.prepareStatement(query)) {
+            statement.setString(1, mysql ? table : table.toUpperCase());
+            try (var results = statement.executeQuery()) {
+                results.next();
+                return results.getLong(1);
+            }
+        }
+    }
+
+    private static double timeJoins (Connection connection, Layout layout, List<UUID> eventIds, String query) throws SQLException {
+        // Look events up in a random order, so that the whole index is used rather than whatever is cached
+        var lookups = new ArrayList<UUID>();
+        for (int i = 0; i < eventIds.size(); i++) {
+            lookups.add(eventIds.get(random.nextInt(eventIds.size())));
+        }
+
+        long total = 0;
+        try (var statement = connection.prepareStatement(query)) {
+            // Warm up
+            runJoins(statement, layout, lookups);
+
+            long start = System.nanoTime();
+            for (int i = 0; i < JOIN_RUNS; i++) {
+                total += runJoins(statement, layout, lookups);
+            }
+            var elapsedMs = (System.nanoTime() - start) / 1e6 / JOIN_RUNS;
+            if (total == 0) {
+                throw new IllegalStateException("Joins found no rows!");
+            }
+
+            return elapsedMs;
+        }
+    }
+
+    private static long runJoins (PreparedStatement statement, Layout layout, List<UUID> lookups) throws SQLException {
+        long total = 0;
+        for (var i : lookups) {
+            layout.setId(statement, 1, i);
+            try (var results = statement.executeQuery()) {
+                results.next();
+                total += results.getLong(1);
+            }
+        }
+
+        return total;
+    }
+
+    private static class Layout {
+        private final String name;
+        private final boolean binary;
+        private final Supplier<UUID> idSupplier;
+
+        Layout (String name, boolean binary, Supplier<UUID> idSupplier) {
+            this.name = name;
+            this.binary = binary;
+            this.idSupplier = idSupplier;
+        }
+
+        public String getName () {
+            return name;
+        }
+
+        public String getColumnType () {
+            return binary ? "binary(16)" : "char(36)";
+        }
+
+        public UUID nextId () {
+            return idSupplier.get();
+        }
+
+        public void setId (PreparedStatement statement, int index, UUID id) throws SQLException {
+            if (binary) {
+                // Same byte order as Hibernate, most significant bits first
+                statement.setBytes(index, ByteBuffer.allocate(16)
+                        .putLong(id.getMostSignificantBits())
+                        .putLong(id.getLeastSignificantBits())
+                        .array());
+            } else {
+                statement.setString(index, id.toString());
+            }
+        }
+    }
+}
@@ -13,6 +13,7 @@ import tickr.application.apis.location.ILocationAPI;
 import tickr.application.serialised.SerializedLocation;
 import tickr.application.serialised.combined.event.EventSearch;
 import tickr.application.serialised.requests.event.EditEventRequest;
+import tickr.application.serialised.requests.event.EventDeleteRequest;
 import tickr.mock.MockLocationApi;
 import tickr.persistence.DataModel;
 import tickr.persistence.HibernateModel;
@@ -213,6 +214,38 @@ public class TestEventSearch {
         assertEquals(ids.get(1), respIds.get(2));
     }
 
+    @Test
+    public void testEditDelete () {
+        var ids = createEventOptions();
+
+        controller.editEvent(session, new EditEventRequest(ids.get(0), authToken, "Tennis", null, null, null,
+                null, null, null, null, Set.of("sports"), Set.of("test7"), true, null));
+        session = TestHelper.commitMakeSession(model, session);
+
+        var response = makeSearch(0, 100, new OptionsBuilder().addCategories(List.of("music", "business")).build());
+        assertEquals(1, response.numResults);
+        assertEquals(ids.get(1), response.eventIds.get(0));
+
+        response = makeSearch(0, 100, new OptionsBuilder().addCategories(List.of("sports")).addTags(List.of("test7")).addText("tennis").build());
+        assertEquals(1, response.numResults);
+        assertEquals(ids.get(0), response.eventIds.get(0));
+
+        response = makeSearch(0, 100, new OptionsBuilder().addTags(List.of("test1")).build());
+        assertEquals(0, response.numResults);
+
+        controller.eventDelete(session, new EventDeleteRequest(authToken, ids.get(1)));
+        session = TestHelper.commitMakeSession(model, session);
+
+        response = makeSearch(0, 100, new OptionsBuilder().addTags(List.of("test2")).build());
+        assertEquals(1, response.numResults);
+        assertEquals(ids.get(2), response.eventIds.get(0));
+
+        response = makeSearch(0, 100, null);
+        assertEquals(2, response.numResults);
+        assertEquals(ids.get(2), response.eventIds.get(0));
+        assertEquals(ids.get(0), response.eventIds.get(1));
+    }
+
     private List<String> createEventOptions () {
         var entityIds = new ArrayList<String>();
 
@@ -0,0 +1,137 @@
+package tickr.unit.persistence;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import tickr.CreateEventReqBuilder;
+import tickr.TestHelper;
+import tickr.application.TickrController;
+import tickr.application.apis.ApiLocator;
+import tickr.application.apis.location.ILocationAPI;
+import tickr.application.entities.*;
+import tickr.application.serialised.requests.event.CreateEventRequest;
+import tickr.mock.MockLocationApi;
+import tickr.persistence.DataModel;
+import tickr.persistence.HibernateModel;
+
+import java.util.List;
+import java.util.UUID;
+
+public class TestBulkWrites {
+    private static final int NUM_TERMS = 200;
+
+    private DataModel model;
+    private TickrController controller;
+
+    @BeforeEach
+    public void setup () {
+        model = new HibernateModel("hibernate-test.cfg.xml");
+        controller = new TickrController();
+        ApiLocator.addLocator(ILocationAPI.class, () -> new MockLocationApi(model));
+    }
+
+    @AfterEach
+    public void cleanup () {
+        model.cleanup();
+        ApiLocator.clearLocator(ILocationAPI.class);
+    }
+
+    private void makeTerms () {
+        var session = model.makeSession();
+        for (int i = 0; i < NUM_TERMS; i++) {
+            session.save(new DocumentTerm("term" + i, i % 2));
+        }
+        session.commit();
+        session.close();
+    }
+
+    @Test
+    public void testBatchedInserts () {
+        var before = model.getStatementCount();
+        makeTerms();
+
+        // Inserts are sent in batches rather than prepared one at a time
+        var statements = model.getStatementCount() - before;
+        assertTrue(statements < 10, String.format("Made %d statements for %d inserts!", statements, NUM_TERMS));
+
+        var session = model.makeSession();
+        assertEquals(NUM_TERMS, session.getAll(DocumentTerm.class).size());
+        session.rollback();
+        session.close();
+    }
+
+    @Test
+    public void testBulkDelete () {
+        makeTerms();
+
+        var session = model.makeSession();
+        var before = model.getStatementCount();
+        assertEquals(NUM_TERMS / 2, session.query(DocumentTerm.class)
+                .where("termCount", 0)
+                .delete());
+        assertEquals(1, model.getStatementCount() - before);
+        session = TestHelper.commitMakeSession(model, session);
+
+        var terms = session.getAll(DocumentTerm.class);
+        assertEquals(NUM_TERMS / 2, terms.size());
+        assertTrue(terms.stream().allMatch(t -> t.getTermCount() == 1));
+
+        session.clear(DocumentTerm.class);
+        session = TestHelper.commitMakeSession(model, session);
+        assertEquals(0, session.getAll(DocumentTerm.class).size());
+        session.rollback();
+        session.close();
+    }
+
+    @Test
+    public void testReadOnlyDelete () {
+        makeTerms();
+
+        var session = model.makeReadOnlySession();
+        assertEquals(0, session.query(DocumentTerm.class).delete());
+        session.rollback();
+        session.close();
+
+        session = model.makeSession();
+        assertEquals(NUM_TERMS, session.getAll(DocumentTerm.class).size());
+        session.rollback();
+        session.close();
+    }
+
+    @Test
+    public void testClearDatabase () {
+        var session = model.makeSession();
+        var authToken = controller.userRegister(session, TestHelper.makeRegisterRequest()).authToken;
+        var reactorToken = controller.userRegister(session, TestHelper.makeRegisterRequest()).authToken;
+        session = TestHelper.commitMakeSession(model, session);
+        var eventId = controller.createEventUnsafe(session, new CreateEventReqBuilder()
+                .withSeatingDetails(List.of(new CreateEventRequest.SeatingDetails("SectionA", 10, 50, true)))
+                .build(authToken)).event_id;
+        session = TestHelper.commitMakeSession(model, session);
+
+        var user = session.getById(User.class, controller.getTokenUserId(authToken)).orElseThrow();
+        var event = session.getById(Event.class, UUID.fromString(eventId)).orElseThrow();
+        var section = session.getAllWith(SeatingPlan.class, "event", event).get(0);
+        session.save(new Ticket(user, section, 1, "First", "Last", "test@example.com", null, 0));
+        session.save(new TicketReservation(user, section, 2, 10));
+        var review = Comment.makeReview(event, user, "Title", "Text", 4.0f);
+        session.save(review);
+        // Reviewers cannot react to their own reviews
+        var reactor = session.getById(User.class, controller.getTokenUserId(reactorToken)).orElseThrow();
+        review.react(session, reactor, "heart");
+        session = TestHelper.commitMakeSession(model, session);
+
+        controller.clearDatabase(session, null);
+        session = TestHelper.commitMakeSession(model, session);
+
+        assertEquals(0, session.getAll(User.class).size());
+        assertEquals(0, session.getAll(Event.class).size());
+        assertEquals(0, session.getAll(Ticket.class).size());
+        assertEquals(0, session.getAll(Comment.class).size());
+        assertEquals(0, session.getAll(Location.class).size());
+        session.rollback();
+        session.close();
+    }
+}
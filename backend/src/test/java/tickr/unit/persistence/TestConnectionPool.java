@@ -0,0 +1,97 @@
+package tickr.unit.persistence;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import tickr.application.entities.User;
+import tickr.persistence.ConnectionPoolStats;
+import tickr.persistence.DataModel;
+import tickr.persistence.HibernateModel;
+import tickr.persistence.ModelSession;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+public class TestConnectionPool {
+    private DataModel model;
+
+    @AfterEach
+    public void cleanup () {
+        model.cleanup();
+    }
+
+    @Test
+    public void testStats () {
+        model = new HibernateModel("hibernate-test.cfg.xml");
+
+        var stats = model.getPoolStats();
+        assertEquals(1, stats.size());
+        assertEquals("tickr-test", stats.get(0).getPoolName());
+        assertEquals(20, stats.get(0).getMaxConnections());
+
+        // Connections are only taken once a session is used
+        var sessions = new ArrayList<ModelSession>();
+        for (int i = 0; i < 3; i++) {
+            var session = model.makeSession();
+            session.getAll(User.class);
+            sessions.add(session);
+        }
+        assertEquals(3, model.getPoolStats().get(0).getActiveConnections());
+        assertEquals(0, model.getPoolStats().get(0).getThreadsAwaiting());
+
+        for (var i : sessions) {
+            i.commit();
+            i.close();
+        }
+        stats = model.getPoolStats();
+        assertEquals(0, stats.get(0).getActiveConnections());
+        assertTrue(stats.get(0).getIdleConnections() >= 1);
+        assertTrue(stats.get(0).getTotalConnections() <= stats.get(0).getMaxConnections());
+    }
+
+    @Test
+    public void testReplicaStats () {
+        model = new HibernateModel("hibernate-test.cfg.xml", List.of("jdbc:h2:mem:replica1", "jdbc:h2:mem:replica2"),
+                Duration.ofSeconds(1));
+
+        assertEquals(List.of("tickr-test", "tickr-replica-0", "tickr-replica-1"), model.getPoolStats().stream()
+                .map(ConnectionPoolStats::getPoolName)
+                .collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testConcurrentSessions () throws Exception {
+        model = new HibernateModel("hibernate-test.cfg.xml");
+
+        var executor = Executors.newFixedThreadPool(16);
+        try {
+            var futures = new ArrayList<Future<Integer>>();
+            for (int i = 0; i < 200; i++) {
+                boolean readOnly = i % 2 == 0;
+                futures.add(executor.submit(() -> {
+                    var session = readOnly ? model.makeReadOnlySession() : model.makeSession();
+                    try {
+                        return session.getAll(User.class).size();
+                    } finally {
+                        session.commit();
+                        session.close();
+                    }
+                }));
+            }
+            for (var i : futures) {
+                assertEquals(0, i.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Every connection was returned
+        assertEquals(0, model.getPoolStats().get(0).getActiveConnections());
+    }
+}
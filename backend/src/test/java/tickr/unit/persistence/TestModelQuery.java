@@ -0,0 +1,212 @@
+package tickr.unit.persistence;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import tickr.TestHelper;
+import tickr.application.entities.DocumentTerm;
+import tickr.application.entities.QueueEntry;
+import tickr.persistence.DataModel;
+import tickr.persistence.HibernateModel;
+import tickr.persistence.ModelSession;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+public class TestModelQuery {
+    private DataModel model;
+    private ModelSession session;
+
+    private UUID eventA;
+    private UUID eventB;
+
+    @BeforeEach
+    public void setup () {
+        model = new HibernateModel("hibernate-test.cfg.xml");
+        session = model.makeSession();
+
+        // Five places in the queue of one event and three in another, with the second place of the first admitted
+        eventA = UUID.randomUUID();
+        eventB = UUID.randomUUID();
+        var now = ZonedDateTime.now(ZoneId.of("UTC"));
+        for (int i = 0; i < 5; i++) {
+            var entry = new QueueEntry(eventA, UUID.randomUUID(), i, now);
+            if (i == 1) {
+                entry.setAdmitTime(now);
+            }
+            session.save(entry);
+        }
+        for (int i = 0; i < 3; i++) {
+            session.save(new QueueEntry(eventB, UUID.randomUUID(), i, now));
+        }
+
+        session.save(new DocumentTerm("apple", 1));
+        session.save(new DocumentTerm("banana", 2));
+        session.save(new DocumentTerm("cherry", 2));
+        session.save(new DocumentTerm("durian", 3));
+        session = TestHelper.commitMakeSession(model, session);
+    }
+
+    @AfterEach
+    public void cleanup () {
+        model.cleanup();
+    }
+
+    private List<Long> getPositions (List<QueueEntry> entries) {
+        return entries.stream()
+                .map(QueueEntry::getPosition)
+                .collect(Collectors.toList());
+    }
+
+    private List<String> getTerms (List<DocumentTerm> terms) {
+        return terms.stream()
+                .map(DocumentTerm::getTerm)
+                .collect(Collectors.toList());
+    }
+
+    private int getTermCount (String term) {
+        return session.getById(DocumentTerm.class, term).orElseThrow().getTermCount();
+    }
+
+    @Test
+    public void testFiltering () {
+        assertEquals(5, session.query(QueueEntry.class).where("eventId", eventA).count());
+        assertEquals(3, session.query(QueueEntry.class).whereNot("eventId", eventA).count());
+        assertEquals(1, session.query(QueueEntry.class).whereNotNull("admitTime").count());
+        assertEquals(7, session.query(QueueEntry.class).whereNull("admitTime").count());
+
+        assertEquals(List.of(1L, 3L), getPositions(session.query(QueueEntry.class)
+                .where("eventId", eventA)
+                .whereIn("position", List.of(1L, 3L, 7L))
+                .orderBy("position")
+                .getResults()));
+        // Matches nothing rather than being invalid SQL
+        assertEquals(List.of(), session.query(QueueEntry.class).whereIn("position", List.of()).getResults());
+        assertEquals(0, session.query(QueueEntry.class).whereIn("position", List.of()).count());
+
+        assertEquals(2, session.query(QueueEntry.class).where("eventId", eventA).whereGreaterThan("position", 2L).count());
+        assertEquals(3, session.query(QueueEntry.class).where("eventId", eventA).whereGreaterThanOrEqual("position", 2L).count());
+        assertEquals(2, session.query(QueueEntry.class).where("eventId", eventA).whereLessThan("position", 2L).count());
+        assertEquals(3, session.query(QueueEntry.class).where("eventId", eventA).whereLessThanOrEqual("position", 2L).count());
+
+        // All predicates must hold
+        assertEquals(List.of(2L, 3L), getPositions(session.query(QueueEntry.class)
+                .where("eventId", eventA)
+                .whereNull("admitTime")
+                .whereGreaterThan("position", 0L)
+                .whereLessThan("position", 4L)
+                .whereNot("position", 1L)
+                .orderBy("position")
+                .getResults()));
+    }
+
+    @Test
+    public void testOrdering () {
+        assertEquals(List.of(4L, 3L, 2L, 1L, 0L), getPositions(session.query(QueueEntry.class)
+                .where("eventId", eventA)
+                .orderByDescending("position")
+                .getResults()));
+
+        // Later orderings break ties of earlier ones
+        assertEquals(List.of("durian", "banana", "cherry", "apple"), getTerms(session.query(DocumentTerm.class)
+                .orderByDescending("termCount")
+                .orderBy("term")
+                .getResults()));
+        assertEquals(List.of("durian", "cherry", "banana", "apple"), getTerms(session.query(DocumentTerm.class)
+                .orderByDescending("termCount")
+                .orderByDescending("term")
+                .getResults()));
+    }
+
+    @Test
+    public void testPaging () {
+        var query = session.query(QueueEntry.class)
+                .where("eventId", eventA)
+                .orderBy("position");
+        assertEquals(List.of(1L, 2L), getPositions(query.offset(1).limit(2).getResults()));
+        assertEquals(List.of(1L, 2L), getPositions(query.getResultStream().collect(Collectors.toList())));
+
+        // Counting ignores paging
+        assertEquals(5, query.count());
+
+        // Past the end
+        assertEquals(List.of(), session.query(QueueEntry.class).where("eventId", eventA).offset(5).getResults());
+        assertEquals(List.of(), session.query(QueueEntry.class).where("eventId", eventA).limit(0).getResults());
+
+        var first = session.query(QueueEntry.class)
+                .where("eventId", eventA)
+                .orderByDescending("position");
+        assertEquals(4, first.getFirst().orElseThrow().getPosition());
+        // Does not change the limit of the query
+        assertEquals(5, first.getResults().size());
+        assertTrue(session.query(QueueEntry.class).where("eventId", UUID.randomUUID()).getFirst().isEmpty());
+    }
+
+    @Test
+    public void testDelete () {
+        // Ignores ordering and paging
+        assertEquals(2, session.query(QueueEntry.class)
+                .where("eventId", eventA)
+                .whereLessThan("position", 2L)
+                .orderBy("position")
+                .limit(1)
+                .delete());
+        assertEquals(0, session.query(QueueEntry.class).whereIn("position", List.of()).delete());
+        session = TestHelper.commitMakeSession(model, session);
+
+        assertEquals(List.of(2L, 3L, 4L), getPositions(session.query(QueueEntry.class)
+                .where("eventId", eventA)
+                .orderBy("position")
+                .getResults()));
+        assertEquals(3, session.query(QueueEntry.class).where("eventId", eventB).count());
+    }
+
+    @Test
+    public void testIncrement () {
+        assertEquals(2, session.query(DocumentTerm.class)
+                .whereIn("term", List.of("apple", "banana"))
+                .increment("termCount", 5));
+        assertEquals(1, session.query(DocumentTerm.class)
+                .where("term", "durian")
+                .increment("termCount", -3));
+        assertEquals(0, session.query(DocumentTerm.class)
+                .where("term", "elderberry")
+                .increment("termCount", 1));
+        session = TestHelper.commitMakeSession(model, session);
+
+        assertEquals(6, getTermCount("apple"));
+        assertEquals(7, getTermCount("banana"));
+        assertEquals(2, getTermCount("cherry"));
+        assertEquals(0, getTermCount("durian"));
+
+        // Applied in the database, so an increment committed by another session since this one loaded the term is kept
+        assertEquals(2, getTermCount("cherry"));
+        var other = model.makeSession();
+        other.query(DocumentTerm.class).where("term", "cherry").increment("termCount", 1);
+        other.commit();
+        other.close();
+        session.query(DocumentTerm.class).where("term", "cherry").increment("termCount", 1);
+        session = TestHelper.commitMakeSession(model, session);
+        assertEquals(4, getTermCount("cherry"));
+    }
+
+    @Test
+    public void testReadOnly () {
+        session.rollback();
+        session.close();
+
+        session = model.makeReadOnlySession();
+        assertEquals(5, session.query(QueueEntry.class).where("eventId", eventA).count());
+        assertEquals(0, session.query(QueueEntry.class).where("eventId", eventA).delete());
+        assertEquals(0, session.query(DocumentTerm.class).increment("termCount", 1));
+        session = TestHelper.commitMakeSession(model, session);
+
+        assertEquals(5, session.query(QueueEntry.class).where("eventId", eventA).count());
+        assertEquals(1, getTermCount("apple"));
+    }
+}
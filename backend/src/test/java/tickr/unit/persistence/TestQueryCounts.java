@@ -0,0 +1,219 @@
+package tickr.unit.persistence;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import tickr.CreateEventReqBuilder;
+import tickr.TestHelper;
+import tickr.application.TickrController;
+import tickr.application.apis.ApiLocator;
+import tickr.application.apis.location.ILocationAPI;
+import tickr.application.entities.*;
+import tickr.application.serialised.requests.event.CreateEventRequest;
+import tickr.mock.MockLocationApi;
+import tickr.persistence.DataModel;
+import tickr.persistence.HibernateModel;
+import tickr.persistence.ModelSession;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Checks that the number of statements endpoints make does not grow with the amount of data they return, i.e. that
+ * associations are not lazily loaded once per row
+ */
+public class TestQueryCounts {
+    // Upper bound on the statements any of these endpoints may make, so that added queries are noticed
+    private static final long MAX_STATEMENTS = 12;
+
+    private DataModel model;
+    private TickrController controller;
+    private String hostToken;
+
+    @BeforeEach
+    public void setup () {
+        model = new HibernateModel("hibernate-test.cfg.xml");
+        controller = new TickrController();
+        ApiLocator.addLocator(ILocationAPI.class, () -> new MockLocationApi(model));
+
+        var session = model.makeSession();
+        hostToken = controller.userRegister(session, TestHelper.makeRegisterRequest()).authToken;
+        session.commit();
+        session.close();
+    }
+
+    @AfterEach
+    public void cleanup () {
+        model.cleanup();
+        ApiLocator.clearLocator(ILocationAPI.class);
+    }
+
+    private List<User> makeUsers (ModelSession session, int count) {
+        // Registering commits and clears the session, so users are loaded once all are registered
+        var ids = new ArrayList<UUID>();
+        for (int i = 0; i < count; i++) {
+            var authToken = controller.userRegister(session, TestHelper.makeRegisterRequest()).authToken;
+            ids.add(controller.getTokenUserId(authToken));
+        }
+
+        var users = new ArrayList<User>();
+        for (var i : ids) {
+            users.add(session.getById(User.class, i).orElseThrow());
+        }
+
+        return users;
+    }
+
+    private String makeEvent (ModelSession session, int sections) {
+        var seatingDetails = new ArrayList<CreateEventRequest.SeatingDetails>();
+        for (int i = 0; i < sections; i++) {
+            seatingDetails.add(new CreateEventRequest.SeatingDetails("section" + i, 1000, 10, true));
+        }
+
+        return controller.createEventUnsafe(session, new CreateEventReqBuilder()
+                .withSeatingDetails(seatingDetails)
+                .build(hostToken)).event_id;
+    }
+
+    private List<SeatingPlan> getSections (ModelSession session, String eventId) {
+        var event = session.getById(Event.class, UUID.fromString(eventId)).orElseThrow();
+        return session.getAllWith(SeatingPlan.class, "event", event);
+    }
+
+    /**
+     * Makes an event with a ticket and a reservation for each user, spread over its sections
+     */
+    private String makeBookedEvent (int sections, int users) {
+        var session = model.makeSession();
+        var eventId = makeEvent(session, sections);
+        session = TestHelper.commitMakeSession(model, session);
+
+        var plans = getSections(session, eventId);
+        var holders = makeUsers(session, users);
+        for (int i = 0; i < holders.size(); i++) {
+            var plan = plans.get(i % plans.size());
+            session.save(new Ticket(holders.get(i), plan, 2 * i + 1, "First", "Last", "test@example.com", null, 0));
+            session.save(new TicketReservation(holders.get(i), plan, 2 * i + 2, 10));
+        }
+        session.commit();
+        session.close();
+
+        return eventId;
+    }
+
+    private String makeReviewedEvent (int reviews) {
+        var session = model.makeSession();
+        var eventId = makeEvent(session, 1);
+        session = TestHelper.commitMakeSession(model, session);
+
+        var event = session.getById(Event.class, UUID.fromString(eventId)).orElseThrow();
+        var authors = makeUsers(session, reviews);
+        for (var i : authors) {
+            var review = Comment.makeReview(event, i, "Title", "Text", 4.0f);
+            session.save(review);
+            // Every other author reacts to every review
+            for (var j : authors) {
+                if (j != i) {
+                    review.react(session, j, "heart");
+                }
+            }
+        }
+        session.commit();
+        session.close();
+
+        return eventId;
+    }
+
+    private String makeGroup (int members) {
+        var session = model.makeSession();
+        var eventId = makeEvent(session, 2);
+        session = TestHelper.commitMakeSession(model, session);
+
+        var users = makeUsers(session, members);
+        var plans = getSections(session, eventId);
+        var leader = session.getById(User.class, controller.getTokenUserId(hostToken)).orElseThrow();
+        var reservations = new HashSet<TicketReservation>();
+        for (int i = 0; i < members; i++) {
+            reservations.add(new TicketReservation(leader, plans.get(i % plans.size()), i + 1, 10));
+        }
+        var group = new Group(leader, ZonedDateTime.now(ZoneId.of("UTC")), members, reservations);
+        session.save(group);
+
+        int i = 0;
+        for (var reservation : reservations) {
+            session.save(reservation);
+            if (i % 2 == 0) {
+                // Accepted members
+                reservation.acceptInvitation(users.get(i));
+            } else {
+                // Pending invitations
+                var invitation = new Invitation(group, reservation, users.get(i));
+                session.save(invitation);
+                invitation.handleInvitation(group, reservation, users.get(i));
+            }
+            i++;
+        }
+        session.commit();
+        session.close();
+
+        return group.getId().toString();
+    }
+
+    private long countStatements (Consumer<ModelSession> request) {
+        // Warm up first, so that both runs are counted with the same caches
+        TestHelper.countStatements(model, request);
+        return TestHelper.countStatements(model, request);
+    }
+
+    private void assertConstant (long small, long large) {
+        assertEquals(small, large, "Statements grew with the number of rows!");
+        assertTrue(large <= MAX_STATEMENTS, String.format("Made %d statements, expected at most %d!", large, MAX_STATEMENTS));
+    }
+
+    @Test
+    public void testEventView () {
+        var smallEvent = makeBookedEvent(2, 4);
+        var largeEvent = makeBookedEvent(12, 40);
+
+        // Viewed by the host, as the events are not published
+        assertConstant(countStatements(s -> controller.eventView(s, Map.of("auth_token", hostToken, "event_id", smallEvent))),
+                countStatements(s -> controller.eventView(s, Map.of("auth_token", hostToken, "event_id", largeEvent))));
+    }
+
+    @Test
+    public void testEventAttendees () {
+        var smallEvent = makeBookedEvent(2, 4);
+        var largeEvent = makeBookedEvent(12, 40);
+
+        assertConstant(countStatements(s -> controller.getEventAttendees(s, Map.of("auth_token", hostToken, "event_id", smallEvent))),
+                countStatements(s -> controller.getEventAttendees(s, Map.of("auth_token", hostToken, "event_id", largeEvent))));
+    }
+
+    @Test
+    public void testReviews () {
+        var smallEvent = makeReviewedEvent(2);
+        var largeEvent = makeReviewedEvent(10);
+
+        assertConstant(countStatements(s -> controller.reviewsView(s, Map.of("event_id", smallEvent,
+                        "page_start", "0", "max_results", "20"))),
+                countStatements(s -> controller.reviewsView(s, Map.of("event_id", largeEvent,
+                        "page_start", "0", "max_results", "20"))));
+    }
+
+    @Test
+    public void testGroupDetails () {
+        var smallGroup = makeGroup(2);
+        var largeGroup = makeGroup(20);
+
+        assertConstant(countStatements(s -> controller.groupDetails(s, Map.of("auth_token", hostToken, "group_id", smallGroup))),
+                countStatements(s -> controller.groupDetails(s, Map.of("auth_token", hostToken, "group_id", largeGroup))));
+    }
+}
@@ -0,0 +1,94 @@
+package tickr.unit.persistence;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import tickr.TestHelper;
+import tickr.application.TickrController;
+import tickr.application.entities.User;
+import tickr.application.serialised.requests.user.EditProfileRequest;
+import tickr.application.serialised.requests.user.UserRegisterRequest;
+import tickr.persistence.DataModel;
+import tickr.persistence.HibernateModel;
+import tickr.persistence.ModelSession;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+public class TestReadOnlySession {
+    private DataModel model;
+    private TickrController controller;
+
+    private String authToken;
+
+    @BeforeEach
+    public void setup () {
+        model = new HibernateModel("hibernate-test.cfg.xml");
+        controller = new TickrController();
+
+        var session = model.makeSession();
+        authToken = controller.userRegister(session, new UserRegisterRequest("TestUsername", "Test", "User", "test@example.com",
+                "Password123!", "2010-10-07")).authToken;
+        session.commit();
+        session.close();
+    }
+
+    @AfterEach
+    public void cleanup () {
+        model.cleanup();
+    }
+
+    private ModelSession commitMakeReadOnly (ModelSession session) {
+        session.commit();
+        session.close();
+        return model.makeReadOnlySession();
+    }
+
+    @Test
+    public void testReads () {
+        var session = model.makeSession();
+        assertFalse(session.isReadOnly());
+        session.rollback();
+        session.close();
+
+        session = model.makeReadOnlySession();
+        assertTrue(session.isReadOnly());
+
+        var profile = controller.userGetProfile(session, Map.of("auth_token", authToken));
+        assertEquals("TestUsername", profile.userName);
+        assertEquals(1, session.getAll(User.class).size());
+
+        // Can be used for more than one transaction
+        session = commitMakeReadOnly(session);
+        session.commit();
+        session.newTransaction();
+        assertEquals(1, session.getAll(User.class).size());
+        session.commit();
+        session.close();
+    }
+
+    @Test
+    public void testChangesDiscarded () {
+        var session = model.makeReadOnlySession();
+        var user = controller.authenticateToken(session, authToken);
+        user.editProfile("NewUsername", null, null, null, null, null);
+        session.save(new User("test2@example.com", "Password123!", "Test2", "Test", "User", LocalDate.of(2010, 10, 7)));
+        session.remove(user);
+        session.commit();
+        session.close();
+
+        session = model.makeSession();
+        assertEquals(1, session.getAll(User.class).size());
+        assertEquals("TestUsername", controller.userGetProfile(session, Map.of("auth_token", authToken)).userName);
+
+        // Connection is usable for writes again after being returned
+        controller.userEditProfile(session, new EditProfileRequest(authToken,
+                "NewUsername", null, null, null, null, null));
+        session = TestHelper.commitMakeSession(model, session);
+        assertEquals("NewUsername", controller.userGetProfile(session, Map.of("auth_token", authToken)).userName);
+        session.rollback();
+        session.close();
+    }
+}
@@ -0,0 +1,125 @@
+package tickr.unit.persistence;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import tickr.TestHelper;
+import tickr.application.TickrController;
+import tickr.application.entities.AuthToken;
+import tickr.application.entities.User;
+import tickr.application.serialised.combined.user.NotificationManagement;
+import tickr.application.serialised.requests.user.UserRegisterRequest;
+import tickr.persistence.DataModel;
+import tickr.persistence.HibernateModel;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Replicas are separate in-memory databases which are never replicated to, so reads which go to a replica do not see
+ * any writes
+ */
+public class TestReadReplicas {
+    private DataModel model;
+
+    @AfterEach
+    public void cleanup () {
+        model.cleanup();
+    }
+
+    private UUID register (TickrController controller, String email) {
+        var session = model.makeSession();
+        var authToken = controller.userRegister(session, new UserRegisterRequest("TestUsername", "Test", "User", email,
+                "Password123!", "2010-10-07")).authToken;
+        session.commit();
+        session.close();
+
+        return controller.getTokenUserId(authToken);
+    }
+
+    private int countUsers (UUID readerId) {
+        var session = model.makeReadOnlySession(readerId);
+        try {
+            return session.getAll(User.class).size();
+        } finally {
+            session.rollback();
+            session.close();
+        }
+    }
+
+    @Test
+    public void testNoReplicas () {
+        model = new HibernateModel("hibernate-test.cfg.xml", List.of(), Duration.ofMinutes(1));
+        var controller = new TickrController();
+        register(controller, "test@example.com");
+
+        assertEquals(1, countUsers(null));
+        assertEquals(1, countUsers(UUID.randomUUID()));
+    }
+
+    @Test
+    public void testReadsGoToReplicas () {
+        model = new HibernateModel("hibernate-test.cfg.xml", List.of("jdbc:h2:mem:replica1", "jdbc:h2:mem:replica2"),
+                Duration.ofMinutes(1));
+        var controller = new TickrController();
+        register(controller, "test@example.com");
+
+        // Anonymous reads only go to replicas
+        for (int i = 0; i < 4; i++) {
+            assertEquals(0, countUsers(null));
+        }
+
+        // Writes always go to the primary
+        var session = model.makeSession();
+        assertEquals(1, session.getAll(User.class).size());
+        session.rollback();
+        session.close();
+    }
+
+    @Test
+    public void testReadYourWrites () {
+        model = new HibernateModel("hibernate-test.cfg.xml", List.of("jdbc:h2:mem:replica1"), Duration.ofMinutes(1));
+        var controller = new TickrController();
+        var userId = register(controller, "test@example.com");
+
+        // Writer sees its own writes, others may not
+        assertEquals(1, countUsers(userId));
+        assertEquals(0, countUsers(UUID.randomUUID()));
+        assertEquals(0, countUsers(null));
+
+        // Read only sessions do not count as writes
+        var session = model.makeReadOnlySession();
+        session.onUserWrite(UUID.randomUUID());
+        session.commit();
+        session.close();
+    }
+
+    @Test
+    public void testStalenessExpires () {
+        model = new HibernateModel("hibernate-test.cfg.xml", List.of("jdbc:h2:mem:replica1"), Duration.ofMillis(100));
+        var controller = new TickrController();
+        var userId = register(controller, "test@example.com");
+        assertEquals(1, countUsers(userId));
+
+        TestHelper.sleep(200);
+        assertEquals(0, countUsers(userId));
+
+        // Authenticating alone does not mark the user, even in a session which may write
+        var session = model.makeSession();
+        var authToken = session.getAll(AuthToken.class).get(0).makeJWT();
+        controller.authenticateToken(session, authToken);
+        session.commit();
+        session.close();
+        assertEquals(0, countUsers(userId));
+
+        // Authenticated writes mark the user again
+        session = model.makeSession();
+        controller.userUpdateSettings(session, new NotificationManagement.UpdateRequest(authToken,
+                new NotificationManagement.Settings(false)));
+        session.commit();
+        session.close();
+        assertEquals(1, countUsers(userId));
+    }
+}
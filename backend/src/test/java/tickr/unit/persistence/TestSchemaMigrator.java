@@ -0,0 +1,164 @@
+package tickr.unit.persistence;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import tickr.persistence.HibernateModel;
+import tickr.persistence.SchemaMigrator;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class TestSchemaMigrator {
+    // MySQL mode so that the same migrations run as in production
+    private static final String URL = "jdbc:h2:mem:migration-test;MODE=MySQL;DATABASE_TO_LOWER=TRUE";
+
+    private Connection connection;
+
+    @BeforeEach
+    public void setup () throws SQLException {
+        connection = DriverManager.getConnection(URL, "sa", "");
+    }
+
+    @AfterEach
+    public void cleanup () throws SQLException {
+        connection.close();
+    }
+
+    private void execute (String sql) throws SQLException {
+        try (var statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private Set<String> getIndexes (String table) throws SQLException {
+        var indexes = new HashSet<String>();
+        try (var results = connection.getMetaData().getIndexInfo(connection.getCatalog(), null, table, false, false)) {
+            while (results.next()) {
+                if (results.getString("INDEX_NAME") != null) {
+                    indexes.add(results.getString("INDEX_NAME").toLowerCase());
+                }
+            }
+        }
+
+        return indexes;
+    }
+
+    private SchemaMigrator makeMigrator (String... names) {
+        return new SchemaMigrator(List.of(names).stream()
+                .map(SchemaMigrator.Migration::load)
+                .toList());
+    }
+
+    @Test
+    public void testMigrateEmpty () throws SQLException {
+        var migrator = new SchemaMigrator();
+        assertEquals(SchemaMigrator.MIGRATIONS.size(), migrator.migrate(connection));
+        assertEquals(SchemaMigrator.MIGRATIONS.size(), migrator.getVersion(connection));
+
+        assertTrue(getIndexes("event_comments").contains("idx_event_comments_event_parent_time"));
+        assertTrue(getIndexes("event_comments").contains("idx_event_comments_parent_time"));
+        assertTrue(getIndexes("events").containsAll(List.of("idx_events_host_start", "idx_events_published_start",
+                "idx_events_published_end")));
+        assertTrue(getIndexes("categories").contains("idx_categories_category_event"));
+        assertTrue(getIndexes("purchase_item").contains("idx_purchase_item_purchase"));
+        assertTrue(getIndexes("ticket_reservation").containsAll(List.of("uq_ticket_reservation_seat",
+                "idx_ticket_reservation_expiry")));
+
+        // Already up to date
+        assertEquals(0, new SchemaMigrator().migrate(connection));
+    }
+
+    @Test
+    public void testMigrateIncremental () throws SQLException {
+        assertEquals(1, makeMigrator("V1__baseline.sql").migrate(connection));
+        assertFalse(getIndexes("events").contains("idx_events_host_start"));
+
+        assertEquals(SchemaMigrator.MIGRATIONS.size() - 1, new SchemaMigrator().migrate(connection));
+        assertTrue(getIndexes("events").contains("idx_events_host_start"));
+    }
+
+    @Test
+    public void testBaseline () throws SQLException {
+        // Database made from the schema before migrations
+        makeMigrator("V1__baseline.sql").migrate(connection);
+        execute("drop table schema_history");
+
+        var migrator = new SchemaMigrator();
+        assertEquals(SchemaMigrator.MIGRATIONS.size() - 1, migrator.migrate(connection));
+        assertEquals(SchemaMigrator.MIGRATIONS.size(), migrator.getVersion(connection));
+    }
+
+    @Test
+    public void testMatchesEntities () throws SQLException {
+        new SchemaMigrator().migrate(connection);
+
+        // Fails to start if the migrated schema is missing any table or column the entities map
+        var model = new HibernateModel("hibernate-test.cfg.xml", Map.of(
+                "hibernate.connection.url", URL,
+                "hibernate.connection.username", "sa",
+                "hibernate.hikari.poolName", "tickr-migration-test",
+                "hibernate.dialect", "org.hibernate.dialect.MySQLDialect",
+                "hibernate.hbm2ddl.auto", "validate"));
+        model.cleanup();
+    }
+
+    @Test
+    public void testTextIds () throws SQLException {
+        execute("create table users (id varchar(36) not null, primary key (id))");
+        assertThrows(IllegalStateException.class, () -> new SchemaMigrator().migrate(connection));
+    }
+
+    @Test
+    public void testChangedMigration () throws SQLException {
+        makeMigrator("V1__baseline.sql").migrate(connection);
+
+        var changed = new SchemaMigrator(List.of(new SchemaMigrator.Migration("V1__baseline.sql",
+                "create table test (id int);")));
+        assertThrows(IllegalStateException.class, () -> changed.migrate(connection));
+    }
+
+    @Test
+    public void testUnknownVersion () throws SQLException {
+        new SchemaMigrator().migrate(connection);
+        assertThrows(IllegalStateException.class, () -> makeMigrator("V1__baseline.sql").migrate(connection));
+    }
+
+    @Test
+    public void testFailedMigration () throws SQLException {
+        var migrator = new SchemaMigrator(List.of(
+                new SchemaMigrator.Migration("V1__first.sql", "create table t1 (id int);"),
+                new SchemaMigrator.Migration("V2__broken.sql", "create table t2 (id int); not sql;")));
+        assertThrows(SQLException.class, () -> migrator.migrate(connection));
+
+        // Left at the last migration which succeeded
+        assertEquals(1, migrator.getVersion(connection));
+    }
+
+    @Test
+    public void testStatements () {
+        var migration = new SchemaMigrator.Migration("V1__test.sql", """
+                -- Comment
+                create table a (
+                    id int,
+                    /* Block
+                       comment */
+                    name varchar(255)
+                );
+                # Comment
+                create index idx_a on a (name);
+                """);
+        var statements = migration.getStatements();
+        assertEquals(2, statements.size());
+        assertTrue(statements.get(0).startsWith("create table a"));
+        assertEquals("create index idx_a on a (name)", statements.get(1));
+        assertEquals("test", migration.getDescription());
+    }
+}
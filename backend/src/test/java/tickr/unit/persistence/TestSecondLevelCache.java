@@ -0,0 +1,152 @@
+package tickr.unit.persistence;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import tickr.CreateEventReqBuilder;
+import tickr.TestHelper;
+import tickr.application.TickrController;
+import tickr.application.apis.ApiLocator;
+import tickr.application.apis.location.ILocationAPI;
+import tickr.application.entities.Event;
+import tickr.application.serialised.requests.event.EditEventRequest;
+import tickr.application.serialised.requests.user.EditProfileRequest;
+import tickr.application.serialised.requests.user.UserRegisterRequest;
+import tickr.mock.MockLocationApi;
+import tickr.persistence.CacheRegionStats;
+import tickr.persistence.DataModel;
+import tickr.persistence.HibernateModel;
+import tickr.server.exceptions.ForbiddenException;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+
+public class TestSecondLevelCache {
+    private DataModel model;
+    private TickrController controller;
+    private String authToken;
+    private String eventId;
+
+    @BeforeEach
+    public void setup () {
+        model = new HibernateModel("hibernate-test.cfg.xml");
+        controller = new TickrController();
+        ApiLocator.addLocator(ILocationAPI.class, () -> new MockLocationApi(model));
+
+        var session = model.makeSession();
+        authToken = controller.userRegister(session, new UserRegisterRequest("TestUsername", "Test", "User",
+                "test@example.com", "Password123!", "2010-10-07")).authToken;
+        session = TestHelper.commitMakeSession(model, session);
+        eventId = controller.createEventUnsafe(session, new CreateEventReqBuilder()
+                .withEventName("Test Event")
+                .build(authToken)).event_id;
+        session = TestHelper.commitMakeSession(model, session);
+
+        // Published so that it can be viewed without the host's token
+        controller.editEvent(session, new EditEventRequest(eventId, authToken, null, null, null, null,
+                null, null, null, null, null, null, true, null));
+        session.commit();
+        session.close();
+    }
+
+    @AfterEach
+    public void cleanup () {
+        model.cleanup();
+        ApiLocator.clearLocator(ILocationAPI.class);
+    }
+
+    private CacheRegionStats getRegionStats (String region) {
+        return model.getCacheStats().stream()
+                .filter(s -> s.getRegionName().equals(region))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private String viewEventName () {
+        var session = model.makeReadOnlySession();
+        try {
+            return controller.eventView(session, Map.of("event_id", eventId)).eventName;
+        } finally {
+            session.commit();
+            session.close();
+        }
+    }
+
+    @Test
+    public void testEventViewCached () {
+        assertEquals("Test Event", viewEventName());
+        var before = getRegionStats("tickr.event");
+
+        // Later views are served from the cache
+        for (int i = 0; i < 3; i++) {
+            assertEquals("Test Event", viewEventName());
+        }
+        var after = getRegionStats("tickr.event");
+        assertEquals(before.getHitCount() + 3, after.getHitCount());
+        assertEquals(before.getMissCount(), after.getMissCount());
+        assertTrue(after.getHitRatio() > 0);
+    }
+
+    @Test
+    public void testEditVisible () {
+        assertEquals("Test Event", viewEventName());
+
+        var session = model.makeSession();
+        controller.editEvent(session, new EditEventRequest(eventId, authToken, "New Name", null, null,
+                null, null, null, null, null, null, null, true, null));
+        session.commit();
+        session.close();
+
+        assertEquals("New Name", viewEventName());
+    }
+
+    @Test
+    public void testEviction () {
+        assertEquals("Test Event", viewEventName());
+        var before = getRegionStats("tickr.event");
+
+        model.evictCached(Event.class, UUID.fromString(eventId));
+        assertEquals("Test Event", viewEventName());
+        assertEquals(before.getMissCount() + 1, getRegionStats("tickr.event").getMissCount());
+    }
+
+    @Test
+    public void testStatsPublished () throws JMException {
+        assertEquals("Test Event", viewEventName());
+        assertEquals("Test Event", viewEventName());
+
+        var server = ManagementFactory.getPlatformMBeanServer();
+        var cacheStats = (CompositeData[]) server.getAttribute(new ObjectName("tickr:type=DataModel"), "CacheStats");
+        var eventStats = Arrays.stream(cacheStats)
+                .filter(s -> s.get("regionName").equals("tickr.event"))
+                .findFirst()
+                .orElseThrow();
+        assertEquals(getRegionStats("tickr.event").getHitCount(), eventStats.get("hitCount"));
+        assertTrue((long) eventStats.get("hitCount") > 0);
+    }
+
+    @Test
+    public void testProfileEditVisible () {
+        var session = model.makeSession();
+        var userId = controller.userSearch(session, Map.of("email", "test@example.com")).userId;
+        session = TestHelper.commitMakeSession(model, session);
+
+        // Cached search results must not be reused once the user has changed
+        controller.userEditProfile(session, new EditProfileRequest(authToken, null, null, null, null,
+                "new@example.com", null));
+        session = TestHelper.commitMakeSession(model, session);
+
+        assertEquals(userId, controller.userSearch(session, Map.of("email", "new@example.com")).userId);
+        var finalSession = session;
+        assertThrows(ForbiddenException.class, () -> controller.userSearch(finalSession, Map.of("email", "test@example.com")));
+        session.rollback();
+        session.close();
+    }
+}
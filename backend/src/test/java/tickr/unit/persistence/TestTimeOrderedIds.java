@@ -0,0 +1,77 @@
+package tickr.unit.persistence;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import tickr.TestHelper;
+import tickr.application.TickrController;
+import tickr.application.entities.ResetToken;
+import tickr.application.entities.User;
+import tickr.persistence.DataModel;
+import tickr.persistence.HibernateModel;
+import tickr.persistence.TimeOrderedIdGenerator;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.UUID;
+
+public class TestTimeOrderedIds {
+    private DataModel model;
+    private TickrController controller;
+
+    @BeforeEach
+    public void setup () {
+        model = new HibernateModel("hibernate-test.cfg.xml");
+        controller = new TickrController();
+    }
+
+    @AfterEach
+    public void cleanup () {
+        model.cleanup();
+    }
+
+    @Test
+    public void testOrdered () {
+        var start = System.currentTimeMillis();
+        var ids = new ArrayList<UUID>();
+        for (int i = 0; i < 10000; i++) {
+            ids.add(TimeOrderedIdGenerator.next());
+        }
+
+        for (var i : ids) {
+            assertEquals(7, i.version());
+            assertEquals(2, i.variant());
+            // Ids start with their creation time, allowing for ids pushed ahead by the counter
+            assertTrue((i.getMostSignificantBits() >>> 16) >= start);
+        }
+        for (int i = 1; i < ids.size(); i++) {
+            // Compare as unsigned bytes, as the database does
+            var prev = ids.get(i - 1);
+            var curr = ids.get(i);
+            assertTrue(Long.compareUnsigned(prev.getMostSignificantBits(), curr.getMostSignificantBits()) < 0,
+                    String.format("%s is not before %s!", prev, curr));
+        }
+    }
+
+    @Test
+    public void testEntityIds () {
+        var session = model.makeSession();
+        var authToken = controller.userRegister(session, TestHelper.makeRegisterRequest()).authToken;
+        session = TestHelper.commitMakeSession(model, session);
+
+        var userId = controller.getTokenUserId(authToken);
+        assertEquals(7, userId.version());
+        var user = session.getById(User.class, userId).orElseThrow();
+        assertEquals(userId, user.getId());
+
+        // Tokens are secrets, so keep random ids
+        var resetToken = new ResetToken(user, Duration.ofHours(1));
+        session.save(resetToken);
+        session = TestHelper.commitMakeSession(model, session);
+        assertEquals(4, resetToken.getId().version());
+        session.rollback();
+        session.close();
+    }
+}
@@ -0,0 +1,94 @@
+package tickr.unit.recommendations;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import tickr.application.apis.location.LocationPoint;
+import tickr.application.recommendations.CandidateScorer;
+import tickr.application.recommendations.CompactVector;
+import tickr.application.recommendations.EventVector;
+import tickr.application.recommendations.RecommendCandidate;
+import tickr.application.recommendations.RecommenderEngine;
+import tickr.util.Pair;
+import tickr.util.TopKSelector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class TestCandidateScorer {
+    @BeforeAll
+    public static void setup () {
+        CandidateScorer.configure(4);
+    }
+
+    @AfterAll
+    public static void cleanup () {
+        CandidateScorer.configure(Runtime.getRuntime().availableProcessors());
+    }
+
+    private static List<RecommendCandidate> makeCandidates (int count, long seed) {
+        var random = new Random(seed);
+        var candidates = new ArrayList<RecommendCandidate>();
+        for (int i = 0; i < count; i++) {
+            var terms = new CompactVector.Builder();
+            for (int j = 0; j < 10; j++) {
+                terms.add("term" + random.nextInt(200), random.nextDouble());
+            }
+            var vector = new EventVector(terms.build().normalised(), CompactVector.of("tag" + random.nextInt(20), 1),
+                    CompactVector.of("category" + random.nextInt(10), 1), CompactVector.of("host" + random.nextInt(50), 1));
+            var point = random.nextBoolean() ? new LocationPoint(random.nextDouble(), random.nextDouble()) : null;
+            candidates.add(new RecommendCandidate(Integer.toString(i), vector, point));
+        }
+
+        return candidates;
+    }
+
+    @Test
+    public void testMatchesSequential () {
+        var candidates = makeCandidates(10000, 1);
+        var target = candidates.get(0);
+
+        var expected = TopKSelector.<String>forPage(20, 50);
+        for (var i : candidates) {
+            expected.offer(i.getId(), RecommenderEngine.calculateSimilarity(target, i));
+        }
+
+        var selector = CandidateScorer.select(candidates, c -> RecommenderEngine.calculateSimilarity(target, c), 20, 50);
+        assertEquals(expected.getTotal(), selector.getTotal());
+        var expectedResults = expected.getResults(20);
+        var results = selector.getResults(20);
+        assertEquals(expectedResults.size(), results.size());
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(expectedResults.get(i).getFirst(), results.get(i).getFirst());
+            assertEquals(expectedResults.get(i).getSecond(), results.get(i).getSecond());
+        }
+    }
+
+    @Test
+    public void testScoreOrder () {
+        var candidates = makeCandidates(5000, 2);
+        var scores = CandidateScorer.score(candidates, c -> Double.parseDouble(c.getId()));
+
+        assertEquals(candidates.size(), scores.length);
+        for (int i = 0; i < scores.length; i++) {
+            assertEquals(i, scores[i]);
+        }
+    }
+
+    @Test
+    public void testTiesDeterministic () {
+        var candidates = makeCandidates(5000, 3);
+
+        // Equal scores are ranked in candidate order regardless of how scoring was split
+        for (int i = 0; i < 5; i++) {
+            var results = CandidateScorer.select(candidates, c -> 0.5, 100, 10).getResults(100);
+            assertEquals(IntStream.range(100, 110).mapToObj(Integer::toString).collect(Collectors.toList()),
+                    results.stream().map(Pair::getFirst).collect(Collectors.toList()));
+        }
+    }
+}
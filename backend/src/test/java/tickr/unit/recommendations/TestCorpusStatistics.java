@@ -0,0 +1,168 @@
+package tickr.unit.recommendations;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import tickr.CreateEventReqBuilder;
+import tickr.TestHelper;
+import tickr.application.TickrController;
+import tickr.application.apis.ApiLocator;
+import tickr.application.apis.location.ILocationAPI;
+import tickr.application.entities.Event;
+import tickr.application.recommendations.CompactVector;
+import tickr.application.recommendations.CorpusStatistics;
+import tickr.application.recommendations.EventVectorCache;
+import tickr.application.serialised.requests.event.EditEventRequest;
+import tickr.application.serialised.requests.event.EventDeleteRequest;
+import tickr.mock.MockLocationApi;
+import tickr.persistence.DataModel;
+import tickr.persistence.HibernateModel;
+import tickr.persistence.ModelSession;
+
+import java.util.Set;
+import java.util.UUID;
+
+public class TestCorpusStatistics {
+    private DataModel model;
+    private TickrController controller;
+    private ModelSession session;
+
+    private String authToken;
+
+    @BeforeEach
+    public void setup () {
+        model = new HibernateModel("hibernate-test.cfg.xml");
+        controller = new TickrController();
+        ApiLocator.addLocator(ILocationAPI.class, () -> new MockLocationApi(model));
+
+        session = model.makeSession();
+        authToken = controller.userRegister(session, TestHelper.makeRegisterRequest()).authToken;
+        session = TestHelper.commitMakeSession(model, session);
+    }
+
+    @AfterEach
+    public void cleanup () {
+        model.cleanup();
+        ApiLocator.clearLocator(ILocationAPI.class);
+    }
+
+    @Test
+    public void testNoEvents () {
+        var stats = CorpusStatistics.get(session);
+        assertEquals(0, stats.getNumEvents());
+        assertEquals(0, stats.getTagIdf().length());
+        assertEquals(0, stats.getCategoryIdf().length());
+
+        // Snapshot is reused until something changes
+        assertSame(stats, CorpusStatistics.get(session));
+    }
+
+    @Test
+    public void testInvalidation () {
+        var eventId1 = controller.createEvent(session, new CreateEventReqBuilder()
+                .withTags(Set.of("cookie"))
+                .withCategories(Set.of("Food"))
+                .build(authToken)).event_id;
+        session = TestHelper.commitMakeSession(model, session);
+
+        var stats = CorpusStatistics.get(session);
+        assertEquals(1, stats.getNumEvents());
+
+        // Uncommitted changes are not included
+        controller.createEvent(session, new CreateEventReqBuilder().build(authToken));
+        assertSame(stats, CorpusStatistics.get(session));
+        session = TestHelper.rollbackMakeSession(model, session);
+        assertSame(stats, CorpusStatistics.get(session));
+
+        controller.createEvent(session, new CreateEventReqBuilder()
+                .withTags(Set.of("apple"))
+                .build(authToken));
+        session = TestHelper.commitMakeSession(model, session);
+
+        var stats2 = CorpusStatistics.get(session);
+        assertNotSame(stats, stats2);
+        assertEquals(2, stats2.getNumEvents());
+        assertTrue(hasKey(stats2.getTagIdf(), "cookie"));
+        assertTrue(hasKey(stats2.getTagIdf(), "apple"));
+        assertFalse(hasKey(stats2.getTagIdf(), "bread"));
+
+        // Editing without changing words, tags or categories keeps the snapshot
+        controller.editEvent(session, new EditEventRequest(eventId1, authToken, "Testing", null, null, null,
+                null, null, null, null, null, null, false, null));
+        session = TestHelper.commitMakeSession(model, session);
+        assertSame(stats2, CorpusStatistics.get(session));
+
+        controller.editEvent(session, new EditEventRequest(eventId1, authToken, null, null, null, null,
+                null, null, null, null, null, Set.of("bread"), false, null));
+        session = TestHelper.commitMakeSession(model, session);
+
+        var stats3 = CorpusStatistics.get(session);
+        assertNotSame(stats2, stats3);
+        assertFalse(hasKey(stats3.getTagIdf(), "cookie"));
+        assertTrue(hasKey(stats3.getTagIdf(), "bread"));
+
+        controller.eventDelete(session, new EventDeleteRequest(authToken, eventId1));
+        session = TestHelper.commitMakeSession(model, session);
+
+        var stats4 = CorpusStatistics.get(session);
+        assertEquals(1, stats4.getNumEvents());
+        assertFalse(hasKey(stats4.getTagIdf(), "bread"));
+        assertFalse(hasKey(stats4.getCategoryIdf(), "food"));
+    }
+
+    @Test
+    public void testComputedInRolledBackSession () {
+        controller.createEvent(session, new CreateEventReqBuilder().build(authToken));
+        session = TestHelper.commitMakeSession(model, session);
+        assertEquals(1, CorpusStatistics.get(session).getNumEvents());
+
+        // Out of date, then recomputed in a session with a change of its own
+        var other = model.makeSession();
+        controller.createEvent(other, new CreateEventReqBuilder().build(authToken));
+        other.commit();
+        other.close();
+        controller.createEvent(session, new CreateEventReqBuilder().build(authToken));
+        assertEquals(3, CorpusStatistics.get(session).getNumEvents());
+
+        session = TestHelper.rollbackMakeSession(model, session);
+        assertEquals(2, CorpusStatistics.get(session).getNumEvents());
+    }
+
+    @Test
+    public void testEventVectorCache () {
+        var eventId = controller.createEvent(session, new CreateEventReqBuilder()
+                .withTags(Set.of("cookie"))
+                .build(authToken)).event_id;
+        session = TestHelper.commitMakeSession(model, session);
+
+        var cache = EventVectorCache.get(session);
+        var event = session.getById(Event.class, UUID.fromString(eventId)).orElseThrow();
+        var stats = CorpusStatistics.get(session);
+        var entry = cache.getVectors(stats, event);
+        assertEquals(stats.getVersion(), entry.getVersion());
+        assertSame(entry, cache.getVectors(stats, event));
+
+        controller.editEvent(session, new EditEventRequest(eventId, authToken, null, null, null, null,
+                null, null, null, null, null, Set.of("bread"), false, null));
+        session = TestHelper.commitMakeSession(model, session);
+
+        // Vectors of the newer version are computed from it, and those of the older version are no longer kept
+        event = session.getById(Event.class, UUID.fromString(eventId)).orElseThrow();
+        var stats2 = CorpusStatistics.get(session);
+        var entry2 = cache.getVectors(stats2, event);
+        assertEquals(stats2.getVersion(), entry2.getVersion());
+        assertSame(entry2, cache.getVectors(stats2, event));
+        assertTrue(hasKey(entry2.getRaw().getTagVector(), "bread"));
+
+        var stale = cache.getVectors(stats, event);
+        assertEquals(stats.getVersion(), stale.getVersion());
+        assertNotSame(entry, stale);
+        assertNotSame(stale, cache.getVectors(stats, event));
+    }
+
+    private boolean hasKey (CompactVector vector, String key) {
+        return vector.dot(CompactVector.of(key, 1.0)) != 0;
+    }
+}
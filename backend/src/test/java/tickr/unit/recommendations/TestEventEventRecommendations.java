@@ -10,6 +10,8 @@ import tickr.TestHelper;
 import tickr.application.TickrController;
 import tickr.application.apis.ApiLocator;
 import tickr.application.apis.location.ILocationAPI;
+import tickr.application.entities.Event;
+import tickr.application.recommendations.SimilarityNeighbours;
 import tickr.application.serialised.SerializedLocation;
 import tickr.application.serialised.requests.event.EditEventRequest;
 import tickr.mock.MockLocationApi;
@@ -187,6 +189,72 @@ public class TestEventEventRecommendations {
     }
 
 
+    @Test
+    public void testPrecomputed () throws InterruptedException {
+        var eventIds = addTestEvents();
+        var params = Map.of("event_id", eventIds.get(0), "page_start", "0", "max_results", "10");
+        var expected = controller.recommendEventEvent(session, params);
+
+        // Rebuilt so that none of the similarities have drifted as the events were added
+        SimilarityNeighbours.onClear(session);
+        session = TestHelper.commitMakeSession(model, session);
+        var event = session.getById(Event.class, UUID.fromString(eventIds.get(0))).orElseThrow();
+        var neighbours = SimilarityNeighbours.get(session);
+        awaitNeighbours(neighbours, event);
+
+        var result = controller.recommendEventEvent(session, params);
+        assertEquals(expected.numResults, result.numResults);
+        assertEquals(expected.events.size(), result.events.size());
+        for (int i = 0; i < expected.events.size(); i++) {
+            assertEquals(expected.events.get(i).id, result.events.get(i).id);
+            assertEquals(expected.events.get(i).recommendValue, result.events.get(i).recommendValue, 1e-9);
+        }
+
+        // Changes are not served until they have been applied
+        controller.editEvent(session, new EditEventRequest(eventIds.get(1), authToken, null, null, null, null,
+                null, null, null, null, null, null, false, null));
+        session = TestHelper.commitMakeSession(model, session);
+        assertTrue(neighbours.find(session, event, 0, 10).isEmpty());
+        assertEquals(expected.numResults - 1, controller.recommendEventEvent(session, params).numResults);
+    }
+
+    @Test
+    public void testDrift () throws InterruptedException {
+        var eventIds = addTestEvents();
+        var event = session.getById(Event.class, UUID.fromString(eventIds.get(0))).orElseThrow();
+        var neighbours = SimilarityNeighbours.get(session);
+        awaitNeighbours(neighbours, event);
+        var numRebuilds = neighbours.getNumRebuilds();
+
+        var newId = controller.createEvent(session, new CreateEventReqBuilder()
+                .withEventName("Banana testing")
+                .withDescription("apple banana cookie testing")
+                .withCategories(Set.of("food"))
+                .withTags(Set.of("yummy", "test"))
+                .build(authToken)).event_id;
+        session = TestHelper.commitMakeSession(model, session);
+        controller.editEvent(session, new EditEventRequest(newId, authToken, null, null, null, null,
+                null, null, null, null, null, null, true, null));
+        session = TestHelper.commitMakeSession(model, session);
+        locationApi.awaitLocations();
+
+        // The new event is scored against the others without rebuilding the table
+        event = session.getById(Event.class, UUID.fromString(eventIds.get(0))).orElseThrow();
+        awaitNeighbours(neighbours, event);
+        assertEquals(numRebuilds, neighbours.getNumRebuilds());
+        var page = neighbours.find(session, event, 0, 10).orElseThrow();
+        assertEquals(eventIds.size(), page.getTotal());
+        assertTrue(page.getEvents().stream().anyMatch(p -> p.getFirst().equals(newId)));
+    }
+
+    private void awaitNeighbours (SimilarityNeighbours neighbours, Event event) throws InterruptedException {
+        // Wait for the background job to catch up
+        for (int i = 0; i < 100 && neighbours.find(session, event, 0, 10).isEmpty(); i++) {
+            Thread.sleep(100);
+        }
+        assertTrue(neighbours.find(session, event, 0, 10).isPresent());
+    }
+
     private List<String> addTestEvents () {
         var eventIds = new ArrayList<String>();
 
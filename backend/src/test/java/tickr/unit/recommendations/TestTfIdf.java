@@ -15,15 +15,24 @@ import tickr.application.apis.location.ILocationAPI;
 import tickr.application.entities.DocumentTerm;
 import tickr.application.entities.TfIdf;
 import tickr.application.recommendations.RecommenderEngine;
+import tickr.application.serialised.requests.event.EditEventRequest;
+import tickr.application.serialised.requests.event.EventDeleteRequest;
 import tickr.mock.MockLocationApi;
 import tickr.persistence.DataModel;
 import tickr.persistence.HibernateModel;
 import tickr.persistence.ModelSession;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 public class TestTfIdf {
     static Logger logger = LogManager.getLogger();
@@ -175,6 +184,104 @@ public class TestTfIdf {
         logger.info("After tfidf2!");
     }
 
+    @Test
+    public void testEditDelete () {
+        var eventId1 = controller.createEvent(session, new CreateEventReqBuilder()
+                .withEventName("Test event")
+                .withDescription("apple apple cookie cookie bear")
+                .build(authToken)).event_id;
+        session = TestHelper.commitMakeSession(model, session);
+
+        var eventId2 = controller.createEvent(session, new CreateEventReqBuilder()
+                .withEventName("Test two")
+                .withDescription("apple bread")
+                .build(authToken)).event_id;
+        session = TestHelper.commitMakeSession(model, session);
+
+        controller.editEvent(session, new EditEventRequest(eventId1, authToken, null, null, null, null,
+                null, "bread bread pear", null, null, null, null, false, null));
+        session = TestHelper.commitMakeSession(model, session);
+
+        assertEquals(Map.of("test", 2, "event", 1, "apple", 1, "cookie", 0, "bear", 0, "two", 1, "bread", 2, "pear", 1),
+                getDocumentCounts());
+
+        var tfIdfs1 = session.getAllWith(TfIdf.class, "termId.event.id", UUID.fromString(eventId1));
+        assertEquals(4, tfIdfs1.size());
+        for (var i : tfIdfs1) {
+            if (i.getTermString().equals("bread")) {
+                assertEquals(calculateTfIdf(2, 2, 2), i.getTfIdf(2));
+            }
+        }
+
+        controller.eventDelete(session, new EventDeleteRequest(authToken, eventId2));
+        session = TestHelper.commitMakeSession(model, session);
+
+        assertEquals(Map.of("test", 1, "event", 1, "apple", 0, "cookie", 0, "bear", 0, "two", 0, "bread", 1, "pear", 1),
+                getDocumentCounts());
+        assertEquals(4, session.getAll(TfIdf.class).size());
+
+        // Full rebuild drops unused terms. Run in a fresh session, as the terms counted above are still loaded in this one
+        session = TestHelper.commitMakeSession(model, session);
+        RecommenderEngine.forceRecalculate(session);
+        session = TestHelper.commitMakeSession(model, session);
+
+        assertEquals(Map.of("test", 1, "event", 1, "bread", 1, "pear", 1), getDocumentCounts());
+        assertEquals(4, session.getAll(TfIdf.class).size());
+    }
+
+    @Test
+    public void testConcurrentEvents () throws InterruptedException {
+        // Events made at once by different users, all adding the same terms which do not yet exist
+        var numEvents = 8;
+        var authTokens = new ArrayList<String>();
+        for (int i = 0; i < numEvents; i++) {
+            authTokens.add(controller.userRegister(session, TestHelper.makeRegisterRequest()).authToken);
+        }
+        session = TestHelper.commitMakeSession(model, session);
+
+        var errors = new ConcurrentLinkedQueue<Exception>();
+        var start = new CountDownLatch(1);
+        var executor = Executors.newFixedThreadPool(numEvents);
+        for (var i : authTokens) {
+            executor.submit(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                var eventSession = model.makeSession();
+                try {
+                    controller.createEvent(eventSession, new CreateEventReqBuilder()
+                            .withEventName("Shared event")
+                            .withDescription("apple cookie")
+                            .build(i));
+                    eventSession.commit();
+                } catch (Exception e) {
+                    eventSession.rollback();
+                    errors.add(e);
+                } finally {
+                    eventSession.close();
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        assertEquals(List.of(), List.copyOf(errors));
+
+        // No counts were lost
+        session = TestHelper.commitMakeSession(model, session);
+        assertEquals(Map.of("shared", numEvents, "event", numEvents, "apple", numEvents, "cookie", numEvents),
+                getDocumentCounts());
+        assertEquals(numEvents * 4, session.getAll(TfIdf.class).size());
+    }
+
+    private Map<String, Integer> getDocumentCounts () {
+        return session.getAllStream(DocumentTerm.class)
+                .collect(Collectors.toMap(DocumentTerm::getTerm, DocumentTerm::getTermCount));
+    }
+
     private double calculateTfIdf (int eventTermCount, int documentCount, int numDocuments) {
         return (1 + Math.log10(eventTermCount)) * Math.log10((double)numDocuments  / (documentCount));
     }
@@ -0,0 +1,64 @@
+package tickr.unit.recommendations;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import tickr.util.Pair;
+import tickr.util.TopKSelector;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class TestTopKSelector {
+    @Test
+    public void testEmpty () {
+        var selector = TopKSelector.<String>forPage(0, 10);
+        assertEquals(0, selector.getTotal());
+        assertEquals(List.of(), selector.getResults(0));
+    }
+
+    @Test
+    public void testPaging () {
+        var selector = TopKSelector.<String>forPage(1, 2);
+        selector.offer("a", 0.1);
+        selector.offer("b", 0.9);
+        selector.offer("c", 0.5);
+        selector.offer("d", 0.7);
+        selector.offer("e", 0.5);
+
+        assertEquals(5, selector.getTotal());
+        var results = selector.getResults(1);
+        assertEquals(List.of("d", "c"), results.stream().map(Pair::getFirst).collect(Collectors.toList()));
+        assertEquals(0.7, results.get(0).getSecond());
+
+        // Past the end of the results
+        assertEquals(List.of(), selector.getResults(3));
+    }
+
+    @Test
+    public void testMatchesSort () {
+        var random = new Random(0);
+        var scores = IntStream.range(0, 1000)
+                .mapToObj(i -> new Pair<>(i, (double) random.nextInt(50)))
+                .collect(Collectors.toList());
+
+        var selector = TopKSelector.<Integer>forPage(20, 30);
+        for (var i : scores) {
+            selector.offer(i.getFirst(), i.getSecond());
+        }
+
+        // Equal scores keep the order they were offered in, as with a stable sort
+        var expected = scores.stream()
+                .sorted(Comparator.comparingDouble((Pair<Integer, Double> p) -> p.getSecond()).reversed())
+                .skip(20)
+                .limit(30)
+                .map(Pair::getFirst)
+                .collect(Collectors.toList());
+
+        assertEquals(1000, selector.getTotal());
+        assertEquals(expected, selector.getResults(20).stream().map(Pair::getFirst).collect(Collectors.toList()));
+    }
+}
@@ -9,6 +9,7 @@ import tickr.application.TickrController;
 import tickr.application.apis.ApiLocator;
 import tickr.application.apis.location.ILocationAPI;
 import tickr.application.apis.purchase.IPurchaseAPI;
+import tickr.application.entities.UserProfile;
 import tickr.application.serialised.SerializedLocation;
 import tickr.application.serialised.combined.tickets.TicketPurchase;
 import tickr.application.serialised.combined.tickets.TicketReserve;
@@ -26,9 +27,15 @@ import java.time.Duration;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class TestUserEventRecommendations {
     private DataModel model;
@@ -129,6 +136,79 @@ public class TestUserEventRecommendations {
     }
 
 
+    @Test
+    public void testStoredProfile () {
+        controller.eventView(session, Map.of("auth_token", authToken, "event_id", eventIds.get(0)));
+        session = TestHelper.commitMakeSession(model, session);
+        controller.eventView(session, Map.of("auth_token", authToken, "event_id", eventIds.get(1)));
+        session = TestHelper.commitMakeSession(model, session);
+        assertEquals(1, session.getAll(UserProfile.class).size());
+
+        var params = Map.of("auth_token", authToken, "page_start", "0", "max_results", "10");
+        var stored = controller.recommendUserEvent(session, params);
+
+        // Without a stored profile it is built from the interactions, which should give the same result
+        session.getAll(UserProfile.class).forEach(session::remove);
+        session = TestHelper.commitMakeSession(model, session);
+        var computed = controller.recommendUserEvent(session, params);
+
+        assertEquals(computed.numResults, stored.numResults);
+        assertEquals(computed.events.size(), stored.events.size());
+        for (int i = 0; i < computed.events.size(); i++) {
+            assertEquals(computed.events.get(i).id, stored.events.get(i).id);
+            assertEquals(computed.events.get(i).recommendValue, stored.events.get(i).recommendValue, 1e-6);
+        }
+    }
+
+    @Test
+    public void testConcurrentInteractions () throws InterruptedException {
+        session.rollback();
+        session.close();
+
+        // Views by the same user at once, starting without a stored profile
+        var errors = new ConcurrentLinkedQueue<Exception>();
+        var start = new CountDownLatch(1);
+        var executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 24; i++) {
+            var eventId = eventIds.get(i % eventIds.size());
+            executor.submit(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                var viewSession = model.makeSession();
+                try {
+                    controller.eventView(viewSession, Map.of("auth_token", authToken, "event_id", eventId));
+                    viewSession.commit();
+                } catch (Exception e) {
+                    viewSession.rollback();
+                    errors.add(e);
+                } finally {
+                    viewSession.close();
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        assertEquals(List.of(), errors.stream().map(Exception::toString).collect(Collectors.toList()));
+
+        session = model.makeSession();
+        assertEquals(1, session.getAll(UserProfile.class).size());
+        var params = Map.of("auth_token", authToken, "page_start", "0", "max_results", "10");
+        var stored = controller.recommendUserEvent(session, params);
+
+        // No interaction was lost or counted twice
+        session.getAll(UserProfile.class).forEach(session::remove);
+        session = TestHelper.commitMakeSession(model, session);
+        var computed = controller.recommendUserEvent(session, params);
+        for (int i = 0; i < computed.events.size(); i++) {
+            assertEquals(computed.events.get(i).id, stored.events.get(i).id);
+            assertEquals(computed.events.get(i).recommendValue, stored.events.get(i).recommendValue, 1e-6);
+        }
+    }
+
     private List<String> addTestEvents () {
         var eventIds = new ArrayList<String>();
 
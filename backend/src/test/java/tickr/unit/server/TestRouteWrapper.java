@@ -0,0 +1,105 @@
+package tickr.unit.server;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import spark.Request;
+import spark.Response;
+import spark.Session;
+import tickr.application.TickrController;
+import tickr.persistence.DataModel;
+import tickr.persistence.HibernateModel;
+import tickr.server.RouteWrapper;
+
+import java.util.ArrayList;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestRouteWrapper {
+    private static final int NUM_REQUESTS = 8;
+
+    private DataModel model;
+    private TickrController controller;
+    private ExecutorService executor;
+
+    @BeforeEach
+    public void setup () {
+        model = new HibernateModel("hibernate-test.cfg.xml");
+        controller = new TickrController();
+        executor = Executors.newFixedThreadPool(NUM_REQUESTS);
+    }
+
+    @AfterEach
+    public void cleanup () {
+        executor.shutdownNow();
+        model.cleanup();
+    }
+
+    @Test
+    public void testConcurrentRequests () throws Exception {
+        // Every request waits until all of them are running, so this only completes if requests overlap
+        var barrier = new CyclicBarrier(NUM_REQUESTS);
+        var maxConcurrent = new AtomicInteger();
+        var running = new AtomicInteger();
+        var wrapper = new RouteWrapper<>(model, controller, ctx -> {
+            assertSame(controller, ctx.controller);
+            maxConcurrent.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                barrier.await(5, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            } finally {
+                running.decrementAndGet();
+            }
+            return new Object();
+        });
+
+        // Same client for every request
+        var request = new TestRequest();
+        var futures = new ArrayList<Future<Object>>();
+        for (int i = 0; i < NUM_REQUESTS; i++) {
+            futures.add(executor.submit(() -> wrapper.handle(request, new TestResponse())));
+        }
+        for (var i : futures) {
+            assertNotNull(i.get(10, TimeUnit.SECONDS));
+        }
+
+        assertEquals(NUM_REQUESTS, maxConcurrent.get());
+        assertEquals(0, request.sessionCalls.get());
+    }
+
+    private static class TestRequest extends Request {
+        final AtomicInteger sessionCalls = new AtomicInteger();
+
+        @Override
+        public String queryParams (String queryParam) {
+            // Requests are not authenticated
+            return null;
+        }
+
+        @Override
+        public Session session () {
+            sessionCalls.incrementAndGet();
+            return null;
+        }
+
+        @Override
+        public Session session (boolean create) {
+            sessionCalls.incrementAndGet();
+            return null;
+        }
+    }
+
+    private static class TestResponse extends Response {
+        @Override
+        public void type (String contentType) {
+
+        }
+    }
+}
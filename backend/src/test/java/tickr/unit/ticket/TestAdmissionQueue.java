@@ -0,0 +1,251 @@
+package tickr.unit.ticket;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import tickr.CreateEventReqBuilder;
+import tickr.TestHelper;
+import tickr.application.TickrController;
+import tickr.application.apis.ApiLocator;
+import tickr.application.apis.location.ILocationAPI;
+import tickr.application.entities.Event;
+import tickr.application.entities.QueueEntry;
+import tickr.application.queue.AdmissionQueue;
+import tickr.application.serialised.combined.tickets.TicketQueue;
+import tickr.application.serialised.combined.tickets.TicketReserve;
+import tickr.application.serialised.requests.event.CreateEventRequest;
+import tickr.application.serialised.requests.event.EditEventRequest;
+import tickr.mock.MockLocationApi;
+import tickr.persistence.DataModel;
+import tickr.persistence.HibernateModel;
+import tickr.persistence.ModelSession;
+import tickr.server.exceptions.ForbiddenException;
+
+import java.time.Duration;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Simulates users queueing for a popular event, polling their place until they are admitted
+ */
+public class TestAdmissionQueue {
+    private static final int NUM_USERS = 30;
+    private static final double ADMISSION_RATE = 10;
+
+    private DataModel model;
+    private TickrController controller;
+
+    private ModelSession session;
+    private List<String> authTokens;
+    private String eventId;
+    private ZonedDateTime startTime;
+
+    @BeforeEach
+    public void setup () {
+        AdmissionQueue.configure(ADMISSION_RATE);
+        model = new HibernateModel("hibernate-test.cfg.xml");
+        controller = new TickrController();
+        ApiLocator.addLocator(ILocationAPI.class, () -> new MockLocationApi(model));
+
+        startTime = ZonedDateTime.now(ZoneId.of("UTC")).plus(Duration.ofDays(1));
+
+        session = model.makeSession();
+        authTokens = new ArrayList<>();
+        for (int i = 0; i < NUM_USERS; i++) {
+            authTokens.add(controller.userRegister(session, TestHelper.makeRegisterRequest()).authToken);
+        }
+        session = TestHelper.commitMakeSession(model, session);
+
+        eventId = controller.createEvent(session, new CreateEventReqBuilder()
+                .withStartDate(startTime.minusMinutes(2))
+                .withEndDate(startTime.plusHours(1))
+                .withSeatingDetails(List.of(new CreateEventRequest.SeatingDetails("test_section", 100, 1, true)))
+                .build(authTokens.get(0))).event_id;
+        session = TestHelper.commitMakeSession(model, session);
+
+        setQueued(true);
+    }
+
+    private void setQueued (boolean queued) {
+        var request = new EditEventRequest(eventId, authTokens.get(0), null, null, null, null,
+                null, null, null, null, null, null, true, null);
+        request.admissionQueue = queued;
+        controller.editEvent(session, request);
+        session = TestHelper.commitMakeSession(model, session);
+    }
+
+    @AfterEach
+    public void cleanup () {
+        AdmissionQueue.configure(0);
+        model.cleanup();
+    }
+
+    private TicketReserve.Response reserve (String authToken) {
+        return controller.ticketReserve(session, new TicketReserve.Request(authToken, eventId, startTime,
+                List.of(new TicketReserve.TicketDetails("test_section", 1, List.of()))));
+    }
+
+    private TicketQueue.Response join (String authToken) {
+        var response = controller.ticketQueueJoin(session, new TicketQueue.Request(authToken, eventId));
+        session = TestHelper.commitMakeSession(model, session);
+
+        return response;
+    }
+
+    private TicketQueue.Response getStatus (String queueToken) {
+        return controller.ticketQueueStatus(model, Map.of("queue_token", queueToken));
+    }
+
+    @Test
+    public void testNotAdmitted () {
+        assertThrows(ForbiddenException.class, () -> reserve(authTokens.get(0)));
+        assertThrows(ForbiddenException.class, () -> getStatus(UUID.randomUUID().toString()));
+    }
+
+    @Test
+    public void testDisabled () {
+        AdmissionQueue.configure(0);
+        var response = join(authTokens.get(0));
+        assertTrue(response.admitted);
+        assertNull(response.queueToken);
+
+        assertEquals(1, reserve(authTokens.get(1)).reserveTickets.size());
+    }
+
+    @Test
+    public void testNotQueued () {
+        assertNotNull(join(authTokens.get(0)).queueToken);
+        assertTrue(controller.eventView(session, Map.of("event_id", eventId)).admissionQueue);
+
+        // Turning the queue off drops everyone waiting and lets anyone reserve
+        setQueued(false);
+        assertFalse(controller.eventView(session, Map.of("event_id", eventId)).admissionQueue);
+        assertEquals(0, session.getAll(QueueEntry.class).size());
+
+        var response = join(authTokens.get(1));
+        assertTrue(response.admitted);
+        assertNull(response.queueToken);
+        assertEquals(1, reserve(authTokens.get(2)).reserveTickets.size());
+    }
+
+    @Test
+    public void testJoinTwice () {
+        var first = join(authTokens.get(0));
+        var second = join(authTokens.get(0));
+        assertEquals(first.queueToken, second.queueToken);
+        assertEquals(1, session.getAll(QueueEntry.class).size());
+    }
+
+    @Test
+    public void testStalePlaces () {
+        // Places dropped from memory whose deletion has not been saved yet, as after the queue has been evicted
+        AdmissionQueue.get(model);
+        for (int i = 0; i < 2; i++) {
+            session.save(new QueueEntry(UUID.fromString(eventId), controller.getTokenUserId(authTokens.get(i)), i,
+                    ZonedDateTime.now(ZoneId.of("UTC"))));
+        }
+        session = TestHelper.commitMakeSession(model, session);
+
+        // Rejoining replaces the user's old place, and new places follow those left behind
+        var first = join(authTokens.get(0));
+        var second = join(authTokens.get(2));
+        assertEquals(3, session.getAll(QueueEntry.class).size());
+        assertEquals(2, session.getById(QueueEntry.class, UUID.fromString(first.queueToken)).orElseThrow().getPosition());
+        assertEquals(3, session.getById(QueueEntry.class, UUID.fromString(second.queueToken)).orElseThrow().getPosition());
+    }
+
+    @Test
+    public void testSimulation () throws InterruptedException {
+        long start = System.currentTimeMillis();
+        var queueTokens = new ArrayList<String>();
+        for (var i : authTokens) {
+            var response = join(i);
+            assertNotNull(response.queueToken);
+            queueTokens.add(response.queueToken);
+        }
+
+        // Poll as clients would until everyone is admitted, recording when each was first seen admitted
+        var admitTimes = new HashMap<Integer, Long>();
+        var lastPlaces = new HashMap<Integer, Long>();
+        while (admitTimes.size() < NUM_USERS) {
+            assertTrue(System.currentTimeMillis() - start < 30000, "Queue stopped admitting!");
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < NUM_USERS; i++) {
+                if (admitTimes.containsKey(i)) {
+                    continue;
+                }
+                var status = getStatus(queueTokens.get(i));
+                if (status.admitted) {
+                    admitTimes.put(i, now);
+                } else {
+                    // Places only move forwards
+                    assertTrue(status.position <= lastPlaces.getOrDefault(i, Long.MAX_VALUE));
+                    lastPlaces.put(i, status.position);
+                    assertTrue(status.waitSeconds > 0);
+                }
+            }
+            Thread.sleep(20);
+        }
+
+        // First in, first admitted
+        for (int i = 1; i < NUM_USERS; i++) {
+            assertTrue(admitTimes.get(i) >= admitTimes.get(i - 1), "User " + i + " admitted before user " + (i - 1) + "!");
+        }
+
+        // At most a second's worth of admissions at once, then held to the rate
+        long elapsed = admitTimes.get(NUM_USERS - 1) - start;
+        long minElapsed = (long)((NUM_USERS - ADMISSION_RATE - 1) / ADMISSION_RATE * 1000);
+        assertTrue(elapsed >= minElapsed, String.format("Admitted everyone in %d ms, faster than %d ms!", elapsed, minElapsed));
+
+        // Admitted users can reserve
+        for (var i : authTokens) {
+            assertEquals(1, reserve(i).reserveTickets.size());
+        }
+    }
+
+    @Test
+    public void testRestart () throws InterruptedException {
+        AdmissionQueue.configure(0.01);
+        var queueTokens = new ArrayList<String>();
+        for (int i = 0; i < 5; i++) {
+            queueTokens.add(join(authTokens.get(i)).queueToken);
+        }
+
+        // Only the first has been admitted, and the rest have a long wait
+        long start = System.currentTimeMillis();
+        while (!getStatus(queueTokens.get(0)).admitted) {
+            assertTrue(System.currentTimeMillis() - start < 5000, "Queue stopped admitting!");
+            Thread.sleep(20);
+        }
+        for (int i = 1; i < 5; i++) {
+            assertEquals(i, getStatus(queueTokens.get(i)).position);
+        }
+
+        // Stops admitting and finishes saving, as on shutdown
+        AdmissionQueue.get(model).close();
+
+        var event = session.getById(Event.class, UUID.fromString(eventId)).orElseThrow();
+        var restarted = AdmissionQueue.load(model);
+        try {
+            assertTrue(restarted.getStatus(UUID.fromString(queueTokens.get(0))).isAdmitted());
+            restarted.checkAdmitted(event, controller.getTokenUserId(authTokens.get(0)));
+            for (int i = 1; i < 5; i++) {
+                var status = restarted.getStatus(UUID.fromString(queueTokens.get(i)));
+                assertFalse(status.isAdmitted());
+                assertEquals(i, status.getPlace());
+                int finalI = i;
+                assertThrows(ForbiddenException.class, () -> restarted.checkAdmitted(event,
+                        controller.getTokenUserId(authTokens.get(finalI))));
+            }
+        } finally {
+            restarted.close();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package tickr.unit.ticket;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import tickr.CreateEventReqBuilder;
+import tickr.TestHelper;
+import tickr.application.TickrController;
+import tickr.application.apis.ApiLocator;
+import tickr.application.apis.location.ILocationAPI;
+import tickr.application.entities.SeatingPlan;
+import tickr.application.entities.TicketReservation;
+import tickr.application.seating.SeatAllocator;
+import tickr.application.serialised.combined.tickets.TicketReserve;
+import tickr.application.serialised.requests.event.CreateEventRequest;
+import tickr.application.serialised.requests.event.EditEventRequest;
+import tickr.mock.MockLocationApi;
+import tickr.persistence.DataModel;
+import tickr.persistence.HibernateModel;
+import tickr.persistence.ModelSession;
+import tickr.server.exceptions.ForbiddenException;
+
+import java.time.Duration;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Fires many concurrent reservations at one section, as when a popular event goes on sale
+ */
+public class TestReservationContention {
+    private static final int NUM_SEATS = 2000;
+    private static final int NUM_USERS = 20;
+    private static final int NUM_REQUESTS = 2500;
+    // Below the connection pool size, so requests contend for the section rather than for connections
+    private static final int NUM_THREADS = 16;
+
+    private DataModel model;
+    private TickrController controller;
+
+    private List<String> authTokens;
+    private String eventId;
+    private ZonedDateTime startTime;
+
+    @BeforeEach
+    public void setup () {
+        model = new HibernateModel("hibernate-test.cfg.xml");
+        controller = new TickrController();
+        ApiLocator.addLocator(ILocationAPI.class, () -> new MockLocationApi(model));
+
+        startTime = ZonedDateTime.now(ZoneId.of("UTC")).plus(Duration.ofDays(1));
+
+        var session = model.makeSession();
+        authTokens = new ArrayList<>();
+        for (int i = 0; i < NUM_USERS; i++) {
+            authTokens.add(controller.userRegister(session, TestHelper.makeRegisterRequest()).authToken);
+        }
+        session = TestHelper.commitMakeSession(model, session);
+
+        eventId = controller.createEvent(session, new CreateEventReqBuilder()
+                .withStartDate(startTime.minusMinutes(2))
+                .withEndDate(startTime.plusHours(1))
+                .withSeatingDetails(List.of(new CreateEventRequest.SeatingDetails("test_section", NUM_SEATS, 1, true)))
+                .build(authTokens.get(0))).event_id;
+        session = TestHelper.commitMakeSession(model, session);
+
+        controller.editEvent(session, new EditEventRequest(eventId, authTokens.get(0), null, null, null, null,
+                null, null, null, null, null, null, true, null));
+        session.commit();
+        session.close();
+    }
+
+    @AfterEach
+    public void cleanup () {
+        model.cleanup();
+    }
+
+    private void reserve (ModelSession session, String authToken) {
+        controller.ticketReserve(session, new TicketReserve.Request(authToken, eventId, startTime,
+                List.of(new TicketReserve.TicketDetails("test_section", 1, List.of()))));
+    }
+
+    @Test
+    public void testConcurrentReserves () throws InterruptedException {
+        var errors = new ConcurrentLinkedQueue<Exception>();
+        var reserved = new AtomicInteger();
+        var soldOut = new AtomicInteger();
+
+        var start = new CountDownLatch(1);
+        var executor = Executors.newFixedThreadPool(NUM_THREADS);
+        for (int i = 0; i < NUM_REQUESTS; i++) {
+            var authToken = authTokens.get(i % NUM_USERS);
+            executor.submit(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                // Handled as the server handles a request
+                var session = model.makeSession();
+                try {
+                    reserve(session, authToken);
+                    session.commit();
+                    reserved.incrementAndGet();
+                } catch (ForbiddenException e) {
+                    session.rollback();
+                    soldOut.incrementAndGet();
+                } catch (Exception e) {
+                    session.rollback();
+                    errors.add(e);
+                } finally {
+                    session.close();
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(2, TimeUnit.MINUTES));
+
+        assertEquals(List.of(), errors.stream().map(Exception::toString).collect(Collectors.toList()));
+        assertEquals(NUM_SEATS, reserved.get());
+        assertEquals(NUM_REQUESTS - reserved.get(), soldOut.get());
+
+        var session = model.makeSession();
+        var section = session.getAllWith(SeatingPlan.class, "section", "test_section").get(0);
+        var seatNums = session.getAllWith(TicketReservation.class, "section", section).stream()
+                .map(TicketReservation::getSeatNum)
+                .collect(Collectors.toList());
+        // No seat reserved twice, and every seat reserved
+        assertEquals(NUM_SEATS, seatNums.size());
+        assertEquals(NUM_SEATS, new HashSet<>(seatNums).size());
+        assertTrue(seatNums.stream().allMatch(i -> i >= 1 && i <= NUM_SEATS));
+        assertEquals(0, SeatAllocator.get(session).getAvailable(session, section));
+        // Every user subscribed to the event, despite their first reservations being concurrent
+        assertEquals(NUM_USERS, section.getEvent().getNotificationMembers().size());
+        session.rollback();
+        session.close();
+    }
+}
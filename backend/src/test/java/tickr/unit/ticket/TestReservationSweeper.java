@@ -0,0 +1,221 @@
+package tickr.unit.ticket;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import tickr.CreateEventReqBuilder;
+import tickr.TestHelper;
+import tickr.application.TickrController;
+import tickr.application.apis.ApiLocator;
+import tickr.application.apis.email.IEmailAPI;
+import tickr.application.apis.location.ILocationAPI;
+import tickr.application.apis.purchase.IPurchaseAPI;
+import tickr.application.entities.Invitation;
+import tickr.application.entities.PurchaseItem;
+import tickr.application.entities.SeatingPlan;
+import tickr.application.entities.Ticket;
+import tickr.application.entities.TicketReservation;
+import tickr.application.seating.ReservationSweeper;
+import tickr.application.seating.SeatAllocator;
+import tickr.application.serialised.combined.tickets.TicketPurchase;
+import tickr.application.serialised.combined.tickets.TicketReserve;
+import tickr.application.serialised.requests.event.CreateEventRequest;
+import tickr.application.serialised.requests.event.EditEventRequest;
+import tickr.application.serialised.requests.group.GroupCreateRequest;
+import tickr.application.serialised.requests.group.GroupInviteRequest;
+import tickr.mock.MockEmailAPI;
+import tickr.mock.MockLocationApi;
+import tickr.mock.MockUnitPurchaseAPI;
+import tickr.persistence.DataModel;
+import tickr.persistence.HibernateModel;
+import tickr.persistence.ModelSession;
+import tickr.server.exceptions.ForbiddenException;
+
+import java.time.Duration;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class TestReservationSweeper {
+    private DataModel model;
+    private TickrController controller;
+    private MockUnitPurchaseAPI purchaseAPI;
+
+    private ModelSession session;
+    private String authToken;
+    private String eventId;
+
+    private ZonedDateTime startTime;
+
+    @BeforeEach
+    public void setup () {
+        model = new HibernateModel("hibernate-test.cfg.xml");
+        controller = new TickrController();
+        ApiLocator.addLocator(ILocationAPI.class, () -> new MockLocationApi(model));
+        purchaseAPI = new MockUnitPurchaseAPI(controller, model);
+        ApiLocator.addLocator(IPurchaseAPI.class, () -> purchaseAPI);
+
+        startTime = ZonedDateTime.now(ZoneId.of("UTC")).plus(Duration.ofDays(1));
+
+        session = model.makeSession();
+        authToken = controller.userRegister(session, TestHelper.makeRegisterRequest()).authToken;
+        session = TestHelper.commitMakeSession(model, session);
+
+        eventId = controller.createEvent(session, new CreateEventReqBuilder()
+                .withStartDate(startTime.minusMinutes(2))
+                .withEndDate(startTime.plusHours(1))
+                .withSeatingDetails(List.of(new CreateEventRequest.SeatingDetails("test_section", 1200, 1, true)))
+                .build(authToken)).event_id;
+        session = TestHelper.commitMakeSession(model, session);
+
+        controller.editEvent(session, new EditEventRequest(eventId, authToken, null, null, null, null,
+                null, null, null, null, null, null, true, null));
+        session = TestHelper.commitMakeSession(model, session);
+    }
+
+    @AfterEach
+    public void cleanup () {
+        model.cleanup();
+        ApiLocator.clearLocator(IPurchaseAPI.class);
+        ApiLocator.clearLocator(ILocationAPI.class);
+    }
+
+    private List<String> reserve (int quantity) {
+        var response = controller.ticketReserve(session, new TicketReserve.Request(authToken, eventId, startTime,
+                List.of(new TicketReserve.TicketDetails("test_section", quantity, List.of()))));
+        session = TestHelper.commitMakeSession(model, session);
+
+        return response.reserveTickets.stream()
+                .map(r -> r.reserveId)
+                .collect(Collectors.toList());
+    }
+
+    private void expireAll () {
+        expireAll(ZonedDateTime.now(ZoneId.of("UTC")).minusMinutes(1));
+    }
+
+    private void expireAll (ZonedDateTime expiry) {
+        for (var i : session.getAll(TicketReservation.class)) {
+            i.setExpiry(session, expiry);
+        }
+        session = TestHelper.commitMakeSession(model, session);
+    }
+
+    private int getAvailable () {
+        var section = session.getAllWith(SeatingPlan.class, "section", "test_section").get(0);
+        return SeatAllocator.get(session).getAvailable(session, section);
+    }
+
+    @Test
+    public void testUnexpired () {
+        reserve(3);
+        var sweeper = ReservationSweeper.get(model);
+        assertEquals(0, sweeper.sweep());
+        assertEquals(3, session.getAll(TicketReservation.class).size());
+        assertEquals(1197, getAvailable());
+    }
+
+    @Test
+    public void testSweep () {
+        var reserveIds = reserve(3);
+        controller.ticketPurchase(session, new TicketPurchase.Request(authToken, "http://testing.com",
+                "http://testing.com", List.of(new TicketPurchase.TicketDetails(reserveIds.get(2)))));
+        session = TestHelper.commitMakeSession(model, session);
+        expireAll();
+
+        var sweeper = ReservationSweeper.get(model);
+        assertEquals(2, sweeper.sweep());
+
+        // The reservation being bought is kept
+        var remaining = session.getAll(TicketReservation.class);
+        assertEquals(1, remaining.size());
+        assertEquals(reserveIds.get(2), remaining.get(0).getId().toString());
+        assertEquals(1, session.getAll(PurchaseItem.class).size());
+        // Along with its seat
+        assertEquals(1199, getAvailable());
+
+        assertEquals(0, sweeper.sweep());
+        var stats = sweeper.getStats();
+        assertEquals(2, stats.getNumSweeps());
+        assertEquals(2, stats.getNumDeleted());
+        assertEquals(0, stats.getLastDeleted());
+        assertEquals(0, stats.getNumFailures());
+    }
+
+    @Test
+    public void testLapsedPurchase () {
+        var reserveIds = reserve(3);
+        controller.ticketPurchase(session, new TicketPurchase.Request(authToken, "http://testing.com",
+                "http://testing.com", List.of(new TicketPurchase.TicketDetails(reserveIds.get(2)))));
+        session = TestHelper.commitMakeSession(model, session);
+        expireAll(ZonedDateTime.now(ZoneId.of("UTC")).minus(TicketReservation.PURCHASE_GRACE).minusMinutes(1));
+
+        // Unpaid past the grace period, so swept along with its purchase item
+        assertEquals(3, ReservationSweeper.get(model).sweep());
+        assertEquals(0, session.getAll(TicketReservation.class).size());
+        assertEquals(0, session.getAll(PurchaseItem.class).size());
+        assertEquals(1200, getAvailable());
+    }
+
+    @Test
+    public void testGroup () {
+        var invitee = TestHelper.makeRegisterRequest();
+        controller.userRegister(session, invitee);
+        session = TestHelper.commitMakeSession(model, session);
+        ApiLocator.addLocator(IEmailAPI.class, MockEmailAPI::new);
+
+        var reserveIds = reserve(3);
+        var groupId = controller.groupCreate(session, new GroupCreateRequest(authToken, reserveIds, reserveIds.get(0))).groupId;
+        session = TestHelper.commitMakeSession(model, session);
+        controller.groupInvite(session, new GroupInviteRequest(authToken, groupId, reserveIds.get(1), invitee.email));
+        session = TestHelper.commitMakeSession(model, session);
+        ApiLocator.clearLocator(IEmailAPI.class);
+        expireAll();
+
+        // Group reservations are swept too, except the one offered to the invited user
+        assertEquals(2, ReservationSweeper.get(model).sweep());
+        var remaining = session.getAll(TicketReservation.class);
+        assertEquals(1, remaining.size());
+        assertEquals(reserveIds.get(1), remaining.get(0).getId().toString());
+        assertEquals(1, session.getAll(Invitation.class).size());
+        assertEquals(1199, getAvailable());
+    }
+
+    @Test
+    public void testPurchaseAfterExpiry () {
+        var reserveIds = reserve(1200);
+        purchaseAPI.addCustomer("test_customer", 10);
+        var redirectUrl = controller.ticketPurchase(session, new TicketPurchase.Request(authToken, "http://testing.com",
+                "http://testing.com", List.of(new TicketPurchase.TicketDetails(reserveIds.get(0))))).redirectUrl;
+        session = TestHelper.commitMakeSession(model, session);
+        expireAll();
+
+        // Reserving the other seats again deletes their expired reservations, but not the one being bought
+        assertEquals(1199, reserve(1199).size());
+        assertThrows(ForbiddenException.class, () -> reserve(1));
+        session.rollback();
+        session.close();
+        session = model.makeSession();
+        assertEquals(1200, session.getAll(TicketReservation.class).size());
+
+        // Which can still be paid for
+        purchaseAPI.fulfillOrder(redirectUrl, "test_customer");
+        assertEquals(1, session.getAll(Ticket.class).size());
+        assertEquals(0, session.getAll(PurchaseItem.class).size());
+        assertEquals(0, getAvailable());
+    }
+
+    @Test
+    public void testBatches () {
+        // More than a batch, mostly with the same expiry
+        reserve(1200);
+        expireAll();
+
+        assertEquals(1200, ReservationSweeper.get(model).sweep());
+        assertEquals(0, session.getAll(TicketReservation.class).size());
+        assertEquals(1200, reserve(1200).size());
+    }
+}
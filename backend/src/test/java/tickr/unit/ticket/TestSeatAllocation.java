@@ -0,0 +1,284 @@
+package tickr.unit.ticket;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import tickr.CreateEventReqBuilder;
+import tickr.TestHelper;
+import tickr.application.TickrController;
+import tickr.application.apis.ApiLocator;
+import tickr.application.apis.location.ILocationAPI;
+import tickr.application.entities.SeatingPlan;
+import tickr.application.entities.TicketReservation;
+import tickr.application.seating.ExpiryWheel;
+import tickr.application.seating.SeatAllocator;
+import tickr.application.seating.SeatBitmap;
+import tickr.application.serialised.combined.tickets.TicketReserve;
+import tickr.application.serialised.requests.event.CreateEventRequest;
+import tickr.application.serialised.requests.event.EditEventRequest;
+import tickr.application.serialised.requests.ticket.ReserveCancelRequest;
+import tickr.mock.MockLocationApi;
+import tickr.persistence.DataModel;
+import tickr.persistence.HibernateModel;
+import tickr.persistence.ModelSession;
+import tickr.server.exceptions.ForbiddenException;
+
+import java.time.Duration;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+public class TestSeatAllocation {
+    private DataModel model;
+    private TickrController controller;
+
+    private ModelSession session;
+    private String authToken;
+    private String eventId;
+
+    private ZonedDateTime startTime;
+
+    @BeforeEach
+    public void setup () {
+        model = new HibernateModel("hibernate-test.cfg.xml");
+        controller = new TickrController();
+        ApiLocator.addLocator(ILocationAPI.class, () -> new MockLocationApi(model));
+
+        startTime = ZonedDateTime.now(ZoneId.of("UTC")).plus(Duration.ofDays(1));
+
+        session = model.makeSession();
+        authToken = controller.userRegister(session, TestHelper.makeRegisterRequest()).authToken;
+        session = TestHelper.commitMakeSession(model, session);
+
+        eventId = controller.createEvent(session, new CreateEventReqBuilder()
+                .withStartDate(startTime.minusMinutes(2))
+                .withEndDate(startTime.plusHours(1))
+                .withSeatingDetails(List.of(new CreateEventRequest.SeatingDetails("test_section", 10, 1, true)))
+                .build(authToken)).event_id;
+        session = TestHelper.commitMakeSession(model, session);
+
+        controller.editEvent(session, new EditEventRequest(eventId, authToken, null, null, null, null,
+                null, null, null, null, null, null, true, null));
+        session = TestHelper.commitMakeSession(model, session);
+    }
+
+    @AfterEach
+    public void cleanup () {
+        model.cleanup();
+    }
+
+    private TicketReserve.Response reserve (int quantity, List<Integer> seatNums) {
+        return controller.ticketReserve(session, new TicketReserve.Request(authToken, eventId, startTime,
+                List.of(new TicketReserve.TicketDetails("test_section", quantity, seatNums))));
+    }
+
+    private List<Integer> getSeatNums (TicketReserve.Response response) {
+        return response.reserveTickets.stream()
+                .map(r -> r.seatNum)
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    private int getAvailable () {
+        var section = session.getAllWith(SeatingPlan.class, "section", "test_section").get(0);
+        return SeatAllocator.get(session).getAvailable(session, section);
+    }
+
+    @Test
+    public void testBitmap () {
+        var bitmap = new SeatBitmap(10);
+        assertTrue(bitmap.take(1));
+        assertTrue(bitmap.take(2));
+        assertTrue(bitmap.take(4));
+        assertFalse(bitmap.take(4));
+        assertFalse(bitmap.take(0));
+        assertFalse(bitmap.take(11));
+        assertEquals(7, bitmap.getNumFree());
+
+        assertEquals(List.of(3, 5, 6), bitmap.findLowest(3));
+        assertEquals(3, bitmap.findContiguous(1));
+        assertEquals(5, bitmap.findContiguous(2));
+        assertEquals(5, bitmap.findContiguous(6));
+        assertEquals(-1, bitmap.findContiguous(7));
+        assertEquals(List.of(), bitmap.findLowest(8));
+
+        assertTrue(bitmap.release(2));
+        assertFalse(bitmap.release(2));
+        assertEquals(2, bitmap.findContiguous(2));
+    }
+
+    @Test
+    public void testLargeSection () {
+        var bitmap = new SeatBitmap(50000);
+        for (int i = 2; i <= 50000; i += 2) {
+            bitmap.take(i);
+        }
+        assertEquals(25000, bitmap.getNumFree());
+        assertEquals(List.of(1, 3, 5), bitmap.findLowest(3));
+        assertEquals(-1, bitmap.findContiguous(2));
+
+        bitmap.release(50000);
+        assertEquals(49999, bitmap.findContiguous(2));
+    }
+
+    @Test
+    public void testExpiryWheel () {
+        var wheel = new ExpiryWheel(8, 100, 0);
+        var fired = new AtomicInteger();
+
+        var timer = wheel.schedule(250, fired::incrementAndGet);
+        assertEquals(0, wheel.advance(299));
+        assertEquals(1, wheel.advance(300));
+        assertTrue(timer.hasFired());
+        // Only fires once
+        assertEquals(0, wheel.advance(400));
+        assertFalse(timer.cancel());
+
+        // In the same bucket, but a later turn of the wheel
+        var later = wheel.schedule(1250, fired::incrementAndGet);
+        var cancelled = wheel.schedule(1250, fired::incrementAndGet);
+        assertTrue(cancelled.cancel());
+        assertEquals(0, wheel.advance(1200));
+        assertEquals(1, wheel.advance(1300));
+        assertTrue(later.hasFired());
+        assertFalse(cancelled.hasFired());
+
+        // Already due, so fires with the next tick
+        wheel.schedule(50, fired::incrementAndGet);
+        assertEquals(1, wheel.advance(1400));
+
+        // Many turns without advancing
+        wheel.schedule(5000, fired::incrementAndGet);
+        wheel.schedule(100000, fired::incrementAndGet);
+        assertEquals(1, wheel.advance(50000));
+        assertEquals(1, wheel.advance(100100));
+        assertEquals(5, fired.get());
+    }
+
+    @Test
+    public void testExpiry () {
+        reserve(2, List.of(3, 4));
+        session = TestHelper.commitMakeSession(model, session);
+        assertEquals(8, getAvailable());
+        var reserved = controller.eventReservedSeats(session, Map.of("auth_token", authToken, "event_id", eventId)).reserved;
+        assertEquals(List.of(3, 4), reserved.stream().map(r -> r.seatNumber).sorted().collect(Collectors.toList()));
+
+        var reservation = session.getAllWith(TicketReservation.class, "seatNum", 3).get(0);
+        reservation.setExpiry(session, ZonedDateTime.now(ZoneId.of("UTC")).minusMinutes(1));
+        session = TestHelper.commitMakeSession(model, session);
+
+        // Released when the expiry moved, and not again when its old timer would have fired
+        assertEquals(9, getAvailable());
+        reserved = controller.eventReservedSeats(session, Map.of("auth_token", authToken, "event_id", eventId)).reserved;
+        assertEquals(List.of(4), reserved.stream().map(r -> r.seatNumber).collect(Collectors.toList()));
+        assertEquals(List.of(3), getSeatNums(reserve(1, List.of(3))));
+        session = TestHelper.commitMakeSession(model, session);
+        assertEquals(8, getAvailable());
+    }
+
+    @Test
+    public void testContiguous () {
+        reserve(1, List.of(2));
+        session = TestHelper.commitMakeSession(model, session);
+
+        // Seats kept together where possible
+        assertEquals(List.of(3, 4, 5), getSeatNums(reserve(3, List.of())));
+        session = TestHelper.commitMakeSession(model, session);
+
+        reserve(1, List.of(7));
+        session = TestHelper.commitMakeSession(model, session);
+
+        // Otherwise the lowest seats
+        assertEquals(List.of(1, 6, 8, 9), getSeatNums(reserve(4, List.of())));
+        session = TestHelper.commitMakeSession(model, session);
+        assertEquals(1, getAvailable());
+    }
+
+    @Test
+    public void testRollback () {
+        assertEquals(List.of(1, 2, 3, 4, 5, 6, 7, 8, 9, 10), getSeatNums(reserve(10, List.of())));
+        assertEquals(0, getAvailable());
+        session.rollback();
+        session.close();
+        session = model.makeSession();
+
+        // Seats claimed by the rolled back session are free again
+        assertEquals(10, getAvailable());
+        assertEquals(List.of(1, 2, 3, 4, 5, 6, 7, 8, 9, 10), getSeatNums(reserve(10, List.of())));
+        session = TestHelper.commitMakeSession(model, session);
+        assertThrows(ForbiddenException.class, () -> reserve(1, List.of()));
+    }
+
+    @Test
+    public void testConcurrentSessions () {
+        var otherToken = controller.userRegister(session, TestHelper.makeRegisterRequest()).authToken;
+        session = TestHelper.commitMakeSession(model, session);
+
+        var otherSession = model.makeSession();
+        assertEquals(List.of(1, 2, 3), getSeatNums(reserve(3, List.of())));
+
+        // Another session does not choose the seats before the first commits
+        var response = controller.ticketReserve(otherSession, new TicketReserve.Request(otherToken, eventId, startTime,
+                List.of(new TicketReserve.TicketDetails("test_section", 3, List.of()))));
+        assertEquals(List.of(4, 5, 6), getSeatNums(response));
+        assertThrows(ForbiddenException.class, () -> controller.ticketReserve(otherSession, new TicketReserve.Request(otherToken,
+                eventId, startTime, List.of(new TicketReserve.TicketDetails("test_section", 1, List.of(2))))));
+
+        otherSession.commit();
+        otherSession.close();
+        session = TestHelper.commitMakeSession(model, session);
+        assertEquals(4, getAvailable());
+    }
+
+    @Test
+    public void testCancel () {
+        var reserveId = reserve(1, List.of(3)).reserveTickets.get(0).reserveId;
+        session = TestHelper.commitMakeSession(model, session);
+        assertEquals(9, getAvailable());
+
+        var request = new ReserveCancelRequest();
+        request.authToken = authToken;
+        request.reservations = List.of(reserveId);
+        controller.reservationCancel(session, request);
+        // Not freed until committed
+        assertEquals(9, getAvailable());
+        session = TestHelper.commitMakeSession(model, session);
+
+        assertEquals(10, getAvailable());
+        assertEquals(List.of(3), getSeatNums(reserve(1, List.of(3))));
+    }
+
+    @Test
+    public void testSectionRemoved () {
+        reserve(5, List.of());
+        session = TestHelper.commitMakeSession(model, session);
+        assertEquals(5, getAvailable());
+
+        controller.editEvent(session, new EditEventRequest(eventId, authToken, null, null, null, null, null, null,
+                List.of(new EditEventRequest.SeatingDetails("test_section", 20, 1, true)), null, null, null, true, null));
+        session = TestHelper.commitMakeSession(model, session);
+
+        assertEquals(20, getAvailable());
+    }
+
+    @Test
+    public void testNewSectionNotLoaded () {
+        assertEquals(10, getAvailable());
+        controller.editEvent(session, new EditEventRequest(eventId, authToken, null, null, null, null, null, null,
+                List.of(new EditEventRequest.SeatingDetails("test_section", 20, 1, true)), null, null, null, true, null));
+        session = TestHelper.commitMakeSession(model, session);
+
+        // Sections made after the allocator was built are added when they commit, rather than read by a request
+        var section = session.getAllWith(SeatingPlan.class, "section", "test_section").get(0);
+        var allocator = SeatAllocator.get(session);
+        long statements = model.getStatementCount();
+        assertEquals(20, allocator.getAvailable(session, section));
+        assertEquals(List.of(1, 2), allocator.claimLowest(session, section, 2));
+        assertEquals(statements, model.getStatementCount());
+    }
+}
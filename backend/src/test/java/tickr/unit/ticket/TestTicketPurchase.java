@@ -232,7 +232,7 @@ public class TestTicketPurchase {
         var reserve1 = session.getById(TicketReservation.class, UUID.fromString(id1))
                 .orElseThrow(AssertionFailedError::new);
 
-        reserve1.setExpiry(ZonedDateTime.now(ZoneId.of("UTC")).truncatedTo(ChronoUnit.SECONDS).minusMinutes(5).minusSeconds(1));
+        reserve1.setExpiry(session, ZonedDateTime.now(ZoneId.of("UTC")).truncatedTo(ChronoUnit.SECONDS).minusMinutes(5).minusSeconds(1));
         session = TestHelper.commitMakeSession(model, session);
         assertThrows(ForbiddenException.class, () -> controller.ticketPurchase(session, new TicketPurchase.Request(authToken,
                 "https://example.com/success", "https://example.com/cancel", List.of(new TicketPurchase.TicketDetails(id1)))));
@@ -351,7 +351,7 @@ public class TestTicketReserve {
         session = model.makeSession();
         var reservation = session.getById(TicketReservation.class, UUID.fromString(id1))
                         .orElseThrow(AssertionFailedError::new);
-        reservation.setExpiry(ZonedDateTime.now(ZoneId.of("UTC")).truncatedTo(ChronoUnit.SECONDS).minusMinutes(5).minusSeconds(1));
+        reservation.setExpiry(session, ZonedDateTime.now(ZoneId.of("UTC")).truncatedTo(ChronoUnit.SECONDS).minusMinutes(5).minusSeconds(1));
         session = TestHelper.commitMakeSession(model, session);
 
 
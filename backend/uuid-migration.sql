@@ -0,0 +1,77 @@
+-- Converts the uuid columns of a database made from an old schema.sql from varchar(36) to binary(16), see
+-- db-migrate-uuids.sh. Existing ids keep their values, only their storage changes. The bytes are in standard order
+-- (no uuid_to_bin swap flag), which is how Hibernate stores UUIDs and keeps time ordered ids sequential
+
+-- Parent and child columns are converted separately, so foreign keys cannot be checked until all are converted
+set foreign_key_checks = 0;
+
+-- Make the columns binary, so that they can hold both the text and the binary forms
+alter table users modify id varbinary(36) not null;
+alter table auth_token modify id varbinary(36) not null, modify user_id varbinary(36) not null;
+alter table locations modify id varbinary(36) not null;
+alter table `events` modify id varbinary(36) not null, modify host_id varbinary(36) not null, modify location_id varbinary(36);
+alter table admins modify event_id varbinary(36) not null, modify user_id varbinary(36) not null;
+alter table `user_groups` modify id varbinary(36) not null, modify leader_id varbinary(36) not null;
+alter table notification_members modify event_id varbinary(36) not null, modify user_id varbinary(36) not null;
+alter table seating_plan modify id varbinary(36) not null, modify event_id varbinary(36) not null, modify location_id varbinary(36) not null;
+alter table ticket_reservation modify id varbinary(36) not null, modify user_id varbinary(36) not null, modify seating_id varbinary(36) not null, modify group_id varbinary(36);
+alter table purchase_item modify id varbinary(36) not null, modify purchase_id varbinary(36) not null, modify ticket_id varbinary(36) not null;
+alter table tickets modify id varbinary(36) not null, modify user_id varbinary(36) not null, modify event_id varbinary(36) not null, modify section_id varbinary(36) not null, modify group_id varbinary(36);
+alter table categories modify id varbinary(36) not null, modify event_id varbinary(36) not null;
+alter table tags modify id varbinary(36) not null, modify event_id varbinary(36) not null;
+alter table event_comments modify id varbinary(36) not null, modify event_id varbinary(36) not null, modify parent_id varbinary(36), modify author_id varbinary(36) not null;
+alter table reactions modify id varbinary(36) not null, modify comment_id varbinary(36) not null, modify author_id varbinary(36) not null;
+alter table group_users modify group_id varbinary(36) not null, modify user_id varbinary(36) not null;
+alter table reset_tokens modify id varbinary(36) not null, modify user_id varbinary(36) not null;
+alter table invitation modify id varbinary(36) not null, modify group_id varbinary(36) not null, modify reserve_id varbinary(36) not null, modify user_id varbinary(36) not null;
+alter table tf_idf modify event_id varbinary(36) not null;
+alter table user_interaction modify id varbinary(36) not null, modify user_id varbinary(36) not null, modify event_id varbinary(36) not null;
+alter table user_profiles modify user_id varbinary(36) not null;
+
+-- Convert the text form to the 16 byte form
+update users set id = uuid_to_bin(id);
+update auth_token set id = uuid_to_bin(id), user_id = uuid_to_bin(user_id);
+update locations set id = uuid_to_bin(id);
+update `events` set id = uuid_to_bin(id), host_id = uuid_to_bin(host_id), location_id = uuid_to_bin(location_id);
+update admins set event_id = uuid_to_bin(event_id), user_id = uuid_to_bin(user_id);
+update `user_groups` set id = uuid_to_bin(id), leader_id = uuid_to_bin(leader_id);
+update notification_members set event_id = uuid_to_bin(event_id), user_id = uuid_to_bin(user_id);
+update seating_plan set id = uuid_to_bin(id), event_id = uuid_to_bin(event_id), location_id = uuid_to_bin(location_id);
+update ticket_reservation set id = uuid_to_bin(id), user_id = uuid_to_bin(user_id), seating_id = uuid_to_bin(seating_id), group_id = uuid_to_bin(group_id);
+update purchase_item set id = uuid_to_bin(id), purchase_id = uuid_to_bin(purchase_id), ticket_id = uuid_to_bin(ticket_id);
+update tickets set id = uuid_to_bin(id), user_id = uuid_to_bin(user_id), event_id = uuid_to_bin(event_id), section_id = uuid_to_bin(section_id), group_id = uuid_to_bin(group_id);
+update categories set id = uuid_to_bin(id), event_id = uuid_to_bin(event_id);
+update tags set id = uuid_to_bin(id), event_id = uuid_to_bin(event_id);
+update event_comments set id = uuid_to_bin(id), event_id = uuid_to_bin(event_id), parent_id = uuid_to_bin(parent_id), author_id = uuid_to_bin(author_id);
+update reactions set id = uuid_to_bin(id), comment_id = uuid_to_bin(comment_id), author_id = uuid_to_bin(author_id);
+update group_users set group_id = uuid_to_bin(group_id), user_id = uuid_to_bin(user_id);
+update reset_tokens set id = uuid_to_bin(id), user_id = uuid_to_bin(user_id);
+update invitation set id = uuid_to_bin(id), group_id = uuid_to_bin(group_id), reserve_id = uuid_to_bin(reserve_id), user_id = uuid_to_bin(user_id);
+update tf_idf set event_id = uuid_to_bin(event_id);
+update user_interaction set id = uuid_to_bin(id), user_id = uuid_to_bin(user_id), event_id = uuid_to_bin(event_id);
+update user_profiles set user_id = uuid_to_bin(user_id);
+
+-- Shrink the columns to their final type
+alter table users modify id binary(16) not null;
+alter table auth_token modify id binary(16) not null, modify user_id binary(16) not null;
+alter table locations modify id binary(16) not null;
+alter table `events` modify id binary(16) not null, modify host_id binary(16) not null, modify location_id binary(16);
+alter table admins modify event_id binary(16) not null, modify user_id binary(16) not null;
+alter table `user_groups` modify id binary(16) not null, modify leader_id binary(16) not null;
+alter table notification_members modify event_id binary(16) not null, modify user_id binary(16) not null;
+alter table seating_plan modify id binary(16) not null, modify event_id binary(16) not null, modify location_id binary(16) not null;
+alter table ticket_reservation modify id binary(16) not null, modify user_id binary(16) not null, modify seating_id binary(16) not null, modify group_id binary(16);
+alter table purchase_item modify id binary(16) not null, modify purchase_id binary(16) not null, modify ticket_id binary(16) not null;
+alter table tickets modify id binary(16) not null, modify user_id binary(16) not null, modify event_id binary(16) not null, modify section_id binary(16) not null, modify group_id binary(16);
+alter table categories modify id binary(16) not null, modify event_id binary(16) not null;
+alter table tags modify id binary(16) not null, modify event_id binary(16) not null;
+alter table event_comments modify id binary(16) not null, modify event_id binary(16) not null, modify parent_id binary(16), modify author_id binary(16) not null;
+alter table reactions modify id binary(16) not null, modify comment_id binary(16) not null, modify author_id binary(16) not null;
+alter table group_users modify group_id binary(16) not null, modify user_id binary(16) not null;
+alter table reset_tokens modify id binary(16) not null, modify user_id binary(16) not null;
+alter table invitation modify id binary(16) not null, modify group_id binary(16) not null, modify reserve_id binary(16) not null, modify user_id binary(16) not null;
+alter table tf_idf modify event_id binary(16) not null;
+alter table user_interaction modify id binary(16) not null, modify user_id binary(16) not null, modify event_id binary(16) not null;
+alter table user_profiles modify user_id binary(16) not null;
+
+set foreign_key_checks = 1;